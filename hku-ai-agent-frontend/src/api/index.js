@@ -19,22 +19,41 @@ const buildQueryString = (params = {}) => {
     .join('&')
 }
 
+// Typed SSE events sent by the agent endpoints; each event id lets the browser resume a run after a reconnect
+export const AGENT_EVENT_TYPES = [
+  'queued',
+  'thinking_start',
+  'thinking_end',
+  'tool_call',
+  'rag_context',
+  'answer_draft',
+  'answer',
+  'agent_error',
+  'gap',
+  'done'
+]
+
+export const onAgentEvents = (eventSource, handler) => {
+  AGENT_EVENT_TYPES.forEach((type) => {
+    eventSource.addEventListener(type, (event) => handler(type, event.data ?? ''))
+  })
+}
+
 export const connectSSE = (url, params = {}, onMessage, onError) => {
   const queryString = buildQueryString(params)
   const fullUrl = `${API_BASE_URL}${url}${queryString ? `?${queryString}` : ''}`
 
   const eventSource = new EventSource(fullUrl)
 
-  eventSource.onmessage = (event) => {
-    const data = event.data
-    if (data === '[DONE]') {
-      onMessage?.('[DONE]')
-    } else {
-      onMessage?.(data)
-    }
+  if (onMessage) {
+    onAgentEvents(eventSource, onMessage)
   }
 
   eventSource.onerror = (error) => {
+    // Keep the connection while the browser reconnects with Last-Event-ID
+    if (eventSource.readyState === EventSource.CONNECTING) {
+      return
+    }
     onError?.(error)
     eventSource.close()
   }
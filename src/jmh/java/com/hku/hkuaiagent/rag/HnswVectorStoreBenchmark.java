@@ -0,0 +1,107 @@
+package com.hku.hkuaiagent.rag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 search latency of {@link HnswVectorStore} against the brute-force SimpleVectorStore, with and without the
+ * category/semester filter built by {@code HkuAiRagCustomAdvisorFactory}. Recall@10 of the HNSW store is measured
+ * against the brute-force results during setup and printed before the iterations start.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="HnswVectorStoreBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HnswVectorStoreBenchmark {
+
+    @Param({"2000", "20000"})
+    public int size;
+
+    @Param({"256"})
+    public int dimensions;
+
+    private VectorSamples samples;
+
+    private VectorStore bruteForce;
+
+    private VectorStore hnsw;
+
+    private Filter.Expression filter;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        samples = new VectorSamples(size, 200, dimensions, 42);
+        bruteForce = SimpleVectorStore.builder(samples.model).build();
+        bruteForce.add(samples.documents);
+        hnsw = HnswVectorStore.builder(samples.model).build();
+        hnsw.add(samples.documents);
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        filter = b.and(b.eq("category", "course"), b.eq("semester", "S1")).build();
+        System.out.printf("%nrecall@10 size=%d: unfiltered %.3f, filtered %.3f%n", size, recall(null), recall(filter));
+    }
+
+    @Benchmark
+    public List<Document> bruteForce() {
+        return bruteForce.similaritySearch(request(null));
+    }
+
+    @Benchmark
+    public List<Document> hnsw() {
+        return hnsw.similaritySearch(request(null));
+    }
+
+    @Benchmark
+    public List<Document> bruteForceFiltered() {
+        return bruteForce.similaritySearch(request(filter));
+    }
+
+    @Benchmark
+    public List<Document> hnswFiltered() {
+        return hnsw.similaritySearch(request(filter));
+    }
+
+    private SearchRequest request(Filter.Expression filterExpression) {
+        String query = samples.queries.get(next++ % samples.queries.size());
+        return SearchRequest.builder().query(query).topK(10).filterExpression(filterExpression).build();
+    }
+
+    private double recall(Filter.Expression filterExpression) {
+        double total = 0;
+        for (String query : samples.queries) {
+            SearchRequest request = SearchRequest.builder().query(query).topK(10).filterExpression(filterExpression).build();
+            total += VectorSamples.recall(bruteForce.similaritySearch(request), hnsw.similaritySearch(request));
+        }
+        return total / samples.queries.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HnswVectorStoreBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,86 @@
+package com.hku.hkuaiagent.rag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 brute-force search latency of {@link OffHeapVectorStore} per quantisation and kernel. Recall@10 of each
+ * configuration against the exact float scan, and the direct memory it allocated, are printed during setup.
+ * Compare with {@code HnswVectorStoreBenchmark.bruteForce} for the on-heap SimpleVectorStore.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="OffHeapVectorStoreBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OffHeapVectorStoreBenchmark {
+
+    @Param({"20000"})
+    public int size;
+
+    @Param({"256"})
+    public int dimensions;
+
+    @Param({"NONE", "INT8"})
+    public OffHeapVectorStore.Quantization quantization;
+
+    @Param({"simd", "scalar"})
+    public String kernels;
+
+    private VectorSamples samples;
+
+    private OffHeapVectorStore store;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        samples = new VectorSamples(size, 200, dimensions, 42);
+        store = OffHeapVectorStore.builder(samples.model)
+                .quantization(quantization)
+                .kernels("scalar".equals(kernels) ? VectorKernels.scalar() : VectorKernels.get())
+                .build();
+        store.add(samples.documents);
+        OffHeapVectorStore exact = OffHeapVectorStore.builder(samples.model)
+                .quantization(OffHeapVectorStore.Quantization.NONE)
+                .build();
+        exact.add(samples.documents);
+        double total = 0;
+        for (String query : samples.queries) {
+            SearchRequest request = SearchRequest.builder().query(query).topK(10).build();
+            total += VectorSamples.recall(exact.similaritySearch(request), store.similaritySearch(request));
+        }
+        System.out.printf("%n%s/%s size=%d: recall@10 %.3f, %d KB off-heap%n", quantization, kernels, size,
+                total / samples.queries.size(), store.offHeapBytes() / 1024);
+    }
+
+    @Benchmark
+    public List<Document> search() {
+        String query = samples.queries.get(next++ % samples.queries.size());
+        return store.similaritySearch(SearchRequest.builder().query(query).topK(10).build());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OffHeapVectorStoreBenchmark.class.getSimpleName()).build()).run();
+    }
+}
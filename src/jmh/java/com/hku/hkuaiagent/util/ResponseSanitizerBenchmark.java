@@ -0,0 +1,106 @@
+package com.hku.hkuaiagent.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ResponseSanitizer} with the former regex chains on a short answer, a long answer and a
+ * streamed answer split into small chunks.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec}, or start {@link #main} from the IDE after
+ * enabling the {@code benchmark} profile. Pass {@code -Djmh.args="..."} to the exec goal for JMH options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSanitizerBenchmark {
+
+    private String shortAnswer;
+
+    private String longAnswer;
+
+    private List<String> chunks;
+
+    @Setup
+    public void setUp() {
+        shortAnswer = ResponseSanitizerSamples.WEATHER;
+        longAnswer = ResponseSanitizerSamples.longAnswer();
+        chunks = ResponseSanitizerSamples.streamedChunks();
+    }
+
+    @Benchmark
+    public String markdownShortLegacy() {
+        return LegacyResponseSanitizers.markdown(shortAnswer);
+    }
+
+    @Benchmark
+    public String markdownShort() {
+        return ResponseSanitizer.MARKDOWN.sanitize(shortAnswer);
+    }
+
+    @Benchmark
+    public String markdownLongLegacy() {
+        return LegacyResponseSanitizers.markdown(longAnswer);
+    }
+
+    @Benchmark
+    public String markdownLong() {
+        return ResponseSanitizer.MARKDOWN.sanitize(longAnswer);
+    }
+
+    @Benchmark
+    public void markdownStreamLegacy(Blackhole blackhole) {
+        for (String chunk : chunks) {
+            blackhole.consume(LegacyResponseSanitizers.markdown(chunk));
+        }
+    }
+
+    @Benchmark
+    public void markdownStream(Blackhole blackhole) {
+        for (String chunk : chunks) {
+            blackhole.consume(ResponseSanitizer.MARKDOWN.sanitize(chunk));
+        }
+    }
+
+    @Benchmark
+    public String plainTextShortLegacy() {
+        return LegacyResponseSanitizers.plainText(shortAnswer);
+    }
+
+    @Benchmark
+    public String plainTextShort() {
+        return ResponseSanitizer.PLAIN_TEXT.sanitize(shortAnswer);
+    }
+
+    @Benchmark
+    public String plainTextLongLegacy() {
+        return LegacyResponseSanitizers.plainText(longAnswer);
+    }
+
+    @Benchmark
+    public String plainTextLong() {
+        return ResponseSanitizer.PLAIN_TEXT.sanitize(longAnswer);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ResponseSanitizerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,58 @@
+package com.hku.hkuaiagent.agent;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.hku.hkuaiagent.advisor.MyLoggerAdvisor;
+import com.hku.hkuaiagent.tools.ToolCatalog;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+
+import java.util.Objects;
+
+/**
+ * Immutable part of an agent type: prompts, step limit, chat client, tools and call options.
+ * <p>
+ * One definition is built per agent type and shared by all of its sessions, so a new chat only allocates
+ * its conversation state (messages, step counter, status). The chat options are a template; agents copy
+ * them for every request instead of mutating the shared instance.
+ */
+public record AgentDefinition(String name,
+                              String systemPrompt,
+                              String nextStepPrompt,
+                              int maxSteps,
+                              ChatClient chatClient,
+                              ToolCatalog toolCatalog,
+                              ChatOptions chatOptions,
+                              ToolCallingManager toolCallingManager) {
+
+    public AgentDefinition {
+        Objects.requireNonNull(name, "name");
+        Objects.requireNonNull(toolCatalog, "toolCatalog");
+        Objects.requireNonNull(chatOptions, "chatOptions");
+        Objects.requireNonNull(toolCallingManager, "toolCallingManager");
+    }
+
+    /**
+     * Build a definition with the default logging chat client and manual tool execution.
+     */
+    public static AgentDefinition of(String name, String systemPrompt, String nextStepPrompt, int maxSteps,
+                                     ChatModel chatModel, ToolCallback[] tools, ToolCallbackProvider mcpTools) {
+        ChatClient chatClient = ChatClient.builder(Objects.requireNonNull(chatModel))
+                .defaultAdvisors(new MyLoggerAdvisor())
+                .build();
+        return new AgentDefinition(name, systemPrompt, nextStepPrompt, maxSteps, chatClient,
+                new ToolCatalog(tools, mcpTools), defaultChatOptions(), ToolCallingManager.builder().build());
+    }
+
+    /**
+     * Options that disable Spring AI's built-in tool execution so agents can manage the context themselves.
+     */
+    static ChatOptions defaultChatOptions() {
+        return DashScopeChatOptions.builder()
+                .withInternalToolExecutionEnabled(false)
+                .build();
+    }
+}
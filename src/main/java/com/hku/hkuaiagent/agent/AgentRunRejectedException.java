@@ -0,0 +1,11 @@
+package com.hku.hkuaiagent.agent;
+
+/**
+ * Thrown when {@link AgentRunScheduler} has no free slot and its admission queue is full.
+ */
+public class AgentRunRejectedException extends RuntimeException {
+
+    public AgentRunRejectedException(String message) {
+        super(message);
+    }
+}
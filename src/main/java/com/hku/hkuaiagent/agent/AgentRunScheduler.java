@@ -0,0 +1,146 @@
+package com.hku.hkuaiagent.agent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded execution engine for multi-step agent runs.
+ * <p>
+ * Every run gets its own virtual thread, so blocking LLM and HTTP calls never occupy the ForkJoin
+ * common pool. At most {@code maxConcurrentRuns} runs execute at once; up to {@code maxQueueDepth}
+ * further runs wait for a slot, and anything beyond that is rejected immediately with
+ * {@link AgentRunRejectedException} so the caller can answer with HTTP 429 instead of piling up work.
+ */
+@Slf4j
+public class AgentRunScheduler implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-run-", 0).factory());
+
+    private final int maxConcurrentRuns;
+    private final int maxQueueDepth;
+    private final Semaphore runSlots;
+
+    // 已被接纳（排队中 + 执行中）的任务数，用于快速判断是否超出队列容量
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final Timer queueWaitTimer;
+    private final Timer runTimer;
+    private final Counter rejectedCounter;
+
+    public AgentRunScheduler(int maxConcurrentRuns, int maxQueueDepth, MeterRegistry meterRegistry) {
+        if (maxConcurrentRuns < 1) {
+            throw new IllegalArgumentException("maxConcurrentRuns must be at least 1");
+        }
+        if (maxQueueDepth < 0) {
+            throw new IllegalArgumentException("maxQueueDepth must not be negative");
+        }
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        this.maxQueueDepth = maxQueueDepth;
+        this.runSlots = new Semaphore(maxConcurrentRuns, true);
+        this.queueWaitTimer = Timer.builder("hku.agent.run.queue.wait")
+                .description("Time an agent run waited for an execution slot")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("hku.agent.run.duration")
+                .description("Wall-clock time of a complete agent run")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("hku.agent.run.rejected")
+                .description("Agent runs rejected because the admission queue was full")
+                .register(meterRegistry);
+        Gauge.builder("hku.agent.run.active", running, AtomicInteger::get)
+                .description("Agent runs currently executing")
+                .register(meterRegistry);
+        Gauge.builder("hku.agent.run.queued", queued, AtomicInteger::get)
+                .description("Agent runs waiting for an execution slot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Admit an agent run or reject it straight away when the scheduler is saturated.
+     *
+     * @param agentName name used in logs
+     * @param run       the agent loop to execute
+     * @throws AgentRunRejectedException when all slots are busy and the admission queue is full
+     */
+    public void submit(String agentName, Runnable run) {
+        if (admitted.incrementAndGet() > maxConcurrentRuns + maxQueueDepth) {
+            admitted.decrementAndGet();
+            rejectedCounter.increment();
+            log.warn("Rejected agent run for {}: {} running, {} queued", agentName, running.get(), queued.get());
+            throw new AgentRunRejectedException("Agent is busy, " + queued.get() + " runs already waiting. Please retry shortly.");
+        }
+        queued.incrementAndGet();
+        long enqueuedAt = System.nanoTime();
+        executor.execute(() -> {
+            boolean acquired = false;
+            try {
+                runSlots.acquire();
+                acquired = true;
+                queued.decrementAndGet();
+                running.incrementAndGet();
+                long startedAt = System.nanoTime();
+                queueWaitTimer.record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    run.run();
+                } finally {
+                    runTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                    running.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                queued.decrementAndGet();
+                Thread.currentThread().interrupt();
+                log.warn("Agent run for {} interrupted while waiting for a slot", agentName);
+            } catch (RuntimeException e) {
+                log.error("Agent run for {} failed", agentName, e);
+            } finally {
+                if (acquired) {
+                    runSlots.release();
+                }
+                admitted.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Number of admitted runs that have not finished yet, queued ones included.
+     */
+    public int pendingRuns() {
+        return admitted.get();
+    }
+
+    /**
+     * Current load and latency figures, in milliseconds where applicable.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrentRuns", maxConcurrentRuns);
+        stats.put("maxQueueDepth", maxQueueDepth);
+        stats.put("running", running.get());
+        stats.put("queued", queued.get());
+        stats.put("completed", runTimer.count());
+        stats.put("rejected", (long) rejectedCounter.count());
+        stats.put("queueWaitMeanMs", queueWaitTimer.mean(TimeUnit.MILLISECONDS));
+        stats.put("queueWaitMaxMs", queueWaitTimer.max(TimeUnit.MILLISECONDS));
+        stats.put("runTimeMeanMs", runTimer.mean(TimeUnit.MILLISECONDS));
+        stats.put("runTimeMaxMs", runTimer.max(TimeUnit.MILLISECONDS));
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,177 @@
+package com.hku.hkuaiagent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+/**
+ * Per-chat agent sessions of one agent type, bounded by count, idle time and heap pressure.
+ * <p>
+ * Sessions are kept in access order. Each lookup first evicts sessions idle longer than the timeout, then
+ * the least recently used ones above the size limit, and, while heap usage is above the pressure ratio,
+ * the least recently used quarter of the remaining sessions (at most once every ten seconds). Sessions that
+ * are running or have queued turns are never evicted; an evicted chat simply starts over with an empty
+ * memory on its next message.
+ */
+@Slf4j
+public class AgentSessionCache<A extends BaseAgent> {
+
+    private static final long PRESSURE_COOLDOWN_MILLIS = 10_000;
+
+    private record Session<A>(A agent, long createdAt, long lastAccess) {
+    }
+
+    private final String name;
+
+    private final int maxSessions;
+
+    private final long idleTimeoutMillis;
+
+    private final double heapPressureRatio;
+
+    private final Clock clock;
+
+    private final DoubleSupplier heapUsage;
+
+    private final LinkedHashMap<String, Session<A>> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long created;
+
+    private long idleEvictions;
+
+    private long sizeEvictions;
+
+    private long pressureEvictions;
+
+    private long lastPressureEviction = -PRESSURE_COOLDOWN_MILLIS;
+
+    public AgentSessionCache(String name, int maxSessions, Duration idleTimeout, double heapPressureRatio) {
+        this(name, maxSessions, idleTimeout, heapPressureRatio, Clock.systemUTC(), AgentSessionCache::currentHeapUsage);
+    }
+
+    AgentSessionCache(String name, int maxSessions, Duration idleTimeout, double heapPressureRatio,
+                      Clock clock, DoubleSupplier heapUsage) {
+        this.name = name;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.heapPressureRatio = heapPressureRatio;
+        this.clock = clock;
+        this.heapUsage = heapUsage;
+    }
+
+    /**
+     * Session for a chat, created from the factory on first use.
+     */
+    public synchronized A getOrCreate(String chatId, Function<String, A> factory) {
+        long now = clock.millis();
+        evict(now, chatId);
+        Session<A> session = sessions.get(chatId);
+        if (session == null) {
+            session = new Session<>(factory.apply(chatId), now, now);
+            created++;
+        } else {
+            session = new Session<>(session.agent(), session.createdAt(), now);
+        }
+        sessions.put(chatId, session);
+        return session.agent();
+    }
+
+    /**
+     * Drop a chat session, e.g. when the user clears the conversation.
+     *
+     * @return true when a session existed
+     */
+    public synchronized boolean remove(String chatId) {
+        return sessions.remove(chatId) != null;
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Session count, eviction counters and the estimated heap held by session state.
+     */
+    public synchronized Map<String, Object> snapshot() {
+        evict(clock.millis(), null);
+        long totalBytes = 0;
+        long maxBytes = 0;
+        int busy = 0;
+        for (Session<A> session : sessions.values()) {
+            long bytes = session.agent().estimateRetainedBytes();
+            totalBytes += bytes;
+            maxBytes = Math.max(maxBytes, bytes);
+            if (session.agent().isBusy()) {
+                busy++;
+            }
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("agent", name);
+        snapshot.put("sessions", sessions.size());
+        snapshot.put("busySessions", busy);
+        snapshot.put("maxSessions", maxSessions);
+        snapshot.put("idleTimeoutSeconds", idleTimeoutMillis / 1000);
+        snapshot.put("created", created);
+        snapshot.put("idleEvictions", idleEvictions);
+        snapshot.put("sizeEvictions", sizeEvictions);
+        snapshot.put("pressureEvictions", pressureEvictions);
+        snapshot.put("estimatedBytes", totalBytes);
+        snapshot.put("avgBytesPerSession", sessions.isEmpty() ? 0 : totalBytes / sessions.size());
+        snapshot.put("maxBytesPerSession", maxBytes);
+        snapshot.put("heapUsage", Math.round(heapUsage.getAsDouble() * 1000) / 1000.0);
+        return snapshot;
+    }
+
+    private void evict(long now, String keep) {
+        // Access order puts the idlest sessions first, so the scan stops at the first recent one
+        Iterator<Map.Entry<String, Session<A>>> iterator = sessions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Session<A>> entry = iterator.next();
+            if (now - entry.getValue().lastAccess() < idleTimeoutMillis) {
+                break;
+            }
+            if (!entry.getKey().equals(keep) && !entry.getValue().agent().isBusy()) {
+                iterator.remove();
+                idleEvictions++;
+            }
+        }
+        // Leave room for the session about to be created
+        int limit = keep != null && !sessions.containsKey(keep) ? maxSessions - 1 : maxSessions;
+        sizeEvictions += evictOldest(sessions.size() - limit, keep);
+        // Heap usage only drops after the next GC, so shed at most one batch per cooldown period
+        if (now - lastPressureEviction >= PRESSURE_COOLDOWN_MILLIS && heapUsage.getAsDouble() > heapPressureRatio) {
+            lastPressureEviction = now;
+            int evicted = evictOldest(Math.max(1, sessions.size() / 4), keep);
+            pressureEvictions += evicted;
+            if (evicted > 0) {
+                log.warn("{} sessions: heap usage above {}, evicted {} least recently used session(s)",
+                        name, heapPressureRatio, evicted);
+            }
+        }
+    }
+
+    private int evictOldest(int count, String keep) {
+        int evicted = 0;
+        Iterator<Map.Entry<String, Session<A>>> iterator = sessions.entrySet().iterator();
+        while (evicted < count && iterator.hasNext()) {
+            Map.Entry<String, Session<A>> entry = iterator.next();
+            if (!entry.getKey().equals(keep) && !entry.getValue().agent().isBusy()) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private static double currentHeapUsage() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return (double) used / runtime.maxMemory();
+    }
+}
@@ -4,22 +4,28 @@ import cn.hutool.core.util.StrUtil;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hku.hkuaiagent.agent.model.AgentState;
+import com.hku.hkuaiagent.sse.AgentEventStream;
+import com.hku.hkuaiagent.sse.AgentEventType;
+import com.hku.hkuaiagent.util.ResponseSanitizer;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatResponse;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.concurrent.CompletableFuture;
 
 /**
  * 抽象基础代理类，用于管理代理状态和执行流程。
@@ -53,8 +59,30 @@ public abstract class BaseAgent {
     // Memory 记忆（需要自主维护会话上下文）
     private List<Message> messageList = new ArrayList<>();
     
-    // SSE 发射器（用于流式输出思考步骤）
-    private SseEmitter currentSseEmitter;
+    // 当前轮次的事件流（用于流式输出思考步骤与答复，与 HTTP 连接解耦，断线后可续传）
+    private AgentEventStream currentEvents;
+
+    // 本轮的最终答复是否已在 think() 中逐 token 推送给前端
+    private boolean finalAnswerStreamed;
+
+    // 流式运行的调度器（未设置时为每次运行单独启动一个虚拟线程）
+    private AgentRunScheduler runScheduler;
+
+    // 会话邮箱：同一会话的并发请求按到达顺序排队，由同一个工作线程依次执行
+    // 只能在 synchronized (mailbox) 中访问，不生成 getter/setter
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Deque<QueuedTurn> mailbox = new ArrayDeque<>();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean turnInProgress;
+    private int maxQueuedTurns = 4;
+
+    // 排队轮次的事件流无人订阅超过该时长（留出断线重连的时间）即视为已放弃，轮到时直接丢弃
+    private Duration abandonedTurnGrace = Duration.ofSeconds(30);
+
+    private record QueuedTurn(AgentEventStream events, Runnable turn) {
+    }
 
     /**
      * 运行代理
@@ -78,20 +106,23 @@ public abstract class BaseAgent {
         // 保存结果列表
         List<String> results = new ArrayList<>();
         try {
+            int stepBudget = planStepBudget(userPrompt);
             // 执行循环
-            for (int i = 0; i < maxSteps && state != AgentState.FINISHED; i++) {
+            for (int i = 0; i < stepBudget && state != AgentState.FINISHED; i++) {
                 int stepNumber = i + 1;
                 currentStep = stepNumber;
-                log.info("Executing step {}/{}", stepNumber, maxSteps);
+                log.info("Executing step {}/{}", stepNumber, stepBudget);
                 // 单步执行
                 String stepResult = step();
                 String result = "Step " + stepNumber + ": " + stepResult;
                 results.add(result);
             }
+            boolean finishedNaturally = state == AgentState.FINISHED;
+            onRunComplete(userPrompt, currentStep, finishedNaturally);
             // 检查是否超出步骤限制
-            if (currentStep >= maxSteps) {
+            if (!finishedNaturally && currentStep >= stepBudget) {
                 state = AgentState.FINISHED;
-                results.add("Terminated: Reached max steps (" + maxSteps + ")");
+                results.add("Terminated: Reached max steps (" + stepBudget + ")");
             }
             return String.join("\n", results);
         } catch (Exception e) {
@@ -108,48 +139,55 @@ public abstract class BaseAgent {
      * 运行代理（流式输出）
      *
      * @param userPrompt 用户提示词
-     * @return 执行结果
+     * @return 本轮的事件流
+     */
+    public AgentEventStream runStream(String userPrompt) {
+        AgentEventStream events = AgentEventStream.detached();
+        runStream(userPrompt, events);
+        return events;
+    }
+
+    /**
+     * 运行代理（流式输出），事件写入调用方提供的事件流
+     * <p>
+     * 事件流不依赖 HTTP 连接：客户端断线后本轮继续执行，重连时可凭 Last-Event-ID 从断点续传。
+     *
+     * @param userPrompt 用户提示词
+     * @param events 本轮的事件流，结束时以 DONE 事件完成
      */
-    public SseEmitter runStream(String userPrompt) {
-        // 创建一个超时时间较长的 SseEmitter
-        SseEmitter sseEmitter = new SseEmitter(300000L); // 5 分钟超时
+    public void runStream(String userPrompt, AgentEventStream events) {
         final String safeUserPrompt = Objects.requireNonNull(userPrompt, "userPrompt");
-        // 使用线程异步处理，避免阻塞主线程
-        CompletableFuture.runAsync(() -> {
+        // 在独立的虚拟线程中执行代理循环，避免阻塞请求线程
+        Runnable agentRun = () -> {
             // 1、基础校验
-            try {
-                if (this.state != AgentState.IDLE) {
-                    sseEmitter.send("[ERROR] Cannot run agent from state: " + this.state);
-                    sseEmitter.complete();
-                    return;
-                }
-                Objects.requireNonNull(safeUserPrompt, "userPrompt");
-                if (StrUtil.isBlank(safeUserPrompt)) {
-                    sseEmitter.send("[ERROR] Cannot run agent with an empty prompt");
-                    sseEmitter.complete();
-                    return;
-                }
-            } catch (Exception e) {
-                sseEmitter.completeWithError(e);
+            if (this.state != AgentState.IDLE) {
+                events.fail("Cannot run agent from state: " + this.state);
+                return;
+            }
+            if (StrUtil.isBlank(safeUserPrompt)) {
+                events.fail("Cannot run agent with an empty prompt");
+                return;
             }
             // 2、执行，更改状态
             this.state = AgentState.RUNNING;
-            // 设置当前的 SSE 发射器
-            this.currentSseEmitter = sseEmitter;
+            // 设置当前的事件流
+            this.currentEvents = events;
+            this.finalAnswerStreamed = false;
             // 记录消息上下文
             messageList.add(new UserMessage(safeUserPrompt));
-            // Replace usage with safe prompt
             // 保存结果列表
             List<String> results = new ArrayList<>();
             try {
                 // 发送开始思考的信号
-                sseEmitter.send("[THINKING_START]Analyzing your request...");
+                events.publish(AgentEventType.THINKING_START, "Analyzing your request...");
                 
+                // 按意图学习到的步数预算（默认即 maxSteps）
+                int stepBudget = planStepBudget(safeUserPrompt);
                 // 执行循环
-                for (int i = 0; i < maxSteps && state != AgentState.FINISHED; i++) {
+                for (int i = 0; i < stepBudget && state != AgentState.FINISHED; i++) {
                     int stepNumber = i + 1;
                     currentStep = stepNumber;
-                    log.info("Executing step {}/{}", stepNumber, maxSteps);
+                    log.info("Executing step {}/{}", stepNumber, stepBudget);
                     
                     // 单步执行
                     String stepResult = step();
@@ -160,26 +198,31 @@ public abstract class BaseAgent {
                 }
                 
                 // 发送思考完成信号
-                sseEmitter.send("[THINKING_END]Thought process complete, assembling the answer...");
+                events.publish(AgentEventType.THINKING_END, "Thought process complete, assembling the answer...");
                 
                 // 检查是否超出步骤限制
-                boolean reachedMaxSteps = currentStep >= maxSteps;
+                boolean finishedNaturally = state == AgentState.FINISHED;
+                onRunComplete(safeUserPrompt, currentStep, finishedNaturally);
+                boolean reachedMaxSteps = !finishedNaturally && currentStep >= stepBudget;
                 if (reachedMaxSteps) {
                     state = AgentState.FINISHED;
-                    log.warn("Terminated: Reached max steps ({})", maxSteps);
+                    log.warn("Terminated: Reached max steps ({})", stepBudget);
                 }
                 
                 // 获取最终响应 - 从消息列表中提取最后的助手回复
                 String finalResponse = formatPlainTextResponse(getFinalResponse());
-                if (StrUtil.isNotBlank(finalResponse)) {
+                if (finalAnswerStreamed) {
+                    // 最终答复已经逐 token 推送，无需再次回放
+                    log.info("Final answer already streamed token by token, skipping replay");
+                } else if (StrUtil.isNotBlank(finalResponse)) {
                     // 分段发送最终响应，避免一次性发送大量文本
-                    sendInChunks(sseEmitter, finalResponse);
+                    sendInChunks(events, finalResponse);
                 } else {
                     // 如果没有最终响应，尝试从工具返回中提取信息
                     String toolResponse = formatPlainTextResponse(getLastToolResponse());
                     if (StrUtil.isNotBlank(toolResponse)) {
                         // 直接发送工具返回的信息（特别是PDF生成的结果）
-                        sendInChunks(sseEmitter, toolResponse);
+                        sendInChunks(events, toolResponse);
                     } else if (reachedMaxSteps) {
                         // 如果达到最大步骤，使用已有信息再次请求模型生成最终答复
                         String summary = generateMaxStepsSummary();
@@ -187,54 +230,165 @@ public abstract class BaseAgent {
                         String candidate = StrUtil.isNotBlank(fallback) ? fallback : summary;
                         String normalizedCandidate = formatPlainTextResponse(candidate);
                         if (StrUtil.isNotBlank(normalizedCandidate)) {
-                            sendInChunks(sseEmitter, normalizedCandidate);
+                            sendInChunks(events, normalizedCandidate);
                         } else {
-                            sseEmitter.send("Sorry, I tried several approaches but could not reach a complete conclusion. Please rephrase the question or provide extra details.");
+                            events.publish(AgentEventType.ANSWER, "Sorry, I tried several approaches but could not reach a complete conclusion. Please rephrase the question or provide extra details.");
                         }
                     } else {
                         // 最后的兜底
-                        sseEmitter.send("Task completed.");
+                        events.publish(AgentEventType.ANSWER, "Task completed.");
                     }
                 }
                 
                 // 发送完成标记
-                sseEmitter.send("[DONE]");
-                // 正常完成
-                sseEmitter.complete();
+                events.complete();
             } catch (Exception e) {
                 state = AgentState.ERROR;
                 log.error("error executing agent", e);
-                try {
-                    sseEmitter.send("Execution error: " + e.getMessage());
-                    sseEmitter.send("[DONE]");
-                    sseEmitter.complete();
-                } catch (IOException ex) {
-                    sseEmitter.completeWithError(ex);
-                }
+                events.fail("Execution error: " + e.getMessage());
             } finally {
                 // 3、清理资源
-                this.currentSseEmitter = null;
+                this.currentEvents = null;
                 this.cleanup();
             }
-        });
+        };
+        enqueueTurn(events, agentRun);
+    }
 
-        // 设置超时回调
-        sseEmitter.onTimeout(() -> {
-            this.state = AgentState.ERROR;
-            this.cleanup();
-            log.warn("SSE connection timeout");
-        });
-        // 设置完成回调
-        sseEmitter.onCompletion(() -> {
-            if (this.state == AgentState.RUNNING) {
-                this.state = AgentState.FINISHED;
+    /**
+     * 将一轮对话放入会话邮箱
+     * <p>
+     * 空闲时立即派发一个工作线程；已有轮次在执行时排队等待，并通过 SSE 告知排队位置，
+     * 不会阻塞 Servlet 线程，也不会再返回 "Cannot run agent from state: RUNNING"。
+     *
+     * @param events 本轮的事件流
+     * @param turn 本轮的执行逻辑
+     */
+    private void enqueueTurn(AgentEventStream events, Runnable turn) {
+        synchronized (mailbox) {
+            if (turnInProgress) {
+                if (mailbox.size() >= maxQueuedTurns) {
+                    throw new AgentRunRejectedException("Too many messages are waiting in this chat. Please wait for the current answer.");
+                }
+                mailbox.addLast(new QueuedTurn(events, turn));
+                int position = mailbox.size();
+                log.info("{} is busy, queued turn at position {}", name, position);
+                events.publish(AgentEventType.QUEUED, queuedMessage(position));
+                return;
             }
-            this.cleanup();
-            log.info("SSE connection completed");
-        });
-        return sseEmitter;
+            turnInProgress = true;
+        }
+        Runnable worker = () -> drainMailbox(turn);
+        try {
+            // 交给有界调度器执行；调度器饱和时直接抛出 AgentRunRejectedException
+            if (runScheduler != null) {
+                runScheduler.submit(name, worker);
+            } else {
+                Thread.ofVirtual().name("agent-run-" + name).start(worker);
+            }
+        } catch (RuntimeException e) {
+            synchronized (mailbox) {
+                turnInProgress = false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 依次执行邮箱中的轮次，直到邮箱为空
+     */
+    private void drainMailbox(Runnable firstTurn) {
+        Runnable turn = firstTurn;
+        while (turn != null) {
+            try {
+                turn.run();
+            } catch (RuntimeException e) {
+                log.error("Agent turn failed", e);
+            }
+            turn = nextTurn();
+        }
+    }
+
+    /**
+     * 取出下一个仍有客户端等待的轮次
+     * <p>
+     * 事件流已结束（被取消）或长时间无人订阅的轮次直接丢弃，不再调用模型；
+     * 其余仍在排队的轮次收到更新后的排队位置。
+     *
+     * @return 下一轮的执行逻辑，邮箱为空时返回 null
+     */
+    private Runnable nextTurn() {
+        QueuedTurn next;
+        List<AgentEventStream> dropped = new ArrayList<>();
+        List<AgentEventStream> waiting = new ArrayList<>();
+        synchronized (mailbox) {
+            next = mailbox.pollFirst();
+            while (next != null && (next.events().isCompleted() || next.events().isAbandoned(abandonedTurnGrace))) {
+                dropped.add(next.events());
+                next = mailbox.pollFirst();
+            }
+            if (next == null) {
+                turnInProgress = false;
+            }
+            for (QueuedTurn queued : mailbox) {
+                waiting.add(queued.events());
+            }
+        }
+        // 事件在锁外发送，避免慢客户端阻塞其他请求入队
+        for (AgentEventStream events : dropped) {
+            log.info("{} dropping queued turn of run {}: no client is waiting for it", name, events.getRunId());
+            events.fail("This message was not answered because the chat was closed while it was waiting.");
+        }
+        for (int i = 0; i < waiting.size(); i++) {
+            waiting.get(i).publish(AgentEventType.QUEUED, queuedMessage(i + 1));
+        }
+        return next != null ? next.turn() : null;
+    }
+
+    private static String queuedMessage(int position) {
+        return "Waiting for your previous message to finish (position " + position + ")";
     }
     
+    /**
+     * 会话是否正在执行或仍有排队的轮次（此时不能被会话缓存淘汰）
+     */
+    public boolean isBusy() {
+        synchronized (mailbox) {
+            return turnInProgress || !mailbox.isEmpty();
+        }
+    }
+
+    /**
+     * 粗略估算本会话占用的堆内存（字节），供会话缓存统计与淘汰使用
+     * <p>
+     * 提示词、工具与 ChatClient 属于共享的 {@link AgentDefinition}，不计入会话；
+     * 这里只统计消息记忆：每条消息按固定对象开销加上字符数的两倍（UTF-16）估算。
+     *
+     * @return 估算的字节数
+     */
+    public long estimateRetainedBytes() {
+        long bytes = 1024;
+        List<Message> messages = messageList;
+        // 运行中的会话可能正在追加消息，按下标读取避免 ConcurrentModificationException
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message == null) {
+                continue;
+            }
+            bytes += 128 + 2L * StrUtil.length(message.getText());
+            if (message instanceof AssistantMessage assistantMessage) {
+                for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                    bytes += 96 + 2L * StrUtil.length(toolCall.arguments());
+                }
+            } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    bytes += 96 + 2L * StrUtil.length(response.responseData());
+                }
+            }
+        }
+        return bytes;
+    }
+
     /**
      * 获取最终响应 - 从消息列表中提取最后的助手回复
      * 
@@ -281,28 +435,59 @@ public abstract class BaseAgent {
     }
     
     /**
-     * 分段发送文本，实现流式效果
-     * 
-     * @param sseEmitter SSE发射器
+     * 分段发送已生成的文本（仅用于工具结果、总结等非流式兜底内容）
+     * <p>
+     * 模型答复已在 think() 中逐 token 推送，这里不再人为 sleep 模拟打字效果。
+     *
+     * @param events 本轮的事件流
      * @param text 要发送的文本
-     * @throws IOException IO异常
      */
-    protected void sendInChunks(SseEmitter sseEmitter, String text) throws IOException {
-        // 按字符分段发送，每次发送3-5个字符，模拟打字效果
-        int chunkSize = 4;
+    protected void sendInChunks(AgentEventStream events, String text) {
+        int chunkSize = 256;
         for (int i = 0; i < text.length(); i += chunkSize) {
             int end = Math.min(i + chunkSize, text.length());
-            String chunk = text.substring(i, end);
-            sseEmitter.send(Objects.requireNonNull(chunk, "chunk"));
-            
-            // 添加微小延迟，使流式效果更自然
-            try {
-                Thread.sleep(15);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
+            events.publish(AgentEventType.ANSWER, text.substring(i, end));
+        }
+    }
+
+    /**
+     * 推送模型实时生成的答复片段
+     *
+     * @param delta 已经过 {@link ResponseSanitizer#streaming()} 清洗的文本增量
+     */
+    protected void sendAnswerDelta(String delta) {
+        if (StrUtil.isEmpty(delta)) {
+            return;
         }
+        sendEvent(AgentEventType.ANSWER, delta);
+    }
+
+    /**
+     * 标记本轮最终答复已通过 {@link #sendAnswerDelta(String)} 推送完毕
+     */
+    protected void markFinalAnswerStreamed() {
+        this.finalAnswerStreamed = true;
+    }
+
+    /**
+     * 在执行循环开始前确定本次运行的步数上限，子类可按历史运行情况收紧预算
+     *
+     * @param userPrompt 用户提示词
+     * @return 本次运行允许的最大步数
+     */
+    protected int planStepBudget(String userPrompt) {
+        return maxSteps;
+    }
+
+    /**
+     * 执行循环结束后回调（在最终答复发送之前）
+     *
+     * @param userPrompt 用户提示词
+     * @param stepsUsed 实际执行的步数
+     * @param finishedNaturally 是否在预算内自行结束
+     */
+    protected void onRunComplete(String userPrompt, int stepsUsed, boolean finishedNaturally) {
+        // 默认不做处理
     }
 
     /**
@@ -358,37 +543,19 @@ public abstract class BaseAgent {
         if (StrUtil.isBlank(text)) {
             return text;
         }
-        String normalized = text.replace("\r\n", "\n");
-        normalized = normalized.replace("**", "");
-        normalized = normalized.replace("```", "");
-        normalized = normalized.replaceAll("`([^`]+)`", "$1");
-        normalized = normalized.replaceAll("(?m)^\\s*>+\\s*", "");
-        normalized = normalized.replaceAll("[\\u2013\\u2014]", "-");
-        normalized = normalized.replaceAll("(?m)^(\\s*)(\\d+\\.)(\\S)", "$1$2 $3");
-        normalized = normalized.replaceAll("(?m)^\\s*[-*]\\s+", "- ");
-        normalized = normalized.replaceAll("(?<!\\n)(-\\s+\\S)", "\n$1");
-        normalized = normalized.replaceAll("(?<!\\n)(\\d+\\.\\s+\\S)", "\n$1");
-        normalized = isolateUrls(normalized);
-        normalized = normalized.replaceAll("\n{3,}", "\n\n");
-        normalized = normalized.replaceAll("[\t\f]+", " ");
-        normalized = normalized.replaceAll(" {2,}", " ");
-        normalized = normalized.replaceAll(" *\n *", "\n");
-        normalized = normalized.trim();
-        return normalized;
+        return ResponseSanitizer.PLAIN_TEXT.sanitize(text);
     }
     
     /**
-     * 发送 SSE 消息（供子类使用）
+     * 向当前轮次的事件流发送事件（供子类使用，非流式运行时忽略）
      * 
-     * @param message 要发送的消息
+     * @param type 事件类型
+     * @param data 事件内容
      */
-    protected void sendSseMessage(String message) {
-        if (currentSseEmitter != null) {
-            try {
-                currentSseEmitter.send(Objects.requireNonNull(message, "sseMessage"));
-            } catch (IOException e) {
-                log.error("Failed to send SSE message", e);
-            }
+    protected void sendEvent(AgentEventType type, String data) {
+        AgentEventStream events = currentEvents;
+        if (events != null) {
+            events.publish(type, data);
         }
     }
     
@@ -499,28 +666,5 @@ public abstract class BaseAgent {
         }
         return null;
     }
-
-    private String isolateUrls(String text) {
-        Matcher matcher = URL_PATTERN.matcher(text);
-        StringBuffer buffer = new StringBuffer();
-        while (matcher.find()) {
-            String url = matcher.group(0);
-            boolean addLeadingNewline = matcher.start() == 0 || text.charAt(matcher.start() - 1) != '\n';
-            boolean addTrailingNewline = matcher.end() == text.length() || text.charAt(matcher.end()) != '\n';
-            StringBuilder replacement = new StringBuilder();
-            if (addLeadingNewline) {
-                replacement.append('\n');
-            }
-            replacement.append(url);
-            if (addTrailingNewline) {
-                replacement.append('\n');
-            }
-            matcher.appendReplacement(buffer, Matcher.quoteReplacement(replacement.toString()));
-        }
-        matcher.appendTail(buffer);
-        return buffer.toString();
-    }
-
-    private static final Pattern URL_PATTERN = Pattern.compile("https?://[A-Za-z0-9\\-._~:/?#\\[\\]@!$&'()*+,;=%]+");
 }
 
@@ -0,0 +1,185 @@
+package com.hku.hkuaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a long-lived agent conversation under a token budget before each planning call.
+ * <p>
+ * The stages run from cheapest to most lossy and stop as soon as the conversation fits:
+ * <ol>
+ *     <li>drop repeated next-step prompts, keeping only the newest one;</li>
+ *     <li>shrink tool responses from earlier turns to a short excerpt;</li>
+ *     <li>drop the oldest messages, never leaving a tool response without its assistant call.</li>
+ * </ol>
+ * The system prompt is sent separately and the latest user turn (its prompt, tool calls and results)
+ * is never touched, so the model always sees the question it is working on.
+ */
+@Slf4j
+public class ContextCompactor {
+
+    private final int tokenBudget;
+
+    private final int oldToolResultChars;
+
+    public ContextCompactor(int tokenBudget, int oldToolResultChars) {
+        if (tokenBudget < 1) {
+            throw new IllegalArgumentException("tokenBudget must be positive");
+        }
+        this.tokenBudget = tokenBudget;
+        this.oldToolResultChars = Math.max(0, oldToolResultChars);
+    }
+
+    /**
+     * Compact the conversation for the next planning call.
+     *
+     * @param messages       current conversation, oldest first
+     * @param systemPrompt   system prompt that is sent alongside the messages, counted against the budget
+     * @param nextStepPrompt step prompt the agent appends before every planning call
+     * @return a new list that fits the budget unless the pinned latest turn alone exceeds it
+     */
+    public List<Message> compact(List<Message> messages, String systemPrompt, String nextStepPrompt) {
+        List<Message> compacted = dropRepeatedStepPrompts(messages, nextStepPrompt);
+        int fixedTokens = estimateTokens(systemPrompt);
+        int before = fixedTokens + estimateTokens(messages);
+        if (fixedTokens + estimateTokens(compacted) > tokenBudget) {
+            int pinnedFrom = latestTurnStart(compacted, nextStepPrompt);
+            for (int i = 0; i < pinnedFrom; i++) {
+                if (compacted.get(i) instanceof ToolResponseMessage toolResponseMessage) {
+                    compacted.set(i, shrink(toolResponseMessage));
+                }
+            }
+            dropOldest(compacted, pinnedFrom, fixedTokens);
+        }
+        int after = fixedTokens + estimateTokens(compacted);
+        if (after < before) {
+            log.info("Compacted agent context from ~{} to ~{} tokens ({} -> {} messages, budget {})",
+                    before, after, messages.size(), compacted.size(), tokenBudget);
+        }
+        return compacted;
+    }
+
+    private List<Message> dropRepeatedStepPrompts(List<Message> messages, String nextStepPrompt) {
+        List<Message> result = new ArrayList<>(messages.size());
+        int lastStepPrompt = -1;
+        if (StrUtil.isNotBlank(nextStepPrompt)) {
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                if (isStepPrompt(messages.get(i), nextStepPrompt)) {
+                    lastStepPrompt = i;
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (i != lastStepPrompt && isStepPrompt(message, nextStepPrompt)) {
+                continue;
+            }
+            result.add(message);
+        }
+        return result;
+    }
+
+    private void dropOldest(List<Message> messages, int pinnedFrom, int fixedTokens) {
+        int removable = pinnedFrom;
+        while (removable > 0 && fixedTokens + estimateTokens(messages) > tokenBudget) {
+            messages.remove(0);
+            removable--;
+            // A tool response is only valid right after the assistant message that requested it
+            while (removable > 0 && messages.get(0) instanceof ToolResponseMessage) {
+                messages.remove(0);
+                removable--;
+            }
+        }
+        if (fixedTokens + estimateTokens(messages) > tokenBudget) {
+            log.warn("Latest turn alone needs ~{} tokens, above the {} token budget",
+                    fixedTokens + estimateTokens(messages), tokenBudget);
+        }
+    }
+
+    /**
+     * Index of the newest real user message; everything from there on belongs to the current turn.
+     */
+    private int latestTurnStart(List<Message> messages, String nextStepPrompt) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            Message message = messages.get(i);
+            if (message instanceof UserMessage && !isStepPrompt(message, nextStepPrompt)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private ToolResponseMessage shrink(ToolResponseMessage message) {
+        boolean changed = false;
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(message.getResponses().size());
+        for (ToolResponseMessage.ToolResponse response : message.getResponses()) {
+            String data = StrUtil.nullToEmpty(response.responseData());
+            if (data.length() > oldToolResultChars) {
+                data = data.substring(0, oldToolResultChars)
+                        + "… [earlier tool output truncated, " + data.length() + " chars originally]";
+                changed = true;
+            }
+            responses.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(), data));
+        }
+        return changed ? new ToolResponseMessage(responses, message.getMetadata()) : message;
+    }
+
+    private static boolean isStepPrompt(Message message, String nextStepPrompt) {
+        return StrUtil.isNotBlank(nextStepPrompt)
+                && message instanceof UserMessage
+                && nextStepPrompt.equals(message.getText());
+    }
+
+    /**
+     * Estimate the prompt tokens of a conversation.
+     */
+    public static int estimateTokens(List<Message> messages) {
+        int total = 0;
+        for (Message message : messages) {
+            total += estimateTokens(message);
+        }
+        return total;
+    }
+
+    private static int estimateTokens(Message message) {
+        // Every message carries a few tokens of role and framing overhead
+        int tokens = 4 + estimateTokens(message.getText());
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                tokens += estimateTokens(toolCall.name()) + estimateTokens(toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                tokens += estimateTokens(response.responseData());
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Rough tokenizer-free estimate: about four Latin characters per token, one token per CJK character.
+     */
+    public static int estimateTokens(String text) {
+        if (StrUtil.isEmpty(text)) {
+            return 0;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other;
+    }
+}
@@ -1,25 +1,20 @@
 package com.hku.hkuaiagent.agent;
 
-import com.hku.hkuaiagent.advisor.MyLoggerAdvisor;
-import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
-import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
-import java.util.Objects;
 
 /**
  * HKU AI super agent with autonomous planning capabilities.
+ * <p>
+ * Compiles multi-tool requests (itineraries, reports) into one parallel tool plan and falls back
+ * to step-by-step ReAct when planning does not produce a usable plan.
  */
-@Component
-public class HkuManus extends ToolCallAgent {
+public class HkuManus extends PlanExecuteAgent {
 
-        public HkuManus(ToolCallback[] allTools, ToolCallbackProvider mcpTools, ChatModel dashscopeChatModel) {
-                super(filterRagTools(allTools), filterRagToolsFromProvider(mcpTools));
-                this.setName("hkuManus");
-        String SYSTEM_PROMPT = """
+        private static final String SYSTEM_PROMPT = """
                 You are HkuManus, a proactive HKU problem-solver who keeps conversations grounded, transparent, and reliable.
                 You always respond in English, even when the user writes in another language.
                 Use tools whenever they provide concrete value, and keep the explanation approachable.
@@ -30,8 +25,8 @@ public class HkuManus extends ToolCallAgent {
                 3. If information is missing or uncertain, call it out explicitly and suggest a realistic next step.
                 4. Keep links, file paths, and references on a single line inside parentheses.
                 """;
-        this.setSystemPrompt(SYSTEM_PROMPT);
-        String NEXT_STEP_PROMPT = """
+
+        private static final String NEXT_STEP_PROMPT = """
                 Examine the current objective and decide which tool—or combination of tools—best advances the plan.
 
                 When tools are useful:
@@ -46,14 +41,20 @@ public class HkuManus extends ToolCallAgent {
 
                 If you ever need to end the session early, call the `terminate` tool.
                 """;
-        this.setNextStepPrompt(NEXT_STEP_PROMPT);
-        // Allow up to twenty reasoning/action loops
-        this.setMaxSteps(20);
-        // Initialise chat client with logging advisor
-        ChatClient chatClient = ChatClient.builder(Objects.requireNonNull(dashscopeChatModel))
-                .defaultAdvisors(new MyLoggerAdvisor())
-                .build();
-                this.setChatClient(chatClient);
+
+        /**
+         * Create a chat session backed by a shared definition.
+         */
+        public HkuManus(AgentDefinition definition) {
+                super(definition);
+        }
+
+        /**
+         * Build the shared HkuManus definition: prompts, twenty-step limit, logging chat client and RAG-free tools.
+         */
+        public static AgentDefinition definition(ToolCallback[] allTools, ToolCallbackProvider mcpTools, ChatModel dashscopeChatModel) {
+                return AgentDefinition.of("hkuManus", SYSTEM_PROMPT, NEXT_STEP_PROMPT, 20, dashscopeChatModel,
+                                filterRagTools(allTools), filterRagToolsFromProvider(mcpTools));
         }
 
         private static ToolCallback[] filterRagTools(ToolCallback[] allTools) {
@@ -69,23 +70,8 @@ public class HkuManus extends ToolCallAgent {
                 if (provider == null) {
                         return () -> new ToolCallback[0];
                 }
-                return () -> {
-                        ToolCallback[] callbacks = provider.getToolCallbacks();
-                        if (callbacks == null || callbacks.length == 0) {
-                                return new ToolCallback[0];
-                        }
-                        java.util.List<ToolCallback> retained = new java.util.ArrayList<>();
-                        for (ToolCallback callback : callbacks) {
-                                if (allowTool(callback)) {
-                                        retained.add(callback);
-                                }
-                        }
-                        ToolCallback[] result = new ToolCallback[retained.size()];
-                        for (int i = 0; i < retained.size(); i++) {
-                                result[i] = retained.get(i);
-                        }
-                        return result;
-                };
+                // Only evaluated when the agent's tool catalog is rebuilt, not on every planning step
+                return () -> filterRagTools(provider.getToolCallbacks());
         }
 
         private static boolean allowTool(ToolCallback tool) {
@@ -0,0 +1,122 @@
+package com.hku.hkuaiagent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executes every tool call of a single planning response concurrently on virtual threads.
+ * <p>
+ * The calls in one response are independent by construction (the model issued them without seeing
+ * any of their results), so they can overlap their HTTP round-trips. Each call gets its own timeout,
+ * and responses are assembled in the order the model requested them so the resulting
+ * {@link ToolResponseMessage} lines up with the assistant's tool-call list.
+ */
+@Slf4j
+public class ParallelToolCallExecutor {
+
+    private static final ExecutorService TOOL_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Duration toolTimeout;
+
+    public ParallelToolCallExecutor(Duration toolTimeout) {
+        this.toolTimeout = Objects.requireNonNull(toolTimeout, "toolTimeout");
+    }
+
+    /**
+     * Run the tool calls requested by {@code assistantMessage} and build the follow-up conversation.
+     *
+     * @param conversation     conversation that produced the tool calls
+     * @param assistantMessage assistant message carrying the tool calls
+     * @param toolCallbacks    callbacks the agent is allowed to use
+     * @return conversation history extended with the assistant message and the ordered tool responses
+     */
+    public ToolExecutionResult execute(List<Message> conversation,
+                                       AssistantMessage assistantMessage,
+                                       List<ToolCallback> toolCallbacks) {
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        Map<String, ToolCallback> callbacksByName = indexByName(toolCallbacks);
+
+        // Resolve every callback up front so an unknown tool fails the batch before anything runs
+        List<ToolCallback> resolved = new ArrayList<>(toolCalls.size());
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            ToolCallback callback = callbacksByName.get(toolCall.name());
+            if (callback == null) {
+                throw new IllegalStateException("No ToolCallback found for tool name: " + toolCall.name());
+            }
+            resolved.add(callback);
+        }
+
+        List<Future<String>> futures = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            ToolCallback callback = resolved.get(i);
+            String arguments = toolCalls.get(i).arguments() != null ? toolCalls.get(i).arguments() : "{}";
+            futures.add(TOOL_EXECUTOR.submit(() -> callback.call(arguments)));
+        }
+
+        // All calls start together, so a shared deadline gives each of them the full timeout
+        long deadline = System.nanoTime() + toolTimeout.toNanos();
+        boolean returnDirect = true;
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            String responseData = awaitResult(toolCall, futures.get(i), deadline);
+            responses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), responseData));
+            returnDirect = returnDirect && resolved.get(i).getToolMetadata().returnDirect();
+        }
+
+        List<Message> history = new ArrayList<>(conversation);
+        history.add(assistantMessage);
+        history.add(new ToolResponseMessage(responses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(history)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    private String awaitResult(AssistantMessage.ToolCall toolCall, Future<String> future, long deadline) {
+        try {
+            long remaining = Math.max(0L, deadline - System.nanoTime());
+            String result = future.get(remaining, TimeUnit.NANOSECONDS);
+            return result != null ? result : "";
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("Tool {} timed out after {} ms", toolCall.name(), toolTimeout.toMillis());
+            return "Tool " + toolCall.name() + " timed out after " + toolTimeout.toSeconds() + " seconds without returning a result.";
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.warn("Tool {} failed: {}", toolCall.name(), cause.getMessage());
+            return "Tool " + toolCall.name() + " failed: " + cause.getMessage();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return "Tool " + toolCall.name() + " was interrupted before it finished.";
+        }
+    }
+
+    private Map<String, ToolCallback> indexByName(List<ToolCallback> toolCallbacks) {
+        Map<String, ToolCallback> callbacksByName = new HashMap<>();
+        for (ToolCallback callback : toolCallbacks) {
+            if (callback != null) {
+                callbacksByName.putIfAbsent(callback.getToolDefinition().name(), callback);
+            }
+        }
+        return callbacksByName;
+    }
+}
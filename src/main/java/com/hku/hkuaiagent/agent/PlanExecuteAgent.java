@@ -0,0 +1,218 @@
+package com.hku.hkuaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hku.hkuaiagent.agent.model.ToolPlan;
+import com.hku.hkuaiagent.sse.AgentEventType;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Plan-and-execute agent: one planning call compiles the whole tool workflow into a dependency graph,
+ * the graph runs with maximum parallelism, and the regular ReAct loop then writes the answer.
+ * <p>
+ * For itinerary and report requests this replaces one LLM round-trip per tool batch with a single
+ * planning call plus the synthesis call. When the model returns no usable plan (invalid JSON, unknown
+ * tool, cycle…) or decides no tool is needed, the agent simply continues with the step-by-step loop of
+ * {@link ToolCallAgent}, which also lets it recover from individual failed tool calls.
+ * <p>
+ * The planning call only pays off for multi-tool workflows, so it is made only when the request asks for a
+ * report or itinerary or touches several intents (see {@link #shouldPlanAhead(String)}). Everything else
+ * goes straight to the ReAct loop without the extra round-trip.
+ */
+@EqualsAndHashCode(callSuper = true)
+@Data
+@Slf4j
+public class PlanExecuteAgent extends ToolCallAgent {
+
+    private static final ObjectMapper PLAN_MAPPER = new ObjectMapper();
+
+    private static final String PLANNER_PROMPT = """
+            You are the planning module of a tool-using assistant. Decide, in one pass, every tool call needed to answer the user's latest request.
+            Reply with JSON only, no prose and no Markdown, in exactly this shape:
+            {"steps":[{"id":"s1","tool":"<tool name>","arguments":{...},"dependsOn":[]}]}
+
+            Rules:
+            1. Use only the tools listed below and follow their input schemas.
+            2. Steps without dependencies run in parallel, so list only the dependencies that are truly required.
+            3. To pass a previous result into a string argument, write {{<step id>}} inside that string and add the step id to dependsOn.
+            4. Do not include a final answer step; the answer is written after all tools have run.
+            5. If no tool is needed, reply with {"steps":[]}.
+            """;
+
+    // Try the single-round-trip plan before falling back to step-by-step ReAct
+    private boolean planExecutionEnabled = true;
+
+    // Plans larger than this are treated as unusable and handled step by step
+    private int maxPlanSteps = 8;
+
+    // Whether the current run starts with the planning call, decided once per run from the user prompt
+    private boolean planningThisRun;
+
+    public PlanExecuteAgent(ToolCallback[] availableTools, ToolCallbackProvider mcpToolProvider) {
+        super(availableTools, mcpToolProvider);
+    }
+
+    public PlanExecuteAgent(AgentDefinition definition) {
+        super(definition);
+    }
+
+    /**
+     * Run the compiled plan on the first step of a run and hand over to the ReAct loop afterwards.
+     *
+     * @return status string describing the step outcome
+     */
+    @Override
+    public String step() {
+        if (planningThisRun && getCurrentStep() == 1) {
+            try {
+                String outcome = planAndExecute();
+                if (outcome != null) {
+                    return outcome;
+                }
+            } catch (Exception e) {
+                log.warn("{} could not plan ahead, falling back to step-by-step ReAct: {}", getName(), e.getMessage());
+            }
+        }
+        return super.step();
+    }
+
+    @Override
+    protected int planStepBudget(String userPrompt) {
+        this.planningThisRun = planExecutionEnabled && shouldPlanAhead(userPrompt);
+        return super.planStepBudget(userPrompt);
+    }
+
+    /**
+     * Whether a request is likely to need several tool calls: a report, itinerary or plan, or a mix of
+     * intents such as route and weather.
+     */
+    static boolean shouldPlanAhead(String userPrompt) {
+        List<String> intents = StepBudgetLearner.intents(userPrompt);
+        return intents.contains("report") || intents.size() > 1;
+    }
+
+    /**
+     * Ask for a plan, execute it and record the calls in the conversation.
+     *
+     * @return summary of the executed plan, or null when there was nothing to execute
+     */
+    private String planAndExecute() {
+        List<ToolCallback> toolCallbacks = resolveToolCallbacks().stream()
+                .filter(callback -> callback != null && !"doTerminate".equals(callback.getToolDefinition().name()))
+                .toList();
+        if (toolCallbacks.isEmpty()) {
+            return null;
+        }
+        String planText = getChatClient().prompt()
+                .system(PLANNER_PROMPT)
+                .user(Objects.requireNonNull(buildPlanningRequest()))
+                .call()
+                .content();
+        ToolPlan plan = parsePlan(planText);
+        if (plan.isEmpty()) {
+            log.info("{} planner chose not to call any tool", getName());
+            return null;
+        }
+        if (plan.steps().size() > maxPlanSteps) {
+            throw new IllegalArgumentException("Plan has " + plan.steps().size() + " steps, limit is " + maxPlanSteps);
+        }
+        String toolNames = plan.steps().stream()
+                .map(step -> getToolDisplayName(step.tool()))
+                .distinct()
+                .collect(Collectors.joining(", "));
+        sendEvent(AgentEventType.TOOL_CALL, "Plan: running " + plan.steps().size() + " tool call(s) using " + toolNames);
+        log.info("{} executing plan with {} step(s)", getName(), plan.steps().size());
+
+        ToolExecutionResult result = new ToolPlanExecutor(getToolCallTimeout())
+                .execute(getMessageList(), plan, toolCallbacks);
+        setMessageList(result.conversationHistory());
+        ToolResponseMessage responses = (ToolResponseMessage) result.conversationHistory()
+                .get(result.conversationHistory().size() - 1);
+        return responses.getResponses().stream()
+                .map(response -> "Tool " + response.name() + " returned: " + response.responseData())
+                .collect(Collectors.joining("\n"));
+    }
+
+    private String buildPlanningRequest() {
+        StringBuilder request = new StringBuilder("Available tools:\n")
+                .append(getToolCatalog().describe(name -> !"doTerminate".equals(name)));
+        List<String> recent = new ArrayList<>();
+        String nextStepPrompt = getNextStepPrompt();
+        for (Message message : getMessageList()) {
+            String text = message.getText();
+            if (StrUtil.isBlank(text) || text.equals(nextStepPrompt)) {
+                continue;
+            }
+            if (message instanceof UserMessage) {
+                recent.add("User: " + StrUtil.maxLength(text.trim(), 300));
+            } else if (message instanceof AssistantMessage) {
+                recent.add("Assistant: " + StrUtil.maxLength(text.trim(), 300));
+            }
+        }
+        // The last entry is the request being planned; a few earlier ones resolve references like "there" or "tomorrow"
+        List<String> window = recent.subList(Math.max(0, recent.size() - 6), recent.size());
+        request.append("\nConversation (latest request last):\n").append(String.join("\n", window));
+        return request.toString();
+    }
+
+    /**
+     * Parse the planner reply, tolerating Markdown code fences around the JSON.
+     *
+     * @param planText raw model output
+     * @return parsed plan, empty when the model asked for no tools
+     * @throws IllegalArgumentException when the reply is not a plan
+     */
+    static ToolPlan parsePlan(String planText) {
+        if (StrUtil.isBlank(planText)) {
+            throw new IllegalArgumentException("Planner returned an empty reply");
+        }
+        String json = planText.trim();
+        int start = json.indexOf('{');
+        int end = json.lastIndexOf('}');
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Planner reply is not JSON");
+        }
+        JsonNode root;
+        try {
+            root = PLAN_MAPPER.readTree(json.substring(start, end + 1));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Planner reply is not valid JSON: " + e.getMessage(), e);
+        }
+        JsonNode stepsNode = root.path("steps");
+        if (!stepsNode.isArray()) {
+            throw new IllegalArgumentException("Planner reply has no steps array");
+        }
+        List<ToolPlan.Step> steps = new ArrayList<>();
+        int index = 0;
+        for (JsonNode stepNode : stepsNode) {
+            index++;
+            String id = stepNode.path("id").asText("s" + index);
+            String tool = stepNode.path("tool").asText(null);
+            if (StrUtil.isBlank(tool)) {
+                throw new IllegalArgumentException("Plan step " + id + " has no tool");
+            }
+            JsonNode argumentsNode = stepNode.path("arguments");
+            String arguments = argumentsNode.isTextual() ? argumentsNode.asText()
+                    : argumentsNode.isMissingNode() || argumentsNode.isNull() ? "{}" : argumentsNode.toString();
+            List<String> dependsOn = new ArrayList<>();
+            stepNode.path("dependsOn").forEach(dependency -> dependsOn.add(dependency.asText()));
+            steps.add(new ToolPlan.Step(id, tool, arguments, dependsOn));
+        }
+        return new ToolPlan(steps);
+    }
+}
@@ -0,0 +1,117 @@
+package com.hku.hkuaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learns how many steps each kind of request actually needs, shared by all agents of the application.
+ * <p>
+ * Requests are grouped by agent and a coarse keyword-based intent. Once an intent has enough completed
+ * runs, its budget becomes the 90th percentile of the observed step counts plus one step of headroom,
+ * never exceeding the agent's configured {@code maxSteps}. Until then the configured maximum applies.
+ * Runs cut off by a learned budget count as needing one step more, so the budget can grow back.
+ */
+public class StepBudgetLearner {
+
+    private static final int WINDOW = 50;
+
+    private static final Map<String, List<String>> INTENT_KEYWORDS = new LinkedHashMap<>();
+
+    static {
+        INTENT_KEYWORDS.put("report", List.of("report", "pdf", "itinerary", "plan my", "行程", "报告", "计划"));
+        INTENT_KEYWORDS.put("route", List.of("route", "direction", "get to", "walk", "bus", "mtr", "how far", "路线", "怎么去"));
+        INTENT_KEYWORDS.put("weather", List.of("weather", "temperature", "rain", "forecast", "天气"));
+        INTENT_KEYWORDS.put("course", List.of("course", "exam", "credit", "lecture", "课程", "考试"));
+    }
+
+    private final int minSamples;
+
+    private final int minBudget;
+
+    private final Map<String, Deque<Integer>> history = new ConcurrentHashMap<>();
+
+    public StepBudgetLearner(int minSamples, int minBudget) {
+        this.minSamples = Math.max(1, minSamples);
+        this.minBudget = Math.max(1, minBudget);
+    }
+
+    /**
+     * Coarse intent of a user prompt, used as the learning key.
+     */
+    public static String classifyIntent(String userPrompt) {
+        List<String> intents = intents(userPrompt);
+        return intents.isEmpty() ? "general" : intents.get(0);
+    }
+
+    /**
+     * Every intent whose keywords occur in the prompt, most specific first; empty for a general request.
+     */
+    static List<String> intents(String userPrompt) {
+        String text = StrUtil.nullToEmpty(userPrompt).toLowerCase(Locale.ROOT);
+        List<String> intents = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : INTENT_KEYWORDS.entrySet()) {
+            if (entry.getValue().stream().anyMatch(text::contains)) {
+                intents.add(entry.getKey());
+            }
+        }
+        return intents;
+    }
+
+    /**
+     * Step budget for the next run of this agent on this prompt.
+     */
+    public int budgetFor(String agentName, String userPrompt, int maxSteps) {
+        Deque<Integer> samples = history.get(key(agentName, userPrompt));
+        if (samples == null) {
+            return maxSteps;
+        }
+        int[] sorted;
+        synchronized (samples) {
+            if (samples.size() < minSamples) {
+                return maxSteps;
+            }
+            sorted = samples.stream().mapToInt(Integer::intValue).toArray();
+        }
+        Arrays.sort(sorted);
+        int p90 = sorted[(int) Math.ceil(0.9 * sorted.length) - 1];
+        return Math.min(maxSteps, Math.max(minBudget, p90 + 1));
+    }
+
+    /**
+     * Record a run that finished on its own (not cut off by the budget or the loop governor).
+     */
+    public void recordCompletedRun(String agentName, String userPrompt, int stepsUsed) {
+        record(agentName, userPrompt, stepsUsed);
+    }
+
+    /**
+     * Record a run that used up its whole step budget without finishing. It needed at least one step more than it
+     * was given; without this sample only runs that fit would be seen and a budget could never grow again.
+     */
+    public void recordTruncatedRun(String agentName, String userPrompt, int budget) {
+        record(agentName, userPrompt, budget + 1);
+    }
+
+    private void record(String agentName, String userPrompt, int steps) {
+        Deque<Integer> samples = history.computeIfAbsent(key(agentName, userPrompt), k -> new ArrayDeque<>());
+        synchronized (samples) {
+            samples.addLast(steps);
+            if (samples.size() > WINDOW) {
+                samples.removeFirst();
+            }
+        }
+    }
+
+    private static String key(String agentName, String userPrompt) {
+        return agentName + ":" + classifyIntent(userPrompt);
+    }
+}
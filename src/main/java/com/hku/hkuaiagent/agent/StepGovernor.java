@@ -0,0 +1,116 @@
+package com.hku.hkuaiagent.agent;
+
+import com.hku.hkuaiagent.tools.ToolResultCache;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Watches the tool calls of one agent run and decides when further steps are wasted.
+ * <p>
+ * Three patterns end the loop early:
+ * <ul>
+ *     <li>the same batch of tool calls (same tools, same canonical arguments) repeated back to back;</li>
+ *     <li>a short cycle such as A, B, A, B or A, B, C, A, B, C;</li>
+ *     <li>consecutive steps whose tool responses were all seen before, i.e. no new information.</li>
+ * </ul>
+ * Instances are not thread-safe; each agent owns one and resets it at the start of every run.
+ */
+public class StepGovernor {
+
+    private final int repeatLimit;
+
+    private final int staleLimit;
+
+    private final List<String> signatures = new ArrayList<>();
+
+    private final Set<String> seenResponses = new HashSet<>();
+
+    private int staleSteps;
+
+    /**
+     * @param repeatLimit identical consecutive batches that trigger a stop (at least 2)
+     * @param staleLimit  consecutive steps without new information that trigger a stop (at least 1)
+     */
+    public StepGovernor(int repeatLimit, int staleLimit) {
+        this.repeatLimit = Math.max(2, repeatLimit);
+        this.staleLimit = Math.max(1, staleLimit);
+    }
+
+    public void reset() {
+        signatures.clear();
+        seenResponses.clear();
+        staleSteps = 0;
+    }
+
+    /**
+     * Record one executed batch of tool calls.
+     *
+     * @param toolCalls calls the model requested in this step
+     * @param responses responses those calls produced
+     * @return why the loop should stop now, or null to keep going
+     */
+    public String record(List<AssistantMessage.ToolCall> toolCalls, List<ToolResponseMessage.ToolResponse> responses) {
+        signatures.add(signature(toolCalls));
+
+        boolean learnedSomething = false;
+        for (ToolResponseMessage.ToolResponse response : responses) {
+            String data = response.responseData() != null ? response.responseData().strip() : "";
+            learnedSomething |= seenResponses.add(response.name() + '\u0000' + data);
+        }
+        staleSteps = learnedSomething ? 0 : staleSteps + 1;
+
+        int repeats = trailingRepeats();
+        if (repeats >= repeatLimit) {
+            return "the same tool call was repeated " + repeats + " times in a row";
+        }
+        for (int period = 2; period <= 3; period++) {
+            if (endsWithCycle(period)) {
+                return "the agent kept cycling between the same " + period + " tool calls";
+            }
+        }
+        if (staleSteps >= staleLimit) {
+            return "the last " + staleSteps + " step(s) returned no new information";
+        }
+        return null;
+    }
+
+    private int trailingRepeats() {
+        String last = signatures.get(signatures.size() - 1);
+        int repeats = 0;
+        for (int i = signatures.size() - 1; i >= 0 && signatures.get(i).equals(last); i--) {
+            repeats++;
+        }
+        return repeats;
+    }
+
+    private boolean endsWithCycle(int period) {
+        int size = signatures.size();
+        if (size < 2 * period) {
+            return false;
+        }
+        Set<String> distinct = new HashSet<>();
+        for (int i = 0; i < period; i++) {
+            String current = signatures.get(size - 1 - i);
+            if (!current.equals(signatures.get(size - 1 - i - period))) {
+                return false;
+            }
+            distinct.add(current);
+        }
+        // A run of one repeated call is reported as a repeat, not a cycle
+        return distinct.size() == period;
+    }
+
+    private static String signature(List<AssistantMessage.ToolCall> toolCalls) {
+        List<String> parts = new ArrayList<>(toolCalls.size());
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            parts.add(toolCall.name() + ToolResultCache.canonicalArguments(toolCall.arguments()));
+        }
+        parts.sort(null);
+        return String.join("|", parts);
+    }
+}
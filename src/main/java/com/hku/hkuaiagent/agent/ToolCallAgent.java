@@ -2,25 +2,37 @@ package com.hku.hkuaiagent.agent;
 
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
-import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
 import com.hku.hkuaiagent.agent.model.AgentState;
+import com.hku.hkuaiagent.agent.model.ToolExecutionMode;
+import com.hku.hkuaiagent.sse.AgentEventType;
+import com.hku.hkuaiagent.tools.ToolCatalog;
+import com.hku.hkuaiagent.util.ResponseSanitizer;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
 import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
+import reactor.core.publisher.Sinks;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -31,11 +43,8 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ToolCallAgent extends ReActAgent {
 
-    // Registered tools exposed to the agent (local + MCP)
-    private final ToolCallback[] availableTools;
-
-    // Provider that exposes dynamically discovered MCP tools
-    private final ToolCallbackProvider mcpToolProvider;
+    // Local and MCP tools resolved once and reused until the MCP tool set changes (shared by sessions of one definition)
+    private final ToolCatalog toolCatalog;
 
     // Last tool-call planning response returned by the model
     private ChatResponse toolCallChatResponse;
@@ -43,18 +52,63 @@ public class ToolCallAgent extends ReActAgent {
     // Helper responsible for executing tool calls outside the model
     private final ToolCallingManager toolCallingManager;
 
-    // Disable the built-in Spring AI tool execution so we can manage context manually
+    // Template options with built-in tool execution disabled; copied per request because Spring AI mutates them
     private final ChatOptions chatOptions;
 
+    // Run the independent tool calls of one planning response concurrently by default
+    private ToolExecutionMode toolExecutionMode = ToolExecutionMode.PARALLEL;
+
+    // Upper bound for a single tool call when running in parallel mode
+    private Duration toolCallTimeout = Duration.ofSeconds(60);
+
+    // Forward answer tokens to the SSE client while the model is still generating
+    private boolean tokenStreamingEnabled = true;
+
+    // Upper bound for one streamed planning response
+    private Duration planningStreamTimeout = Duration.ofMinutes(2);
+
+    // Keeps long-lived sessions under the prompt budget before every planning call (hku.agent.context.* when built by AiController)
+    private ContextCompactor contextCompactor = new ContextCompactor(24_000, 400);
+
+    // Stops the loop early on repeated, cyclic or uninformative tool calls
+    private StepGovernor stepGovernor = new StepGovernor(2, 2);
+
+    // Shared per-intent step budgets learned from earlier runs (optional)
+    private StepBudgetLearner stepBudgetLearner;
+
+    // Why the governor ended the current run early, null while the run is progressing normally
+    private String earlyStopReason;
+
+    // Step budget of the current run, as returned by planStepBudget
+    private int stepBudget;
+
+    private static final String SYNTHESIS_PROMPT = """
+            Stop calling tools: further tool calls would not add new information (%s).
+            Using only the tool results already in this conversation, answer the user's latest request now.
+            Be explicit about anything that is still unknown.
+            """;
+
     public ToolCallAgent(ToolCallback[] availableTools, ToolCallbackProvider mcpToolProvider) {
         super();
-        this.availableTools = availableTools;
-        this.mcpToolProvider = mcpToolProvider;
+        this.toolCatalog = new ToolCatalog(availableTools, mcpToolProvider);
         this.toolCallingManager = ToolCallingManager.builder().build();
         // Disable the built-in Spring AI tool execution so we can manage context manually
-        this.chatOptions = DashScopeChatOptions.builder()
-                .withInternalToolExecutionEnabled(false)
-                .build();
+        this.chatOptions = AgentDefinition.defaultChatOptions();
+    }
+
+    /**
+     * Create a lightweight session that reuses the prompts, chat client, tools and options of a shared definition.
+     */
+    public ToolCallAgent(AgentDefinition definition) {
+        super();
+        this.toolCatalog = definition.toolCatalog();
+        this.toolCallingManager = definition.toolCallingManager();
+        this.chatOptions = definition.chatOptions();
+        setName(definition.name());
+        setSystemPrompt(definition.systemPrompt());
+        setNextStepPrompt(definition.nextStepPrompt());
+        setMaxSteps(definition.maxSteps());
+        setChatClient(definition.chatClient());
     }
 
 
@@ -71,21 +125,25 @@ public class ToolCallAgent extends ReActAgent {
             UserMessage userMessage = new UserMessage(Objects.requireNonNull(nextStepPrompt));
             getMessageList().add(userMessage);
         }
+        // Trim stale step prompts and old tool output so the prompt stays within budget
+        if (contextCompactor != null) {
+            setMessageList(contextCompactor.compact(getMessageList(), getSystemPrompt(), nextStepPrompt));
+        }
         // Ask the LLM to decide which tools to call, if any
         List<Message> messageList = getMessageList();
-        Prompt prompt = new Prompt(messageList, this.chatOptions);
+        Prompt prompt = new Prompt(messageList, this.chatOptions.copy());
         try {
             var promptSpec = getChatClient().prompt(prompt);
             String systemPrompt = getSystemPrompt();
             if (StrUtil.isNotBlank(systemPrompt)) {
                 promptSpec = promptSpec.system(Objects.requireNonNull(systemPrompt));
             }
-            ChatResponse chatResponse = promptSpec
-                    .toolCallbacks(Objects.requireNonNull(availableTools))
-                    .toolCallbacks(mcpToolProvider)
-                    //.tools(availableTools)
-                    .call()
-                    .chatResponse();
+            promptSpec = promptSpec.toolCallbacks(toolCatalog.getToolCallbackList());
+            // Stream tokens to the client as drafts when an event stream is attached; otherwise block for the full reply
+            boolean streaming = tokenStreamingEnabled && getCurrentEvents() != null;
+            ChatResponse chatResponse = streaming
+                    ? streamPlanningResponse(promptSpec, delta -> sendEvent(AgentEventType.ANSWER_DRAFT, delta))
+                    : promptSpec.call().chatResponse();
             if (chatResponse == null || chatResponse.getResult() == null) {
                 log.warn(getName() + " returned an empty response while planning; finishing without tool calls");
                 setState(AgentState.FINISHED);
@@ -106,7 +164,8 @@ public class ToolCallAgent extends ReActAgent {
             
             // If no tool invocations are required, finish immediately
             if (toolCallList.isEmpty()) {
-                // Persist the assistant message when no tools run so the conversation is complete
+                // Persist the assistant message when no tools run so the conversation is complete;
+                // the streamed drafts are confirmed by the final answer BaseAgent sends afterwards
                 getMessageList().add(assistantMessage);
                 // Mark the agent as finished because there is nothing else to execute
                 setState(AgentState.FINISHED);
@@ -117,7 +176,7 @@ public class ToolCallAgent extends ReActAgent {
                     String toolNames = toolCallList.stream()
                         .map(toolCall -> getToolDisplayName(toolCall.name()))
                         .collect(Collectors.joining(", "));
-                    sendSseMessage("[TOOL_CALL]Step " + getCurrentStep() + ": using " + toolNames);
+                    sendEvent(AgentEventType.TOOL_CALL, "Step " + getCurrentStep() + ": using " + toolNames);
                     
                     // Send the detailed payload only to logs to avoid noisy UI output
                     String toolCallInfo = toolCallList.stream()
@@ -136,13 +195,78 @@ public class ToolCallAgent extends ReActAgent {
         }
     }
 
+    /**
+     * Run the planning request through the streaming API.
+     * <p>
+     * Text deltas are sanitised as plain text and handed to {@code textSink} as soon as they arrive, as long as
+     * the model has not started emitting tool calls. Tool-call deltas are merged by id so {@link #act()} sees
+     * the same shape as a blocking response.
+     *
+     * @param promptSpec fully configured request (messages, system prompt, tools)
+     * @param textSink   receives the sanitised text deltas
+     * @return aggregated response, or null when the model produced nothing
+     */
+    private ChatResponse streamPlanningResponse(ChatClient.ChatClientRequestSpec promptSpec, Consumer<String> textSink) {
+        StringBuilder text = new StringBuilder();
+        LinkedHashMap<String, AssistantMessage.ToolCall> toolCalls = new LinkedHashMap<>();
+        // The sanitiser is stateful: a marker split over two deltas is held back until it can be decided
+        Sinks.Many<String> deltas = Sinks.many().unicast().onBackpressureBuffer();
+        deltas.asFlux().transform(ResponseSanitizer.PLAIN_TEXT.streaming()).subscribe(textSink);
+        try {
+            promptSpec.stream()
+                    .chatResponse()
+                    .doOnNext(chunk -> collectStreamChunk(chunk, text, toolCalls, deltas))
+                    .blockLast(planningStreamTimeout);
+        } finally {
+            deltas.tryEmitComplete();
+        }
+        if (text.isEmpty() && toolCalls.isEmpty()) {
+            return null;
+        }
+        AssistantMessage aggregated = new AssistantMessage(text.toString(), Map.of(), new ArrayList<>(toolCalls.values()));
+        return new ChatResponse(List.of(new Generation(aggregated)));
+    }
+
+    private void collectStreamChunk(ChatResponse chunk,
+                                    StringBuilder text,
+                                    LinkedHashMap<String, AssistantMessage.ToolCall> toolCalls,
+                                    Sinks.Many<String> deltas) {
+        if (chunk == null) {
+            return;
+        }
+        for (Generation generation : chunk.getResults()) {
+            AssistantMessage output = generation.getOutput();
+            if (output == null) {
+                continue;
+            }
+            String delta = output.getText();
+            if (StrUtil.isNotEmpty(delta)) {
+                text.append(delta);
+                // Once the model switches to tool calls, the text is planning commentary rather than the answer
+                if (toolCalls.isEmpty()) {
+                    deltas.tryEmitNext(delta);
+                }
+            }
+            for (AssistantMessage.ToolCall toolCall : output.getToolCalls()) {
+                // Continuation fragments carry no id and belong to the call that is being streamed
+                String key = StrUtil.isNotBlank(toolCall.id()) ? toolCall.id()
+                        : toolCalls.isEmpty() ? "call-0" : toolCalls.lastEntry().getKey();
+                toolCalls.merge(key, toolCall, (existing, fragment) -> new AssistantMessage.ToolCall(
+                        existing.id(),
+                        StrUtil.isNotBlank(existing.type()) ? existing.type() : fragment.type(),
+                        StrUtil.isNotBlank(existing.name()) ? existing.name() : fragment.name(),
+                        StrUtil.nullToEmpty(existing.arguments()) + StrUtil.nullToEmpty(fragment.arguments())));
+            }
+        }
+    }
+
     /**
      * Translate a tool's internal identifier into a user-facing label.
      *
      * @param toolName Internal tool identifier returned by the planner
      * @return User-friendly label used in logs and UI messages
      */
-    private String getToolDisplayName(String toolName) {
+    protected String getToolDisplayName(String toolName) {
         // Map tool identifiers to user-friendly English labels
         return switch (toolName) {
             case "maps_text_search" -> "Map text search";
@@ -183,8 +307,7 @@ public class ToolCallAgent extends ReActAgent {
             return "No tool invocations required";
         }
         // Execute the planned tool calls
-        Prompt prompt = new Prompt(getMessageList(), this.chatOptions);
-        ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt, Objects.requireNonNull(toolCallChatResponse));
+        ToolExecutionResult toolExecutionResult = executeToolCalls();
         // Persist the updated conversation that now contains assistant + tool responses
         setMessageList(toolExecutionResult.conversationHistory());
         ToolResponseMessage toolResponseMessage = (ToolResponseMessage) CollUtil.getLast(toolExecutionResult.conversationHistory());
@@ -199,10 +322,119 @@ public class ToolCallAgent extends ReActAgent {
             .map(response -> "Tool " + response.name() + " returned: " + response.responseData())
                 .collect(Collectors.joining("\n"));
         log.info(results);
+
+        // Cut the loop short when the last steps are going in circles and answer from what we have
+        if (!terminateToolCalled && stepGovernor != null) {
+            String stopReason = stepGovernor.record(toolCallChatResponse.getResult().getOutput().getToolCalls(),
+                    toolResponseMessage.getResponses());
+            if (stopReason != null) {
+                log.warn(getName() + " stopping early at step " + getCurrentStep() + ": " + stopReason);
+                this.earlyStopReason = stopReason;
+                synthesizeFinalAnswer(stopReason);
+                setState(AgentState.FINISHED);
+            }
+        }
         
         // Note: we rely on NEXT_STEP_PROMPT to ask the model for a natural-language answer on the next think() call
         
         return results;
     }
+
+    /**
+     * Ask the model for the final answer without offering any tools.
+     *
+     * @param stopReason why the loop was ended early, shown to the model
+     */
+    private void synthesizeFinalAnswer(String stopReason) {
+        getMessageList().add(new UserMessage(SYNTHESIS_PROMPT.formatted(stopReason)));
+        try {
+            var promptSpec = getChatClient().prompt(new Prompt(getMessageList(), this.chatOptions.copy()));
+            String systemPrompt = getSystemPrompt();
+            if (StrUtil.isNotBlank(systemPrompt)) {
+                promptSpec = promptSpec.system(Objects.requireNonNull(systemPrompt));
+            }
+            // No tools are offered here, so the streamed text is the answer itself
+            boolean streaming = tokenStreamingEnabled && getCurrentEvents() != null;
+            ChatResponse chatResponse = streaming
+                    ? streamPlanningResponse(promptSpec, this::sendAnswerDelta)
+                    : promptSpec.call().chatResponse();
+            if (chatResponse == null || chatResponse.getResult() == null) {
+                return;
+            }
+            String answer = chatResponse.getResult().getOutput().getText();
+            if (StrUtil.isNotBlank(answer)) {
+                getMessageList().add(new AssistantMessage(answer));
+                if (streaming) {
+                    markFinalAnswerStreamed();
+                }
+            }
+        } catch (Exception e) {
+            // BaseAgent falls back to the tool-result summary when no answer was produced
+            log.error(getName() + " failed to synthesise the final answer: " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected int planStepBudget(String userPrompt) {
+        this.earlyStopReason = null;
+        if (stepGovernor != null) {
+            stepGovernor.reset();
+        }
+        if (stepBudgetLearner == null) {
+            this.stepBudget = getMaxSteps();
+            return stepBudget;
+        }
+        this.stepBudget = stepBudgetLearner.budgetFor(getName(), userPrompt, getMaxSteps());
+        if (stepBudget < getMaxSteps()) {
+            log.info(getName() + " using learned step budget " + stepBudget + " for intent "
+                    + StepBudgetLearner.classifyIntent(userPrompt));
+        }
+        return stepBudget;
+    }
+
+    @Override
+    protected void onRunComplete(String userPrompt, int stepsUsed, boolean finishedNaturally) {
+        // Runs stopped by the governor say nothing about how many steps the intent needs
+        if (stepBudgetLearner == null || earlyStopReason != null) {
+            return;
+        }
+        if (finishedNaturally) {
+            stepBudgetLearner.recordCompletedRun(getName(), userPrompt, stepsUsed);
+        } else if (stepsUsed >= stepBudget) {
+            stepBudgetLearner.recordTruncatedRun(getName(), userPrompt, stepBudget);
+        }
+    }
+
+    /**
+     * Execute the planned tool calls, concurrently when several independent calls were requested.
+     *
+     * @return conversation history extended with the assistant message and the tool responses
+     */
+    private ToolExecutionResult executeToolCalls() {
+        AssistantMessage assistantMessage = toolCallChatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(output -> output != null && output.hasToolCalls())
+                .findFirst()
+                .orElse(null);
+        if (toolExecutionMode == ToolExecutionMode.PARALLEL
+                && assistantMessage != null
+                && assistantMessage.getToolCalls().size() > 1) {
+            log.info(getName() + " running " + assistantMessage.getToolCalls().size() + " tool calls in parallel");
+            return new ParallelToolCallExecutor(toolCallTimeout)
+                    .execute(getMessageList(), assistantMessage, resolveToolCallbacks());
+        }
+        // The planning request worked on a copy of the options, so hand the tools to the manager explicitly
+        ToolCallingChatOptions options = this.chatOptions.copy();
+        options.setToolCallbacks(resolveToolCallbacks());
+        Prompt prompt = new Prompt(getMessageList(), options);
+        return toolCallingManager.executeToolCalls(prompt, Objects.requireNonNull(toolCallChatResponse));
+    }
+
+    /**
+     * The local tools and the MCP tools currently exposed to the planner, served from the tool catalog.
+     */
+    protected List<ToolCallback> resolveToolCallbacks() {
+        return toolCatalog.getToolCallbackList();
+    }
 }
 
@@ -0,0 +1,195 @@
+package com.hku.hkuaiagent.agent;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hku.hkuaiagent.agent.model.ToolPlan;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a {@link ToolPlan} with maximum parallelism on virtual threads.
+ * <p>
+ * Every step starts as soon as its dependencies have finished, so independent branches overlap.
+ * A failed or timed-out step produces an explanatory response instead of failing the plan, and
+ * steps that depend on it still run with that message as input. Structural problems (unknown tool,
+ * unknown dependency, cycle) are rejected up front with {@link IllegalArgumentException} so the
+ * caller can fall back to the step-by-step loop.
+ */
+@Slf4j
+public class ToolPlanExecutor {
+
+    private static final ExecutorService PLAN_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // Longest dependency output substituted into a later step's arguments
+    private static final int MAX_SUBSTITUTED_CHARS = 2000;
+
+    private final Duration stepTimeout;
+
+    public ToolPlanExecutor(Duration stepTimeout) {
+        this.stepTimeout = Objects.requireNonNull(stepTimeout, "stepTimeout");
+    }
+
+    /**
+     * Validate and run the plan, then record it as one assistant tool-call message plus its responses.
+     *
+     * @param conversation  conversation the plan was made for
+     * @param plan          plan returned by the model
+     * @param toolCallbacks callbacks the plan may use
+     * @return conversation history extended with the planned calls and their responses, in plan order
+     * @throws IllegalArgumentException when the plan references unknown tools or steps, or contains a cycle
+     */
+    public ToolExecutionResult execute(List<Message> conversation, ToolPlan plan, List<ToolCallback> toolCallbacks) {
+        Map<String, ToolCallback> callbacksByName = new HashMap<>();
+        for (ToolCallback callback : toolCallbacks) {
+            if (callback != null) {
+                callbacksByName.putIfAbsent(callback.getToolDefinition().name(), callback);
+            }
+        }
+        List<ToolPlan.Step> order = topologicalOrder(plan, callbacksByName);
+
+        // Written by this thread while earlier steps may already be reading their dependencies
+        Map<String, CompletableFuture<String>> outputs = new ConcurrentHashMap<>();
+        Map<String, String> resolvedArguments = new ConcurrentHashMap<>();
+        for (ToolPlan.Step step : order) {
+            CompletableFuture<?>[] dependencies = step.dependsOn().stream()
+                    .map(outputs::get)
+                    .toArray(CompletableFuture[]::new);
+            ToolCallback callback = callbacksByName.get(step.tool());
+            CompletableFuture<String> output = CompletableFuture.allOf(dependencies)
+                    .thenComposeAsync(ignored -> {
+                        String arguments = substitute(step, outputs);
+                        resolvedArguments.put(step.id(), arguments);
+                        return CompletableFuture.supplyAsync(() -> callback.call(arguments), PLAN_EXECUTOR)
+                                .orTimeout(stepTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                    }, PLAN_EXECUTOR)
+                    .exceptionally(e -> failureMessage(step, e));
+            outputs.put(step.id(), output);
+        }
+        CompletableFuture.allOf(outputs.values().toArray(CompletableFuture[]::new)).join();
+
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(plan.steps().size());
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(plan.steps().size());
+        for (ToolPlan.Step step : plan.steps()) {
+            toolCalls.add(new AssistantMessage.ToolCall(step.id(), "function", step.tool(),
+                    resolvedArguments.getOrDefault(step.id(), Objects.requireNonNullElse(step.arguments(), "{}"))));
+            responses.add(new ToolResponseMessage.ToolResponse(step.id(), step.tool(), outputs.get(step.id()).join()));
+        }
+        List<Message> history = new ArrayList<>(conversation);
+        history.add(new AssistantMessage("", Map.of(), toolCalls));
+        history.add(new ToolResponseMessage(responses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(history)
+                .returnDirect(false)
+                .build();
+    }
+
+    /**
+     * Kahn's algorithm; also checks ids, tools and dependencies.
+     */
+    private List<ToolPlan.Step> topologicalOrder(ToolPlan plan, Map<String, ToolCallback> callbacksByName) {
+        Map<String, ToolPlan.Step> stepsById = new LinkedHashMap<>();
+        for (ToolPlan.Step step : plan.steps()) {
+            if (step.id() == null || stepsById.putIfAbsent(step.id(), step) != null) {
+                throw new IllegalArgumentException("Plan step ids must be present and unique: " + step.id());
+            }
+            if (!callbacksByName.containsKey(step.tool())) {
+                throw new IllegalArgumentException("Plan uses unknown tool: " + step.tool());
+            }
+        }
+        Map<String, Integer> pending = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        for (ToolPlan.Step step : plan.steps()) {
+            Set<String> dependencies = new HashSet<>(step.dependsOn());
+            for (String dependency : dependencies) {
+                if (!stepsById.containsKey(dependency)) {
+                    throw new IllegalArgumentException("Step " + step.id() + " depends on unknown step " + dependency);
+                }
+                dependents.computeIfAbsent(dependency, key -> new ArrayList<>()).add(step.id());
+            }
+            pending.put(step.id(), dependencies.size());
+        }
+        Deque<String> ready = new ArrayDeque<>();
+        pending.forEach((id, count) -> {
+            if (count == 0) {
+                ready.add(id);
+            }
+        });
+        List<ToolPlan.Step> order = new ArrayList<>(stepsById.size());
+        while (!ready.isEmpty()) {
+            String id = ready.poll();
+            order.add(stepsById.get(id));
+            for (String dependent : dependents.getOrDefault(id, List.of())) {
+                if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (order.size() != stepsById.size()) {
+            throw new IllegalArgumentException("Plan contains a dependency cycle");
+        }
+        return order;
+    }
+
+    /**
+     * Replace {@code {{id}}} placeholders with the JSON-escaped output of that dependency.
+     */
+    private String substitute(ToolPlan.Step step, Map<String, CompletableFuture<String>> outputs) {
+        String arguments = step.arguments() != null ? step.arguments() : "{}";
+        for (String dependency : step.dependsOn()) {
+            String placeholder = "{{" + dependency + "}}";
+            if (!arguments.contains(placeholder)) {
+                continue;
+            }
+            String output = outputs.get(dependency).join();
+            if (output.length() > MAX_SUBSTITUTED_CHARS) {
+                output = output.substring(0, MAX_SUBSTITUTED_CHARS);
+            }
+            arguments = arguments.replace(placeholder, jsonEscape(output));
+        }
+        return arguments;
+    }
+
+    private String failureMessage(ToolPlan.Step step, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            log.warn("Planned tool {} ({}) timed out after {} ms", step.tool(), step.id(), stepTimeout.toMillis());
+            return "Tool " + step.tool() + " timed out after " + stepTimeout.toSeconds() + " seconds without returning a result.";
+        }
+        log.warn("Planned tool {} ({}) failed: {}", step.tool(), step.id(), cause.getMessage());
+        return "Tool " + step.tool() + " failed: " + cause.getMessage();
+    }
+
+    private static String jsonEscape(String value) {
+        try {
+            String quoted = OBJECT_MAPPER.writeValueAsString(value);
+            return quoted.substring(1, quoted.length() - 1);
+        } catch (JsonProcessingException e) {
+            return value;
+        }
+    }
+}
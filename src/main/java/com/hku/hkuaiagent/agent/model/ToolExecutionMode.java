@@ -0,0 +1,17 @@
+package com.hku.hkuaiagent.agent.model;
+
+/**
+ * How a batch of tool calls returned by one planning response is executed.
+ */
+public enum ToolExecutionMode {
+
+    /**
+     * Run the calls one after another through Spring AI's ToolCallingManager.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Run independent calls concurrently on virtual threads, each with its own timeout.
+     */
+    PARALLEL
+}
@@ -0,0 +1,34 @@
+package com.hku.hkuaiagent.agent.model;
+
+import java.util.List;
+
+/**
+ * Dependency graph of tool invocations produced by a single planning call.
+ *
+ * @param steps tool invocations; a step only starts once every step in its {@code dependsOn} list has finished
+ */
+public record ToolPlan(List<Step> steps) {
+
+    public ToolPlan {
+        steps = steps == null ? List.of() : List.copyOf(steps);
+    }
+
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    /**
+     * One tool invocation in the plan.
+     *
+     * @param id        unique step id, referenced by {@code dependsOn} and by {@code {{id}}} placeholders
+     * @param tool      tool name as exposed to the model
+     * @param arguments JSON arguments; {@code {{id}}} inside a string value is replaced by that step's output
+     * @param dependsOn ids of the steps that must finish first
+     */
+    public record Step(String id, String tool, String arguments, List<String> dependsOn) {
+
+        public Step {
+            dependsOn = dependsOn == null ? List.of() : List.copyOf(dependsOn);
+        }
+    }
+}
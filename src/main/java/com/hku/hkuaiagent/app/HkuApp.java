@@ -1,9 +1,13 @@
 package com.hku.hkuaiagent.app;
 
 import com.hku.hkuaiagent.advisor.MyLoggerAdvisor;
+import com.hku.hkuaiagent.rag.CourseRecord;
+import com.hku.hkuaiagent.rag.DocumentSnapshot;
 import com.hku.hkuaiagent.rag.HkuAiDocumentLoader;
 import com.hku.hkuaiagent.rag.HkuAiRagCustomAdvisorFactory;
 import com.hku.hkuaiagent.rag.QueryRewriter;
+import com.hku.hkuaiagent.util.ResponseSanitizer;
+import com.hku.hkuaiagent.util.SingleFlight;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -13,6 +17,8 @@ import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvi
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.document.Document;
@@ -25,8 +31,11 @@ import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Component
 @Slf4j
@@ -34,6 +43,13 @@ public class HkuApp {
 
     private final ChatClient chatClient;
 
+    private final ChatMemory chatMemory;
+
+    // Identical questions from fresh chats that arrive while one is being answered share its model call
+    private final SingleFlight<FlightKey, String> singleFlight = new SingleFlight<>();
+
+    private final Map<String, SemesterDigest> semesterDigests = new ConcurrentHashMap<>();
+
     @Autowired(required = false)
     @Nullable
     private VectorStore hkuAiVectorStore;
@@ -51,6 +67,10 @@ public class HkuApp {
     @Resource
     private HkuAiDocumentLoader hkuAiDocumentLoader;
 
+    @Autowired(required = false)
+    @Nullable
+    private SemanticAnswerCache answerCache;
+
     private static final String SYSTEM_PROMPT = """
             You are 'HKU Campus Companion', an AI concierge for The University of Hong Kong.
             Communicate exclusively in fluent English, even when the user writes in another language.
@@ -79,7 +99,7 @@ public class HkuApp {
 
     public HkuApp(ChatModel dashscopeChatModel) {
         ChatModel safeModel = Objects.requireNonNull(dashscopeChatModel, "dashscopeChatModel");
-        MessageWindowChatMemory chatMemory = MessageWindowChatMemory.builder()
+        this.chatMemory = MessageWindowChatMemory.builder()
                 .chatMemoryRepository(new InMemoryChatMemoryRepository())
                 .maxMessages(20)
                 .build();
@@ -105,14 +125,19 @@ public class HkuApp {
             log.info("[Routing] Detected semester 1 query, delegating to doChatWithRag");
             return doChatWithRag(message, chatId);
         }
-        if (lower.contains("comp7103")) {
-            return doChatWithCoursePrefix(message, chatId, "COMP7103");
-        }
-        if (lower.contains("comp7106")) {
-            return doChatWithCoursePrefix(message, chatId, "COMP7106");
+        String coursePrefix = knownCoursePrefix(message);
+        if (coursePrefix != null) {
+            return join(coalesce("course:" + coursePrefix, message, chatId,
+                    () -> Flux.just(doChatWithCoursePrefix(message, chatId, coursePrefix))));
         }
 
-        /* Core response pipeline */
+        return join(coalesce("general", message, chatId, () -> Flux.just(callGeneral(message, chatId))));
+    }
+
+    /**
+     * Core response pipeline for questions that were not routed to a semester or course.
+     */
+    private String callGeneral(String message, String chatId) {
         var promptBuilder = chatClient.prompt()
                 .user(message)
                 .advisors(spec -> spec.param(ChatMemory.CONVERSATION_ID, chatId));
@@ -145,47 +170,131 @@ public class HkuApp {
             log.info("[Routing] Detected semester 1 query, delegating to doChatWithRagStream");
             return doChatWithRagStream(message, chatId);
         }
-        if (lower.contains("comp7103")) {
-            return Flux.just(doChatWithCoursePrefix(message, chatId, "COMP7103"));
-        }
-        if (lower.contains("comp7106")) {
-            return Flux.just(doChatWithCoursePrefix(message, chatId, "COMP7106"));
+        String coursePrefix = knownCoursePrefix(message);
+        if (coursePrefix != null) {
+            return coalesce("course:" + coursePrefix, message, chatId,
+                    () -> Flux.just(doChatWithCoursePrefix(message, chatId, coursePrefix)));
         }
 
-        var promptBuilder = chatClient.prompt()
-                .user(message)
-                .advisors(spec -> spec.param(ChatMemory.CONVERSATION_ID, chatId));
+        return coalesce("general", message, chatId, () -> {
+            var promptBuilder = chatClient.prompt()
+                    .user(message)
+                    .advisors(spec -> spec.param(ChatMemory.CONVERSATION_ID, chatId));
 
-        if (hkuAiVectorStore != null) {
-            promptBuilder = promptBuilder
-                    .advisors(new QuestionAnswerAdvisor(hkuAiVectorStore))
-                    .advisors(HkuAiRagCustomAdvisorFactory.createHkuAiRagCustomAdvisor(hkuAiVectorStore, "course"));
+            if (hkuAiVectorStore != null) {
+                promptBuilder = promptBuilder
+                        .advisors(new QuestionAnswerAdvisor(hkuAiVectorStore))
+                        .advisors(HkuAiRagCustomAdvisorFactory.createHkuAiRagCustomAdvisor(hkuAiVectorStore, "course"));
+            }
+
+            return promptBuilder
+                    .stream()
+                    .content()
+                    .transform(ResponseSanitizer.MARKDOWN.streaming());
+        });
+    }
+
+    /* ===================== Single-flight coalescing and answer cache ===================== */
+
+    /**
+     * Identity of a request for coalescing: routing key (semester, course prefix) plus the normalised question.
+     */
+    record FlightKey(String route, String question) {
+    }
+
+    /**
+     * Share one model call between identical requests that are in flight at the same time, and serve similar
+     * questions answered earlier from the {@link SemanticAnswerCache}.
+     * <p>
+     * Only chats without history are coalesced or cached, because the memory advisor adds earlier turns to the
+     * prompt and their answers would differ. The chat that starts the call gets the exchange stored by the
+     * advisor; chats that join, and chats answered from the cache, have it added to their own memory.
+     */
+    private Flux<String> coalesce(String route, String message, String chatId, Supplier<Flux<String>> answer) {
+        if (!chatMemory.get(chatId).isEmpty()) {
+            return Flux.defer(answer);
+        }
+        FlightKey key = new FlightKey(route, normalizeQuestion(message));
+        return singleFlight.execute(key, () -> cachedOrAnswer(key, message, chatId, answer), shared -> {
+            StringBuilder text = new StringBuilder();
+            return shared.doOnNext(text::append)
+                    .doOnComplete(() -> remember(chatId, message, text.toString()));
+        });
+    }
+
+    private Flux<String> cachedOrAnswer(FlightKey key, String message, String chatId, Supplier<Flux<String>> answer) {
+        SemanticAnswerCache cache = answerCache;
+        if (cache == null) {
+            return Flux.defer(answer);
+        }
+        return Flux.defer(() -> {
+            SemanticAnswerCache.Lookup lookup = cache.lookup(key.route(), key.question(), knowledgeBaseVersion());
+            if (lookup.hit()) {
+                log.info("[AnswerCache] Hit for route {}", key.route());
+                remember(chatId, message, lookup.answer());
+                return Flux.just(lookup.answer());
+            }
+            StringBuilder text = new StringBuilder();
+            return answer.get()
+                    .doOnNext(text::append)
+                    .doOnComplete(() -> cache.put(lookup, text.toString()));
+        });
+    }
+
+    private void remember(String chatId, String message, String answer) {
+        chatMemory.add(chatId, List.of(new UserMessage(message), new AssistantMessage(answer)));
+    }
+
+    private long knowledgeBaseVersion() {
+        return hkuAiDocumentLoader != null ? hkuAiDocumentLoader.snapshot().version() : 0;
+    }
+
+    private static String join(Flux<String> chunks) {
+        List<String> parts = chunks.collectList().block();
+        return parts == null ? "" : String.join("", parts);
+    }
+
+    static String normalizeQuestion(String message) {
+        String collapsed = message.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        int end = collapsed.length();
+        while (end > 0 && "?!.,;:\uFF1F\uFF01\u3002 ".indexOf(collapsed.charAt(end - 1)) >= 0) {
+            end--;
         }
+        return collapsed.substring(0, end);
+    }
 
-        return promptBuilder
-                .stream()
-                .content()
-                .map(this::sanitizeStreamChunk);
+    ChatMemory getChatMemory() {
+        return chatMemory;
     }
 
     /* ===================== Manual document load with prefix filtering ===================== */
 
+    /**
+     * Prefix of the first course code in {@code message} that has documents in the knowledge base, e.g.
+     * {@code COMP7103} for "Is COMP7103B hard?", or null.
+     */
+    @Nullable
+    private String knownCoursePrefix(String message) {
+        if (hkuAiDocumentLoader == null) {
+            return null;
+        }
+        DocumentSnapshot snapshot = hkuAiDocumentLoader.snapshot();
+        for (String code : DocumentSnapshot.courseCodes(message)) {
+            String prefix = DocumentSnapshot.coursePrefix(code);
+            if (!snapshot.courseFiles(prefix).isEmpty()) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+
     public String doChatWithCoursePrefix(String message, String chatId, String coursePrefix) {
         Objects.requireNonNull(message, "message");
         Objects.requireNonNull(chatId, "chatId");
         Objects.requireNonNull(coursePrefix, "coursePrefix");
-        String targetPrefix = "course_" + coursePrefix.toUpperCase();
-
-        // Step 1: Reload all documents manually (skip the VectorStore)
-        List<Document> allDocs = hkuAiDocumentLoader.loadMarkdowns();
 
-        // Step 2: Filter documents by filename prefix
-        List<Document> filtered = allDocs.stream()
-                .filter(d -> {
-                    String fn = (String) d.getMetadata().get("filename");
-                    return fn != null && fn.startsWith(targetPrefix);
-                })
-                .collect(Collectors.toList());
+        // Step 1-2: Look up every version of the course in the shared document snapshot (skip the VectorStore)
+        List<Document> filtered = hkuAiDocumentLoader.snapshot().byCoursePrefix(coursePrefix);
 
         if (filtered.isEmpty()) {
             return "No versions were found for course prefix " + coursePrefix + '.';
@@ -213,6 +322,9 @@ public class HkuApp {
 
     /* ===================== RAG entrypoint with semester filtering ===================== */
 
+    private record SemesterDigest(long version, String text) {
+    }
+
     public String doChatWithRag(String message, String chatId) {
         Objects.requireNonNull(message, "message");
         Objects.requireNonNull(chatId, "chatId");
@@ -229,14 +341,18 @@ public class HkuApp {
         if (hkuAiVectorStore == null) {
             return Flux.just("The RAG knowledge base is disabled. Please verify the configuration and try again.");
         }
-        String rewritten = queryRewriter != null ? queryRewriter.doQueryRewrite(message) : message;
-        String safeRewritten = Objects.requireNonNullElse(rewritten, message);
-        Objects.requireNonNull(safeRewritten, "safeRewritten");
-
         String lower = message.toLowerCase();
         boolean isS2 = lower.contains("semester 2") || lower.contains("s2") || lower.contains("second semester") || lower.contains("spring semester");
         boolean isS1 = lower.contains("semester 1") || lower.contains("s1") || lower.contains("first semester") || lower.contains("fall semester");
         String semester = isS2 ? "S2" : (isS1 ? "S1" : null);
+        // Query rewriting, vector search and generation run once per group of identical in-flight requests
+        return coalesce("rag:" + semester, message, chatId, () -> ragStream(message, chatId, semester));
+    }
+
+    private Flux<String> ragStream(String message, String chatId, String semester) {
+        String rewritten = queryRewriter != null ? queryRewriter.doQueryRewrite(message) : message;
+        String safeRewritten = Objects.requireNonNullElse(rewritten, message);
+        Objects.requireNonNull(safeRewritten, "safeRewritten");
 
         String manualContext = semester != null ? buildSemesterCourseContext(semester) : null;
         log.info("[RAG] message='{}' semester={} manualContextNull={} ", message, semester, manualContext == null);
@@ -256,135 +372,53 @@ public class HkuApp {
             .advisors(advisor)
             .stream()
             .content()
-            .map(this::sanitizeStreamChunk);
+            .transform(ResponseSanitizer.MARKDOWN.streaming());
     }
 
     private String buildSemesterCourseContext(String semester) {
-        List<Document> allDocs = hkuAiDocumentLoader.loadMarkdowns();
-        List<Document> filtered = allDocs.stream()
-                .filter(d -> {
-                    String filename = asString(d.getMetadata().get("filename"));
-                    if (filename == null) {
-                        return false;
-                    }
-                    String normalized = filename.toUpperCase();
-                    boolean matchSemester = normalized.contains(semester.toUpperCase() + ".MD");
-                    boolean matchCourse = normalized.startsWith("COURSE_");
-                    return matchSemester && matchCourse;
-                })
-                .collect(Collectors.toList());
-        if (filtered.isEmpty()) {
-            log.info("[RAG] {} semester found no matching documents via filename filter", semester);
+        DocumentSnapshot snapshot = hkuAiDocumentLoader.snapshot();
+        // The digest only changes with the documents, so it is built once per knowledge-base version
+        SemesterDigest digest = semesterDigests.get(semester);
+        if (digest != null && digest.version() == snapshot.version()) {
+            return digest.text();
+        }
+        String text = buildSemesterCourseContext(snapshot, semester);
+        semesterDigests.put(semester, new SemesterDigest(snapshot.version(), text));
+        return text;
+    }
+
+    private String buildSemesterCourseContext(DocumentSnapshot snapshot, String semester) {
+        List<CourseRecord> courses = snapshot.courses().query().semester(semester).list();
+        if (courses.isEmpty()) {
+            log.info("[RAG] {} semester found no matching courses in the catalog", semester);
             return null;
         }
-        log.info("[RAG] {} semester matched {} documents", semester, filtered.size());
+        log.info("[RAG] {} semester matched {} courses", semester, courses.size());
         StringBuilder sb = new StringBuilder();
         sb.append("### HKU Semester ").append(semester).append(" Course Digest\n");
-        for (Document doc : filtered) {
-            String filename = asString(doc.getMetadata().get("filename"));
-            String courseCode = extractCourseCode(filename);
-            String courseName = extractCourseName(filename);
-            String instructor = extractBetween(doc.getText(), "Instructor:", "Semester");
-            String examPeriod = extractAfter(doc.getText(), "Examination Period:");
-            String intro = extractIntroduction(doc.getText());
-            sb.append("- ").append(courseCode != null ? courseCode : "Unknown Code");
-            if (courseName != null) {
-                sb.append(" - ").append(courseName);
+        for (CourseRecord course : courses) {
+            sb.append("- ").append(course.code());
+            if (course.name() != null) {
+                sb.append(" - ").append(course.name());
             }
-            if (instructor != null) {
-                sb.append(" (Instructor: ").append(instructor).append(")");
+            if (course.instructor() != null) {
+                sb.append(" (Instructor: ").append(truncate(course.instructor(), 120)).append(")");
             }
-            sb.append(" [Source: ").append(filename).append("]\n");
-            if (intro != null) {
-                sb.append("  Summary: ").append(intro).append('\n');
+            sb.append(" [Source: ").append(course.filename()).append("]\n");
+            if (course.summary() != null) {
+                sb.append("  Summary: ").append(truncate(course.summary(), 200)).append('\n');
             }
-            if (examPeriod != null) {
-                sb.append("  Exam Period: ").append(examPeriod).append('\n');
+            if (course.schedule() != null) {
+                sb.append("  Schedule: ").append(course.schedule()).append('\n');
             }
-        }
-        return sb.toString();
-    }
-
-    private String asString(Object value) {
-        return value == null ? null : String.valueOf(value);
-    }
-
-    private String extractCourseCode(String filename) {
-        if (filename == null) {
-            return null;
-        }
-        String[] parts = filename.split("_");
-        if (parts.length < 2) {
-            return null;
-        }
-        return parts[1];
-    }
-
-    private String extractCourseName(String filename) {
-        if (filename == null) {
-            return null;
-        }
-        String[] parts = filename.replace(".md", "").split("_");
-        if (parts.length < 3) {
-            return null;
-        }
-        StringBuilder name = new StringBuilder();
-        for (int i = 2; i < parts.length - 1; i++) {
-            if (name.length() > 0) {
-                name.append(' ');
+            if (course.examPeriod() != null) {
+                sb.append("  Exam Period: ").append(truncate(course.examPeriod(), 120)).append('\n');
+            }
+            if (course.addDropPeriod() != null) {
+                sb.append("  Add/Drop Period: ").append(course.addDropPeriod()).append('\n');
             }
-            name.append(parts[i]);
-        }
-        return name.toString();
-    }
-
-    private String extractBetween(String text, String startLabel, String endLabel) {
-        if (text == null) {
-            return null;
-        }
-        String lowerText = text;
-        int startIdx = lowerText.indexOf(startLabel);
-        if (startIdx < 0) {
-            return null;
-        }
-        startIdx += startLabel.length();
-        int endIdx = endLabel == null ? -1 : lowerText.indexOf(endLabel, startIdx);
-        String segment = endIdx > startIdx ? lowerText.substring(startIdx, endIdx) : lowerText.substring(startIdx);
-        segment = segment.replaceAll("\r", " ").replaceAll("\n", " ").trim();
-        return segment.isEmpty() ? null : truncate(segment, 120);
-    }
-
-    private String extractAfter(String text, String label) {
-        if (text == null) {
-            return null;
-        }
-        int idx = text.indexOf(label);
-        if (idx < 0) {
-            return null;
-        }
-        idx += label.length();
-        int endIdx = text.indexOf('\n', idx);
-        String result = endIdx > idx ? text.substring(idx, endIdx) : text.substring(idx);
-        result = result.replaceAll("\r", " ").trim();
-        return result.isEmpty() ? null : truncate(result, 120);
-    }
-
-    private String extractIntroduction(String text) {
-        if (text == null) {
-            return null;
-        }
-        int idx = text.indexOf("2. Course Introduction");
-        if (idx < 0) {
-            return null;
-        }
-        String snippet = text.substring(idx);
-        snippet = snippet.replaceAll("\r", " ");
-        int nextSection = snippet.indexOf("3.");
-        if (nextSection > 0) {
-            snippet = snippet.substring(0, nextSection);
         }
-        snippet = snippet.replaceAll("\s+", " ").trim();
-        return snippet.isEmpty() ? null : truncate(snippet, 200);
+        return sb.toString();
     }
 
     private String truncate(String text, int maxLength) {
@@ -447,33 +481,6 @@ public class HkuApp {
     }
 
     private String sanitizeResponseText(String text) {
-        if (text == null) {
-            return "";
-        }
-        String sanitized = basicSanitize(text);
-        sanitized = sanitized.replaceAll("\\n{3,}", "\n\n");
-        return sanitized.trim();
-    }
-
-    private String sanitizeStreamChunk(String chunk) {
-        if (chunk == null) {
-            return "";
-        }
-        return basicSanitize(chunk);
-    }
-
-    private String basicSanitize(String text) {
-        String sanitized = text
-            .replace("**", "")
-            .replace("```", "")
-            .replace('\u00A0', ' ');
-        sanitized = sanitized.replaceAll("(?m)^\\s*[-*]\\s+", "- ");
-        sanitized = sanitized.replaceAll("(?m)^\\s*#+\\s*", "");
-        sanitized = sanitized.replaceAll("---+", "\n\n");
-        sanitized = sanitized.replaceAll("[\\t\\f]+", " ");
-        sanitized = sanitized.replaceAll(" {2,}", " ");
-        sanitized = sanitized.replaceAll(" *\\n *", "\n");
-        sanitized = sanitized.replaceAll("\\n{3,}", "\n\n");
-        return sanitized.trim();
+        return ResponseSanitizer.MARKDOWN.sanitize(text);
     }
 }
@@ -4,6 +4,9 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hku.hkuaiagent.advisor.MyLoggerAdvisor;
 import com.hku.hkuaiagent.rag.QueryRewriter;
+import com.hku.hkuaiagent.sse.AgentEvent;
+import com.hku.hkuaiagent.sse.AgentEventType;
+import com.hku.hkuaiagent.util.ResponseSanitizer;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -23,9 +26,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
-import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -89,53 +92,48 @@ public class LoveApp {
     }
 
     /**
-     * Stream chat responses with conversation memory via SSE.
+     * Stream chat responses with conversation memory as typed SSE events.
+     * <p>
+     * Progress events come first, then answer chunks as the model produces them. Errors end the stream with
+     * an apology instead of failing it. The flux is cold and honours downstream demand.
      */
-    public Flux<String> doChatByStream(String message, String chatId) {
+    public Flux<AgentEvent> doChatByStream(String message, String chatId) {
         log.info("[LoveApp] hit doChat2");
         String promptMessage = Objects.requireNonNull(message, "message must not be null");
         String conversationId = Objects.requireNonNull(chatId, "chatId must not be null");
 
-        List<Map<String, String>> ragContexts = resolveRagContext(promptMessage);
-
-        Flux<String> contentFlux = chatClient
-                .prompt()
-                .system(SYSTEM_PROMPT)
-                .user(promptMessage)
-                .advisors(spec -> spec.param(ChatMemory.CONVERSATION_ID, conversationId))
-                .stream()
-                .content();
-
-        return Flux.create(sink -> {
-            sink.next("[THINKING_START]HKU Campus Companion is working on it...");
-
+        return Flux.defer(() -> {
+            List<AgentEvent> progress = new ArrayList<>();
+            progress.add(AgentEvent.of(AgentEventType.THINKING_START, "HKU Campus Companion is working on it..."));
+            List<Map<String, String>> ragContexts = resolveRagContext(promptMessage);
             if (!ragContexts.isEmpty()) {
-                sink.next("[TOOL_CALL]Searching the HKU knowledge base");
+                progress.add(AgentEvent.of(AgentEventType.TOOL_CALL, "Searching the HKU knowledge base"));
                 String payload = buildRagContextPayload(ragContexts);
                 if (payload != null) {
-                    sink.next("[RAG_CONTEXT]" + payload);
+                    progress.add(AgentEvent.of(AgentEventType.RAG_CONTEXT, payload));
                 }
             }
-
-            sink.next("[TOOL_CALL]Drafting a response");
-
-            Disposable disposable = contentFlux.subscribe(chunk -> {
-                if (chunk != null && !chunk.isBlank()) {
-                    sink.next(chunk);
-                }
-            }, error -> {
-                log.error("[LoveApp] SSE error", error);
-                sink.next("[THINKING_END]Processing ended with an issue");
-                sink.next("Sorry, something went wrong while handling the request. Please try again in a moment.");
-                sink.next("[DONE]");
-                sink.complete();
-            }, () -> {
-                sink.next("[THINKING_END]Ready to share the answer");
-                sink.next("[DONE]");
-                sink.complete();
-            });
-
-            sink.onDispose(disposable::dispose);
+            progress.add(AgentEvent.of(AgentEventType.TOOL_CALL, "Drafting a response"));
+
+            Flux<AgentEvent> answer = chatClient
+                    .prompt()
+                    .system(SYSTEM_PROMPT)
+                    .user(promptMessage)
+                    .advisors(spec -> spec.param(ChatMemory.CONVERSATION_ID, conversationId))
+                    .stream()
+                    .content()
+                    .transform(ResponseSanitizer.MARKDOWN.streaming())
+                    .map(chunk -> AgentEvent.of(AgentEventType.ANSWER, chunk));
+
+            return Flux.fromIterable(progress)
+                    .concatWith(answer)
+                    .concatWith(Flux.just(AgentEvent.of(AgentEventType.THINKING_END, "Ready to share the answer")))
+                    .onErrorResume(error -> {
+                        log.error("[LoveApp] SSE error", error);
+                        return Flux.just(
+                                AgentEvent.of(AgentEventType.THINKING_END, "Processing ended with an issue"),
+                                AgentEvent.of(AgentEventType.ANSWER, "Sorry, something went wrong while handling the request. Please try again in a moment."));
+                    });
         });
     }
 
@@ -0,0 +1,242 @@
+package com.hku.hkuaiagent.app;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of final answers for questions that do not depend on conversation history.
+ * <p>
+ * Entries are grouped by scope (the routing decision: detected semester, course prefix or general) and matched
+ * by the cosine similarity of the question embeddings, so "When is the COMP7103 exam?" and "COMP7103 exam
+ * date?" share one answer once they score above the threshold. A question that normalises to exactly the same
+ * text is served without calling the embedding model at all. Every entry is tagged with the knowledge-base
+ * version it was generated from and is dropped as soon as the documents are reloaded with different content.
+ * <p>
+ * Embeddings barely separate "COMP7404" from "COMP7405" or "assignment 1" from "assignment 2", so the course
+ * codes, section letters and numbers named in a question are added to its scope: a similar question only shares
+ * an answer when it names exactly the same ones.
+ */
+@Slf4j
+public class SemanticAnswerCache {
+
+    // Course codes with an optional section letter, section letters named on their own, and any other number
+    private static final Pattern IDENTIFIER = Pattern.compile(
+            "(?<![a-z])[a-z]{4}\\d{4}[a-z]?(?![a-z])|(?<![a-z])(?:section|sec|class|group) [a-z](?![a-z])|\\d+");
+
+    /**
+     * Result of {@link #lookup}. A miss carries the question embedding so {@link #put} does not compute it again.
+     *
+     * @param scope    routing scope of the question plus the identifiers it names
+     * @param question normalised question
+     * @param vector   unit-length question embedding, null when it was not needed or could not be computed
+     * @param version  knowledge-base version the lookup was made against
+     * @param answer   cached answer, null on a miss
+     */
+    public record Lookup(String scope, String question, float[] vector, long version, String answer) {
+
+        public boolean hit() {
+            return answer != null;
+        }
+    }
+
+    private record Entry(float[] vector, String answer, long version, long expiresAtMillis) {
+    }
+
+    private final EmbeddingModel embeddingModel;
+
+    private final double similarityThreshold;
+
+    private final int maxEntriesPerScope;
+
+    private final Duration ttl;
+
+    private final Clock clock;
+
+    private final Map<String, ScopeCache> scopes = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public SemanticAnswerCache(EmbeddingModel embeddingModel, double similarityThreshold, int maxEntriesPerScope,
+                               Duration ttl) {
+        this(embeddingModel, similarityThreshold, maxEntriesPerScope, ttl, Clock.systemUTC());
+    }
+
+    SemanticAnswerCache(EmbeddingModel embeddingModel, double similarityThreshold, int maxEntriesPerScope,
+                        Duration ttl, Clock clock) {
+        this.embeddingModel = embeddingModel;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntriesPerScope = maxEntriesPerScope;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * Find the answer to the same or a similar enough question in {@code scope}.
+     *
+     * @param route    routing scope, answers never cross scopes
+     * @param question normalised question text
+     * @param version  current knowledge-base version; entries from other versions are discarded
+     * @return hit with the cached answer, or a miss to pass to {@link #put} once the answer is known
+     */
+    public Lookup lookup(String route, String question, long version) {
+        String scope = route + identifiers(question);
+        ScopeCache cache = scopes.computeIfAbsent(scope, key -> new ScopeCache());
+        long now = clock.millis();
+        String exact = cache.exact(question, version, now);
+        if (exact != null) {
+            hits.increment();
+            return new Lookup(scope, question, null, version, exact);
+        }
+        float[] vector;
+        try {
+            vector = normalize(embeddingModel.embed(question));
+        } catch (RuntimeException e) {
+            // Without an embedding the question is simply answered by the model
+            log.warn("Could not embed question for the answer cache: {}", e.getMessage());
+            misses.increment();
+            return new Lookup(scope, question, null, version, null);
+        }
+        String similar = cache.closest(vector, version, now, similarityThreshold);
+        if (similar != null) {
+            hits.increment();
+            log.debug("Answer cache hit in scope {} for '{}'", scope, question);
+            return new Lookup(scope, question, vector, version, similar);
+        }
+        misses.increment();
+        return new Lookup(scope, question, vector, version, null);
+    }
+
+    /**
+     * Store the answer generated after a miss.
+     */
+    public void put(Lookup miss, String answer) {
+        if (miss.hit() || miss.vector() == null || StrUtil.isBlank(answer)) {
+            return;
+        }
+        scopes.computeIfAbsent(miss.scope(), key -> new ScopeCache())
+                .put(miss.question(), new Entry(miss.vector(), answer, miss.version(), clock.millis() + ttl.toMillis()));
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return scopes.values().stream().mapToInt(ScopeCache::size).sum();
+    }
+
+    /**
+     * Identifiers named in a normalised question, in a stable order: {@code "|comp7103a,section b"}, or an empty
+     * string when there are none.
+     */
+    static String identifiers(String question) {
+        TreeSet<String> found = new TreeSet<>();
+        Matcher matcher = IDENTIFIER.matcher(question);
+        while (matcher.find()) {
+            found.add(matcher.group());
+        }
+        return found.isEmpty() ? "" : "|" + String.join(",", found);
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        float[] unit = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = vector[i] * scale;
+        }
+        return unit;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private final class ScopeCache {
+
+        // Keyed by normalised question, in access order for LRU eviction
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntriesPerScope;
+            }
+        };
+
+        private synchronized String exact(String question, long version, long now) {
+            Entry entry = entries.get(question);
+            if (entry == null) {
+                return null;
+            }
+            if (isStale(entry, version, now)) {
+                entries.remove(question);
+                return null;
+            }
+            return entry.version() == version ? entry.answer() : null;
+        }
+
+        private synchronized String closest(float[] vector, long version, long now, double threshold) {
+            String bestQuestion = null;
+            double bestScore = threshold;
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> candidate = iterator.next();
+                Entry entry = candidate.getValue();
+                if (isStale(entry, version, now)) {
+                    iterator.remove();
+                    continue;
+                }
+                double score = entry.version() == version ? dot(vector, entry.vector()) : -1;
+                if (score >= bestScore) {
+                    bestScore = score;
+                    bestQuestion = candidate.getKey();
+                }
+            }
+            // get() also marks the entry as recently used
+            return bestQuestion == null ? null : entries.get(bestQuestion).answer();
+        }
+
+        private synchronized void put(String question, Entry entry) {
+            entries.put(question, entry);
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        // Entries from an older knowledge base are never valid again
+        private boolean isStale(Entry entry, long version, long now) {
+            return entry.expiresAtMillis() <= now || entry.version() < version;
+        }
+    }
+}
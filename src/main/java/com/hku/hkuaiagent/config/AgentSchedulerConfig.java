@@ -0,0 +1,45 @@
+package com.hku.hkuaiagent.config;
+
+import com.hku.hkuaiagent.agent.AgentRunScheduler;
+import com.hku.hkuaiagent.agent.ContextCompactor;
+import com.hku.hkuaiagent.agent.StepBudgetLearner;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Shared scheduler for agent runs started over SSE, plus the step budgets learned across runs and the
+ * context compactor applied before every planning call.
+ * <p>
+ * Metrics go to the application's MeterRegistry when one exists (e.g. with Actuator) and to a
+ * local SimpleMeterRegistry otherwise, so the numbers behind {@code /ai/agent/stats} are always available.
+ */
+@Configuration
+public class AgentSchedulerConfig {
+
+    @Bean(destroyMethod = "close")
+    public AgentRunScheduler agentRunScheduler(
+            @Value("${hku.agent.scheduler.max-concurrent-runs:16}") int maxConcurrentRuns,
+            @Value("${hku.agent.scheduler.max-queue-depth:32}") int maxQueueDepth,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        return new AgentRunScheduler(maxConcurrentRuns, maxQueueDepth,
+                meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    @Bean
+    public StepBudgetLearner stepBudgetLearner(
+            @Value("${hku.agent.step-budget.min-samples:5}") int minSamples,
+            @Value("${hku.agent.step-budget.min-budget:3}") int minBudget) {
+        return new StepBudgetLearner(minSamples, minBudget);
+    }
+
+    @Bean
+    public ContextCompactor contextCompactor(
+            @Value("${hku.agent.context.max-tokens:24000}") int maxTokens,
+            @Value("${hku.agent.context.old-tool-result-chars:400}") int oldToolResultChars) {
+        return new ContextCompactor(maxTokens, oldToolResultChars);
+    }
+}
@@ -0,0 +1,52 @@
+package com.hku.hkuaiagent.config;
+
+import com.hku.hkuaiagent.agent.AgentDefinition;
+import com.hku.hkuaiagent.agent.AgentSessionCache;
+import com.hku.hkuaiagent.agent.HkuManus;
+import com.hku.hkuaiagent.agent.LoveCampusAgent;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Shared agent definitions and the bounded per-chat session caches built on them.
+ * <p>
+ * Prompts, chat clients, tool catalogs and options are created once per agent type here; a chat session
+ * only holds its own conversation state and is dropped again when idle, over the limit or under heap pressure.
+ */
+@Configuration
+public class AgentSessionConfig {
+
+    @Bean
+    public AgentDefinition hkuManusDefinition(ToolCallback[] allTools, ToolCallbackProvider toolCallbackProvider,
+                                              ChatModel dashscopeChatModel) {
+        return HkuManus.definition(allTools, toolCallbackProvider, dashscopeChatModel);
+    }
+
+    @Bean
+    public AgentDefinition loveCampusAgentDefinition(ToolCallback[] allTools, ToolCallbackProvider toolCallbackProvider,
+                                                     ChatModel dashscopeChatModel) {
+        return LoveCampusAgent.definition(allTools, toolCallbackProvider, dashscopeChatModel);
+    }
+
+    @Bean
+    public AgentSessionCache<HkuManus> manusSessionCache(
+            @Value("${hku.agent.sessions.max-sessions:2000}") int maxSessions,
+            @Value("${hku.agent.sessions.idle-timeout:30m}") Duration idleTimeout,
+            @Value("${hku.agent.sessions.heap-pressure-ratio:0.85}") double heapPressureRatio) {
+        return new AgentSessionCache<>("hkuManus", maxSessions, idleTimeout, heapPressureRatio);
+    }
+
+    @Bean
+    public AgentSessionCache<LoveCampusAgent> loveSessionCache(
+            @Value("${hku.agent.sessions.max-sessions:2000}") int maxSessions,
+            @Value("${hku.agent.sessions.idle-timeout:30m}") Duration idleTimeout,
+            @Value("${hku.agent.sessions.heap-pressure-ratio:0.85}") double heapPressureRatio) {
+        return new AgentSessionCache<>("loveCampusAgent", maxSessions, idleTimeout, heapPressureRatio);
+    }
+}
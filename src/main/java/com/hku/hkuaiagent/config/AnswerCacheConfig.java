@@ -0,0 +1,30 @@
+package com.hku.hkuaiagent.config;
+
+import com.hku.hkuaiagent.app.SemanticAnswerCache;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Semantic answer cache in front of the HKU course assistant.
+ * <p>
+ * Similar questions from chats without history are answered from the cache instead of a new generation;
+ * set {@code hku.app.answer-cache.enabled=false} to always ask the model.
+ */
+@Configuration
+@ConditionalOnProperty(name = "hku.app.answer-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class AnswerCacheConfig {
+
+    @Bean
+    public SemanticAnswerCache semanticAnswerCache(
+            EmbeddingModel dashscopeEmbeddingModel,
+            @Value("${hku.app.answer-cache.similarity-threshold:0.92}") double similarityThreshold,
+            @Value("${hku.app.answer-cache.max-entries-per-scope:256}") int maxEntriesPerScope,
+            @Value("${hku.app.answer-cache.ttl:6h}") Duration ttl) {
+        return new SemanticAnswerCache(dashscopeEmbeddingModel, similarityThreshold, maxEntriesPerScope, ttl);
+    }
+}
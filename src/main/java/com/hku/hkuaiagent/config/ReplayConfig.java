@@ -0,0 +1,94 @@
+package com.hku.hkuaiagent.config;
+
+import com.hku.hkuaiagent.replay.RecordingChatModel;
+import com.hku.hkuaiagent.replay.RecordingToolCallback;
+import com.hku.hkuaiagent.replay.ReplayChatModel;
+import com.hku.hkuaiagent.replay.ReplayLatency;
+import com.hku.hkuaiagent.replay.SessionRecorder;
+import com.hku.hkuaiagent.replay.SessionReplay;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Record real agent sessions or replay them offline, switched by {@code hku.replay.mode}.
+ * <p>
+ * {@code record} wraps the chat model and every tool so that prompts, replies, tool calls, outputs and timings
+ * are appended to {@code hku.replay.file}. {@code replay} swaps the chat model for a {@link ReplayChatModel}
+ * and answers tools from the same file, so agent runs need neither DashScope nor network access. Replay latency
+ * follows the recording scaled by {@code hku.replay.latency-scale}, or is fixed by {@code hku.replay.fixed-latency}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "hku.replay.mode")
+public class ReplayConfig {
+
+    @Bean
+    public static BeanPostProcessor sessionReplayPostProcessor(Environment environment) {
+        String mode = environment.getProperty("hku.replay.mode", "");
+        Path file = Path.of(environment.getProperty("hku.replay.file", "tmp/replay/session.jsonl"));
+        return switch (mode) {
+            case "record" -> recording(new SessionRecorder(file));
+            case "replay" -> {
+                Duration fixed = environment.getProperty("hku.replay.fixed-latency", Duration.class);
+                double scale = environment.getProperty("hku.replay.latency-scale", Double.class, 1.0);
+                yield replaying(SessionReplay.load(file, fixed != null ? ReplayLatency.fixed(fixed) : ReplayLatency.scaled(scale)));
+            }
+            default -> throw new IllegalStateException("Unknown hku.replay.mode '" + mode + "', expected record or replay");
+        };
+    }
+
+    private static BeanPostProcessor recording(SessionRecorder recorder) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof ChatModel chatModel && !(bean instanceof RecordingChatModel)) {
+                    return new RecordingChatModel(chatModel, recorder);
+                }
+                if (bean instanceof ToolCallback[] tools) {
+                    ToolCallback[] wrapped = new ToolCallback[tools.length];
+                    for (int i = 0; i < tools.length; i++) {
+                        wrapped[i] = new RecordingToolCallback(tools[i], recorder);
+                    }
+                    return wrapped;
+                }
+                if (bean instanceof ToolCallbackProvider provider) {
+                    return (ToolCallbackProvider) () -> {
+                        ToolCallback[] tools = provider.getToolCallbacks();
+                        ToolCallback[] wrapped = new ToolCallback[tools.length];
+                        for (int i = 0; i < tools.length; i++) {
+                            wrapped[i] = new RecordingToolCallback(tools[i], recorder);
+                        }
+                        return wrapped;
+                    };
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static BeanPostProcessor replaying(SessionReplay replay) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof ChatModel && !(bean instanceof ReplayChatModel)) {
+                    return replay.chatModel();
+                }
+                if (bean instanceof ToolCallback[] tools) {
+                    return replay.wrap(tools);
+                }
+                if (bean instanceof ToolCallbackProvider provider) {
+                    return replay.wrap(provider);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package com.hku.hkuaiagent.config;
+
+import com.hku.hkuaiagent.tools.CachingToolCallbackProvider;
+import com.hku.hkuaiagent.tools.ToolResultCache;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Registers the shared tool result cache and its per-tool policies.
+ * <p>
+ * Only read-only lookups are listed here. Tools with side effects (files, terminal, PDF, downloads)
+ * must never be served from the cache.
+ */
+@Configuration
+public class ToolCacheConfig {
+
+    @Bean
+    public ToolResultCache toolResultCache() {
+        return new ToolResultCache()
+                // Local tools
+                .register("weather_lookup", Duration.ofMinutes(10), 256)
+                .register("campusRagSearch", Duration.ofMinutes(30), 512)
+                // amap MCP tools
+                .register("maps_weather", Duration.ofMinutes(10), 256)
+                .register("maps_geo", Duration.ofDays(1), 1024)
+                .register("maps_regeocode", Duration.ofDays(1), 1024)
+                .register("maps_text_search", Duration.ofHours(6), 1024)
+                .register("maps_around_search", Duration.ofHours(6), 1024)
+                .register("maps_search_detail", Duration.ofHours(6), 1024)
+                .register("maps_distance", Duration.ofHours(1), 512)
+                .register("maps_direction_walking", Duration.ofHours(1), 512)
+                .register("maps_direction_driving", Duration.ofMinutes(30), 512)
+                .register("maps_direction_transit_integrated", Duration.ofMinutes(30), 512)
+                .register("maps_bicycling", Duration.ofHours(1), 512);
+    }
+
+    /**
+     * Route the tool provider beans named in {@code hku.tools.cache.providers} (the MCP providers by default)
+     * through the cache. Other providers keep their own type.
+     */
+    @Bean
+    public static BeanPostProcessor cachingToolCallbackProviderPostProcessor(ObjectProvider<ToolResultCache> toolResultCache,
+                                                                            Environment environment) {
+        Set<String> providerBeans = Set.of(environment.getProperty("hku.tools.cache.providers", String[].class,
+                new String[]{"mcpToolCallbacks", "mcpAsyncToolCallbacks"}));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (providerBeans.contains(beanName) && bean instanceof ToolCallbackProvider provider
+                        && !(bean instanceof CachingToolCallbackProvider)) {
+                    return toolResultCache.getObject().wrap(provider);
+                }
+                return bean;
+            }
+        };
+    }
+}
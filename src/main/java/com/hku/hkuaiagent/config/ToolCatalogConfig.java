@@ -0,0 +1,29 @@
+package com.hku.hkuaiagent.config;
+
+import com.hku.hkuaiagent.tools.ToolCatalog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.mcp.customizer.McpSyncClientCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Keeps the agents' cached tool catalogs in step with the MCP servers.
+ * <p>
+ * Catalogs are marked stale when an MCP client is created (the server set changed) and whenever a
+ * server announces a new tool list; the next planning step then rebuilds them once.
+ */
+@Slf4j
+@Configuration
+public class ToolCatalogConfig {
+
+    @Bean
+    public McpSyncClientCustomizer toolCatalogInvalidatingCustomizer() {
+        return (serverName, spec) -> {
+            ToolCatalog.invalidateAll();
+            spec.toolsChangeConsumer(tools -> {
+                log.info("MCP server {} changed its tool list ({} tools), refreshing tool catalogs", serverName, tools.size());
+                ToolCatalog.invalidateAll();
+            });
+        };
+    }
+}
@@ -1,22 +1,34 @@
 package com.hku.hkuaiagent.controller;
 
+import com.hku.hkuaiagent.agent.AgentDefinition;
+import com.hku.hkuaiagent.agent.AgentRunRejectedException;
+import com.hku.hkuaiagent.agent.AgentRunScheduler;
+import com.hku.hkuaiagent.agent.AgentSessionCache;
+import com.hku.hkuaiagent.agent.BaseAgent;
+import com.hku.hkuaiagent.agent.ContextCompactor;
 import com.hku.hkuaiagent.agent.HkuManus;
+import com.hku.hkuaiagent.agent.LoveCampusAgent;
+import com.hku.hkuaiagent.agent.StepBudgetLearner;
 import com.hku.hkuaiagent.app.LoveApp;
+import com.hku.hkuaiagent.sse.AgentEvent;
+import com.hku.hkuaiagent.sse.AgentEventStream;
+import com.hku.hkuaiagent.sse.AgentEventStreams;
+import com.hku.hkuaiagent.tools.ToolResultCache;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.ai.tool.ToolCallback;
-import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
-import java.util.Objects;
-
-import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/ai")
@@ -26,21 +38,37 @@ public class AiController {
     @Resource
     private LoveApp loveApp;
 
+    // Shared agent definitions; sessions only add their own conversation state
+    @Resource
+    private AgentDefinition hkuManusDefinition;
+
     @Resource
-    private ToolCallback[] allTools;
+    private AgentDefinition loveCampusAgentDefinition;
 
+    // Bounded scheduler shared by every streaming agent run
     @Resource
-    private ChatModel dashscopeChatModel;
+    private AgentRunScheduler agentRunScheduler;
 
-    // MCP tool provider injected via Spring
     @Resource
-    private ToolCallbackProvider toolCallbackProvider;
+    private ToolResultCache toolResultCache;
+
+    @Resource
+    private StepBudgetLearner stepBudgetLearner;
+
+    @Resource
+    private ContextCompactor contextCompactor;
+
+    // Event logs of running and recently finished streams, for Last-Event-ID resumption
+    @Resource
+    private AgentEventStreams agentEventStreams;
     
-    // Cache Manus agent instances per chatId to preserve conversation memory
-    private final java.util.Map<String, HkuManus> manusCache = new java.util.concurrent.ConcurrentHashMap<>();
+    // Manus sessions per chatId, preserving conversation memory until idle or evicted
+    @Resource
+    private AgentSessionCache<HkuManus> manusSessionCache;
 
-    // Cache LoveCampusAgent instances per chatId so each session can call tools independently
-    private final java.util.Map<String, com.hku.hkuaiagent.agent.LoveCampusAgent> loveCache = new java.util.concurrent.ConcurrentHashMap<>();
+    // LoveCampusAgent sessions per chatId so each session can call tools independently
+    @Resource
+    private AgentSessionCache<LoveCampusAgent> loveSessionCache;
 
     /**
      * Handle synchronous chat requests for the Love App agent.
@@ -60,20 +88,31 @@ public class AiController {
      *
      * @param message user prompt content
      * @param chatId conversation identifier
-     * @return SSE emitter that streams the agent response
+     * @param lastEventId id of the last event received before a reconnect, resumes that run
+     * @return typed server-sent events of the agent run
      */
     @GetMapping(value = "/love_app/chat/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter doChatWithLoveAppSSE(String message, String chatId) {
+    public Flux<ServerSentEvent<String>> doChatWithLoveAppSSE(String message, String chatId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
         log.info("[AiController] SSE - love agent");
 
         if (chatId == null || chatId.isEmpty()) {
             chatId = "default";
         }
+        String owner = "love-agent:" + chatId;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return agentEventStreams.resume(lastEventId, owner);
+        }
 
-        com.hku.hkuaiagent.agent.LoveCampusAgent loveAgent = loveCache.computeIfAbsent(chatId,
-            id -> new com.hku.hkuaiagent.agent.LoveCampusAgent(allTools, toolCallbackProvider, dashscopeChatModel));
+        LoveCampusAgent loveAgent = loveSessionCache.getOrCreate(chatId, id -> {
+            LoveCampusAgent agent = new LoveCampusAgent(loveCampusAgentDefinition);
+            agent.setRunScheduler(agentRunScheduler);
+            agent.setStepBudgetLearner(stepBudgetLearner);
+            agent.setContextCompactor(contextCompactor);
+            return agent;
+        });
 
-        return loveAgent.runStream(message);
+        return startAgentRun(loveAgent, message, owner);
     }
 
     /**
@@ -81,40 +120,30 @@ public class AiController {
      *
      * @param message user prompt content
      * @param chatId conversation identifier
-     * @return server-sent event flux with response chunks
+     * @param lastEventId id of the last event received before a reconnect, resumes that run
+     * @return typed server-sent events with response chunks
      */
-    @GetMapping(value = "/love_app/chat/server_sent_event")
-    public Flux<ServerSentEvent<String>> doChatWithLoveAppServerSentEvent(String message, String chatId) {
+    @GetMapping(value = "/love_app/chat/server_sent_event", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> doChatWithLoveAppServerSentEvent(String message, String chatId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
         log.info("[AiController] Event");
-        return loveApp.doChatByStream(message, chatId)
-                .map(chunk -> ServerSentEvent.<String>builder()
-                        .data(chunk)
-                        .build());
+        return streamLoveApp(message, chatId, lastEventId);
     }
 
     /**
-     * Stream responses from the Love App agent using a Spring MVC SseEmitter.
+     * Stream responses from the Love App. Formerly bridged through an SseEmitter without backpressure; now the
+     * same resumable event stream as {@code /love_app/chat/server_sent_event}, kept for existing clients.
      *
      * @param message user prompt content
      * @param chatId conversation identifier
-     * @return SSE emitter that streams the agent response
+     * @param lastEventId id of the last event received before a reconnect, resumes that run
+     * @return typed server-sent events with response chunks
      */
-    @GetMapping(value = "/love_app/chat/sse_emitter")
-    public SseEmitter doChatWithLoveAppServerSseEmitter(String message, String chatId) {
+    @GetMapping(value = "/love_app/chat/sse_emitter", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> doChatWithLoveAppServerSseEmitter(String message, String chatId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
         log.info("[AiController] Emitter");
-        // Use a generous timeout so longer conversations are not interrupted
-        SseEmitter sseEmitter = new SseEmitter(180000L); // 3-minute timeout
-        // Subscribe to the reactive stream and forward each chunk to the emitter
-        loveApp.doChatByStream(message, chatId)
-                .subscribe(chunk -> {
-                    try {
-                        sseEmitter.send(Objects.requireNonNull(chunk, "sseChunk"));
-                    } catch (IOException e) {
-                        sseEmitter.completeWithError(e);
-                    }
-                }, sseEmitter::completeWithError, sseEmitter::complete);
-        // Return the emitter to the caller
-        return sseEmitter;
+        return streamLoveApp(message, chatId, lastEventId);
     }
 
     /**
@@ -122,22 +151,34 @@ public class AiController {
      *
      * @param message user prompt content
      * @param chatId conversation identifier used to retain state across turns
-     * @return SSE emitter that streams the agent response
+     * @param lastEventId id of the last event received before a reconnect, resumes that run
+     * @return typed server-sent events of the agent run
      */
-    @GetMapping("/manus/chat")
-    public SseEmitter doChatWithManus(String message, String chatId) {
+    @GetMapping(value = "/manus/chat", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> doChatWithManus(String message, String chatId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
         log.info("[AiController] Manus - chatId: {}", chatId);
         
         // Fall back to a default chatId when none is provided
         if (chatId == null || chatId.isEmpty()) {
             chatId = "default";
         }
+        String owner = "manus:" + chatId;
+        // A reconnect continues the interrupted run instead of starting the agent again
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return agentEventStreams.resume(lastEventId, owner);
+        }
         
         // Retrieve or create the Manus agent for this chat session
-        HkuManus hkuManus = manusCache.computeIfAbsent(chatId,
-            id -> new HkuManus(allTools, toolCallbackProvider, dashscopeChatModel));
+        HkuManus hkuManus = manusSessionCache.getOrCreate(chatId, id -> {
+            HkuManus agent = new HkuManus(hkuManusDefinition);
+            agent.setRunScheduler(agentRunScheduler);
+            agent.setStepBudgetLearner(stepBudgetLearner);
+            agent.setContextCompactor(contextCompactor);
+            return agent;
+        });
         
-        return hkuManus.runStream(message);
+        return startAgentRun(hkuManus, message, owner);
     }
     
     /**
@@ -151,9 +192,81 @@ public class AiController {
         if (chatId == null || chatId.isEmpty()) {
             chatId = "default";
         }
-        manusCache.remove(chatId);
+        manusSessionCache.remove(chatId);
         log.info("[AiController] Cleared chat history for chatId: {}", chatId);
         return "Chat history cleared.";
     }
-}
 
+    /**
+     * Report load and latency of the agent run scheduler.
+     *
+     * @return running/queued counts, rejections, and queue-wait and run-time statistics
+     */
+    @GetMapping("/agent/stats")
+    public Map<String, Object> agentSchedulerStats() {
+        return agentRunScheduler.snapshot();
+    }
+
+    /**
+     * Report cached chat sessions per agent type, their estimated heap use and evictions.
+     *
+     * @return session statistics keyed by agent name
+     */
+    @GetMapping("/agent/sessions")
+    public Map<String, Map<String, Object>> agentSessionStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        stats.put("hkuManus", manusSessionCache.snapshot());
+        stats.put("loveCampusAgent", loveSessionCache.snapshot());
+        return stats;
+    }
+
+    /**
+     * Report per-tool hit rates of the shared tool result cache.
+     *
+     * @return hits, misses, hit rate and size keyed by tool name
+     */
+    @GetMapping("/tools/cache/stats")
+    public Map<String, Map<String, Object>> toolCacheStats() {
+        return toolResultCache.snapshot();
+    }
+
+    /**
+     * Start an agent turn whose events outlive the connection, so the client can resume it.
+     */
+    private Flux<ServerSentEvent<String>> startAgentRun(BaseAgent agent, String message, String owner) {
+        AgentEventStream events = agentEventStreams.start(owner);
+        try {
+            agent.runStream(message, events);
+        } catch (RuntimeException e) {
+            agentEventStreams.discard(events);
+            throw e;
+        }
+        return events.toServerSentEvents(0);
+    }
+
+    private Flux<ServerSentEvent<String>> streamLoveApp(String message, String chatId, String lastEventId) {
+        String owner = "love-app:" + chatId;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return agentEventStreams.resume(lastEventId, owner);
+        }
+        Flux<AgentEvent> answer = loveApp.doChatByStream(message, chatId);
+        AgentEventStream events = agentEventStreams.start(owner);
+        events.relay(answer);
+        return events.toServerSentEvents(0);
+    }
+
+    /**
+     * Answer with HTTP 429 when the agent scheduler is saturated, instead of queueing without bound.
+     *
+     * @param e rejection raised by the scheduler
+     * @return 429 response with a short retry hint
+     */
+    @ExceptionHandler(AgentRunRejectedException.class)
+    public ResponseEntity<String> handleAgentRunRejected(AgentRunRejectedException e) {
+        log.warn("[AiController] {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+}
@@ -0,0 +1,330 @@
+package com.hku.hkuaiagent.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index ranking documents with Okapi BM25, for the lexical half of {@link HybridVectorStore}.
+ * <p>
+ * Each document is indexed by its text plus its {@code filename} and {@code title} metadata, since later chunks of
+ * a course file no longer mention the course code in their text. Latin text is split into lower-cased
+ * alphanumeric words, Chinese into single characters and bigrams. A course code such as {@code COMP7103B} is also
+ * indexed under its prefix {@code comp7103}, so a question about "COMP7103" finds every version of the course.
+ * <p>
+ * Replacing or deleting a document only clears its live bit; its postings stay behind and are skipped.
+ */
+final class Bm25Index {
+
+    private static final float K1 = 1.2f;
+
+    private static final float B = 0.75f;
+
+    // Words that say nothing about what a question is about
+    private static final Set<String> STOPWORDS = Set.of("a", "an", "the", "is", "are", "was", "were", "be", "of",
+            "for", "in", "on", "at", "to", "and", "or", "what", "who", "whom", "when", "where", "which", "how", "why",
+            "do", "does", "did", "i", "me", "my", "it", "its", "this", "that", "with", "about", "please", "tell", "can",
+            "could", "you", "your", "there", "any");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    private final Map<String, Integer> rowById = new HashMap<>();
+
+    private final BitSet live = new BitSet();
+
+    private final ColumnarMetadata metadata = new ColumnarMetadata();
+
+    private final List<Document> documents = new ArrayList<>();
+
+    private int[] lengths = new int[0];
+
+    private long liveLength;
+
+    record Hit(Document document, float score) {
+    }
+
+    void add(List<Document> batch) {
+        lock.writeLock().lock();
+        try {
+            for (Document document : batch) {
+                remove(document.getId());
+                List<String> terms = tokenize(indexedText(document));
+                int row = metadata.append(document.getMetadata());
+                documents.add(document);
+                if (row >= lengths.length) {
+                    lengths = Arrays.copyOf(lengths, Math.max(16, lengths.length * 2));
+                }
+                lengths[row] = terms.size();
+                liveLength += terms.size();
+                Map<String, Integer> frequencies = new LinkedHashMap<>();
+                for (String term : terms) {
+                    frequencies.merge(term, 1, Integer::sum);
+                }
+                frequencies.forEach((term, frequency) -> postings.computeIfAbsent(term, key -> new Postings()).add(row, frequency));
+                live.set(row);
+                rowById.put(document.getId(), row);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void delete(List<String> ids) {
+        lock.writeLock().lock();
+        try {
+            ids.forEach(this::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void delete(Filter.Expression filterExpression) {
+        lock.writeLock().lock();
+        try {
+            BitSet deleted = metadata.select(filterExpression);
+            deleted.and(live);
+            for (int row = deleted.nextSetBit(0); row >= 0; row = deleted.nextSetBit(row + 1)) {
+                remove(documents.get(row).getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Identifiers in {@code query}, such as course codes, that occur in at least one indexed document. A sectioned
+     * code is kept as written ({@code comp7103d}), or reduced to its course prefix when that section is not indexed.
+     */
+    List<String> knownIdentifiers(String query) {
+        List<String> identifiers = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String term : tokenize(query, false)) {
+                if (!DocumentSnapshot.COURSE_CODE.matcher(term).matches()) {
+                    continue;
+                }
+                String known = postings.containsKey(term) ? term
+                        : term.length() == 9 && postings.containsKey(term.substring(0, 8)) ? term.substring(0, 8)
+                        : null;
+                if (known != null && !identifiers.contains(known)) {
+                    identifiers.add(known);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return identifiers;
+    }
+
+    /**
+     * The {@code topK} best documents for {@code query}, best first.
+     *
+     * @param filterExpression metadata filter, or null
+     * @param required         terms a document must contain at least one of, or empty for none
+     */
+    List<Hit> search(String query, int topK, @Nullable Filter.Expression filterExpression, List<String> required) {
+        Map<String, Integer> queryTerms = new LinkedHashMap<>();
+        for (String term : tokenize(query)) {
+            queryTerms.merge(term, 1, Integer::sum);
+        }
+        lock.readLock().lock();
+        try {
+            int count = rowById.size();
+            if (count == 0 || queryTerms.isEmpty()) {
+                return List.of();
+            }
+            BitSet candidates = filterExpression != null ? metadata.select(filterExpression) : (BitSet) live.clone();
+            candidates.and(live);
+            if (!required.isEmpty()) {
+                BitSet containing = new BitSet();
+                for (String term : required) {
+                    Postings termPostings = postings.get(term);
+                    if (termPostings != null) {
+                        termPostings.rows(containing);
+                    }
+                }
+                candidates.and(containing);
+            }
+            if (candidates.isEmpty()) {
+                return List.of();
+            }
+
+            float averageLength = (float) liveLength / count;
+            float[] scores = new float[documents.size()];
+            for (Map.Entry<String, Integer> entry : queryTerms.entrySet()) {
+                Postings termPostings = postings.get(entry.getKey());
+                if (termPostings == null) {
+                    continue;
+                }
+                int documentFrequency = termPostings.liveCount(live);
+                if (documentFrequency == 0) {
+                    continue;
+                }
+                float idf = (float) Math.log(1 + (count - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                for (int i = 0; i < termPostings.size; i++) {
+                    int row = termPostings.rows[i];
+                    if (candidates.get(row)) {
+                        float frequency = termPostings.frequencies[i];
+                        float norm = K1 * (1 - B + B * lengths[row] / averageLength);
+                        scores[row] += entry.getValue() * idf * frequency * (K1 + 1) / (frequency + norm);
+                    }
+                }
+            }
+
+            PriorityQueue<Hit> best = new PriorityQueue<>(topK + 1, (a, b) -> Float.compare(a.score(), b.score()));
+            for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                if (scores[row] <= 0) {
+                    continue;
+                }
+                if (best.size() < topK) {
+                    best.add(new Hit(documents.get(row), scores[row]));
+                } else if (scores[row] > best.peek().score()) {
+                    best.poll();
+                    best.add(new Hit(documents.get(row), scores[row]));
+                }
+            }
+            List<Hit> hits = new ArrayList<>(best);
+            hits.sort((a, b) -> Float.compare(b.score(), a.score()));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lower-cased index terms of {@code text}; see the class comment.
+     */
+    static List<String> tokenize(String text) {
+        return tokenize(text, true);
+    }
+
+    /**
+     * Rough number of meaningful words in {@code text}: Latin words other than common function words, plus one for
+     * every two Chinese characters.
+     */
+    static double contentWords(String text) {
+        double words = 0;
+        for (String term : tokenize(text, false)) {
+            if (Character.UnicodeScript.of(term.codePointAt(0)) != Character.UnicodeScript.HAN) {
+                words += STOPWORDS.contains(term) ? 0 : 1;
+            } else if (term.codePointCount(0, term.length()) == 1) {
+                words += 0.5;
+            }
+        }
+        return words;
+    }
+
+    private static List<String> tokenize(String text, boolean coursePrefixes) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String lower = text.toLowerCase();
+        int i = 0;
+        while (i < lower.length()) {
+            int codePoint = lower.codePointAt(i);
+            if (Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HAN) {
+                int start = i;
+                while (i < lower.length() && Character.UnicodeScript.of(lower.codePointAt(i)) == Character.UnicodeScript.HAN) {
+                    i += Character.charCount(lower.codePointAt(i));
+                }
+                addHan(lower.substring(start, i), terms);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < lower.length() && Character.isLetterOrDigit(lower.codePointAt(i))
+                        && Character.UnicodeScript.of(lower.codePointAt(i)) != Character.UnicodeScript.HAN) {
+                    i += Character.charCount(lower.codePointAt(i));
+                }
+                String word = lower.substring(start, i);
+                terms.add(word);
+                // Also index the course prefix of a sectioned code: comp7103b -> comp7103
+                if (coursePrefixes && word.length() == 9 && DocumentSnapshot.COURSE_CODE.matcher(word).matches()) {
+                    terms.add(word.substring(0, 8));
+                }
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+        return terms;
+    }
+
+    private static void addHan(String run, List<String> terms) {
+        int[] characters = run.codePoints().toArray();
+        for (int i = 0; i < characters.length; i++) {
+            terms.add(new String(characters, i, 1));
+            if (i + 1 < characters.length) {
+                terms.add(new String(characters, i, 2));
+            }
+        }
+    }
+
+    private static String indexedText(Document document) {
+        StringBuilder text = new StringBuilder();
+        for (String key : new String[]{"filename", "title"}) {
+            Object value = document.getMetadata().get(key);
+            if (value != null) {
+                text.append(value).append('\n');
+            }
+        }
+        return text.append(document.getText() != null ? document.getText() : "").toString();
+    }
+
+    private void remove(String id) {
+        Integer row = rowById.remove(id);
+        if (row != null) {
+            live.clear(row);
+            liveLength -= lengths[row];
+        }
+    }
+
+    /**
+     * Rows containing a term, in insertion order, with the term's frequency in each.
+     */
+    private static final class Postings {
+
+        private int[] rows = new int[4];
+
+        private int[] frequencies = new int[4];
+
+        private int size;
+
+        void add(int row, int frequency) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            rows[size] = row;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        void rows(BitSet into) {
+            for (int i = 0; i < size; i++) {
+                into.set(rows[i]);
+            }
+        }
+
+        int liveCount(BitSet live) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (live.get(rows[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.hku.hkuaiagent.rag;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Document metadata stored column-wise and indexed by value: one dictionary-encoded {@code int[]} per key, plus a
+ * row bitmap per distinct value.
+ * <p>
+ * Metadata values repeat heavily (a handful of categories and semesters across thousands of chunks), so each
+ * distinct value is stored once and its bitmap is dense. {@link #select} turns a filter into bitmap operations:
+ * a comparison ORs the bitmaps of the dictionary values it accepts, and {@code AND}/{@code OR}/{@code NOT} become
+ * the matching set operations, so a filtered search only visits candidate rows. Rows are append-only, so the
+ * bitmaps never need updating. Not thread-safe; the owning store guards it.
+ */
+final class ColumnarMetadata {
+
+    private static final int ABSENT = -1;
+
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+
+    private int rows;
+
+    /**
+     * Append one row.
+     *
+     * @return the row index
+     */
+    int append(Map<String, Object> metadata) {
+        int row = rows++;
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            if (entry.getValue() != null) {
+                columns.computeIfAbsent(entry.getKey(), key -> new Column()).set(row, entry.getValue());
+            }
+        }
+        return row;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    /**
+     * Metadata of one row as a new map.
+     */
+    Map<String, Object> row(int row) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        for (Map.Entry<String, Column> entry : columns.entrySet()) {
+            Object value = entry.getValue().get(row);
+            if (value != null) {
+                metadata.put(entry.getKey(), value);
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Rows matching a filter, with the same semantics as {@link MetadataFilter}. Deleted rows are included; callers
+     * intersect the result with their live rows.
+     *
+     * @param expression filter, or null to select every row
+     * @return a new bitmap the caller may modify
+     */
+    BitSet select(Filter.Expression expression) {
+        if (expression == null) {
+            return all();
+        }
+        return switch (expression.type()) {
+            case AND -> {
+                BitSet left = select(MetadataFilter.unwrap(expression.left()));
+                if (!left.isEmpty()) {
+                    left.and(select(MetadataFilter.unwrap(expression.right())));
+                }
+                yield left;
+            }
+            case OR -> {
+                BitSet left = select(MetadataFilter.unwrap(expression.left()));
+                left.or(select(MetadataFilter.unwrap(expression.right())));
+                yield left;
+            }
+            case NOT -> {
+                BitSet all = all();
+                all.andNot(select(MetadataFilter.unwrap(expression.left())));
+                yield all;
+            }
+            default -> {
+                Column column = columns.get(MetadataFilter.key(expression.left()));
+                boolean matchesMissing = MetadataFilter.matchesMissing(expression);
+                if (column == null) {
+                    yield matchesMissing ? all() : new BitSet();
+                }
+                BitSet selected = column.select(MetadataFilter.valueTest(expression));
+                if (matchesMissing) {
+                    BitSet missing = all();
+                    missing.andNot(column.present);
+                    selected.or(missing);
+                }
+                yield selected;
+            }
+        };
+    }
+
+    private BitSet all() {
+        BitSet all = new BitSet(rows);
+        all.set(0, rows);
+        return all;
+    }
+
+    private static final class Column {
+
+        private final List<Object> dictionary = new ArrayList<>();
+
+        private final Map<Object, Integer> codeByValue = new HashMap<>();
+
+        // Rows holding each dictionary value, by code
+        private final List<BitSet> rowsByCode = new ArrayList<>();
+
+        private final BitSet present = new BitSet();
+
+        private int[] codes = new int[0];
+
+        void set(int row, Object value) {
+            if (row >= codes.length) {
+                int previous = codes.length;
+                codes = Arrays.copyOf(codes, Math.max(16, Math.max(row + 1, previous * 2)));
+                Arrays.fill(codes, previous, codes.length, ABSENT);
+            }
+            int code = codeByValue.computeIfAbsent(value, key -> {
+                dictionary.add(key);
+                rowsByCode.add(new BitSet());
+                return dictionary.size() - 1;
+            });
+            codes[row] = code;
+            rowsByCode.get(code).set(row);
+            present.set(row);
+        }
+
+        Object get(int row) {
+            int code = row < codes.length ? codes[row] : ABSENT;
+            return code == ABSENT ? null : dictionary.get(code);
+        }
+
+        /**
+         * Union of the bitmaps of the values accepted by {@code test}, each distinct value tested once.
+         */
+        BitSet select(Predicate<Object> test) {
+            BitSet selected = new BitSet();
+            for (int code = 0; code < dictionary.size(); code++) {
+                if (test.test(dictionary.get(code))) {
+                    selected.or(rowsByCode.get(code));
+                }
+            }
+            return selected;
+        }
+    }
+}
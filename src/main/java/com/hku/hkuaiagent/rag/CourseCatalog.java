@@ -0,0 +1,329 @@
+package com.hku.hkuaiagent.rag;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Typed course facts parsed once from the {@code course_*.md} files of a {@link DocumentSnapshot}.
+ * <p>
+ * Courses are indexed by code, prefix (all versions of a course) and semester. Queries start from the
+ * smallest matching index, e.g. {@code catalog.query().prefix("COMP7103").sortedBy(CourseRecord.BY_EXAM_DATE).list()}.
+ */
+public final class CourseCatalog {
+
+    // Labels of the "Basic Information" and "Key Dates" sections; some documents put several on one line
+    private static final List<String> LABELS = List.of("Course Code:", "Course Name:", "Instructor:", "Semester:",
+            "Category:", "Pre-requisites:", "Compatibility:", "Moodle Course Website:", "Add/Drop Period:",
+            "Examination Period:", "Tentative Exam Date:");
+
+    // "11 Dec 2025", "1 September, 2025" or the start of a range such as "3 - 23 December 2025"
+    private static final Pattern DATE = Pattern.compile("(\\d{1,2})(?:\\s*-\\s*\\d{1,2})?\\s+([A-Za-z]{3,9}),?\\s+(\\d{4})");
+
+    private static final Pattern DATE_RANGE = Pattern.compile("\\d{1,2}\\s*-\\s*\\d{1,2}\\s+[A-Za-z]{3,9}\\s+\\d{4}");
+
+    private static final Pattern SECTION_HEADING = Pattern.compile("^\\d+\\.\\s+\\S.*");
+
+    private final List<CourseRecord> courses;
+
+    private final Map<String, CourseRecord> byCode = new LinkedHashMap<>();
+
+    private final Map<String, List<CourseRecord>> byPrefix = new LinkedHashMap<>();
+
+    private final Map<String, List<CourseRecord>> bySemester = new LinkedHashMap<>();
+
+    CourseCatalog(List<CourseRecord> courses) {
+        List<CourseRecord> sorted = new ArrayList<>(courses);
+        sorted.sort(CourseRecord.BY_CODE);
+        this.courses = List.copyOf(sorted);
+        for (CourseRecord course : this.courses) {
+            byCode.put(course.code(), course);
+            byPrefix.computeIfAbsent(course.prefix(), key -> new ArrayList<>()).add(course);
+            bySemester.computeIfAbsent(course.semester().toUpperCase(Locale.ROOT), key -> new ArrayList<>()).add(course);
+        }
+        byPrefix.replaceAll((key, list) -> Collections.unmodifiableList(list));
+        bySemester.replaceAll((key, list) -> Collections.unmodifiableList(list));
+    }
+
+    /**
+     * Parse every course file of a snapshot; other files are skipped.
+     */
+    static CourseCatalog from(List<DocumentSnapshot.SourceFile> files) {
+        List<CourseRecord> courses = new ArrayList<>();
+        for (DocumentSnapshot.SourceFile file : files) {
+            if (file.courseCode() != null && file.content() != null) {
+                courses.add(parse(file));
+            }
+        }
+        return new CourseCatalog(courses);
+    }
+
+    /**
+     * All courses ordered by code.
+     */
+    public List<CourseRecord> all() {
+        return courses;
+    }
+
+    /**
+     * @param code full course code such as {@code COMP7103A}, case-insensitive
+     * @return the course, or null when it is not in the catalog
+     */
+    public CourseRecord find(String code) {
+        return code == null ? null : byCode.get(code.toUpperCase(Locale.ROOT));
+    }
+
+    public Query query() {
+        return new Query();
+    }
+
+    /**
+     * Filter over the catalog indexes. Unset criteria match every course.
+     */
+    public final class Query {
+
+        private String prefix;
+
+        private String semester;
+
+        private String instructor;
+
+        private Comparator<CourseRecord> order = CourseRecord.BY_CODE;
+
+        private Query() {
+        }
+
+        /**
+         * Only versions of this course, e.g. {@code COMP7103}.
+         */
+        public Query prefix(String prefix) {
+            this.prefix = prefix == null ? null : prefix.toUpperCase(Locale.ROOT);
+            return this;
+        }
+
+        /**
+         * Only courses in {@code S1} or {@code S2}.
+         */
+        public Query semester(String semester) {
+            this.semester = semester == null ? null : semester.toUpperCase(Locale.ROOT);
+            return this;
+        }
+
+        /**
+         * Only courses whose instructor contains this text, ignoring case.
+         */
+        public Query instructor(String instructor) {
+            this.instructor = instructor == null ? null : instructor.toLowerCase(Locale.ROOT);
+            return this;
+        }
+
+        public Query sortedBy(Comparator<CourseRecord> order) {
+            this.order = order;
+            return this;
+        }
+
+        public List<CourseRecord> list() {
+            List<CourseRecord> candidates = prefix != null ? byPrefix.getOrDefault(prefix, List.of())
+                    : semester != null ? bySemester.getOrDefault(semester, List.of())
+                    : courses;
+            List<CourseRecord> result = new ArrayList<>();
+            for (CourseRecord course : candidates) {
+                if (prefix != null && !prefix.equals(course.prefix())) {
+                    continue;
+                }
+                if (semester != null && !semester.equalsIgnoreCase(course.semester())) {
+                    continue;
+                }
+                if (instructor != null && (course.instructor() == null
+                        || !course.instructor().toLowerCase(Locale.ROOT).contains(instructor))) {
+                    continue;
+                }
+                result.add(course);
+            }
+            result.sort(order);
+            return result;
+        }
+    }
+
+    /* ===================== Parsing ===================== */
+
+    static CourseRecord parse(DocumentSnapshot.SourceFile file) {
+        String content = file.content();
+        String code = file.courseCode();
+        String prefix = DocumentSnapshot.coursePrefix(code);
+        String name = field(content, "Course Name:");
+        if (name == null) {
+            name = nameFromFilename(file.filename());
+        }
+        String examPeriod = field(content, "Examination Period:");
+        if (examPeriod == null) {
+            examPeriod = examPeriodFromAssessment(content);
+        }
+        LocalDate examDate = firstDate(scheduleColumn(content, "Exam", 1));
+        if (examDate == null) {
+            examDate = firstDate(field(content, "Tentative Exam Date:"));
+        }
+        if (examDate == null) {
+            examDate = firstDate(examPeriod);
+        }
+        String addDropPeriod = field(content, "Add/Drop Period:");
+        return new CourseRecord(code, prefix, code.substring(prefix.length()), name, file.semester(),
+                field(content, "Instructor:"), schedule(content), examPeriod, examDate, addDropPeriod,
+                lastDate(addDropPeriod), introduction(content), file.filename());
+    }
+
+    /**
+     * Value after {@code label} up to the end of the line or the next known label, null when absent or TBA.
+     */
+    static String field(String content, String label) {
+        int start = content.indexOf(label);
+        if (start < 0) {
+            return null;
+        }
+        start += label.length();
+        int end = content.indexOf('\n', start);
+        if (end < 0) {
+            end = content.length();
+        }
+        for (String other : LABELS) {
+            int next = content.indexOf(other, start);
+            if (next >= 0 && next < end) {
+                end = next;
+            }
+        }
+        String value = content.substring(start, end).trim();
+        return value.isEmpty() || value.equalsIgnoreCase("[TBA]") || value.equalsIgnoreCase("TBA") ? null : value;
+    }
+
+    private static String examPeriodFromAssessment(String content) {
+        for (String line : content.split("\n")) {
+            if (line.contains("Written Exam")) {
+                Matcher matcher = DATE_RANGE.matcher(line);
+                if (matcher.find()) {
+                    return matcher.group();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Weekly slots of the "Session N" rows, e.g. {@code Thu 9:00am - 12:00pm at CYCC-501 (10 sessions, 4 Sep 2025 to 13 Nov 2025)}.
+     */
+    private static String schedule(String content) {
+        Set<String> slots = new LinkedHashSet<>();
+        String first = null;
+        String last = null;
+        int sessions = 0;
+        for (String line : content.split("\n")) {
+            String[] columns = line.trim().split("\t");
+            if (columns.length < 4 || !columns[0].matches("Session \\d+") || firstDate(columns[1]) == null) {
+                continue;
+            }
+            String date = columns[1].replaceAll("\\(.*\\)", "").trim();
+            int weekdayStart = columns[1].indexOf('(');
+            String weekday = weekdayStart >= 0 ? columns[1].substring(weekdayStart + 1, columns[1].indexOf(')', weekdayStart)) + " " : "";
+            slots.add(weekday + columns[2].trim() + " at " + columns[3].trim());
+            if (first == null) {
+                first = date;
+            }
+            last = date;
+            sessions++;
+        }
+        if (slots.isEmpty()) {
+            return null;
+        }
+        return String.join("; ", slots) + " (" + sessions + " sessions, " + first + " to " + last + ")";
+    }
+
+    private static String scheduleColumn(String content, String rowLabel, int column) {
+        for (String line : content.split("\n")) {
+            String[] columns = line.trim().split("\t");
+            if (columns.length > column && columns[0].trim().equals(rowLabel)) {
+                return columns[column];
+            }
+        }
+        return null;
+    }
+
+    private static String introduction(String content) {
+        StringBuilder text = new StringBuilder();
+        boolean inSection = false;
+        for (String line : content.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("2. Course Introduction")) {
+                inSection = true;
+                continue;
+            }
+            if (inSection) {
+                if (SECTION_HEADING.matcher(trimmed).matches()) {
+                    break;
+                }
+                if (!trimmed.isEmpty()) {
+                    text.append(text.isEmpty() ? "" : " ").append(trimmed);
+                }
+            }
+        }
+        String summary = text.toString().replaceAll("\\s+", " ").trim();
+        return summary.isEmpty() ? null : summary;
+    }
+
+    private static String nameFromFilename(String filename) {
+        String[] parts = filename.replace(".md", "").split("_");
+        if (parts.length < 3) {
+            return null;
+        }
+        return String.join(" ", List.of(parts).subList(2, parts.length - 1));
+    }
+
+    static LocalDate firstDate(String text) {
+        List<LocalDate> dates = dates(text);
+        return dates.isEmpty() ? null : dates.get(0);
+    }
+
+    static LocalDate lastDate(String text) {
+        List<LocalDate> dates = dates(text);
+        return dates.isEmpty() ? null : dates.get(dates.size() - 1);
+    }
+
+    private static List<LocalDate> dates(String text) {
+        List<LocalDate> dates = new ArrayList<>();
+        if (text == null) {
+            return dates;
+        }
+        Matcher matcher = DATE.matcher(text);
+        while (matcher.find()) {
+            Month month = month(matcher.group(2));
+            if (month == null) {
+                continue;
+            }
+            try {
+                dates.add(LocalDate.of(Integer.parseInt(matcher.group(3)), month, Integer.parseInt(matcher.group(1))));
+            } catch (DateTimeException ignored) {
+                // Not a calendar date, e.g. a typo in the document
+            }
+        }
+        return dates;
+    }
+
+    private static Month month(String name) {
+        String prefix = name.substring(0, 3).toUpperCase(Locale.ROOT);
+        for (Month month : Month.values()) {
+            if (month.name().startsWith(prefix)) {
+                return month;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,40 @@
+package com.hku.hkuaiagent.rag;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+
+/**
+ * Facts about one course version, extracted from its {@code course_*.md} file at ingestion time.
+ * Fields the document does not state (e.g. schedules marked TBA) are null.
+ *
+ * @param code            full course code, e.g. {@code COMP7103A}
+ * @param prefix          code without the version letter, e.g. {@code COMP7103}
+ * @param variant         version letter, e.g. {@code A}; empty for courses without versions
+ * @param name            course name
+ * @param semester        {@code S1}, {@code S2} or {@code unknown}
+ * @param instructor      instructor as written in the document
+ * @param schedule        weekly slot(s) and date range of the teaching sessions
+ * @param examPeriod      examination period as written in the document
+ * @param examDate        exam date when scheduled, otherwise the first day of the examination period
+ * @param addDropPeriod   add/drop period as written in the document
+ * @param addDropDeadline last day of the add/drop period
+ * @param summary         course introduction
+ * @param filename        source document
+ */
+public record CourseRecord(String code, String prefix, String variant, String name, String semester, String instructor,
+                           String schedule, String examPeriod, LocalDate examDate, String addDropPeriod,
+                           LocalDate addDropDeadline, String summary, String filename) {
+
+    public static final Comparator<CourseRecord> BY_CODE = Comparator.comparing(CourseRecord::code);
+
+    /**
+     * Earliest exam first, courses without a known exam date last.
+     */
+    public static final Comparator<CourseRecord> BY_EXAM_DATE = Comparator
+            .comparing(CourseRecord::examDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(BY_CODE);
+
+    public static final Comparator<CourseRecord> BY_ADD_DROP_DEADLINE = Comparator
+            .comparing(CourseRecord::addDropDeadline, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(BY_CODE);
+}
@@ -0,0 +1,219 @@
+package com.hku.hkuaiagent.rag;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable result of one scan of the packaged markdown documents, shared by every consumer until the next reload.
+ * <p>
+ * Holds the parsed {@link Document} chunks and the raw file content, indexed by filename, category, semester and
+ * course prefix (e.g. {@code COMP7103} for all of its versions A/B/C/D), so per-request lookups are map reads.
+ * Course files are also parsed into a typed {@link CourseCatalog}.
+ */
+public final class DocumentSnapshot {
+
+    /**
+     * One markdown file as packaged.
+     *
+     * @param filename   e.g. {@code course_COMP7103A_DataMining_2025-26S1.md}
+     * @param category   text before the first underscore, {@code general} when there is none
+     * @param semester   {@code S1}, {@code S2} or {@code unknown}
+     * @param courseCode e.g. {@code COMP7103A}, null for non-course files
+     * @param content    full file content
+     */
+    public record SourceFile(String filename, String category, String semester, String courseCode, String content) {
+    }
+
+    /**
+     * Course code as written in a question or a document: four letters and four digits with an optional section
+     * letter, e.g. {@code COMP7103} or {@code comp7103b}. Matches whole words in free text as well as single terms.
+     */
+    public static final Pattern COURSE_CODE = Pattern.compile("(?<!\\p{Alnum})[a-z]{4}\\d{4}[a-z]?(?!\\p{Alnum})",
+            Pattern.CASE_INSENSITIVE);
+
+    static final DocumentSnapshot EMPTY = new DocumentSnapshot(0, 0, List.of(), List.of());
+
+    private final long version;
+
+    private final long fingerprint;
+
+    private final List<SourceFile> files;
+
+    private final List<Document> documents;
+
+    private final Map<String, List<Document>> byFilename;
+
+    private final Map<String, List<Document>> byCategory;
+
+    private final Map<String, List<Document>> bySemester;
+
+    private final Map<String, List<Document>> byCoursePrefix;
+
+    private final Map<String, List<SourceFile>> filesByCoursePrefix;
+
+    private final CourseCatalog courses;
+
+    DocumentSnapshot(long version, long fingerprint, List<SourceFile> files, List<Document> documents) {
+        this.version = version;
+        this.fingerprint = fingerprint;
+        this.files = List.copyOf(files);
+        this.documents = List.copyOf(documents);
+        Map<String, SourceFile> fileByName = new LinkedHashMap<>();
+        for (SourceFile file : files) {
+            fileByName.put(file.filename(), file);
+        }
+        this.byFilename = index(documents, document -> asString(document.getMetadata().get("filename")));
+        this.byCategory = index(documents, document -> asString(document.getMetadata().get("category")));
+        this.bySemester = index(documents, document -> asString(document.getMetadata().get("semester")));
+        this.byCoursePrefix = index(documents, document -> {
+            SourceFile file = fileByName.get(asString(document.getMetadata().get("filename")));
+            return file != null ? coursePrefix(file.courseCode()) : null;
+        });
+        this.filesByCoursePrefix = index(files, file -> coursePrefix(file.courseCode()));
+        this.courses = CourseCatalog.from(this.files);
+    }
+
+    /**
+     * Knowledge-base version, increased by the loader whenever a reload finds different content.
+     */
+    public long version() {
+        return version;
+    }
+
+    long fingerprint() {
+        return fingerprint;
+    }
+
+    public List<Document> documents() {
+        return documents;
+    }
+
+    public List<SourceFile> files() {
+        return files;
+    }
+
+    /**
+     * Structured facts of every course file in this snapshot.
+     */
+    public CourseCatalog courses() {
+        return courses;
+    }
+
+    public List<Document> byFilename(String filename) {
+        return lookup(byFilename, filename);
+    }
+
+    public List<Document> byCategory(String category) {
+        return lookup(byCategory, category);
+    }
+
+    /**
+     * @param semester {@code S1} or {@code S2}, case-insensitive
+     */
+    public List<Document> bySemester(String semester) {
+        return lookup(bySemester, semester);
+    }
+
+    /**
+     * Chunks of every version of a course.
+     *
+     * @param coursePrefix course code without the version letter, e.g. {@code COMP7103}, case-insensitive
+     */
+    public List<Document> byCoursePrefix(String coursePrefix) {
+        return lookup(byCoursePrefix, coursePrefix);
+    }
+
+    /**
+     * Whole files of every version of a course, in filename order.
+     */
+    public List<SourceFile> courseFiles(String coursePrefix) {
+        return lookup(filesByCoursePrefix, coursePrefix);
+    }
+
+    /**
+     * Course code from a filename such as {@code course_COMP7103A_DataMining_2025-26S1.md}.
+     *
+     * @return {@code COMP7103A}, or null when the file is not a course file
+     */
+    static String courseCode(String filename) {
+        if (filename == null || !filename.regionMatches(true, 0, "course_", 0, 7)) {
+            return null;
+        }
+        int end = filename.indexOf('_', 7);
+        return end > 7 ? filename.substring(7, end).toUpperCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * Course codes mentioned in {@code text}, upper-cased, without duplicates, in the order they appear.
+     */
+    public static List<String> courseCodes(String text) {
+        List<String> codes = new ArrayList<>();
+        if (text == null) {
+            return codes;
+        }
+        Matcher matcher = COURSE_CODE.matcher(text);
+        while (matcher.find()) {
+            String code = matcher.group().toUpperCase(Locale.ROOT);
+            if (!codes.contains(code)) {
+                codes.add(code);
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Course code without its trailing version letters: {@code COMP7103A} becomes {@code COMP7103}.
+     */
+    public static String coursePrefix(String courseCode) {
+        if (courseCode == null) {
+            return null;
+        }
+        int end = courseCode.length();
+        while (end > 0 && Character.isLetter(courseCode.charAt(end - 1))) {
+            end--;
+        }
+        return end > 0 ? courseCode.substring(0, end) : courseCode;
+    }
+
+    /**
+     * Version letter of a course file, e.g. {@code A} for {@code course_COMP7103A_…} and {@code COMP7103}.
+     *
+     * @return the letter, an empty string for a course without versions, or null when the file is another course
+     */
+    public static String courseVariant(String filename, String coursePrefix) {
+        String code = courseCode(filename);
+        if (code == null || coursePrefix == null || !coursePrefix(code).equalsIgnoreCase(coursePrefix)) {
+            return null;
+        }
+        return code.substring(coursePrefix.length());
+    }
+
+    private static <T> Map<String, List<T>> index(List<T> items, Function<T, String> key) {
+        Map<String, List<T>> index = new LinkedHashMap<>();
+        for (T item : items) {
+            String value = key.apply(item);
+            if (value != null) {
+                index.computeIfAbsent(value.toUpperCase(Locale.ROOT), k -> new ArrayList<>()).add(item);
+            }
+        }
+        index.replaceAll((k, list) -> Collections.unmodifiableList(list));
+        return Collections.unmodifiableMap(index);
+    }
+
+    private static <T> List<T> lookup(Map<String, List<T>> index, String key) {
+        return key == null ? List.of() : index.getOrDefault(key.toUpperCase(Locale.ROOT), List.of());
+    }
+
+    private static String asString(Object value) {
+        return value == null ? null : String.valueOf(value);
+    }
+}
@@ -0,0 +1,289 @@
+package com.hku.hkuaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only file of chunk embeddings, keyed by a SHA-256 of the embedding model id and the embedded text.
+ * <p>
+ * The file is memory-mapped when opened: startup only walks the record headers, and vectors are read straight
+ * from the mapping when asked for. New vectors are appended to the file and kept on heap until the next open.
+ * A file written for another embedding model is discarded, since its vectors are not comparable.
+ * <p>
+ * Layout (little-endian): magic, format version, model id (length-prefixed UTF-8), then one record per
+ * chunk: 32-byte key, dimension count, float components. A partial record left by a crash is cut off on open.
+ */
+@Slf4j
+public class EmbeddingFileStore implements Closeable {
+
+    private static final int MAGIC = 0x45554B48; // "HKUE"
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int KEY_BYTES = 32;
+
+    private final Path file;
+
+    private final String modelId;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer mapping;
+
+    // Record offsets in the mapping, by key
+    private final Map<String, Integer> mapped = new HashMap<>();
+
+    // Vectors written since the file was opened
+    private final Map<String, float[]> appended = new HashMap<>();
+
+    // Keys looked up or written since the file was opened, i.e. still in use
+    private final Set<String> used = new HashSet<>();
+
+    private long hits;
+
+    private long misses;
+
+    private EmbeddingFileStore(Path file, String modelId) {
+        this.file = file;
+        this.modelId = modelId;
+    }
+
+    /**
+     * Open or create the store.
+     *
+     * @param file    store file; parent directories are created
+     * @param modelId embedding model id, part of every key and checked against the file header
+     */
+    public static EmbeddingFileStore open(Path file, String modelId) throws IOException {
+        EmbeddingFileStore store = new EmbeddingFileStore(file, modelId);
+        store.load();
+        return store;
+    }
+
+    /**
+     * Stored vector for this text, or null when it has not been embedded with this model yet.
+     *
+     * @param content text exactly as sent to the embedding model
+     */
+    public synchronized float[] get(String content) {
+        String key = key(content);
+        float[] vector = appended.get(key);
+        if (vector == null) {
+            Integer offset = mapped.get(key);
+            vector = offset != null ? read(offset) : null;
+        }
+        if (vector == null) {
+            misses++;
+            return null;
+        }
+        used.add(key);
+        hits++;
+        return vector;
+    }
+
+    /**
+     * Persist the vector for this text. Texts that are already stored are ignored.
+     */
+    public synchronized void put(String content, float[] vector) throws IOException {
+        String key = key(content);
+        used.add(key);
+        if (appended.containsKey(key) || mapped.containsKey(key)) {
+            return;
+        }
+        write(channel, key, vector);
+        appended.put(key, vector.clone());
+    }
+
+    public synchronized int size() {
+        return mapped.size() + appended.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Rewrite the file with only the vectors used since it was opened, once stale vectors (from changed or removed
+     * chunks) outnumber them. Meant to be called after a full ingestion, when every live chunk has been looked up.
+     *
+     * @return whether the file was rewritten
+     */
+    public synchronized boolean compactIfStale() throws IOException {
+        int stale = size() - used.size();
+        if (stale <= used.size()) {
+            return false;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out);
+            for (String key : used) {
+                float[] vector = appended.get(key);
+                write(out, key, vector != null ? vector : read(mapped.get(key)));
+            }
+            out.force(true);
+        }
+        channel.close();
+        mapping = null;
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Compacted embedding store {}: dropped {} stale vectors", file, stale);
+        } catch (IOException e) {
+            // e.g. the old mapping is still open on Windows; the stale vectors are only wasted space
+            log.warn("Could not replace embedding store {} with its compacted copy", file, e);
+            Files.deleteIfExists(temp);
+        }
+        Set<String> stillUsed = new HashSet<>(used);
+        load();
+        used.addAll(stillUsed);
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(true);
+            channel.close();
+        }
+        mapping = null;
+    }
+
+    private void load() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        mapped.clear();
+        appended.clear();
+        used.clear();
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Embedding store " + file + " is larger than 2 GB");
+        }
+        int headerLength = size > 0 ? readHeader() : -1;
+        if (headerLength < 0) {
+            if (size > 0) {
+                log.info("Embedding store {} was written for another model or format, starting a new one", file);
+            }
+            channel.truncate(0);
+            writeHeader(channel);
+            return;
+        }
+        mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+        int position = headerLength;
+        while (position + KEY_BYTES + Integer.BYTES <= size) {
+            int dimensions = mapping.getInt(position + KEY_BYTES);
+            long end = position + KEY_BYTES + Integer.BYTES + (long) dimensions * Float.BYTES;
+            if (dimensions <= 0 || end > size) {
+                break;
+            }
+            byte[] key = new byte[KEY_BYTES];
+            mapping.get(position, key);
+            mapped.put(hex(key), position);
+            position = (int) end;
+        }
+        if (position < size) {
+            log.warn("Embedding store {} ends with a partial record, truncating {} bytes", file, size - position);
+            channel.truncate(position);
+        }
+        channel.position(position);
+        log.info("Opened embedding store {} with {} vectors for model {}", file, mapped.size(), modelId);
+    }
+
+    /**
+     * @return header length, or -1 when the header does not match this model and format
+     */
+    private int readHeader() throws IOException {
+        ByteBuffer fixed = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(fixed, 0);
+        fixed.flip();
+        if (fixed.remaining() < 10 || fixed.getInt() != MAGIC || fixed.getInt() != FORMAT_VERSION) {
+            return -1;
+        }
+        int idLength = fixed.getShort() & 0xFFFF;
+        ByteBuffer id = ByteBuffer.allocate(idLength);
+        channel.read(id, 10);
+        if (id.hasRemaining() || !new String(id.array(), StandardCharsets.UTF_8).equals(modelId)) {
+            return -1;
+        }
+        return 10 + idLength;
+    }
+
+    private void writeHeader(FileChannel out) throws IOException {
+        byte[] id = modelId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(10 + id.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putShort((short) id.length).put(id).flip();
+        writeFully(out, header);
+    }
+
+    private static void write(FileChannel out, String key, float[] vector) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(KEY_BYTES + Integer.BYTES + vector.length * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        record.put(unhex(key)).putInt(vector.length);
+        for (float component : vector) {
+            record.putFloat(component);
+        }
+        record.flip();
+        writeFully(out, record);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private float[] read(int offset) {
+        int dimensions = mapping.getInt(offset + KEY_BYTES);
+        float[] vector = new float[dimensions];
+        mapping.slice(offset + KEY_BYTES + Integer.BYTES, dimensions * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .get(vector);
+        return vector;
+    }
+
+    private String key(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelId.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(content.getBytes(StandardCharsets.UTF_8));
+            return hex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    private static byte[] unhex(String hex) {
+        return HexFormat.of().parseHex(hex);
+    }
+}
@@ -0,0 +1,196 @@
+package com.hku.hkuaiagent.rag;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Indexing stage between the text splitter and the vector store.
+ * <p>
+ * Chunks are grouped into batches of at most {@code batchSize} (DashScope accepts 25 texts per embedding call)
+ * and up to {@code parallelism} batches are in flight at once. A failed batch is retried with exponential backoff
+ * and jitter; a batch that still fails is left out of the index and counted, so one bad request does not stop
+ * startup.
+ * <p>
+ * With a {@link PersistentEmbeddingModel} each batch is embedded in one request and the vectors land in its
+ * store, so the following {@code VectorStore.add} only reads them back. Without one, every batch is handed to
+ * the vector store directly, which still embeds its chunks one by one but runs the batches in parallel.
+ */
+@Slf4j
+public class EmbeddingIngestionPipeline {
+
+    /**
+     * Outcome of one ingestion run.
+     *
+     * @param chunks  chunks submitted
+     * @param indexed chunks added to the vector store
+     * @param failed  chunks of batches that failed every attempt
+     * @param retries batch attempts that were repeated
+     * @param elapsed wall-clock time of the run
+     */
+    public record Result(int chunks, int indexed, int failed, int retries, Duration elapsed) {
+
+        public double chunksPerSecond() {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds > 0 ? indexed / seconds : indexed;
+        }
+    }
+
+    private final int batchSize;
+
+    private final int parallelism;
+
+    private final int maxAttempts;
+
+    private final Duration initialBackoff;
+
+    private final Duration maxBackoff;
+
+    private final BatchingStrategy tokenBatching = new TokenCountBatchingStrategy();
+
+    private final Counter indexedCounter;
+
+    private final Counter failedCounter;
+
+    private final Counter retryCounter;
+
+    private final Timer batchTimer;
+
+    public EmbeddingIngestionPipeline(int batchSize, int parallelism, int maxAttempts, Duration initialBackoff,
+                                      Duration maxBackoff, MeterRegistry meterRegistry) {
+        if (batchSize < 1 || parallelism < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("batchSize, parallelism and maxAttempts must be at least 1");
+        }
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.indexedCounter = Counter.builder("hku.rag.ingest.chunks")
+                .description("Chunks added to the vector store")
+                .tag("outcome", "indexed")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("hku.rag.ingest.chunks")
+                .description("Chunks left out of the vector store after every attempt failed")
+                .tag("outcome", "failed")
+                .register(meterRegistry);
+        this.retryCounter = Counter.builder("hku.rag.ingest.retries")
+                .description("Embedding batches attempted again after a failure")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("hku.rag.ingest.batch")
+                .description("Time to embed and store one batch, retries included")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Embed and add every chunk, blocking until all batches have finished.
+     *
+     * @param chunks      split documents
+     * @param embedder    the caching model the vector store embeds with, or null to let the store embed
+     * @param vectorStore target store
+     */
+    public Result ingest(List<Document> chunks, @Nullable PersistentEmbeddingModel embedder, VectorStore vectorStore) {
+        long startedAt = System.nanoTime();
+        List<List<Document>> batches = new ArrayList<>();
+        for (int from = 0; from < chunks.size(); from += batchSize) {
+            batches.add(chunks.subList(from, Math.min(from + batchSize, chunks.size())));
+        }
+        AtomicInteger indexed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger retries = new AtomicInteger();
+        AtomicInteger finishedBatches = new AtomicInteger();
+        int progressStep = Math.max(1, batches.size() / 10);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                Thread.ofVirtual().name("rag-ingest-", 0).factory())) {
+            List<Future<?>> futures = new ArrayList<>(batches.size());
+            for (List<Document> batch : batches) {
+                futures.add(executor.submit(() -> {
+                    long batchStartedAt = System.nanoTime();
+                    if (ingestBatch(batch, embedder, vectorStore, retries)) {
+                        indexed.addAndGet(batch.size());
+                        indexedCounter.increment(batch.size());
+                    } else {
+                        failed.addAndGet(batch.size());
+                        failedCounter.increment(batch.size());
+                    }
+                    batchTimer.record(System.nanoTime() - batchStartedAt, TimeUnit.NANOSECONDS);
+                    int finished = finishedBatches.incrementAndGet();
+                    if (finished % progressStep == 0 || finished == batches.size()) {
+                        log.info("Ingestion progress: {}/{} batches, {} chunks indexed, {} failed",
+                                finished, batches.size(), indexed.get(), failed.get());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Ingestion interrupted after {} of {} chunks", indexed.get(), chunks.size());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ingestion batch failed unexpectedly", e.getCause());
+        }
+
+        Result result = new Result(chunks.size(), indexed.get(), failed.get(), retries.get(),
+                Duration.ofNanos(System.nanoTime() - startedAt));
+        log.info("Ingested {} chunks in {} batches ({} parallel): {} indexed, {} failed, {} retries, {} ms, {} chunks/s",
+                result.chunks(), batches.size(), parallelism, result.indexed(), result.failed(), result.retries(),
+                result.elapsed().toMillis(), String.format("%.1f", result.chunksPerSecond()));
+        return result;
+    }
+
+    private boolean ingestBatch(List<Document> batch, @Nullable PersistentEmbeddingModel embedder,
+                                VectorStore vectorStore, AtomicInteger retries) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (embedder != null) {
+                    embedder.embed(batch, EmbeddingOptionsBuilder.builder().build(), tokenBatching);
+                }
+                vectorStore.add(batch);
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    log.error("Embedding batch of {} chunks failed after {} attempts, leaving it out of the index",
+                            batch.size(), attempt, e);
+                    return false;
+                }
+                Duration backoff = backoff(attempt);
+                log.warn("Embedding batch of {} chunks failed (attempt {}/{}), retrying in {} ms: {}",
+                        batch.size(), attempt, maxAttempts, backoff.toMillis(), e.getMessage());
+                retries.incrementAndGet();
+                retryCounter.increment();
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    /**
+     * Exponential backoff capped at {@code maxBackoff}, with up to 50% jitter so parallel batches do not retry in step.
+     */
+    Duration backoff(int attempt) {
+        long base = initialBackoff.toMillis() << Math.min(attempt - 1, 20);
+        long capped = Math.min(base, maxBackoff.toMillis());
+        long jitter = capped > 1 ? ThreadLocalRandom.current().nextLong(capped / 2 + 1) : 0;
+        return Duration.ofMillis(capped - jitter);
+    }
+}
@@ -4,16 +4,26 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.markdown.MarkdownDocumentReader;
 import org.springframework.ai.reader.markdown.config.MarkdownDocumentReaderConfig;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Loader that ingests HKU markdown documents into vector-ready Document objects.
+ * <p>
+ * The files are scanned and parsed once into a shared {@link DocumentSnapshot}; later calls are served from it
+ * until {@link #reload()} finds different content. Anything derived from the documents (e.g. cached answers) can
+ * be tagged with {@link DocumentSnapshot#version()} and dropped once it moves on.
  */
 @Component
 @Slf4j
@@ -21,42 +31,83 @@ public class HkuAiDocumentLoader {
 
     private final ResourcePatternResolver resourcePatternResolver;
 
+    private volatile DocumentSnapshot snapshot;
+
     public HkuAiDocumentLoader(ResourcePatternResolver resourcePatternResolver) {
         this.resourcePatternResolver = resourcePatternResolver;
     }
 
     /**
-     * Load every markdown document packaged in the application resources.
+     * Every markdown document packaged in the application resources, parsed on first use.
      */
     public List<Document> loadMarkdowns() {
-        List<Document> allDocuments = new ArrayList<>();
+        return snapshot().documents();
+    }
+
+    /**
+     * Current parsed documents with their lookup indexes.
+     */
+    public DocumentSnapshot snapshot() {
+        DocumentSnapshot current = snapshot;
+        return current != null ? current : reload();
+    }
+
+    /**
+     * Scan the resources again. Files are only parsed when their content changed since the last snapshot.
+     *
+     * @return the new snapshot, or the current one when nothing changed or the scan failed
+     */
+    public synchronized DocumentSnapshot reload() {
+        DocumentSnapshot current = snapshot;
         try {
             Resource[] resources = resourcePatternResolver.getResources("classpath:document/*.md");
+            Arrays.sort(resources, Comparator.comparing(Resource::getFilename, Comparator.nullsLast(Comparator.naturalOrder())));
+            Map<String, byte[]> contents = new LinkedHashMap<>();
+            long fingerprint = 1;
             for (Resource resource : resources) {
-                String filename = resource.getFilename();
-                String category = extractCategory(filename);
-                MarkdownDocumentReaderConfig config = MarkdownDocumentReaderConfig.builder()
-                        .withHorizontalRuleCreateDocument(true)
-                        .withIncludeCodeBlock(true)
-                        .withIncludeBlockquote(true)
-                        .withAdditionalMetadata("filename", filename)
-                        .withAdditionalMetadata("category", category)
-                        .withAdditionalMetadata("semester", extractSemester(filename))
-                        .build();
-                MarkdownDocumentReader markdownDocumentReader = new MarkdownDocumentReader(resource, config);
-                allDocuments.addAll(markdownDocumentReader.get());
+                byte[] bytes = resource.getContentAsByteArray();
+                contents.put(resource.getFilename(), bytes);
+                fingerprint = 31 * fingerprint + String.valueOf(resource.getFilename()).hashCode();
+                fingerprint = 31 * fingerprint + Arrays.hashCode(bytes);
             }
-            log.info("Loaded {} markdown documents", allDocuments.size());
-            for (Document d : allDocuments) {
-                log.info("Document loaded: {} -> category={}  semester={}",
-                        d.getMetadata().get("filename"),
-                        d.getMetadata().get("category"),
-                        d.getMetadata().get("semester"));
+            if (current != null && current.fingerprint() == fingerprint) {
+                log.debug("Markdown documents unchanged, keeping knowledge base version {}", current.version());
+                return current;
             }
+            snapshot = parse(contents, fingerprint, current != null ? current.version() + 1 : 1);
+            log.info("Loaded {} markdown documents from {} files, knowledge base version {}",
+                    snapshot.documents().size(), contents.size(), snapshot.version());
+            return snapshot;
         } catch (IOException e) {
             log.error("Failed to load markdown documents", e);
+            return current != null ? current : DocumentSnapshot.EMPTY;
+        }
+    }
+
+    private DocumentSnapshot parse(Map<String, byte[]> contents, long fingerprint, long version) {
+        List<DocumentSnapshot.SourceFile> files = new ArrayList<>();
+        List<Document> allDocuments = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+            String filename = entry.getKey();
+            String category = extractCategory(filename);
+            String semester = extractSemester(filename);
+            MarkdownDocumentReaderConfig config = MarkdownDocumentReaderConfig.builder()
+                    .withHorizontalRuleCreateDocument(true)
+                    .withIncludeCodeBlock(true)
+                    .withIncludeBlockquote(true)
+                    .withAdditionalMetadata("filename", filename)
+                    .withAdditionalMetadata("category", category)
+                    .withAdditionalMetadata("semester", semester)
+                    .build();
+            MarkdownDocumentReader markdownDocumentReader = new MarkdownDocumentReader(new ByteArrayResource(entry.getValue()), config);
+            List<Document> documents = markdownDocumentReader.get();
+            allDocuments.addAll(documents);
+            files.add(new DocumentSnapshot.SourceFile(filename, category, semester,
+                    DocumentSnapshot.courseCode(filename), new String(entry.getValue(), StandardCharsets.UTF_8)));
+            log.debug("Document loaded: {} -> category={}  semester={}  chunks={}",
+                    filename, category, semester, documents.size());
         }
-        return allDocuments;
+        return new DocumentSnapshot(version, fingerprint, files, allDocuments);
     }
 
     private String extractCategory(String filename) {
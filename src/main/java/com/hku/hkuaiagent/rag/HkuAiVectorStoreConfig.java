@@ -1,21 +1,39 @@
 package com.hku.hkuaiagent.rag;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 
 /**
- * Vector store configuration for the HKU assistant using an in-memory SimpleVectorStore.
+ * Vector store configuration for the HKU assistant: an in-memory {@link HnswVectorStore} by default, the
+ * brute-force {@link OffHeapVectorStore} with {@code hku.ai.rag.vector-store.type=offheap}, or SimpleVectorStore
+ * with {@code simple}. Unless {@code hku.ai.rag.hybrid.enabled=false}, the store is wrapped in a
+ * {@link HybridVectorStore}, which adds BM25 ranking and answers course-code lookups without embedding the query.
+ * <p>
+ * Chunk embeddings are persisted in an {@link EmbeddingFileStore}, so a restart only embeds chunks that are new
+ * or changed since the last run. Chunks are indexed through an {@link EmbeddingIngestionPipeline}, which embeds them
+ * in parallel batches with retries. Query embeddings go through a {@link QueryEmbeddingCache}, whose hot entries
+ * are saved on shutdown.
  */
 @Configuration
 @ConditionalOnProperty(name = "hku.ai.rag.enabled", havingValue = "true", matchIfMissing = false)
+@Slf4j
 public class HkuAiVectorStoreConfig {
 
     @Resource
@@ -24,14 +42,92 @@ public class HkuAiVectorStoreConfig {
     @Resource
     private MyTokenTextSplitter tokenTextSplitter;
 
+    // Not a bean, so the DashScope model stays the only EmbeddingModel candidate
+    private QueryEmbeddingCache queryEmbeddingCache;
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "hku.ai.rag.embedding-store.enabled", havingValue = "true", matchIfMissing = true)
+    EmbeddingFileStore hkuAiEmbeddingStore(
+            @Value("${hku.ai.rag.embedding-store.path:tmp/embeddings/hku-ai.vec}") String path,
+            @Value("${spring.ai.dashscope.embedding.options.model:text-embedding-v1}") String embeddingModelId) throws IOException {
+        return EmbeddingFileStore.open(Path.of(path), embeddingModelId);
+    }
+
+    @Bean
+    EmbeddingIngestionPipeline hkuAiIngestionPipeline(
+            @Value("${hku.ai.rag.ingestion.batch-size:25}") int batchSize,
+            @Value("${hku.ai.rag.ingestion.parallelism:4}") int parallelism,
+            @Value("${hku.ai.rag.ingestion.max-attempts:4}") int maxAttempts,
+            @Value("${hku.ai.rag.ingestion.initial-backoff:500ms}") Duration initialBackoff,
+            @Value("${hku.ai.rag.ingestion.max-backoff:10s}") Duration maxBackoff,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        return new EmbeddingIngestionPipeline(batchSize, parallelism, maxAttempts, initialBackoff, maxBackoff,
+                meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
     @Bean
-    VectorStore hkuAiVectorStore(EmbeddingModel dashscopeEmbeddingModel) {
-        SimpleVectorStore simpleVectorStore = SimpleVectorStore.builder(dashscopeEmbeddingModel).build();
+    VectorStore hkuAiVectorStore(EmbeddingModel dashscopeEmbeddingModel, ObjectProvider<EmbeddingFileStore> hkuAiEmbeddingStore,
+                                 EmbeddingIngestionPipeline hkuAiIngestionPipeline,
+                                 @Value("${hku.ai.rag.vector-store.type:hnsw}") String storeType,
+                                 @Value("${hku.ai.rag.vector-store.hnsw.m:16}") int m,
+                                 @Value("${hku.ai.rag.vector-store.hnsw.ef-construction:200}") int efConstruction,
+                                 @Value("${hku.ai.rag.vector-store.hnsw.ef-search:64}") int efSearch,
+                                 @Value("${hku.ai.rag.vector-store.offheap.quantization:int8}") String quantization,
+                                 @Value("${hku.ai.rag.hybrid.enabled:true}") boolean hybrid,
+                                 @Value("${hku.ai.rag.hybrid.rrf-k:60}") int rrfK,
+                                 @Value("${hku.ai.rag.query-cache.enabled:true}") boolean queryCache,
+                                 @Value("${hku.ai.rag.query-cache.max-entries:2048}") int queryCacheEntries,
+                                 @Value("${hku.ai.rag.query-cache.ttl:24h}") Duration queryCacheTtl,
+                                 @Value("${hku.ai.rag.query-cache.path:tmp/embeddings/query-cache.bin}") String queryCachePath,
+                                 @Value("${hku.ai.rag.query-cache.persist-entries:512}") int queryCachePersistEntries,
+                                 @Value("${spring.ai.dashscope.embedding.options.model:text-embedding-v1}") String embeddingModelId) {
+        EmbeddingModel baseModel = dashscopeEmbeddingModel;
+        if (queryCache) {
+            queryEmbeddingCache = new QueryEmbeddingCache(dashscopeEmbeddingModel, embeddingModelId, queryCacheEntries,
+                    queryCacheTtl, queryCachePath.isBlank() ? null : Path.of(queryCachePath), queryCachePersistEntries);
+            baseModel = queryEmbeddingCache;
+        }
+        EmbeddingFileStore embeddingStore = hkuAiEmbeddingStore.getIfAvailable();
+        PersistentEmbeddingModel persistentModel = embeddingStore != null
+                ? new PersistentEmbeddingModel(baseModel, embeddingStore)
+                : null;
+        EmbeddingModel embeddingModel = persistentModel != null ? persistentModel : baseModel;
+        VectorStore denseStore = switch (storeType.toLowerCase()) {
+            case "simple" -> SimpleVectorStore.builder(embeddingModel).build();
+            case "offheap" -> OffHeapVectorStore.builder(embeddingModel)
+                    .quantization(OffHeapVectorStore.Quantization.valueOf(quantization.toUpperCase()))
+                    .build();
+            default -> HnswVectorStore.builder(embeddingModel).m(m).efConstruction(efConstruction).efSearch(efSearch).build();
+        };
+        VectorStore vectorStore = hybrid ? new HybridVectorStore(denseStore, rrfK) : denseStore;
 
         List<Document> documentList = documentLoader.loadMarkdowns();
         List<Document> splitDocuments = tokenTextSplitter.splitCustomized(documentList);
-        simpleVectorStore.add(splitDocuments);
+        hkuAiIngestionPipeline.ingest(splitDocuments, persistentModel, vectorStore);
+        if (denseStore instanceof OffHeapVectorStore offHeapStore) {
+            log.info("Off-heap vector store: {} documents in {} KB", offHeapStore.size(), offHeapStore.offHeapBytes() / 1024);
+        }
+
+        if (embeddingStore != null) {
+            log.info("Embedding store: {} chunk embeddings reused, {} newly embedded",
+                    splitDocuments.size() - embeddingStore.misses(), embeddingStore.misses());
+            try {
+                embeddingStore.compactIfStale();
+            } catch (IOException e) {
+                log.warn("Failed to compact the embedding store", e);
+            }
+        }
+        return vectorStore;
+    }
 
-        return simpleVectorStore;
+    @PreDestroy
+    void saveQueryEmbeddings() {
+        if (queryEmbeddingCache != null) {
+            try {
+                queryEmbeddingCache.close();
+            } catch (IOException e) {
+                log.warn("Failed to save the query embedding cache", e);
+            }
+        }
     }
 }
@@ -0,0 +1,495 @@
+package com.hku.hkuaiagent.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.observation.conventions.VectorStoreSimilarityMetric;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.observation.AbstractObservationVectorStore;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory vector store backed by an HNSW graph (Malkov &amp; Yashunin), so a search visits a small neighbourhood of
+ * the graph instead of every stored embedding.
+ * <p>
+ * Similarity is cosine: vectors are normalised on insert and compared by dot product. Metadata filters are resolved
+ * to a bitmap of matching nodes by a {@link ColumnarMetadata} index and applied while the bottom layer is traversed:
+ * nodes outside the bitmap are still used as stepping stones but never enter the result set, so a filtered search
+ * returns {@code topK} matching documents rather than whatever survives a post-filter. When a filter leaves only a
+ * few documents, those are scored exactly, which is both cheaper and exact.
+ * <p>
+ * Replacing or deleting a document leaves its node in the graph as a routing-only tombstone. Searches take a read
+ * lock; inserts are serialised under a write lock after their embeddings have been computed.
+ */
+public class HnswVectorStore extends AbstractObservationVectorStore {
+
+    private static final Comparator<Candidate> CLOSEST_FIRST = Comparator.comparingDouble(Candidate::similarity).reversed();
+
+    private static final Comparator<Candidate> FARTHEST_FIRST = Comparator.comparingDouble(Candidate::similarity);
+
+    private final int m;
+
+    private final int maxLayer0Links;
+
+    private final int efConstruction;
+
+    private final int efSearch;
+
+    private final double levelMultiplier;
+
+    private final Random random;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    private final Map<String, Integer> byId = new HashMap<>();
+
+    // Row i holds the metadata of node i
+    private final ColumnarMetadata metadata = new ColumnarMetadata();
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    private int dimensions;
+
+    protected HnswVectorStore(Builder builder) {
+        super(builder);
+        this.m = builder.m;
+        this.maxLayer0Links = builder.m * 2;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.levelMultiplier = 1 / Math.log(builder.m);
+        this.random = new Random(builder.seed);
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel) {
+        return new Builder(embeddingModel);
+    }
+
+    /**
+     * Number of searchable documents, tombstones excluded.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void doAdd(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(), batchingStrategy);
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                float[] vector = normalize(embeddings.get(i));
+                if (dimensions == 0) {
+                    dimensions = vector.length;
+                } else if (vector.length != dimensions) {
+                    throw new IllegalArgumentException("Embedding of document " + document.getId() + " has "
+                            + vector.length + " dimensions, the store holds " + dimensions);
+                }
+                Integer previous = byId.remove(document.getId());
+                if (previous != null) {
+                    nodes.get(previous).deleted = true;
+                }
+                metadata.append(document.getMetadata());
+                insert(new Node(nodes.size(), document.getId(), document.getText(), vector, randomLevel()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void doDelete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                Integer index = byId.remove(id);
+                if (index != null) {
+                    nodes.get(index).deleted = true;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doDelete(Filter.Expression filterExpression) {
+        lock.writeLock().lock();
+        try {
+            BitSet selected = metadata.select(filterExpression);
+            for (int index = selected.nextSetBit(0); index >= 0; index = selected.nextSetBit(index + 1)) {
+                Node node = nodes.get(index);
+                if (!node.deleted) {
+                    node.deleted = true;
+                    byId.remove(node.id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> doSimilaritySearch(SearchRequest request) {
+        float[] query = normalize(embeddingModel.embed(request.getQuery()));
+        int ef = Math.max(efSearch, request.getTopK());
+        lock.readLock().lock();
+        try {
+            if (byId.isEmpty()) {
+                return List.of();
+            }
+            IntPredicate accept = index -> !nodes.get(index).deleted;
+            int matching = byId.size();
+            BitSet allowed = null;
+            if (request.hasFilterExpression()) {
+                allowed = metadata.select(request.getFilterExpression());
+                for (int index = allowed.nextSetBit(0); index >= 0; index = allowed.nextSetBit(index + 1)) {
+                    if (nodes.get(index).deleted) {
+                        allowed.clear(index);
+                    }
+                }
+                accept = allowed::get;
+                matching = allowed.cardinality();
+            }
+            List<Candidate> found = matching <= ef * 2L
+                    ? exactSearch(query, allowed)
+                    : graphSearch(query, ef, accept);
+            List<Document> documents = new ArrayList<>();
+            for (Candidate candidate : found) {
+                if (documents.size() == request.getTopK()) {
+                    break;
+                }
+                if (candidate.similarity() >= request.getSimilarityThreshold()) {
+                    documents.add(toDocument(nodes.get(candidate.node()), candidate.similarity()));
+                }
+            }
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+        return VectorStoreObservationContext.builder("hnsw", operationName)
+                .dimensions(dimensions > 0 ? dimensions : embeddingModel.dimensions())
+                .collectionName("in-memory-hnsw")
+                .similarityMetric(VectorStoreSimilarityMetric.COSINE.value());
+    }
+
+    /* ===================== Graph ===================== */
+
+    private void insert(Node node) {
+        nodes.add(node);
+        byId.put(node.id, node.index);
+        if (entryPoint < 0) {
+            entryPoint = node.index;
+            maxLevel = node.level;
+            return;
+        }
+        List<Candidate> entries = List.of(new Candidate(entryPoint, similarity(node.vector, entryPoint)));
+        for (int level = maxLevel; level > node.level; level--) {
+            entries = searchLayer(node.vector, entries, 1, level, index -> true);
+        }
+        for (int level = Math.min(node.level, maxLevel); level >= 0; level--) {
+            List<Candidate> nearest = searchLayer(node.vector, entries, efConstruction, level, index -> true);
+            int[] neighbours = selectNeighbours(node.vector, nearest, m);
+            node.links[level] = neighbours;
+            for (int neighbour : neighbours) {
+                connect(nodes.get(neighbour), node.index, level);
+            }
+            entries = nearest;
+        }
+        if (node.level > maxLevel) {
+            entryPoint = node.index;
+            maxLevel = node.level;
+        }
+    }
+
+    /**
+     * Add a back link, pruning the neighbour's links with the selection heuristic when it has too many.
+     */
+    private void connect(Node from, int to, int level) {
+        int[] links = from.links[level];
+        int[] grown = new int[links.length + 1];
+        System.arraycopy(links, 0, grown, 0, links.length);
+        grown[links.length] = to;
+        int limit = level == 0 ? maxLayer0Links : m;
+        if (grown.length <= limit) {
+            from.links[level] = grown;
+            return;
+        }
+        List<Candidate> candidates = new ArrayList<>(grown.length);
+        for (int link : grown) {
+            candidates.add(new Candidate(link, similarity(from.vector, link)));
+        }
+        candidates.sort(CLOSEST_FIRST);
+        from.links[level] = selectNeighbours(from.vector, candidates, limit);
+    }
+
+    /**
+     * Neighbour selection heuristic: keep a candidate only if it is closer to the base than to any neighbour already
+     * kept, which spreads links in different directions; free slots are then filled with the closest pruned ones.
+     *
+     * @param candidates sorted closest first
+     */
+    private int[] selectNeighbours(float[] base, List<Candidate> candidates, int limit) {
+        List<Candidate> selected = new ArrayList<>(limit);
+        List<Candidate> pruned = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() == limit) {
+                break;
+            }
+            float[] vector = nodes.get(candidate.node()).vector;
+            boolean diverse = true;
+            for (Candidate kept : selected) {
+                if (dot(vector, nodes.get(kept.node()).vector) > candidate.similarity()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            (diverse ? selected : pruned).add(candidate);
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < limit; i++) {
+            selected.add(pruned.get(i));
+        }
+        int[] links = new int[selected.size()];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = selected.get(i).node();
+        }
+        return links;
+    }
+
+    /**
+     * Beam search on one layer.
+     *
+     * @param accept nodes allowed into the result; the others are still expanded
+     * @return up to {@code ef} accepted nodes, closest first
+     */
+    private List<Candidate> searchLayer(float[] query, List<Candidate> entries, int ef, int level, IntPredicate accept) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(CLOSEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(FARTHEST_FIRST);
+        for (Candidate entry : entries) {
+            visited.set(entry.node());
+            candidates.add(entry);
+            if (accept.test(entry.node())) {
+                results.add(entry);
+            }
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.similarity() < results.peek().similarity()) {
+                break;
+            }
+            int[] links = nodes.get(current.node()).links[level];
+            for (int neighbour : links) {
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                double similarity = similarity(query, neighbour);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Candidate candidate = new Candidate(neighbour, similarity);
+                    candidates.add(candidate);
+                    if (accept.test(neighbour)) {
+                        results.add(candidate);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(CLOSEST_FIRST);
+        return sorted;
+    }
+
+    private List<Candidate> graphSearch(float[] query, int ef, IntPredicate accept) {
+        List<Candidate> entries = List.of(new Candidate(entryPoint, similarity(query, entryPoint)));
+        for (int level = maxLevel; level > 0; level--) {
+            entries = searchLayer(query, entries, 1, level, index -> true);
+        }
+        return searchLayer(query, entries, ef, 0, accept);
+    }
+
+    /**
+     * @param allowed nodes to score, or null for every live node
+     */
+    private List<Candidate> exactSearch(float[] query, BitSet allowed) {
+        List<Candidate> candidates = new ArrayList<>();
+        if (allowed == null) {
+            for (Node node : nodes) {
+                if (!node.deleted) {
+                    candidates.add(new Candidate(node.index, dot(query, node.vector)));
+                }
+            }
+        } else {
+            for (int index = allowed.nextSetBit(0); index >= 0; index = allowed.nextSetBit(index + 1)) {
+                candidates.add(new Candidate(index, dot(query, nodes.get(index).vector)));
+            }
+        }
+        candidates.sort(CLOSEST_FIRST);
+        return candidates;
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private double similarity(float[] query, int node) {
+        return dot(query, nodes.get(node).vector);
+    }
+
+    static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float component : vector) {
+            norm += component * component;
+        }
+        float[] normalized = vector.clone();
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    private Document toDocument(Node node, double similarity) {
+        Map<String, Object> documentMetadata = metadata.row(node.index);
+        documentMetadata.put(DocumentMetadata.DISTANCE.value(), (float) (1 - similarity));
+        return Document.builder()
+                .id(node.id)
+                .text(node.text)
+                .metadata(documentMetadata)
+                .score(similarity)
+                .build();
+    }
+
+    private record Candidate(int node, double similarity) {
+    }
+
+    private static final class Node {
+
+        final int index;
+
+        final String id;
+
+        final String text;
+
+        final float[] vector;
+
+        final int level;
+
+        // Neighbour indexes per layer, replaced rather than mutated when links change
+        final int[][] links;
+
+        boolean deleted;
+
+        Node(int index, String id, String text, float[] vector, int level) {
+            this.index = index;
+            this.id = id;
+            this.text = text;
+            this.vector = vector;
+            this.level = level;
+            this.links = new int[level + 1][];
+            for (int i = 0; i <= level; i++) {
+                this.links[i] = new int[0];
+            }
+        }
+    }
+
+    public static final class Builder extends AbstractVectorStoreBuilder<Builder> {
+
+        private int m = 16;
+
+        private int efConstruction = 200;
+
+        private int efSearch = 64;
+
+        private long seed = 42;
+
+        private Builder(EmbeddingModel embeddingModel) {
+            super(embeddingModel);
+        }
+
+        /**
+         * Links per node on the upper layers; the bottom layer keeps twice as many.
+         */
+        public Builder m(int m) {
+            if (m < 2) {
+                throw new IllegalArgumentException("m must be at least 2");
+            }
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * Beam width while inserting; larger builds a better graph more slowly.
+         */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = Math.max(1, efConstruction);
+            return this;
+        }
+
+        /**
+         * Beam width while searching, raised to {@code topK} when smaller; larger trades latency for recall.
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = Math.max(1, efSearch);
+            return this;
+        }
+
+        /**
+         * Seed for the random layer assignment, fixed so the same inserts build the same graph.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        @Override
+        public HnswVectorStore build() {
+            return new HnswVectorStore(this);
+        }
+    }
+}
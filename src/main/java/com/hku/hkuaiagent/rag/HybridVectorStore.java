@@ -0,0 +1,142 @@
+package com.hku.hkuaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Vector store that pairs a dense store with a {@link Bm25Index} over the same documents and fuses the two rankings
+ * with reciprocal rank fusion (RRF): a document scores {@code sum 1 / (k + rank)} over the lists it appears in.
+ * <p>
+ * Embeddings match exact identifiers such as "COMP7103B" poorly, while BM25 matches them exactly. A short query
+ * that is mostly about a course code present in the index ("Who teaches COMP7103?") is therefore answered from the
+ * lexical index alone, restricted to documents containing that code, without embedding the query. Longer questions
+ * that merely mention a code, and every other query, take the top {@code 2 * topK} of both lists and keep the best
+ * {@code topK} after fusion. Metadata filters apply to both halves.
+ * <p>
+ * Scores are only comparable within one result list: the lexical fast path returns BM25 scores divided by the best
+ * one, in {@code (0, 1]}, and fused results return their RRF score, at most {@code 2 / (k + 1)}. A similarity
+ * threshold is a cut-off on embedding similarity, so a request that sets one always takes the fused path and the
+ * threshold filters the dense candidates.
+ */
+@Slf4j
+public class HybridVectorStore implements VectorStore {
+
+    static final int DEFAULT_RRF_K = 60;
+
+    // Share of a query's content words that must be known identifiers for the lexical fast path
+    static final double MIN_IDENTIFIER_SHARE = 0.25;
+
+    private final VectorStore delegate;
+
+    private final Bm25Index lexicalIndex = new Bm25Index();
+
+    private final int rrfK;
+
+    public HybridVectorStore(VectorStore delegate) {
+        this(delegate, DEFAULT_RRF_K);
+    }
+
+    /**
+     * @param rrfK RRF damping constant; larger values flatten the difference between top and lower ranks
+     */
+    public HybridVectorStore(VectorStore delegate, int rrfK) {
+        this.delegate = delegate;
+        this.rrfK = rrfK;
+    }
+
+    public VectorStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getName() {
+        return "Hybrid" + delegate.getName();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        // Only indexed lexically once the dense store accepted them, so a retried batch is not half-indexed
+        lexicalIndex.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        lexicalIndex.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        lexicalIndex.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        String query = request.getQuery();
+        int topK = request.getTopK();
+        List<String> identifiers = request.getSimilarityThreshold() <= SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL
+                ? lexicalIndex.knownIdentifiers(query)
+                : List.of();
+        if (!identifiers.isEmpty() && identifiers.size() >= MIN_IDENTIFIER_SHARE * Bm25Index.contentWords(query)) {
+            List<Bm25Index.Hit> hits = lexicalIndex.search(query, topK, request.getFilterExpression(), identifiers);
+            if (!hits.isEmpty()) {
+                log.debug("Lexical fast path for {}: {} hits", identifiers, hits.size());
+                float best = hits.get(0).score();
+                List<Document> documents = new ArrayList<>(hits.size());
+                for (Bm25Index.Hit hit : hits) {
+                    documents.add(withScore(hit.document(), hit.score() / best));
+                }
+                return documents;
+            }
+        }
+
+        int candidates = topK * 2;
+        List<Document> dense = delegate.similaritySearch(SearchRequest.from(request).topK(candidates).build());
+        List<Bm25Index.Hit> lexical = lexicalIndex.search(query, candidates, request.getFilterExpression(), List.of());
+        return fuse(dense, lexical, topK);
+    }
+
+    @Override
+    public <T> Optional<T> getNativeClient() {
+        return delegate.getNativeClient();
+    }
+
+    /**
+     * Reciprocal rank fusion of the dense and lexical rankings. Documents found by the dense store keep its metadata.
+     */
+    List<Document> fuse(List<Document> dense, List<Bm25Index.Hit> lexical, int topK) {
+        Map<String, Document> byId = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (int rank = 0; rank < dense.size(); rank++) {
+            Document document = dense.get(rank);
+            byId.putIfAbsent(document.getId(), document);
+            scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+        for (int rank = 0; rank < lexical.size(); rank++) {
+            Document document = lexical.get(rank).document();
+            byId.putIfAbsent(document.getId(), document);
+            scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+        return byId.values().stream()
+                .sorted((a, b) -> Double.compare(scores.get(b.getId()), scores.get(a.getId())))
+                .limit(topK)
+                .map(document -> withScore(document, scores.get(document.getId())))
+                .toList();
+    }
+
+    private static Document withScore(Document document, double score) {
+        return document.mutate().score(score).build();
+    }
+}
@@ -0,0 +1,108 @@
+package com.hku.hkuaiagent.rag;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Semantics of spring-ai {@link Filter.Expression}s over document metadata, shared by the in-process stores'
+ * {@link ColumnarMetadata} index.
+ * <p>
+ * Supports the comparison, {@code IN}/{@code NIN}, {@code AND}/{@code OR}/{@code NOT} operators and groups.
+ * Numbers compare by value regardless of their boxed type; other values compare by {@code equals}, or by their
+ * natural order when both sides are of the same comparable type. A document without the compared field only
+ * matches {@code NE} and {@code NIN}.
+ */
+final class MetadataFilter {
+
+    private MetadataFilter() {
+    }
+
+    /**
+     * The expression an operand of {@code AND}/{@code OR}/{@code NOT} stands for, unwrapping groups.
+     */
+    static Filter.Expression unwrap(Filter.Operand operand) {
+        if (operand instanceof Filter.Expression expression) {
+            return expression;
+        }
+        if (operand instanceof Filter.Group group) {
+            return group.content();
+        }
+        throw new IllegalArgumentException("Expected a filter expression but got " + operand);
+    }
+
+    /**
+     * Test of a comparison or membership expression against a present, non-null metadata value.
+     */
+    static Predicate<Object> valueTest(Filter.Expression expression) {
+        Object expected = value(expression.right());
+        return switch (expression.type()) {
+            case EQ -> actual -> valueEquals(actual, expected);
+            case NE -> actual -> !valueEquals(actual, expected);
+            case GT -> actual -> compare(actual, expected) > 0;
+            case GTE -> actual -> compare(actual, expected) >= 0;
+            case LT -> actual -> compare(actual, expected) < 0;
+            case LTE -> actual -> compare(actual, expected) <= 0;
+            case IN, NIN -> {
+                List<?> candidates = expected instanceof Collection<?> collection ? List.copyOf(collection) : List.of(expected);
+                boolean in = expression.type() == Filter.ExpressionType.IN;
+                yield actual -> {
+                    for (Object candidate : candidates) {
+                        if (valueEquals(actual, candidate)) {
+                            return in;
+                        }
+                    }
+                    return !in;
+                };
+            }
+            default -> throw new IllegalArgumentException("Not a comparison: " + expression);
+        };
+    }
+
+    /**
+     * Whether a document without the compared field satisfies the expression: only "not equal" and "not in" do.
+     */
+    static boolean matchesMissing(Filter.Expression expression) {
+        return expression.type() == Filter.ExpressionType.NE || expression.type() == Filter.ExpressionType.NIN;
+    }
+
+    static String key(Filter.Operand operand) {
+        if (!(operand instanceof Filter.Key key)) {
+            throw new IllegalArgumentException("Expected a metadata key but got " + operand);
+        }
+        String name = key.key();
+        // The text parser keeps the quotes of keys written as 'my key' or "my key"
+        if (name.length() >= 2 && (name.startsWith("'") && name.endsWith("'") || name.startsWith("\"") && name.endsWith("\""))) {
+            return name.substring(1, name.length() - 1);
+        }
+        return name;
+    }
+
+    static Object value(Filter.Operand operand) {
+        if (!(operand instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("Expected a value but got " + operand);
+        }
+        return value.value();
+    }
+
+    static boolean valueEquals(Object actual, Object expected) {
+        if (actual instanceof Number left && expected instanceof Number right) {
+            return Double.compare(left.doubleValue(), right.doubleValue()) == 0;
+        }
+        return Objects.equals(actual, expected) || String.valueOf(actual).equals(String.valueOf(expected));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object actual, Object expected) {
+        if (actual instanceof Number left && expected instanceof Number right) {
+            return Double.compare(left.doubleValue(), right.doubleValue());
+        }
+        if (actual instanceof Comparable comparable && actual.getClass().isInstance(expected)) {
+            return comparable.compareTo(expected);
+        }
+        return String.valueOf(actual).compareTo(String.valueOf(expected));
+    }
+}
@@ -0,0 +1,362 @@
+package com.hku.hkuaiagent.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.observation.conventions.VectorStoreSimilarityMetric;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.observation.AbstractObservationVectorStore;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Flat vector store that keeps embeddings off-heap and scores every live document on each search.
+ * <p>
+ * Vectors are normalised and written back to back into direct buffers of {@value #SEGMENT_BYTES} bytes, either
+ * as floats or, with {@link Quantization#INT8}, as one signed byte per dimension plus a per-vector scale, a quarter
+ * of the float size. The heap only holds ids, texts, the scales and {@link ColumnarMetadata}, so a large corpus
+ * adds little GC work. A filter is first resolved to a bitmap of candidate rows by the metadata index; scans then
+ * copy a block of vectors at a time into a scratch array and score the candidates in it with {@link VectorKernels}.
+ * <p>
+ * Replacing or deleting a document only clears its live bit; the space is not reused.
+ */
+public class OffHeapVectorStore extends AbstractObservationVectorStore {
+
+    static final int SEGMENT_BYTES = 64 << 20;
+
+    // Vectors copied from a segment per step of a scan
+    private static final int SCAN_BLOCK_BYTES = 64 << 10;
+
+    public enum Quantization {
+        /** 4 bytes per dimension, exact scores. */
+        NONE,
+        /** 1 byte per dimension with a per-vector scale; scores within about 1% of exact. */
+        INT8
+    }
+
+    private final Quantization quantization;
+
+    private final VectorKernels kernels;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    private final Map<String, Integer> rowById = new HashMap<>();
+
+    private final BitSet live = new BitSet();
+
+    private final ColumnarMetadata metadata = new ColumnarMetadata();
+
+    private String[] ids = new String[0];
+
+    private String[] texts = new String[0];
+
+    private float[] scales = new float[0];
+
+    private int rows;
+
+    private int dimensions;
+
+    private int vectorsPerSegment;
+
+    protected OffHeapVectorStore(Builder builder) {
+        super(builder);
+        this.quantization = builder.quantization;
+        this.kernels = builder.kernels != null ? builder.kernels : VectorKernels.get();
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel) {
+        return new Builder(embeddingModel);
+    }
+
+    /**
+     * Number of searchable documents.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes of direct memory allocated for vectors, including room not yet written.
+     */
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (ByteBuffer segment : segments) {
+                bytes += segment.capacity();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void doAdd(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(), batchingStrategy);
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                float[] vector = HnswVectorStore.normalize(embeddings.get(i));
+                if (dimensions == 0) {
+                    dimensions = vector.length;
+                    vectorsPerSegment = Math.max(1, SEGMENT_BYTES / bytesPerVector());
+                } else if (vector.length != dimensions) {
+                    throw new IllegalArgumentException("Embedding of document " + document.getId() + " has "
+                            + vector.length + " dimensions, the store holds " + dimensions);
+                }
+                Integer previous = rowById.get(document.getId());
+                if (previous != null) {
+                    live.clear(previous);
+                }
+                int row = metadata.append(document.getMetadata());
+                ensureCapacity(row + 1);
+                write(row, vector);
+                ids[row] = document.getId();
+                texts[row] = document.getText();
+                live.set(row);
+                rowById.put(document.getId(), row);
+                rows = row + 1;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void doDelete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                Integer row = rowById.remove(id);
+                if (row != null) {
+                    live.clear(row);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doDelete(Filter.Expression filterExpression) {
+        lock.writeLock().lock();
+        try {
+            BitSet deleted = metadata.select(filterExpression);
+            deleted.and(live);
+            for (int row = deleted.nextSetBit(0); row >= 0; row = deleted.nextSetBit(row + 1)) {
+                rowById.remove(ids[row]);
+            }
+            live.andNot(deleted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> doSimilaritySearch(SearchRequest request) {
+        float[] query = HnswVectorStore.normalize(embeddingModel.embed(request.getQuery()));
+        int topK = request.getTopK();
+        PriorityQueue<ScoredRow> best = new PriorityQueue<>(topK + 1, (a, b) -> Float.compare(a.score(), b.score()));
+        lock.readLock().lock();
+        try {
+            if (rowById.isEmpty()) {
+                return List.of();
+            }
+            if (query.length != dimensions) {
+                throw new IllegalArgumentException("Query embedding has " + query.length + " dimensions, the store holds " + dimensions);
+            }
+            BitSet candidates = live;
+            if (request.hasFilterExpression()) {
+                candidates = metadata.select(request.getFilterExpression());
+                candidates.and(live);
+            }
+            scan(query, candidates, topK, best);
+            List<ScoredRow> sorted = new ArrayList<>(best);
+            sorted.sort((a, b) -> Float.compare(b.score(), a.score()));
+            List<Document> documents = new ArrayList<>(sorted.size());
+            for (ScoredRow scored : sorted) {
+                if (scored.score() >= request.getSimilarityThreshold()) {
+                    documents.add(toDocument(scored.row(), scored.score()));
+                }
+            }
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+        return VectorStoreObservationContext.builder("offheap", operationName)
+                .dimensions(dimensions > 0 ? dimensions : embeddingModel.dimensions())
+                .collectionName("off-heap-" + quantization.name().toLowerCase())
+                .similarityMetric(VectorStoreSimilarityMetric.COSINE.value());
+    }
+
+    /* ===================== Storage ===================== */
+
+    /**
+     * Score the {@code candidates} rows, copying only the stretch of each block that ends at its last candidate.
+     */
+    private void scan(float[] query, BitSet candidates, int topK, PriorityQueue<ScoredRow> best) {
+        int blockVectors = Math.max(1, Math.min(vectorsPerSegment, SCAN_BLOCK_BYTES / bytesPerVector()));
+        byte[] byteBlock = quantization == Quantization.INT8 ? new byte[blockVectors * dimensions] : null;
+        float[] floatBlock = quantization == Quantization.NONE ? new float[blockVectors * dimensions] : null;
+        for (int start = candidates.nextSetBit(0); start >= 0 && start < rows; start = candidates.nextSetBit(start)) {
+            // Blocks never cross a segment boundary
+            int segmentEnd = (start / vectorsPerSegment + 1) * vectorsPerSegment;
+            int end = candidates.previousSetBit(Math.min(Math.min(start + blockVectors, segmentEnd), rows) - 1) + 1;
+            ByteBuffer segment = segments.get(start / vectorsPerSegment);
+            int offset = (start % vectorsPerSegment) * bytesPerVector();
+            if (byteBlock != null) {
+                segment.get(offset, byteBlock, 0, (end - start) * dimensions);
+            } else {
+                segment.asFloatBuffer().get(offset / Float.BYTES, floatBlock, 0, (end - start) * dimensions);
+            }
+            for (int row = start; row < end; row++) {
+                if (!candidates.get(row)) {
+                    continue;
+                }
+                int at = (row - start) * dimensions;
+                float score = byteBlock != null
+                        ? kernels.dot(query, byteBlock, at) * scales[row]
+                        : kernels.dot(query, floatBlock, at);
+                if (best.size() < topK) {
+                    best.add(new ScoredRow(row, score));
+                } else if (score > best.peek().score()) {
+                    best.poll();
+                    best.add(new ScoredRow(row, score));
+                }
+            }
+            start = end;
+        }
+    }
+
+    private void write(int row, float[] vector) {
+        int index = row / vectorsPerSegment;
+        int offset = (row % vectorsPerSegment) * bytesPerVector();
+        ByteBuffer segment = segment(index, offset + bytesPerVector());
+        if (quantization == Quantization.INT8) {
+            float maxAbs = 0;
+            for (float component : vector) {
+                maxAbs = Math.max(maxAbs, Math.abs(component));
+            }
+            float scale = maxAbs > 0 ? maxAbs / 127 : 1;
+            byte[] quantized = new byte[vector.length];
+            for (int i = 0; i < vector.length; i++) {
+                quantized[i] = (byte) Math.round(vector[i] / scale);
+            }
+            segment.put(offset, quantized);
+            scales[row] = scale;
+        } else {
+            segment.asFloatBuffer().put(offset / Float.BYTES, vector);
+        }
+    }
+
+    /**
+     * Segment {@code index}, allocated or grown to hold at least {@code bytes}. The last segment starts small and
+     * doubles up to {@value #SEGMENT_BYTES}, so a small corpus does not reserve a full segment.
+     */
+    private ByteBuffer segment(int index, int bytes) {
+        if (segments.size() <= index) {
+            segments.add(allocate(Math.min(segmentCapacity(), Math.max(bytes, SCAN_BLOCK_BYTES))));
+        }
+        ByteBuffer segment = segments.get(index);
+        if (segment.capacity() < bytes) {
+            ByteBuffer grown = allocate(Math.min(segmentCapacity(), Math.max(bytes, segment.capacity() * 2)));
+            grown.put(0, segment, 0, segment.capacity());
+            segments.set(index, grown);
+            segment = grown;
+        }
+        return segment;
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            int grown = Math.max(capacity, Math.max(16, ids.length * 2));
+            ids = Arrays.copyOf(ids, grown);
+            texts = Arrays.copyOf(texts, grown);
+            scales = Arrays.copyOf(scales, grown);
+        }
+    }
+
+    private int bytesPerVector() {
+        return dimensions * (quantization == Quantization.INT8 ? Byte.BYTES : Float.BYTES);
+    }
+
+    private int segmentCapacity() {
+        return vectorsPerSegment * bytesPerVector();
+    }
+
+    private Document toDocument(int row, float score) {
+        Map<String, Object> documentMetadata = metadata.row(row);
+        documentMetadata.put(DocumentMetadata.DISTANCE.value(), 1 - score);
+        return Document.builder()
+                .id(ids[row])
+                .text(texts[row])
+                .metadata(documentMetadata)
+                .score((double) score)
+                .build();
+    }
+
+    private record ScoredRow(int row, float score) {
+    }
+
+    public static final class Builder extends AbstractVectorStoreBuilder<Builder> {
+
+        private Quantization quantization = Quantization.INT8;
+
+        private VectorKernels kernels;
+
+        private Builder(EmbeddingModel embeddingModel) {
+            super(embeddingModel);
+        }
+
+        public Builder quantization(Quantization quantization) {
+            this.quantization = quantization;
+            return this;
+        }
+
+        /**
+         * Kernels to score with, e.g. {@link VectorKernels#scalar()} to compare against the SIMD ones.
+         */
+        Builder kernels(VectorKernels kernels) {
+            this.kernels = kernels;
+            return this;
+        }
+
+        @Override
+        public OffHeapVectorStore build() {
+            return new OffHeapVectorStore(this);
+        }
+    }
+}
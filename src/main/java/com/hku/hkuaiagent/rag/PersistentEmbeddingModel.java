@@ -0,0 +1,109 @@
+package com.hku.hkuaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Embedding model decorator that serves document embeddings from an {@link EmbeddingFileStore} and only sends
+ * new or changed chunks to the underlying model. Query embeddings ({@link #call}, {@link #embed(String)}) are
+ * passed through unchanged.
+ * <p>
+ * A chunk is identified by the text the model would embed, i.e. {@link Document#getFormattedContent(MetadataMode)}
+ * with the same metadata mode as the delegate ({@link MetadataMode#EMBED} for DashScope).
+ */
+@Slf4j
+public class PersistentEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+
+    private final EmbeddingFileStore store;
+
+    private final MetadataMode metadataMode;
+
+    public PersistentEmbeddingModel(EmbeddingModel delegate, EmbeddingFileStore store) {
+        this(delegate, store, MetadataMode.EMBED);
+    }
+
+    public PersistentEmbeddingModel(EmbeddingModel delegate, EmbeddingFileStore store, MetadataMode metadataMode) {
+        this.delegate = delegate;
+        this.store = store;
+        this.metadataMode = metadataMode;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return delegate.embed(text);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        String content = document.getFormattedContent(metadataMode);
+        float[] stored = store.get(content);
+        if (stored != null) {
+            return stored;
+        }
+        float[] vector = delegate.embed(document);
+        persist(content, vector);
+        return vector;
+    }
+
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        List<float[]> vectors = new ArrayList<>(documents.size());
+        List<Document> missing = new ArrayList<>();
+        List<Integer> missingIndexes = new ArrayList<>();
+        for (Document document : documents) {
+            float[] stored = store.get(document.getFormattedContent(metadataMode));
+            if (stored == null) {
+                missing.add(document);
+                missingIndexes.add(vectors.size());
+            }
+            vectors.add(stored);
+        }
+        int next = 0;
+        for (List<Document> batch : missing.isEmpty() ? List.<List<Document>>of() : batchingStrategy.batch(missing)) {
+            // Send the same text as embed(Document) would, so batched and single vectors share one key
+            List<String> texts = batch.stream().map(document -> document.getFormattedContent(metadataMode)).toList();
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(texts, options));
+            for (int i = 0; i < texts.size(); i++) {
+                float[] vector = response.getResults().get(i).getOutput();
+                persist(texts.get(i), vector);
+                vectors.set(missingIndexes.get(next++), vector);
+            }
+        }
+        return vectors;
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public EmbeddingFileStore getStore() {
+        return store;
+    }
+
+    private void persist(String content, float[] vector) {
+        try {
+            store.put(content, vector);
+        } catch (IOException e) {
+            // The vector is still used; it will simply be embedded again after the next restart
+            log.warn("Failed to persist embedding: {}", e.getMessage());
+        }
+    }
+}
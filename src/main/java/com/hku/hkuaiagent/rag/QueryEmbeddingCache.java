@@ -0,0 +1,223 @@
+package com.hku.hkuaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.lang.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedding model decorator that caches query embeddings ({@link #embed(String)}), keyed by model id and normalised
+ * text, in a bounded LRU map with a TTL.
+ * <p>
+ * Vector store searches embed the query on every call, and the rewritten queries from {@link QueryRewriter} are
+ * often the same template strings, so repeated questions skip the embedding call entirely. Text is normalised with
+ * NFKC and collapsed whitespace, so full-width characters and spacing do not create separate entries. Document
+ * embeddings and raw {@link #call} requests are passed through; chunk embeddings are cached by
+ * {@link PersistentEmbeddingModel}.
+ * <p>
+ * With a persistence path, {@link #close()} writes the most recently used entries to disk and the next start
+ * reads back those that have not expired, so a restart does not empty the cache.
+ */
+@Slf4j
+public class QueryEmbeddingCache implements EmbeddingModel, AutoCloseable {
+
+    private static final int MAGIC = 0x45554B51; // "HKUQ"
+
+    private static final int FORMAT_VERSION = 1;
+
+    private record Entry(float[] vector, long expiresAtMillis) {
+    }
+
+    private final EmbeddingModel delegate;
+
+    private final String modelId;
+
+    private final Duration ttl;
+
+    private final Path path;
+
+    private final int persistEntries;
+
+    private final Clock clock;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * @param path           file hot entries are saved to on {@link #close()} and loaded from here, or null to keep
+     *                       the cache in memory only
+     * @param persistEntries how many of the most recently used entries are saved
+     */
+    public QueryEmbeddingCache(EmbeddingModel delegate, String modelId, int maxEntries, Duration ttl,
+                               @Nullable Path path, int persistEntries) {
+        this(delegate, modelId, maxEntries, ttl, path, persistEntries, Clock.systemUTC());
+    }
+
+    QueryEmbeddingCache(EmbeddingModel delegate, String modelId, int maxEntries, Duration ttl,
+                        @Nullable Path path, int persistEntries, Clock clock) {
+        this.delegate = delegate;
+        this.modelId = modelId;
+        this.ttl = ttl;
+        this.path = path;
+        this.persistEntries = persistEntries;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (path != null) {
+            load(path);
+        }
+    }
+
+    @Override
+    public float[] embed(String text) {
+        String key = key(text);
+        long now = clock.millis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAtMillis() > now) {
+                hits.incrementAndGet();
+                return entry.vector().clone();
+            }
+        }
+        misses.incrementAndGet();
+        float[] vector = delegate.embed(text);
+        synchronized (entries) {
+            entries.put(key, new Entry(vector.clone(), now + ttl.toMillis()));
+        }
+        return vector;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Save the most recently used, unexpired entries if a persistence path was given.
+     */
+    @Override
+    public void close() throws IOException {
+        log.info("Query embedding cache: {} hits, {} misses, {} entries", hits.get(), misses.get(), size());
+        if (path != null) {
+            save(path);
+        }
+    }
+
+    String key(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).trim().replaceAll("\\s+", " ");
+        return modelId + '\u0000' + normalized;
+    }
+
+    private void save(Path target) throws IOException {
+        List<Map.Entry<String, Entry>> hot;
+        long now = clock.millis();
+        synchronized (entries) {
+            // Access order puts the most recently used entries last
+            List<Map.Entry<String, Entry>> all = new ArrayList<>(entries.entrySet());
+            hot = new ArrayList<>(all.subList(Math.max(0, all.size() - persistEntries), all.size()));
+        }
+        hot.removeIf(entry -> entry.getValue().expiresAtMillis() <= now);
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(hot.size());
+            for (Map.Entry<String, Entry> entry : hot) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().expiresAtMillis());
+                float[] vector = entry.getValue().vector();
+                out.writeInt(vector.length);
+                for (float component : vector) {
+                    out.writeFloat(component);
+                }
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Saved {} query embeddings to {}", hot.size(), target);
+    }
+
+    private void load(Path source) {
+        long now = clock.millis();
+        String prefix = modelId + '\u0000';
+        int loaded = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                log.warn("Ignoring query embedding cache {} with an unknown format", source);
+                return;
+            }
+            int count = in.readInt();
+            synchronized (entries) {
+                for (int i = 0; i < count; i++) {
+                    String key = in.readUTF();
+                    long expiresAt = in.readLong();
+                    float[] vector = new float[in.readInt()];
+                    for (int j = 0; j < vector.length; j++) {
+                        vector[j] = in.readFloat();
+                    }
+                    // Entries of another embedding model would return vectors from the wrong space
+                    if (expiresAt > now && key.startsWith(prefix)) {
+                        entries.put(key, new Entry(vector, expiresAt));
+                        loaded++;
+                    }
+                }
+            }
+            log.info("Loaded {} query embeddings from {}", loaded, source);
+        } catch (NoSuchFileException e) {
+            // First start
+        } catch (IOException e) {
+            log.warn("Failed to load query embedding cache {}: {}", source, e.getMessage());
+        }
+    }
+}
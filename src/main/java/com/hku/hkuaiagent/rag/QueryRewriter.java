@@ -7,6 +7,8 @@ import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransfo
 import org.springframework.ai.rag.preretrieval.query.transformation.RewriteQueryTransformer;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 public class QueryRewriter {
 
@@ -45,10 +47,9 @@ public class QueryRewriter {
         }
 
         /* ====== 3. Course prefix recognition (e.g. COMP7103) to request comparisons ====== */
-        java.util.regex.Pattern p = java.util.regex.Pattern.compile("\\b(comp\\d{4})[a-z]?\\b", java.util.regex.Pattern.CASE_INSENSITIVE);
-        java.util.regex.Matcher m = p.matcher(lower);
-        if (m.find()) {
-            String prefix = m.group(1).toUpperCase(); // e.g. COMP7103
+        List<String> courseCodes = DocumentSnapshot.courseCodes(prompt);
+        if (!courseCodes.isEmpty()) {
+            String prefix = DocumentSnapshot.coursePrefix(courseCodes.get(0)); // e.g. COMP7103
             return "List all versions of " + prefix + " (A/B/C/D) with instructors, semesters, schedules, exam dates, and add/drop deadlines. Compare them and recommend the best one.";
         }
 
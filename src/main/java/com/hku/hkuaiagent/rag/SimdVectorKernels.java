@@ -0,0 +1,63 @@
+package com.hku.hkuaiagent.rag;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link VectorKernels} on the JDK Vector API. Only compiled by the {@code vector-api} Maven profile and only
+ * instantiated reflectively when {@code jdk.incubator.vector} is in the boot layer.
+ */
+final class SimdVectorKernels extends VectorKernels {
+
+    // At least 8 lanes, since there is no byte vector narrower than 64 bits to widen from
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED.length() >= 8
+            ? FloatVector.SPECIES_PREFERRED
+            : FloatVector.SPECIES_256;
+
+    // Bytes are widened to floats lane by lane, so load as many bytes as there are float lanes
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class,
+            VectorShape.forBitSize(FLOATS.length() * Byte.SIZE));
+
+    @Override
+    float dot(float[] query, float[] block, int offset) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        int bound = FLOATS.loopBound(query.length);
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector q = FloatVector.fromArray(FLOATS, query, i);
+            FloatVector v = FloatVector.fromArray(FLOATS, block, offset + i);
+            sum = q.fma(v, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < query.length; i++) {
+            result += query[i] * block[offset + i];
+        }
+        return result;
+    }
+
+    @Override
+    float dot(float[] query, byte[] block, int offset) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        int bound = FLOATS.loopBound(query.length);
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector q = FloatVector.fromArray(FLOATS, query, i);
+            FloatVector v = (FloatVector) ByteVector.fromArray(BYTES, block, offset + i)
+                    .convertShape(VectorOperators.B2F, FLOATS, 0);
+            sum = q.fma(v, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < query.length; i++) {
+            result += query[i] * block[offset + i];
+        }
+        return result;
+    }
+
+    @Override
+    String name() {
+        return "Vector API, " + FLOATS.length() + " float lanes";
+    }
+}
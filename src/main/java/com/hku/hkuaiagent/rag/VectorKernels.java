@@ -0,0 +1,82 @@
+package com.hku.hkuaiagent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Dot-product kernels for the vector stores, using the JDK Vector API when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector} and plain loops otherwise.
+ * <p>
+ * The Vector API is still incubating, so {@link SimdVectorKernels} is only compiled by the {@code vector-api}
+ * Maven profile, which also adds the module flag to {@code spring-boot:run}, the tests and the benchmarks. The
+ * default build and the Docker image use the scalar kernels.
+ */
+@Slf4j
+abstract class VectorKernels {
+
+    private static final VectorKernels INSTANCE = load();
+
+    static VectorKernels get() {
+        return INSTANCE;
+    }
+
+    static VectorKernels scalar() {
+        return new Scalar();
+    }
+
+    /**
+     * Dot product of {@code query} with the float vector at {@code offset} in {@code block}.
+     */
+    abstract float dot(float[] query, float[] block, int offset);
+
+    /**
+     * Dot product of {@code query} with the int8 vector at {@code offset} in {@code block}, before de-quantisation.
+     */
+    abstract float dot(float[] query, byte[] block, int offset);
+
+    abstract String name();
+
+    private static VectorKernels load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // Loaded by name so this class still links when the incubator module is absent
+                VectorKernels kernels = (VectorKernels) Class.forName("com.hku.hkuaiagent.rag.SimdVectorKernels")
+                        .getDeclaredConstructor().newInstance();
+                log.info("Vector similarity kernels: {}", kernels.name());
+                return kernels;
+            } catch (ClassNotFoundException e) {
+                log.info("Vector similarity kernels: scalar (built without the vector-api profile)");
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warn("Vector API unavailable, using scalar similarity kernels", e);
+            }
+        } else {
+            log.info("Vector similarity kernels: scalar (build with -Pvector-api and start the JVM with --add-modules jdk.incubator.vector for SIMD)");
+        }
+        return new Scalar();
+    }
+
+    static final class Scalar extends VectorKernels {
+
+        @Override
+        float dot(float[] query, float[] block, int offset) {
+            float sum = 0;
+            for (int i = 0; i < query.length; i++) {
+                sum += query[i] * block[offset + i];
+            }
+            return sum;
+        }
+
+        @Override
+        float dot(float[] query, byte[] block, int offset) {
+            float sum = 0;
+            for (int i = 0; i < query.length; i++) {
+                sum += query[i] * block[offset + i];
+            }
+            return sum;
+        }
+
+        @Override
+        String name() {
+            return "scalar";
+        }
+    }
+}
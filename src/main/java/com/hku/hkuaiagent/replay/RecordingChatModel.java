@@ -0,0 +1,122 @@
+package com.hku.hkuaiagent.replay;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ChatModel decorator that records every prompt, reply, requested tool call and timing to a {@link SessionRecorder}.
+ * <p>
+ * Streamed replies are recorded once the stream completes, with the tool-call deltas merged by id the same
+ * way the agents merge them, so the recording replays as one coherent reply.
+ */
+public class RecordingChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+
+    private final SessionRecorder recorder;
+
+    public RecordingChatModel(ChatModel delegate, SessionRecorder recorder) {
+        this.delegate = delegate;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        long offset = recorder.elapsedMillis();
+        long start = System.nanoTime();
+        ChatResponse response = delegate.call(prompt);
+        long latency = (System.nanoTime() - start) / 1_000_000;
+        StringBuilder text = new StringBuilder();
+        LinkedHashMap<String, ReplayEvent.ToolCall> toolCalls = new LinkedHashMap<>();
+        collect(response, text, toolCalls);
+        recorder.record(ReplayEvent.chat(offset, latency, null, describe(prompt), text.toString(),
+                new ArrayList<>(toolCalls.values())));
+        return response;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            long offset = recorder.elapsedMillis();
+            long start = System.nanoTime();
+            AtomicLong firstChunk = new AtomicLong(-1);
+            StringBuilder text = new StringBuilder();
+            LinkedHashMap<String, ReplayEvent.ToolCall> toolCalls = new LinkedHashMap<>();
+            return delegate.stream(prompt)
+                    .doOnNext(chunk -> {
+                        firstChunk.compareAndSet(-1, (System.nanoTime() - start) / 1_000_000);
+                        collect(chunk, text, toolCalls);
+                    })
+                    .doOnComplete(() -> recorder.record(ReplayEvent.chat(offset, (System.nanoTime() - start) / 1_000_000,
+                            Math.max(0, firstChunk.get()), describe(prompt), text.toString(),
+                            new ArrayList<>(toolCalls.values()))));
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    private static void collect(ChatResponse response, StringBuilder text, LinkedHashMap<String, ReplayEvent.ToolCall> toolCalls) {
+        if (response == null) {
+            return;
+        }
+        for (Generation generation : response.getResults()) {
+            AssistantMessage output = generation.getOutput();
+            if (output == null) {
+                continue;
+            }
+            if (output.getText() != null) {
+                text.append(output.getText());
+            }
+            for (AssistantMessage.ToolCall toolCall : output.getToolCalls()) {
+                // Continuation fragments carry no id and belong to the call that is being streamed
+                String id = toolCall.id() != null && !toolCall.id().isEmpty() ? toolCall.id()
+                        : toolCalls.isEmpty() ? "call-0" : toolCalls.lastEntry().getKey();
+                toolCalls.merge(id, new ReplayEvent.ToolCall(id, toolCall.name(), toolCall.arguments()),
+                        (previous, delta) -> new ReplayEvent.ToolCall(id,
+                                previous.name() != null && !previous.name().isBlank() ? previous.name() : delta.name(),
+                                nullToEmpty(previous.arguments()) + nullToEmpty(delta.arguments())));
+            }
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    static List<String> describe(Prompt prompt) {
+        List<String> messages = new ArrayList<>();
+        for (Message message : prompt.getInstructions()) {
+            String text = message.getText();
+            if (message instanceof ToolResponseMessage toolResponseMessage) {
+                List<String> responses = new ArrayList<>();
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    responses.add(response.name() + " -> " + response.responseData());
+                }
+                text = String.join("\n", responses);
+            } else if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+                List<String> calls = new ArrayList<>();
+                for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                    calls.add(toolCall.name() + toolCall.arguments());
+                }
+                text = nullToEmpty(text) + " [tool calls: " + String.join(", ", calls) + "]";
+            }
+            messages.add(message.getMessageType().getValue() + ": " + nullToEmpty(text));
+        }
+        return messages;
+    }
+}
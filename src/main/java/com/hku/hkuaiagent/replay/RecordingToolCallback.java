@@ -0,0 +1,66 @@
+package com.hku.hkuaiagent.replay;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.function.Supplier;
+
+/**
+ * ToolCallback decorator that records every call's arguments, result and duration to a {@link SessionRecorder}.
+ * Failed calls are recorded with the exception message as output and then rethrown.
+ */
+public class RecordingToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+
+    private final SessionRecorder recorder;
+
+    public RecordingToolCallback(ToolCallback delegate, SessionRecorder recorder) {
+        this.delegate = delegate;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return record(toolInput, () -> delegate.call(toolInput));
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return record(toolInput, () -> delegate.call(toolInput, toolContext));
+    }
+
+    private String record(String toolInput, Supplier<String> invocation) {
+        long offset = recorder.elapsedMillis();
+        long start = System.nanoTime();
+        String output;
+        try {
+            output = invocation.get();
+        } catch (RuntimeException e) {
+            recorder.record(ReplayEvent.tool(offset, (System.nanoTime() - start) / 1_000_000,
+                    getToolDefinition().name(), toolInput, "Error: " + e.getMessage()));
+            throw e;
+        }
+        recorder.record(ReplayEvent.tool(offset, (System.nanoTime() - start) / 1_000_000,
+                getToolDefinition().name(), toolInput, output));
+        return output;
+    }
+
+    @Override
+    public String toString() {
+        // Keep the wrapped tool's name visible to class-name based filters and logs
+        return delegate.toString();
+    }
+}
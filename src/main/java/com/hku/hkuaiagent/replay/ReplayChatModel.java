@@ -0,0 +1,101 @@
+package com.hku.hkuaiagent.replay;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offline ChatModel that plays back recorded replies in order, like {@link com.hku.hkuaiagent.fallback.DisabledChatModel}
+ * but with real conversation content.
+ * <p>
+ * Replies are matched by position, not by prompt, so a session still replays after changes that alter the
+ * prompt (compaction, prompt wording). After the last reply the recording starts over, which lets a benchmark
+ * repeat a session. Streamed replies are split into small chunks whose timing follows the recorded
+ * time-to-first-chunk and total latency.
+ */
+@Slf4j
+public class ReplayChatModel implements ChatModel {
+
+    private static final int CHUNK_CHARS = 16;
+
+    private final List<ReplayEvent> replies;
+
+    private final ReplayLatency latency;
+
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    public ReplayChatModel(List<ReplayEvent> events, ReplayLatency latency) {
+        this.replies = events.stream().filter(event -> ReplayEvent.CHAT.equals(event.type())).toList();
+        this.latency = latency;
+        if (replies.isEmpty()) {
+            throw new IllegalArgumentException("Recording contains no model replies");
+        }
+    }
+
+    /**
+     * Restart playback from the first recorded reply.
+     */
+    public void reset() {
+        cursor.set(0);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        ReplayEvent reply = next();
+        latency.sleep(reply.latencyMs());
+        return new ChatResponse(List.of(new Generation(toMessage(reply.text(), reply.toolCalls()))));
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            ReplayEvent reply = next();
+            List<AssistantMessage> chunks = new ArrayList<>();
+            String text = reply.text() != null ? reply.text() : "";
+            for (int i = 0; i < text.length(); i += CHUNK_CHARS) {
+                chunks.add(new AssistantMessage(text.substring(i, Math.min(text.length(), i + CHUNK_CHARS))));
+            }
+            if (reply.toolCalls() != null && !reply.toolCalls().isEmpty()) {
+                chunks.add(toMessage("", reply.toolCalls()));
+            }
+            if (chunks.isEmpty()) {
+                chunks.add(new AssistantMessage(""));
+            }
+            long total = latency.delayMillis(reply.latencyMs());
+            long first = Math.min(total, latency.delayMillis(reply.firstChunkMs() != null ? reply.firstChunkMs() : reply.latencyMs()));
+            long gap = chunks.size() > 1 ? (total - first) / (chunks.size() - 1) : 0;
+            return Flux.range(0, chunks.size())
+                    .concatMap(i -> Mono.delay(Duration.ofMillis(i == 0 ? first : gap))
+                            .thenReturn(new ChatResponse(List.of(new Generation(chunks.get(i))))));
+        });
+    }
+
+    private ReplayEvent next() {
+        int index = cursor.getAndIncrement();
+        if (index > 0 && index % replies.size() == 0) {
+            log.debug("Replay reached the end of the recording, starting over");
+        }
+        return replies.get(index % replies.size());
+    }
+
+    private static AssistantMessage toMessage(String text, List<ReplayEvent.ToolCall> toolCalls) {
+        List<AssistantMessage.ToolCall> calls = new ArrayList<>();
+        if (toolCalls != null) {
+            for (ReplayEvent.ToolCall toolCall : toolCalls) {
+                calls.add(new AssistantMessage.ToolCall(toolCall.id(), "function", toolCall.name(), toolCall.arguments()));
+            }
+        }
+        return new AssistantMessage(text != null ? text : "", Map.of(), calls);
+    }
+}
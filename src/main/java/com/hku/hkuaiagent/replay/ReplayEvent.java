@@ -0,0 +1,52 @@
+package com.hku.hkuaiagent.replay;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * One recorded model call or tool call, stored as a single JSON line.
+ *
+ * @param type         {@link #CHAT} or {@link #TOOL}
+ * @param thread       thread that made the call, to tell concurrent sessions apart
+ * @param offsetMs     start time relative to the start of the recording
+ * @param latencyMs    total duration of the call
+ * @param firstChunkMs time to the first streamed chunk, null for blocking calls and tools
+ * @param prompt       prompt messages as "role: text" (chat only)
+ * @param text         model reply text (chat only)
+ * @param toolCalls    tool calls requested by the model (chat only)
+ * @param tool         tool name (tool only)
+ * @param input        tool arguments as sent by the model (tool only)
+ * @param output       tool result (tool only)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ReplayEvent(String type,
+                          String thread,
+                          long offsetMs,
+                          long latencyMs,
+                          Long firstChunkMs,
+                          List<String> prompt,
+                          String text,
+                          List<ToolCall> toolCalls,
+                          String tool,
+                          String input,
+                          String output) {
+
+    public static final String CHAT = "chat";
+
+    public static final String TOOL = "tool";
+
+    public record ToolCall(String id, String name, String arguments) {
+    }
+
+    public static ReplayEvent chat(long offsetMs, long latencyMs, Long firstChunkMs, List<String> prompt,
+                                   String text, List<ToolCall> toolCalls) {
+        return new ReplayEvent(CHAT, Thread.currentThread().getName(), offsetMs, latencyMs, firstChunkMs,
+                prompt, text, toolCalls, null, null, null);
+    }
+
+    public static ReplayEvent tool(long offsetMs, long latencyMs, String tool, String input, String output) {
+        return new ReplayEvent(TOOL, Thread.currentThread().getName(), offsetMs, latencyMs, null,
+                null, null, null, tool, input, output);
+    }
+}
@@ -0,0 +1,50 @@
+package com.hku.hkuaiagent.replay;
+
+import java.time.Duration;
+
+/**
+ * How long replayed model and tool calls take.
+ *
+ * @param scale factor applied to the recorded latency (ignored when {@code fixed} is set)
+ * @param fixed constant latency for every call, or null to use the scaled recorded latency
+ */
+public record ReplayLatency(double scale, Duration fixed) {
+
+    public static ReplayLatency recorded() {
+        return new ReplayLatency(1.0, null);
+    }
+
+    public static ReplayLatency none() {
+        return new ReplayLatency(0.0, null);
+    }
+
+    public static ReplayLatency fixed(Duration latency) {
+        return new ReplayLatency(1.0, latency);
+    }
+
+    public static ReplayLatency scaled(double scale) {
+        return new ReplayLatency(scale, null);
+    }
+
+    /**
+     * Delay to simulate for a call that took {@code recordedMillis} when recorded.
+     */
+    public long delayMillis(long recordedMillis) {
+        if (fixed != null) {
+            return fixed.toMillis();
+        }
+        return Math.max(0, Math.round(recordedMillis * scale));
+    }
+
+    void sleep(long recordedMillis) {
+        long delay = delayMillis(recordedMillis);
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
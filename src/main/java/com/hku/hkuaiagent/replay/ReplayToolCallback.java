@@ -0,0 +1,48 @@
+package com.hku.hkuaiagent.replay;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * Stand-in for a real tool during replay: keeps the tool's definition so prompts are unchanged, and answers
+ * with the recorded output from a {@link SessionReplay} instead of calling the tool.
+ */
+public class ReplayToolCallback implements ToolCallback {
+
+    private final ToolCallback original;
+
+    private final SessionReplay replay;
+
+    public ReplayToolCallback(ToolCallback original, SessionReplay replay) {
+        this.original = original;
+        this.replay = replay;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return original.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return original.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return replay.replayTool(getToolDefinition().name(), toolInput);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return call(toolInput);
+    }
+
+    @Override
+    public String toString() {
+        // Keep the original tool's name visible to class-name based filters and logs
+        return original.toString();
+    }
+}
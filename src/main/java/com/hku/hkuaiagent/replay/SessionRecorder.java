@@ -0,0 +1,86 @@
+package com.hku.hkuaiagent.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Appends recorded model and tool calls to a JSON Lines file, one {@link ReplayEvent} per line.
+ * <p>
+ * Every event is flushed immediately so a recording survives an abrupt shutdown. Writes are
+ * serialised, which is negligible next to the model and tool latencies being recorded.
+ */
+@Slf4j
+public class SessionRecorder implements Closeable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path file;
+
+    private final BufferedWriter writer;
+
+    private final long startNanos = System.nanoTime();
+
+    public SessionRecorder(Path file) {
+        this.file = file;
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open recording file " + file, e);
+        }
+        log.info("Recording agent sessions to {}", file.toAbsolutePath());
+    }
+
+    /**
+     * Milliseconds since the recorder was created, used as the event offset.
+     */
+    public long elapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    public synchronized void record(ReplayEvent event) {
+        try {
+            writer.write(MAPPER.writeValueAsString(event));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            log.warn("Failed to record {} event to {}: {}", event.type(), file, e.getMessage());
+        }
+    }
+
+    /**
+     * Read a recording written by this class.
+     */
+    public static List<ReplayEvent> load(Path file) {
+        List<ReplayEvent> events = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    events.add(MAPPER.readValue(line, ReplayEvent.class));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read recording file " + file, e);
+        }
+        return events;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,106 @@
+package com.hku.hkuaiagent.replay;
+
+import com.hku.hkuaiagent.tools.ToolResultCache;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A loaded recording: hands out the replay ChatModel and replaces tools with their recorded outputs.
+ * <p>
+ * Tool outputs are looked up by tool name and canonical arguments; repeated identical calls get the recorded
+ * results in order and then keep the last one. A call that was never recorded falls back to the next recorded
+ * output of the same tool, so a replay survives small argument changes. The real tools are never invoked.
+ */
+public class SessionReplay {
+
+    private final List<ReplayEvent> events;
+
+    private final ReplayLatency latency;
+
+    private final ReplayChatModel chatModel;
+
+    private final Map<String, List<ReplayEvent>> outputsByCall = new HashMap<>();
+
+    private final Map<String, List<ReplayEvent>> outputsByTool = new HashMap<>();
+
+    private final Map<String, AtomicInteger> cursors = new ConcurrentHashMap<>();
+
+    public SessionReplay(List<ReplayEvent> events, ReplayLatency latency) {
+        this.events = List.copyOf(events);
+        this.latency = latency;
+        this.chatModel = new ReplayChatModel(this.events, latency);
+        for (ReplayEvent event : this.events) {
+            if (ReplayEvent.TOOL.equals(event.type())) {
+                outputsByCall.computeIfAbsent(callKey(event.tool(), event.input()), key -> new ArrayList<>()).add(event);
+                outputsByTool.computeIfAbsent(event.tool(), key -> new ArrayList<>()).add(event);
+            }
+        }
+    }
+
+    public static SessionReplay load(Path file, ReplayLatency latency) {
+        return new SessionReplay(SessionRecorder.load(file), latency);
+    }
+
+    public ReplayChatModel chatModel() {
+        return chatModel;
+    }
+
+    public List<ReplayEvent> events() {
+        return events;
+    }
+
+    /**
+     * Restart both the model replies and the tool outputs from the beginning of the recording.
+     */
+    public void reset() {
+        chatModel.reset();
+        cursors.clear();
+    }
+
+    public ToolCallback wrap(ToolCallback tool) {
+        return tool instanceof ReplayToolCallback ? tool : new ReplayToolCallback(tool, this);
+    }
+
+    public ToolCallback[] wrap(ToolCallback[] tools) {
+        ToolCallback[] wrapped = new ToolCallback[tools.length];
+        for (int i = 0; i < tools.length; i++) {
+            wrapped[i] = wrap(tools[i]);
+        }
+        return wrapped;
+    }
+
+    public ToolCallbackProvider wrap(ToolCallbackProvider provider) {
+        return () -> wrap(provider.getToolCallbacks());
+    }
+
+    /**
+     * Recorded output for a tool call, after sleeping for the configured latency.
+     */
+    String replayTool(String tool, String input) {
+        String key = callKey(tool, input);
+        List<ReplayEvent> candidates = outputsByCall.get(key);
+        if (candidates == null) {
+            key = tool;
+            candidates = outputsByTool.get(tool);
+        }
+        if (candidates == null || candidates.isEmpty()) {
+            return "Error: no recorded output for tool " + tool;
+        }
+        int index = cursors.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+        ReplayEvent event = candidates.get(Math.min(index, candidates.size() - 1));
+        latency.sleep(event.latencyMs());
+        return event.output();
+    }
+
+    private static String callKey(String tool, String input) {
+        return tool + '\u0000' + ToolResultCache.canonicalArguments(input);
+    }
+}
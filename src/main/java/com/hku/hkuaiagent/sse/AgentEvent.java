@@ -0,0 +1,22 @@
+package com.hku.hkuaiagent.sse;
+
+/**
+ * One server-sent event of a run.
+ *
+ * @param id   position in the run, starting at 1; 0 for events not yet published to an {@link AgentEventStream}
+ * @param type event kind
+ * @param data payload, never null
+ */
+public record AgentEvent(long id, AgentEventType type, String data) {
+
+    public AgentEvent {
+        data = data == null ? "" : data;
+    }
+
+    /**
+     * Event to be published later, which assigns its id.
+     */
+    public static AgentEvent of(AgentEventType type, String data) {
+        return new AgentEvent(0, type, data);
+    }
+}
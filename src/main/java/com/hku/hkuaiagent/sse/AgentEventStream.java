@@ -0,0 +1,197 @@
+package com.hku.hkuaiagent.sse;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Event log of one agent run, decoupled from the HTTP connection that started it.
+ * <p>
+ * Events get increasing ids and are kept in a bounded replay buffer, so a client that lost its connection can
+ * reconnect with {@code Last-Event-ID} and continue after the last event it saw while the run keeps going.
+ * Subscribers are served through Reactor with their own demand: the HTTP writer only pulls the next event once
+ * the previous one is written. The stream completes after {@link AgentEventType#DONE}. A client that comes back
+ * after its next event has already left the buffer gets an explicit {@link AgentEventType#GAP} event first.
+ */
+@Slf4j
+public class AgentEventStream {
+
+    public static final int DEFAULT_REPLAY_BUFFER = 1024;
+
+    private final String runId;
+
+    // Who may resume this run, e.g. the agent type and chatId
+    private final String owner;
+
+    private final Sinks.Many<AgentEvent> sink;
+
+    private long lastId;
+
+    private volatile long completedAtMillis;
+
+    private final long createdAtMillis = System.currentTimeMillis();
+
+    private volatile long lastEventAtMillis = createdAtMillis;
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    // When the last subscriber went away, 0 while one is attached or before the first one arrived
+    private volatile long detachedAtMillis;
+
+    public AgentEventStream(String runId, String owner, int replayBuffer) {
+        this.runId = runId;
+        this.owner = owner;
+        this.sink = Sinks.many().replay().limit(replayBuffer);
+    }
+
+    /**
+     * Stream that is not registered for resumption, e.g. for tests and internal callers.
+     */
+    public static AgentEventStream detached() {
+        return new AgentEventStream(newRunId(), "", DEFAULT_REPLAY_BUFFER);
+    }
+
+    static String newRunId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Append an event. Ignored once the stream is complete.
+     *
+     * @param type event kind
+     * @param data payload, may be null
+     */
+    public synchronized void publish(AgentEventType type, String data) {
+        if (completedAtMillis != 0) {
+            log.debug("Run {} already completed, dropping {} event", runId, type);
+            return;
+        }
+        sink.tryEmitNext(new AgentEvent(++lastId, type, data));
+        lastEventAtMillis = System.currentTimeMillis();
+        if (type == AgentEventType.DONE) {
+            completedAtMillis = System.currentTimeMillis();
+            sink.tryEmitComplete();
+        }
+    }
+
+    /**
+     * Finish the run with a {@link AgentEventType#DONE} event.
+     */
+    public void complete() {
+        publish(AgentEventType.DONE, "");
+    }
+
+    /**
+     * Report an error to the client and finish the run.
+     *
+     * @param message text shown to the user
+     */
+    public void fail(String message) {
+        publish(AgentEventType.ERROR, message);
+        complete();
+    }
+
+    /**
+     * Publish every event of {@code source} in order and complete when it does. The source is consumed
+     * independently of any client, so the run survives disconnects.
+     *
+     * @param source events without ids, typically from a chat app
+     * @return handle to cancel the source
+     */
+    public Disposable relay(Flux<AgentEvent> source) {
+        return source.subscribe(event -> publish(event.type(), event.data()), error -> {
+            log.error("Run {} failed", runId, error);
+            fail("Sorry, something went wrong while handling the request. Please try again in a moment.");
+        }, this::complete);
+    }
+
+    public boolean isCompleted() {
+        return completedAtMillis != 0;
+    }
+
+    public long getCompletedAtMillis() {
+        return completedAtMillis;
+    }
+
+    public long getLastEventAtMillis() {
+        return lastEventAtMillis;
+    }
+
+    /**
+     * Whether nobody has been listening for longer than {@code grace}: no subscriber is attached and none has
+     * been since the stream was created or the last one left. The grace period leaves room for a reconnect.
+     */
+    public boolean isAbandoned(Duration grace) {
+        if (subscribers.get() > 0) {
+            return false;
+        }
+        long idleSince = Math.max(createdAtMillis, detachedAtMillis);
+        return System.currentTimeMillis() - idleSince > grace.toMillis();
+    }
+
+    /**
+     * Buffered and live events after {@code afterId}.
+     *
+     * @param afterId id of the last event the client received, 0 for all
+     * @return events in order, completing after {@link AgentEventType#DONE}; starts with a
+     * {@link AgentEventType#GAP} event when some of the requested events are no longer buffered
+     */
+    public Flux<AgentEvent> events(long afterId) {
+        return sink.asFlux()
+                .filter(event -> event.id() > afterId)
+                .switchOnFirst((first, events) -> {
+                    if (first.hasValue() && first.get().id() > afterId + 1) {
+                        long missed = first.get().id() - afterId - 1;
+                        log.info("Run {} lost {} events after {} from its replay buffer", runId, missed, afterId);
+                        // Numbered as the last lost event, so a later resume from it does not report the gap again
+                        AgentEvent gap = new AgentEvent(first.get().id() - 1, AgentEventType.GAP, String.valueOf(missed));
+                        return Mono.just(gap).concatWith(events);
+                    }
+                    return events;
+                })
+                .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                .doFinally(signal -> {
+                    if (subscribers.decrementAndGet() == 0) {
+                        detachedAtMillis = System.currentTimeMillis();
+                    }
+                });
+    }
+
+    /**
+     * {@link #events(long)} as SSE frames with id {@code <runId>:<eventId>} and a typed event name.
+     */
+    public Flux<ServerSentEvent<String>> toServerSentEvents(long afterId) {
+        return events(afterId).map(event -> ServerSentEvent.<String>builder()
+                .id(runId + ":" + event.id())
+                .event(event.type().eventName())
+                .data(protectLeadingSpaces(event.data()))
+                .build());
+    }
+
+    /**
+     * Browsers drop exactly one space after {@code data:} on every line, so a line that starts with a space
+     * gets an extra one to keep words from running together.
+     */
+    static String protectLeadingSpaces(String data) {
+        if (data.indexOf(' ') < 0) {
+            return data;
+        }
+        String protectedData = data.replace("\n ", "\n  ");
+        return protectedData.startsWith(" ") ? " " + protectedData : protectedData;
+    }
+}
@@ -0,0 +1,111 @@
+package com.hku.hkuaiagent.sse;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of running and recently finished {@link AgentEventStream}s, so that reconnecting clients resume
+ * the same run instead of starting a new one and paying for every LLM and tool call again.
+ * <p>
+ * SSE event ids have the form {@code <runId>:<eventId>}; browsers send the last one back in the
+ * {@code Last-Event-ID} header when they reconnect. Finished runs are kept for {@code hku.sse.retention}; runs that
+ * have not published anything for {@code hku.sse.max-idle} are considered hung, failed and dropped.
+ */
+@Component
+@Slf4j
+public class AgentEventStreams {
+
+    private final Map<String, AgentEventStream> runs = new ConcurrentHashMap<>();
+
+    private final int replayBuffer;
+
+    private final long retentionMillis;
+
+    private final long maxIdleMillis;
+
+    public AgentEventStreams(@Value("${hku.sse.replay-buffer:1024}") int replayBuffer,
+                             @Value("${hku.sse.retention:10m}") Duration retention,
+                             @Value("${hku.sse.max-idle:15m}") Duration maxIdle) {
+        this.replayBuffer = replayBuffer;
+        this.retentionMillis = retention.toMillis();
+        this.maxIdleMillis = maxIdle.toMillis();
+    }
+
+    /**
+     * Register a new run.
+     *
+     * @param owner caller identity that must match on resume, e.g. {@code manus:<chatId>}
+     * @return empty event stream
+     */
+    public AgentEventStream start(String owner) {
+        evictExpired();
+        AgentEventStream stream = new AgentEventStream(AgentEventStream.newRunId(), owner, replayBuffer);
+        runs.put(stream.getRunId(), stream);
+        return stream;
+    }
+
+    /**
+     * Forget a run that never started, e.g. because the scheduler rejected it.
+     */
+    public void discard(AgentEventStream stream) {
+        runs.remove(stream.getRunId());
+    }
+
+    /**
+     * Continue a run after a reconnect.
+     *
+     * @param lastEventId value of the {@code Last-Event-ID} header
+     * @param owner caller identity, must equal the one the run was started with
+     * @return remaining events, or an error event when the run is unknown or has expired
+     */
+    public Flux<ServerSentEvent<String>> resume(String lastEventId, String owner) {
+        int separator = lastEventId.lastIndexOf(':');
+        AgentEventStream stream = separator > 0 ? runs.get(lastEventId.substring(0, separator)) : null;
+        long afterId = separator > 0 ? parseEventId(lastEventId.substring(separator + 1)) : -1;
+        if (stream == null || afterId < 0 || !stream.getOwner().equals(owner)) {
+            log.info("Cannot resume run for Last-Event-ID {}", lastEventId);
+            AgentEventStream expired = AgentEventStream.detached();
+            expired.fail("This answer is no longer available. Please send your message again.");
+            return expired.toServerSentEvents(0);
+        }
+        log.info("Resuming run {} after event {}", stream.getRunId(), afterId);
+        return stream.toServerSentEvents(afterId);
+    }
+
+    public int size() {
+        return runs.size();
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<AgentEventStream> iterator = runs.values().iterator();
+        while (iterator.hasNext()) {
+            AgentEventStream stream = iterator.next();
+            if (stream.isCompleted()) {
+                if (stream.getCompletedAtMillis() < now - retentionMillis) {
+                    iterator.remove();
+                }
+            } else if (stream.getLastEventAtMillis() < now - maxIdleMillis) {
+                log.warn("Run {} has been silent for over {} ms, dropping it", stream.getRunId(), maxIdleMillis);
+                stream.fail("This answer stopped making progress. Please send your message again.");
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long parseEventId(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
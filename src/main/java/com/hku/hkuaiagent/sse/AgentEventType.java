@@ -0,0 +1,49 @@
+package com.hku.hkuaiagent.sse;
+
+/**
+ * Kinds of server-sent events emitted while an agent or chat app answers.
+ * <p>
+ * The {@link #eventName()} is written to the SSE {@code event:} field, so clients listen per type instead of
+ * parsing inline tags such as {@code [TOOL_CALL]} out of the data. Agent errors use {@code agent_error}
+ * because {@code error} is reserved by the browser EventSource for connection failures.
+ */
+public enum AgentEventType {
+
+    QUEUED("queued"),
+
+    THINKING_START("thinking_start"),
+
+    THINKING_END("thinking_end"),
+
+    TOOL_CALL("tool_call"),
+
+    RAG_CONTEXT("rag_context"),
+
+    /**
+     * Text streamed while the model may still switch to tool calls. Clients show it provisionally and drop it
+     * on the next {@link #TOOL_CALL} or {@link #ANSWER}; the final answer is always sent as {@link #ANSWER}.
+     */
+    ANSWER_DRAFT("answer_draft"),
+
+    ANSWER("answer"),
+
+    ERROR("agent_error"),
+
+    /**
+     * Sent on resume when events after the client's {@code Last-Event-ID} have already left the replay buffer.
+     * The data is the number of events that were lost; the stream continues with the oldest buffered event.
+     */
+    GAP("gap"),
+
+    DONE("done");
+
+    private final String eventName;
+
+    AgentEventType(String eventName) {
+        this.eventName = eventName;
+    }
+
+    public String eventName() {
+        return eventName;
+    }
+}
@@ -0,0 +1,48 @@
+package com.hku.hkuaiagent.tools;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.Objects;
+
+/**
+ * {@link ToolCallback} decorator that serves repeated calls from a {@link ToolResultCache}.
+ */
+public class CachingToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+    private final ToolResultCache cache;
+
+    public CachingToolCallback(ToolCallback delegate, ToolResultCache cache) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.cache = Objects.requireNonNull(cache, "cache");
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return cache.getOrCompute(getToolDefinition().name(), toolInput, () -> delegate.call(toolInput));
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return cache.getOrCompute(getToolDefinition().name(), toolInput, () -> delegate.call(toolInput, toolContext));
+    }
+
+    @Override
+    public String toString() {
+        // Keep the delegate's representation so name-based filters still recognise the tool
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package com.hku.hkuaiagent.tools;
+
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+
+import java.util.Objects;
+
+/**
+ * Wrapper around an existing {@link ToolCallbackProvider} whose cacheable tools go through a
+ * {@link ToolResultCache}.
+ * <p>
+ * The wrapped callbacks are built once and reused until {@link ToolCatalog#invalidateAll()} reports that the
+ * provider's tool list changed, so neither the delegate's tool listing nor the wrappers are redone per call.
+ */
+public class CachingToolCallbackProvider implements ToolCallbackProvider {
+
+    private record Snapshot(long generation, ToolCallback[] callbacks) {
+    }
+
+    private final ToolCallbackProvider delegate;
+    private final ToolResultCache cache;
+    private volatile Snapshot snapshot;
+
+    public CachingToolCallbackProvider(ToolCallbackProvider delegate, ToolResultCache cache) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.cache = Objects.requireNonNull(cache, "cache");
+    }
+
+    /**
+     * The cached callbacks; callers must not modify the returned array.
+     */
+    @Override
+    public @org.springframework.lang.NonNull ToolCallback[] getToolCallbacks() {
+        long generation = ToolCatalog.generation();
+        Snapshot current = snapshot;
+        if (current == null || current.generation() != generation) {
+            current = new Snapshot(generation, cache.wrap(delegate.getToolCallbacks()));
+            snapshot = current;
+        }
+        return current.callbacks();
+    }
+}
@@ -3,28 +3,22 @@ package com.hku.hkuaiagent.tools;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hku.hkuaiagent.rag.DocumentSnapshot;
+import com.hku.hkuaiagent.rag.HkuAiDocumentLoader;
 import com.hku.hkuaiagent.rag.QueryRewriter;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.lang.Nullable;
-import org.springframework.util.FileCopyUtils;
 
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Tool that queries the HKU vector knowledge base, prioritising campus and course FAQs.
@@ -33,11 +27,14 @@ public class CampusKnowledgeSearchTool {
 
     private final VectorStore vectorStore;
     private final QueryRewriter queryRewriter;
+    private final HkuAiDocumentLoader documentLoader;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    public CampusKnowledgeSearchTool(VectorStore vectorStore, @Nullable QueryRewriter queryRewriter) {
+    public CampusKnowledgeSearchTool(VectorStore vectorStore, @Nullable QueryRewriter queryRewriter,
+                                     HkuAiDocumentLoader documentLoader) {
         this.vectorStore = vectorStore;
         this.queryRewriter = queryRewriter;
+        this.documentLoader = documentLoader;
     }
 
     @Tool(description = "Search HKU campus knowledge base (RAG) and summarise findings")
@@ -139,15 +136,10 @@ public class CampusKnowledgeSearchTool {
             }
         }
 
-        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
-        try {
-            Resource[] resources = resolver.getResources("classpath*:document/course_" + courseCode + "*.md");
-            Map<String, Document> loaded = loadCourseDocuments(resources, courseCode);
-            for (Map.Entry<String, Document> entry : loaded.entrySet()) {
-                variantMap.putIfAbsent(entry.getKey(), entry.getValue());
-            }
-        } catch (IOException ignored) {
-            // Ignore failures when local files cannot be read; still return vector search results
+        // Whole local files come from the shared snapshot, so no resources are read per call
+        Map<String, Document> loaded = loadCourseDocuments(documentLoader.snapshot(), courseCode);
+        for (Map.Entry<String, Document> entry : loaded.entrySet()) {
+            variantMap.putIfAbsent(entry.getKey(), entry.getValue());
         }
 
         List<Document> merged = new ArrayList<>();
@@ -182,29 +174,21 @@ public class CampusKnowledgeSearchTool {
         };
     }
 
-    private Map<String, Document> loadCourseDocuments(Resource[] resources, String courseCode) throws IOException {
+    private Map<String, Document> loadCourseDocuments(DocumentSnapshot snapshot, String courseCode) {
         Map<String, Document> courseDocs = new HashMap<>();
-        if (resources == null) {
-            return courseDocs;
-        }
-        for (Resource resource : resources) {
-            if (resource == null || !resource.exists()) {
-                continue;
-            }
-            String filename = resource.getFilename();
+        for (DocumentSnapshot.SourceFile file : snapshot.courseFiles(courseCode)) {
+            String filename = file.filename();
             String variant = extractVariantFromFilename(filename, courseCode);
             if (variant == null) {
                 continue;
             }
-            try (InputStreamReader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
-                String content = FileCopyUtils.copyToString(reader);
-                Map<String, Object> metadata = new HashMap<>();
-                metadata.put("filename", filename);
-                metadata.put("title", resolveTitleFromContent(filename, content));
-                metadata.put("topic", "HKU Course");
-                Document document = new Document(content, metadata);
-                courseDocs.putIfAbsent(variant, document);
-            }
+            String content = file.content();
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("filename", filename);
+            metadata.put("title", resolveTitleFromContent(filename, content));
+            metadata.put("topic", "HKU Course");
+            Document document = new Document(content, metadata);
+            courseDocs.putIfAbsent(variant, document);
         }
         return courseDocs;
     }
@@ -231,26 +215,12 @@ public class CampusKnowledgeSearchTool {
     }
 
     private String extractVariantFromFilename(String filename, String courseCode) {
-        if (filename == null) {
-            return null;
-        }
-        String pattern = "course_" + courseCode + "([A-Z]?)_";
-        Matcher matcher = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE).matcher(filename);
-        if (matcher.find()) {
-            return matcher.group(1).toUpperCase();
-        }
-        return null;
+        return DocumentSnapshot.courseVariant(filename, courseCode);
     }
 
     private String extractCourseCode(String text) {
-        if (text == null) {
-            return null;
-        }
-        Matcher matcher = Pattern.compile("(?i)(comp\\d{4})").matcher(text);
-        if (matcher.find()) {
-            return matcher.group(1).toUpperCase();
-        }
-        return null;
+        List<String> codes = DocumentSnapshot.courseCodes(text);
+        return codes.isEmpty() ? null : DocumentSnapshot.coursePrefix(codes.get(0));
     }
 
     private String buildSummary(List<Document> documents) {
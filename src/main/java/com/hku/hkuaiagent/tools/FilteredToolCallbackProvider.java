@@ -2,8 +2,8 @@ package com.hku.hkuaiagent.tools;
 
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.definition.ToolDefinition;
 
-import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.function.Predicate;
@@ -38,19 +38,11 @@ public class FilteredToolCallbackProvider implements ToolCallbackProvider {
         if (callback == null) {
             return null;
         }
-        try {
-            Method toolDefinitionMethod = callback.getClass().getMethod("toolDefinition");
-            Object toolDefinition = toolDefinitionMethod.invoke(callback);
-            if (toolDefinition != null) {
-                Method nameMethod = toolDefinition.getClass().getMethod("name");
-                Object nameValue = nameMethod.invoke(toolDefinition);
-                if (nameValue != null) {
-                    return nameValue.toString();
-                }
-            }
-        } catch (ReflectiveOperationException ignored) {
-            // Fall back to the callback's string representation
+        ToolDefinition toolDefinition = callback.getToolDefinition();
+        if (toolDefinition != null && toolDefinition.name() != null) {
+            return toolDefinition.name();
         }
+        // Fall back to the callback's string representation
         return callback.toString();
     }
 }
@@ -0,0 +1,148 @@
+package com.hku.hkuaiagent.tools;
+
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Precomputed tool set of one agent: local tools plus the tools of an MCP provider, filtered once.
+ * <p>
+ * Resolving MCP tools lists them from every connected server and may run filters over each callback,
+ * which is too expensive for every planning step. The catalog builds an immutable snapshot on first use
+ * and keeps serving it until {@link #invalidateAll()} signals that the MCP server set or its tool lists
+ * changed. The planner-facing text description of the tools is rendered once per snapshot as well.
+ */
+public class ToolCatalog implements ToolCallbackProvider {
+
+    // Bumped whenever any MCP client reports a change; every catalog rebuilds lazily on its next read
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private record Snapshot(long generation, ToolCallback[] callbacks, List<ToolCallback> callbackList,
+                            Map<String, String> descriptions) {
+    }
+
+    private final ToolCallback[] localTools;
+
+    private final ToolCallbackProvider mcpToolProvider;
+
+    private final Predicate<String> nameFilter;
+
+    private volatile Snapshot snapshot;
+
+    public ToolCatalog(ToolCallback[] localTools, ToolCallbackProvider mcpToolProvider) {
+        this(localTools, mcpToolProvider, name -> true);
+    }
+
+    public ToolCatalog(ToolCallback[] localTools, ToolCallbackProvider mcpToolProvider, Predicate<String> nameFilter) {
+        this.localTools = localTools != null ? localTools.clone() : new ToolCallback[0];
+        this.mcpToolProvider = mcpToolProvider;
+        this.nameFilter = nameFilter != null ? nameFilter : name -> true;
+    }
+
+    /**
+     * Mark every catalog stale, e.g. after an MCP server connected or changed its tool list.
+     */
+    public static void invalidateAll() {
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Current tool-set generation; changes whenever {@link #invalidateAll()} is called.
+     */
+    static long generation() {
+        return GENERATION.get();
+    }
+
+    /**
+     * The cached callbacks; callers must not modify the returned array.
+     */
+    @Override
+    public @org.springframework.lang.NonNull ToolCallback[] getToolCallbacks() {
+        return current().callbacks();
+    }
+
+    /**
+     * The cached callbacks as an unmodifiable list.
+     */
+    public List<ToolCallback> getToolCallbackList() {
+        return current().callbackList();
+    }
+
+    /**
+     * One entry per tool with name, description and input schema, for prompts that list the tools.
+     */
+    public String describe() {
+        return describe(name -> true);
+    }
+
+    /**
+     * Like {@link #describe()}, limited to the tools whose names match; the entries are rendered once per snapshot.
+     */
+    public String describe(Predicate<String> include) {
+        StringBuilder description = new StringBuilder();
+        current().descriptions().forEach((name, entry) -> {
+            if (include.test(name)) {
+                description.append(entry);
+            }
+        });
+        return description.toString();
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        long generation = GENERATION.get();
+        if (current != null && current.generation() == generation) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.generation() != generation) {
+                current = build(generation);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private Snapshot build(long generation) {
+        // Local tools win over MCP tools that expose the same name
+        Map<String, ToolCallback> byName = new LinkedHashMap<>();
+        addAll(byName, localTools);
+        if (mcpToolProvider != null) {
+            addAll(byName, mcpToolProvider.getToolCallbacks());
+        }
+        ToolCallback[] callbacks = byName.values().toArray(new ToolCallback[0]);
+        Map<String, String> descriptions = new LinkedHashMap<>();
+        for (ToolCallback callback : callbacks) {
+            ToolDefinition definition = callback.getToolDefinition();
+            descriptions.put(definition.name(), "- " + definition.name() + ": " + definition.description()
+                    + "\n  input schema: " + definition.inputSchema() + '\n');
+        }
+        List<ToolCallback> callbackList = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(callbacks)));
+        return new Snapshot(generation, callbacks, callbackList, Collections.unmodifiableMap(descriptions));
+    }
+
+    private void addAll(Map<String, ToolCallback> byName, ToolCallback[] callbacks) {
+        if (callbacks == null) {
+            return;
+        }
+        for (ToolCallback callback : callbacks) {
+            if (callback == null) {
+                continue;
+            }
+            String name = callback.getToolDefinition().name();
+            if (nameFilter.test(name)) {
+                byName.putIfAbsent(name, callback);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.hku.hkuaiagent.tools;
 
+import com.hku.hkuaiagent.rag.HkuAiDocumentLoader;
 import com.hku.hkuaiagent.rag.QueryRewriter;
 import org.springframework.ai.support.ToolCallbacks;
 import org.springframework.ai.tool.ToolCallback;
@@ -27,6 +28,12 @@ public class ToolRegistration {
     @Autowired(required = false)
     private QueryRewriter queryRewriter;
 
+    @Autowired
+    private ToolResultCache toolResultCache;
+
+    @Autowired
+    private HkuAiDocumentLoader hkuAiDocumentLoader;
+
     @Bean
     public ToolCallback[] allTools() {
         List<Object> tools = new ArrayList<>();
@@ -41,10 +48,11 @@ public class ToolRegistration {
         tools.add(new WeatherLookupTool());
 
         if (hkuAiVectorStore != null) {
-            tools.add(new CampusKnowledgeSearchTool(hkuAiVectorStore, queryRewriter));
+            tools.add(new CampusKnowledgeSearchTool(hkuAiVectorStore, queryRewriter, hkuAiDocumentLoader));
         }
 
-        return ToolCallbacks.from(tools.toArray(new Object[0]));
+        // Read-only lookups are served from the shared cache when the same arguments repeat
+        return toolResultCache.wrap(ToolCallbacks.from(tools.toArray(new Object[0])));
     }
 }
 
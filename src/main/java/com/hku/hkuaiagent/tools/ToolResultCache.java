@@ -0,0 +1,221 @@
+package com.hku.hkuaiagent.tools;
+
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Shared, cross-session cache of tool results keyed by tool name and canonicalised JSON arguments.
+ * <p>
+ * Only tools with a registered {@link Policy} are cached; everything else (file writes, terminal, PDF
+ * generation, terminate…) always runs. Each policy has its own TTL and LRU size limit, and hit/miss
+ * counters are kept per tool so the hit rate can be checked at {@code /ai/tools/cache/stats}.
+ */
+@Slf4j
+public class ToolResultCache {
+
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    /**
+     * Cache rules for a single tool.
+     *
+     * @param ttl        how long a result stays fresh
+     * @param maxEntries LRU capacity for this tool
+     */
+    public record Policy(Duration ttl, int maxEntries) {
+    }
+
+    private record Entry(String value, long expiresAtMillis) {
+    }
+
+    private final Map<String, Policy> policies = new ConcurrentHashMap<>();
+
+    private final Map<String, ToolCache> caches = new ConcurrentHashMap<>();
+
+    private final Clock clock;
+
+    public ToolResultCache() {
+        this(Clock.systemUTC());
+    }
+
+    ToolResultCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Enable caching for a tool. Registering again replaces the policy and clears cached results.
+     */
+    public ToolResultCache register(String toolName, Duration ttl, int maxEntries) {
+        policies.put(toolName, new Policy(ttl, maxEntries));
+        caches.clear();
+        return this;
+    }
+
+    public boolean isCacheable(String toolName) {
+        return policyFor(toolName) != null;
+    }
+
+    /**
+     * Look up the policy for a tool. MCP clients may prefix tool names with the server name
+     * (e.g. {@code amap_maps_maps_weather}), so a policy also matches names ending in {@code _<tool>}.
+     */
+    private Policy policyFor(String toolName) {
+        if (toolName == null) {
+            return null;
+        }
+        Policy policy = policies.get(toolName);
+        if (policy != null) {
+            return policy;
+        }
+        for (Map.Entry<String, Policy> entry : policies.entrySet()) {
+            if (toolName.endsWith("_" + entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wrap callbacks so calls to tools with a policy go through the cache.
+     */
+    public ToolCallback[] wrap(ToolCallback[] callbacks) {
+        if (callbacks == null) {
+            return new ToolCallback[0];
+        }
+        ToolCallback[] wrapped = new ToolCallback[callbacks.length];
+        for (int i = 0; i < callbacks.length; i++) {
+            ToolCallback callback = callbacks[i];
+            boolean cacheable = callback != null
+                    && !(callback instanceof CachingToolCallback)
+                    && isCacheable(callback.getToolDefinition().name());
+            wrapped[i] = cacheable ? new CachingToolCallback(callback, this) : callback;
+        }
+        return wrapped;
+    }
+
+    /**
+     * Wrap a provider (e.g. the MCP tool provider) so the callbacks it hands out are cached as well.
+     */
+    public ToolCallbackProvider wrap(ToolCallbackProvider provider) {
+        return new CachingToolCallbackProvider(provider, this);
+    }
+
+    /**
+     * Return the cached result for this call or compute, store and return it.
+     */
+    String getOrCompute(String toolName, String toolInput, Supplier<String> loader) {
+        Policy policy = policyFor(toolName);
+        if (policy == null) {
+            return loader.get();
+        }
+        ToolCache cache = caches.computeIfAbsent(toolName, name -> new ToolCache(policy));
+        String key = canonicalArguments(toolInput);
+        long now = clock.millis();
+        String cached = cache.get(key, now);
+        if (cached != null) {
+            cache.hits.incrementAndGet();
+            log.debug("Tool cache hit for {} {}", toolName, key);
+            return cached;
+        }
+        cache.misses.incrementAndGet();
+        String result = loader.get();
+        if (isWorthCaching(result)) {
+            cache.put(key, new Entry(result, now + policy.ttl().toMillis()));
+        }
+        return result;
+    }
+
+    /**
+     * Per-tool hit/miss counters, hit rate and current size for every tool that has been called.
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+        caches.forEach((toolName, cache) -> {
+            long hits = cache.hits.get();
+            long misses = cache.misses.get();
+            Map<String, Object> toolStats = new LinkedHashMap<>();
+            toolStats.put("hits", hits);
+            toolStats.put("misses", misses);
+            toolStats.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+            toolStats.put("size", cache.size());
+            toolStats.put("ttlSeconds", cache.policy.ttl().toSeconds());
+            toolStats.put("maxEntries", cache.policy.maxEntries());
+            stats.put(toolName, toolStats);
+        });
+        return stats;
+    }
+
+    /**
+     * Normalise JSON arguments so key order and whitespace do not produce separate entries.
+     */
+    public static String canonicalArguments(String toolInput) {
+        if (StrUtil.isBlank(toolInput)) {
+            return "{}";
+        }
+        try {
+            JsonNode node = CANONICAL_MAPPER.readTree(toolInput);
+            Object value = CANONICAL_MAPPER.treeToValue(node, Object.class);
+            return CANONICAL_MAPPER.writeValueAsString(value);
+        } catch (Exception e) {
+            return toolInput.trim();
+        }
+    }
+
+    private static boolean isWorthCaching(String result) {
+        // Transient failures should be retried on the next call rather than served from the cache
+        return StrUtil.isNotBlank(result)
+                && !StrUtil.startWithAnyIgnoreCase(result.trim(), "Failed", "Error", "Could not");
+    }
+
+    private static final class ToolCache {
+
+        private final Policy policy;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final LinkedHashMap<String, Entry> entries;
+
+        private ToolCache(Policy policy) {
+            this.policy = policy;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > policy.maxEntries();
+                }
+            };
+        }
+
+        private synchronized String get(String key, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtMillis() <= now) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value();
+        }
+
+        private synchronized void put(String key, Entry entry) {
+            entries.put(key, entry);
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.hku.hkuaiagent.util;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+/**
+ * Turns model output into the plain text shown in the chat UI, in a single pass without regular expressions.
+ * <p>
+ * The previous implementation chained more than twenty {@code String.replaceAll} calls. Each one compiled a
+ * Pattern and copied the whole text, on every response and streamed chunk. This class walks the text once
+ * and writes into one buffer sized to the input. Two configurations exist:
+ * <ul>
+ *     <li>{@link #MARKDOWN}: strips bold markers, code fences and headings, turns horizontal rules into
+ *     paragraph breaks and normalises {@code -}/{@code *} bullets.</li>
+ *     <li>{@link #PLAIN_TEXT}: additionally unwraps inline code, drops blockquote markers, maps en/em dashes
+ *     to {@code -}, puts inline list items and URLs on their own lines and fixes {@code 1.Item} numbering.
+ *     Headings and horizontal rules are kept.</li>
+ * </ul>
+ * Both collapse runs of spaces and tabs, remove spaces around line breaks, keep at most one blank line and
+ * trim the result. {@link #streaming()} applies the same rules to a streamed answer chunk by chunk.
+ */
+public final class ResponseSanitizer {
+
+    public static final ResponseSanitizer MARKDOWN = new ResponseSanitizer(false);
+
+    public static final ResponseSanitizer PLAIN_TEXT = new ResponseSanitizer(true);
+
+    // PLAIN_TEXT features (agent answers); MARKDOWN handles headings and rules instead
+    private final boolean plainText;
+
+    private ResponseSanitizer(boolean plainText) {
+        this.plainText = plainText;
+    }
+
+    /**
+     * Sanitise a complete response.
+     *
+     * @param text raw model output, may be null
+     * @return sanitised text, empty for null input
+     */
+    public String sanitize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        return new Pass().feed(text, true);
+    }
+
+    /**
+     * Reactor operator that sanitises a streamed answer, for use with {@link Flux#transform}.
+     * <p>
+     * The concatenated output equals {@link #sanitize} of the whole answer: markers split across chunks
+     * ({@code *} + {@code *}, a fence over two deltas, {@code \r} + {@code \n}) are still recognised and
+     * spaces between chunks are kept. Text is emitted as soon as it is decided; only the few trailing
+     * characters that could still start a token are held back until the next chunk or the end of the stream.
+     * Empty results are skipped, and each subscription gets its own state.
+     */
+    public Function<Flux<String>, Flux<String>> streaming() {
+        return chunks -> Flux.defer(() -> {
+            Pass pass = new Pass();
+            return chunks.map(chunk -> pass.feed(chunk, false))
+                    .concatWith(Mono.fromCallable(() -> pass.feed("", true)))
+                    .filter(text -> !text.isEmpty());
+        });
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\f' || c == '\u00A0';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isUrlChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c)
+                || "-._~:/?#[]@!$&'()*+,;=%".indexOf(c) >= 0;
+    }
+
+    /**
+     * Outcome of a lookahead: {@code MORE} means the input seen so far ends before the answer is known.
+     */
+    private enum Match { YES, NO, MORE }
+
+    /**
+     * State of one sanitising pass. Input arrives through {@link #feed}; anything that cannot be decided yet
+     * stays in {@code in} for the next call.
+     */
+    private final class Pass {
+
+        private final StringBuilder out = new StringBuilder();
+
+        private String in = "";
+
+        private int length;
+
+        private int pos;
+
+        // No more input will follow, so lookaheads that run out of text fail instead of waiting
+        private boolean last;
+
+        // Last input character consumed by an earlier feed
+        private char previous = '\n';
+
+        private boolean started;
+
+        // Line breaks seen since the last emitted character, written lazily so trailing ones disappear
+        private int pendingNewlines;
+
+        private boolean pendingSpace;
+
+        private boolean lineHasContent;
+
+        private boolean atLineStart = true;
+
+        // Inside an inline code span whose opening backtick was dropped
+        private boolean inInlineCode;
+
+        // Dropping the rest of a horizontal rule
+        private boolean inRule;
+
+        // Copying a URL onto its own line
+        private boolean inUrl;
+
+        String feed(String chunk, boolean last) {
+            in = pos < length ? in.substring(pos) + chunk : chunk;
+            length = in.length();
+            pos = 0;
+            this.last = last;
+            out.ensureCapacity(length);
+            while (pos < length && step()) {
+                // each step consumes one token or stops for more input
+            }
+            if (pos > 0) {
+                previous = in.charAt(pos - 1);
+            }
+            String result = out.toString();
+            out.setLength(0);
+            return result;
+        }
+
+        /**
+         * Handle the token at {@code pos}.
+         *
+         * @return false when more input is needed to decide
+         */
+        private boolean step() {
+            if (atLineStart) {
+                return lineStart();
+            }
+            char c = in.charAt(pos);
+            if (inRule) {
+                if (c == '-') {
+                    pos++;
+                } else {
+                    inRule = false;
+                    newline();
+                    newline();
+                    atLineStart = true;
+                }
+                return true;
+            }
+            if (inUrl) {
+                return urlChar(c);
+            }
+            if (c == '*') {
+                Match bold = at("**");
+                if (bold == Match.MORE) {
+                    return false;
+                }
+                if (bold == Match.YES) {
+                    pos += 2;
+                } else {
+                    pos++;
+                    emit(c);
+                }
+                return true;
+            }
+            if (c == '`') {
+                return backtick();
+            }
+            if (c == '\r') {
+                Match crlf = at("\r\n");
+                if (crlf == Match.MORE) {
+                    return false;
+                }
+                pos++;
+                if (crlf == Match.NO) {
+                    emit(c);
+                }
+                return true;
+            }
+            if (c == '\n') {
+                pos++;
+                newline();
+                atLineStart = true;
+                return true;
+            }
+            if (isBlank(c)) {
+                pos++;
+                space();
+                return true;
+            }
+            if (c == '-' && !plainText) {
+                // Horizontal rule, also inline: becomes a paragraph break
+                Match rule = at("---");
+                if (rule == Match.MORE) {
+                    return false;
+                }
+                if (rule == Match.YES) {
+                    pos += 3;
+                    inRule = true;
+                    return true;
+                }
+            }
+            if (plainText && (c == '\u2013' || c == '\u2014')) {
+                pos++;
+                emit('-');
+                return true;
+            }
+            if (plainText && lineHasContent && c == '-') {
+                // Inline "- item" starts a new line
+                Match item = listItemAt(pos + 1);
+                if (item == Match.MORE) {
+                    return false;
+                }
+                if (item == Match.YES) {
+                    newline();
+                    atLineStart = true;
+                    return true;
+                }
+            }
+            if (plainText && lineHasContent && isDigit(c) && !isDigit(previousChar())) {
+                Match item = numberedItemAt(pos);
+                if (item == Match.MORE) {
+                    return false;
+                }
+                if (item == Match.YES) {
+                    newline();
+                    atLineStart = true;
+                    return true;
+                }
+            }
+            if (plainText && c == 'h') {
+                Match http = at("http://");
+                Match https = at("https://");
+                if (http == Match.YES || https == Match.YES) {
+                    if (lineHasContent) {
+                        newline();
+                    }
+                    inUrl = true;
+                    return true;
+                }
+                if (http == Match.MORE || https == Match.MORE) {
+                    return false;
+                }
+            }
+            pos++;
+            emit(c);
+            return true;
+        }
+
+        /**
+         * Line-start rules: leading blanks, heading and blockquote markers, bullets and numbering.
+         */
+        private boolean lineStart() {
+            skipBlanks();
+            if (pos >= length) {
+                return last;
+            }
+            char marker = plainText ? '>' : '#';
+            if (in.charAt(pos) == marker) {
+                int end = pos;
+                while (end < length && in.charAt(end) == marker) {
+                    end++;
+                }
+                while (end < length && isBlank(in.charAt(end))) {
+                    end++;
+                }
+                if (end >= length && !last) {
+                    return false;
+                }
+                pos = end;
+                if (pos >= length) {
+                    return true;
+                }
+            }
+            char c = in.charAt(pos);
+            if (c == '-' || c == '*') {
+                if (pos + 1 >= length) {
+                    if (!last) {
+                        return false;
+                    }
+                } else if (isBlank(in.charAt(pos + 1))) {
+                    int end = pos + 1;
+                    while (end < length && isBlank(in.charAt(end))) {
+                        end++;
+                    }
+                    if (end >= length && !last) {
+                        return false;
+                    }
+                    pos = end;
+                    emit('-');
+                    emit(' ');
+                }
+            } else if (plainText && isDigit(c)) {
+                int end = pos;
+                while (end < length && isDigit(in.charAt(end))) {
+                    end++;
+                }
+                if (end + 1 >= length && !last) {
+                    return false;
+                }
+                if (end + 1 < length && in.charAt(end) == '.' && !isBlank(in.charAt(end + 1))
+                        && in.charAt(end + 1) != '\n' && in.charAt(end + 1) != '\r') {
+                    // "1.Item" -> "1. Item"
+                    while (pos <= end) {
+                        emit(in.charAt(pos++));
+                    }
+                    emit(' ');
+                }
+            }
+            atLineStart = false;
+            return true;
+        }
+
+        private boolean backtick() {
+            Match fence = at("```");
+            if (fence == Match.MORE) {
+                return false;
+            }
+            if (fence == Match.YES) {
+                pos += 3;
+                return true;
+            }
+            if (plainText && inInlineCode) {
+                pos++;
+                inInlineCode = false;
+                return true;
+            }
+            if (plainText && (pos + 1 < length || !last)) {
+                if (pos + 1 >= length) {
+                    return false;
+                }
+                Match closed = in.charAt(pos + 1) == '`' ? Match.NO : closingBacktick(pos + 1);
+                if (closed == Match.MORE) {
+                    return false;
+                }
+                if (closed == Match.YES) {
+                    pos++;
+                    inInlineCode = true;
+                    return true;
+                }
+            }
+            pos++;
+            emit('`');
+            return true;
+        }
+
+        private boolean urlChar(char c) {
+            if (c == '*') {
+                Match bold = at("**");
+                if (bold == Match.MORE) {
+                    return false;
+                }
+                if (bold == Match.YES) {
+                    pos += 2;
+                    return true;
+                }
+            }
+            if (isUrlChar(c)) {
+                pos++;
+                emit(c);
+            } else {
+                inUrl = false;
+                newline();
+                atLineStart = true;
+            }
+            return true;
+        }
+
+        /**
+         * A closing backtick later on the same line.
+         */
+        private Match closingBacktick(int from) {
+            for (int i = from; i < length; i++) {
+                char c = in.charAt(i);
+                if (c == '`') {
+                    return Match.YES;
+                }
+                if (c == '\n') {
+                    return Match.NO;
+                }
+            }
+            return last ? Match.NO : Match.MORE;
+        }
+
+        /**
+         * "- x" after the dash at {@code from - 1}: blanks and then a visible character.
+         */
+        private Match listItemAt(int from) {
+            int i = from;
+            if (i >= length) {
+                return last ? Match.NO : Match.MORE;
+            }
+            if (!isBlank(in.charAt(i))) {
+                return Match.NO;
+            }
+            while (i < length && isBlank(in.charAt(i))) {
+                i++;
+            }
+            if (i >= length) {
+                return last ? Match.NO : Match.MORE;
+            }
+            return in.charAt(i) != '\n' && in.charAt(i) != '\r' ? Match.YES : Match.NO;
+        }
+
+        private Match numberedItemAt(int from) {
+            int i = from;
+            while (i < length && isDigit(in.charAt(i))) {
+                i++;
+            }
+            if (i >= length) {
+                return last ? Match.NO : Match.MORE;
+            }
+            return in.charAt(i) == '.' ? listItemAt(i + 1) : Match.NO;
+        }
+
+        private Match at(String token) {
+            for (int k = 0; k < token.length(); k++) {
+                if (pos + k >= length) {
+                    return last ? Match.NO : Match.MORE;
+                }
+                if (in.charAt(pos + k) != token.charAt(k)) {
+                    return Match.NO;
+                }
+            }
+            return Match.YES;
+        }
+
+        private char previousChar() {
+            return pos > 0 ? in.charAt(pos - 1) : previous;
+        }
+
+        private void emit(char c) {
+            if (pendingNewlines > 0) {
+                if (started) {
+                    out.append(pendingNewlines > 1 ? "\n\n" : "\n");
+                }
+                pendingNewlines = 0;
+            } else if (pendingSpace && started) {
+                out.append(' ');
+            }
+            pendingSpace = false;
+            out.append(c);
+            started = true;
+            lineHasContent = true;
+        }
+
+        private void space() {
+            if (lineHasContent) {
+                pendingSpace = true;
+            }
+        }
+
+        private void newline() {
+            pendingNewlines++;
+            pendingSpace = false;
+            lineHasContent = false;
+        }
+
+        private void skipBlanks() {
+            while (pos < length && isBlank(in.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
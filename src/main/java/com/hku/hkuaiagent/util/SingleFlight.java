@@ -0,0 +1,76 @@
+package com.hku.hkuaiagent.util;
+
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces identical concurrent streams: while a flux for a key is running, later callers with the same key
+ * subscribe to it instead of starting their own.
+ * <p>
+ * The first subscriber starts the source; every emitted element is kept until the source terminates, so late
+ * joiners still receive the whole stream from the start. The flight ends when the source completes or fails,
+ * and the next call for that key starts a fresh one. The source keeps running when individual subscribers
+ * cancel, so one client disconnecting does not cut off the others.
+ *
+ * @param <K> key identifying identical requests
+ * @param <T> element type
+ */
+public class SingleFlight<K, T> {
+
+    private final Map<K, Flux<T>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+
+    private final LongAdder joined = new LongAdder();
+
+    public Flux<T> execute(K key, Supplier<Flux<T>> source) {
+        return execute(key, source, UnaryOperator.identity());
+    }
+
+    /**
+     * Run {@code source} for {@code key}, or join the flight already running for it.
+     *
+     * @param key identity of the request
+     * @param source starts the real work; only called by the subscriber that starts the flight
+     * @param onJoin applied to the shared flux for subscribers that joined instead of starting the flight
+     * @return elements of the single shared run
+     */
+    public Flux<T> execute(K key, Supplier<Flux<T>> source, UnaryOperator<Flux<T>> onJoin) {
+        return Flux.defer(() -> {
+            AtomicReference<Flux<T>> self = new AtomicReference<>();
+            Flux<T> shared = Flux.defer(source)
+                    .doFinally(signal -> inFlight.remove(key, self.get()))
+                    .replay()
+                    .autoConnect();
+            self.set(shared);
+            Flux<T> running = inFlight.putIfAbsent(key, shared);
+            if (running != null) {
+                joined.increment();
+                return onJoin.apply(running);
+            }
+            started.increment();
+            return shared;
+        });
+    }
+
+    /**
+     * Number of keys with a running flight.
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    public long started() {
+        return started.sum();
+    }
+
+    public long joined() {
+        return joined.sum();
+    }
+}
@@ -0,0 +1,58 @@
+package com.hku.hkuaiagent.agent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class AgentRunSchedulerTest {
+
+    @Test
+    void limitsConcurrencyAndRejectsBeyondQueueDepth() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (AgentRunScheduler scheduler = new AgentRunScheduler(2, 1, registry)) {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch bothRunning = new CountDownLatch(2);
+            CountDownLatch finished = new CountDownLatch(3);
+            AtomicInteger concurrent = new AtomicInteger();
+            AtomicInteger peak = new AtomicInteger();
+            Runnable blockingRun = () -> {
+                peak.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                bothRunning.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                concurrent.decrementAndGet();
+                finished.countDown();
+            };
+
+            // Two runs take the slots, the third waits in the queue, the fourth is turned away
+            scheduler.submit("a", blockingRun);
+            scheduler.submit("b", blockingRun);
+            scheduler.submit("c", blockingRun);
+            Assertions.assertThrows(AgentRunRejectedException.class, () -> scheduler.submit("d", blockingRun));
+
+            Assertions.assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, scheduler.snapshot().get("queued"));
+            release.countDown();
+            Assertions.assertTrue(finished.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(2, peak.get());
+            Assertions.assertEquals(1.0, registry.get("hku.agent.run.rejected").counter().count());
+
+            // Admission slots are returned once runs finish
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (scheduler.pendingRuns() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(0, scheduler.pendingRuns());
+            CountDownLatch again = new CountDownLatch(1);
+            scheduler.submit("e", again::countDown);
+            Assertions.assertTrue(again.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
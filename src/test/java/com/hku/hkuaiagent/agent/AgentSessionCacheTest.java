@@ -0,0 +1,117 @@
+package com.hku.hkuaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicReference;
+
+class AgentSessionCacheTest {
+
+    @Test
+    void evictsIdleAndLeastRecentlyUsedSessionsButKeepsBusyOnes() {
+        MutableClock clock = new MutableClock();
+        AgentSessionCache<SessionAgent> cache =
+                new AgentSessionCache<>("test", 2, Duration.ofMinutes(30), 0.9, clock, () -> 0.1);
+
+        SessionAgent busy = cache.getOrCreate("busy", id -> new SessionAgent(true));
+        SessionAgent a = cache.getOrCreate("a", id -> new SessionAgent(false));
+        cache.getOrCreate("b", id -> new SessionAgent(false));
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertSame(busy, cache.getOrCreate("busy", id -> new SessionAgent(false)));
+        Assertions.assertNotSame(a, cache.getOrCreate("a", id -> new SessionAgent(false)));
+        Assertions.assertEquals(2L, cache.snapshot().get("sizeEvictions"));
+
+        clock.advance(Duration.ofMinutes(31));
+        cache.getOrCreate("c", id -> new SessionAgent(false));
+        Assertions.assertSame(busy, cache.getOrCreate("busy", id -> new SessionAgent(false)));
+        Assertions.assertEquals(1L, cache.snapshot().get("idleEvictions"));
+    }
+
+    @Test
+    void shedsSessionsUnderHeapPressureAndReportsTheirSize() {
+        AtomicReference<Double> heap = new AtomicReference<>(0.1);
+        MutableClock clock = new MutableClock();
+        AgentSessionCache<SessionAgent> cache =
+                new AgentSessionCache<>("test", 100, Duration.ofMinutes(30), 0.8, clock, heap::get);
+        for (int i = 0; i < 8; i++) {
+            SessionAgent agent = cache.getOrCreate("chat-" + i, id -> new SessionAgent(false));
+            agent.getMessageList().add(new UserMessage("x".repeat(1000)));
+        }
+        long bytes = (long) cache.snapshot().get("estimatedBytes");
+        Assertions.assertTrue(bytes >= 8 * 2000L, "estimated " + bytes);
+
+        heap.set(0.95);
+        cache.getOrCreate("chat-7", id -> new SessionAgent(false));
+        Assertions.assertEquals(6, cache.size());
+        // Within the cooldown the cache waits for the GC instead of shedding again
+        cache.getOrCreate("chat-7", id -> new SessionAgent(false));
+        Assertions.assertEquals(6, cache.size());
+    }
+
+    @Test
+    void sessionsShareTheirDefinition() {
+        AgentDefinition definition = new AgentDefinition("shared", "system", "next", 5, null,
+                new com.hku.hkuaiagent.tools.ToolCatalog(new ToolCallback[0], null),
+                AgentDefinition.defaultChatOptions(),
+                org.springframework.ai.model.tool.ToolCallingManager.builder().build());
+
+        ToolCallAgent first = new ToolCallAgent(definition);
+        ToolCallAgent second = new ToolCallAgent(definition);
+
+        Assertions.assertSame(first.getToolCatalog(), second.getToolCatalog());
+        Assertions.assertSame(first.getChatOptions(), second.getChatOptions());
+        Assertions.assertEquals("next", second.getNextStepPrompt());
+        Assertions.assertEquals(5, second.getMaxSteps());
+        Assertions.assertNotSame(first.getMessageList(), second.getMessageList());
+    }
+
+    private static class SessionAgent extends BaseAgent {
+
+        private final boolean busy;
+
+        SessionAgent(boolean busy) {
+            this.busy = busy;
+        }
+
+        @Override
+        public boolean isBusy() {
+            return busy;
+        }
+
+        @Override
+        public String step() {
+            return "done";
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
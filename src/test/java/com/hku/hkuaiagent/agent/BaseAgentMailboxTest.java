@@ -0,0 +1,132 @@
+package com.hku.hkuaiagent.agent;
+
+import com.hku.hkuaiagent.agent.model.AgentState;
+import com.hku.hkuaiagent.sse.AgentEvent;
+import com.hku.hkuaiagent.sse.AgentEventStream;
+import com.hku.hkuaiagent.sse.AgentEventType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class BaseAgentMailboxTest {
+
+    @Test
+    void sameSessionRequestsQueueInsteadOfFailing() throws Exception {
+        int requests = 64;
+        RecordingAgent agent = new RecordingAgent();
+        agent.setMaxQueuedTurns(requests);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Throwable> submitErrors = new CopyOnWriteArrayList<>();
+        try (ExecutorService clients = Executors.newFixedThreadPool(16)) {
+            for (int i = 0; i < requests; i++) {
+                String prompt = "message " + i;
+                clients.execute(() -> {
+                    try {
+                        start.await();
+                        agent.runStream(prompt);
+                    } catch (Throwable e) {
+                        submitErrors.add(e);
+                    }
+                });
+            }
+            start.countDown();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (agent.executed.size() < requests && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+
+        Assertions.assertTrue(submitErrors.isEmpty(), () -> "submit failed: " + submitErrors);
+        Assertions.assertEquals(requests, agent.executed.size());
+        Assertions.assertEquals(0, agent.stateErrors.get(), "a turn started while another was running");
+        Assertions.assertEquals(1, agent.peakConcurrency.get());
+        Assertions.assertEquals(requests, agent.getMessageList().size());
+    }
+
+    @Test
+    void abandonedTurnsAreDroppedAndWaitingTurnsMoveUp() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingAgent agent = new RecordingAgent() {
+            @Override
+            public String step() {
+                if (executed.isEmpty()) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.step();
+            }
+        };
+        agent.setAbandonedTurnGrace(Duration.ZERO);
+
+        AgentEventStream running = agent.runStream("first");
+        running.events(0).subscribe();
+        AgentEventStream closed = agent.runStream("closed tab");
+        AgentEventStream cancelled = agent.runStream("cancelled");
+        cancelled.complete();
+        AgentEventStream waiting = agent.runStream("still waiting");
+        waiting.events(0).subscribe();
+        AgentEventStream later = agent.runStream("later");
+        List<AgentEvent> laterEvents = new CopyOnWriteArrayList<>();
+        later.events(0).subscribe(laterEvents::add);
+        Thread.sleep(5);
+        release.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!later.isCompleted() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertEquals(List.of("first", "still waiting", "later"), agent.executed);
+        Assertions.assertTrue(closed.isCompleted());
+        List<String> queued = laterEvents.stream()
+                .filter(event -> event.type() == AgentEventType.QUEUED)
+                .map(AgentEvent::data)
+                .toList();
+        Assertions.assertEquals(2, queued.size());
+        Assertions.assertTrue(queued.get(0).contains("position 4"));
+        Assertions.assertTrue(queued.get(1).contains("position 1"));
+    }
+
+    private static class RecordingAgent extends BaseAgent {
+
+        final List<String> executed = new CopyOnWriteArrayList<>();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger peakConcurrency = new AtomicInteger();
+        private final AtomicInteger stateErrors = new AtomicInteger();
+
+        RecordingAgent() {
+            setName("mailboxTest");
+            setMaxSteps(1);
+        }
+
+        @Override
+        public String step() {
+            peakConcurrency.accumulateAndGet(active.incrementAndGet(), Math::max);
+            if (getState() != AgentState.RUNNING) {
+                stateErrors.incrementAndGet();
+            }
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executed.add(getMessageList().get(getMessageList().size() - 1).getText());
+            setState(AgentState.FINISHED);
+            active.decrementAndGet();
+            return "done";
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.hku.hkuaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class ContextCompactorTest {
+
+    private static final String STEP_PROMPT = "Pick the strategy that best serves the current user goal.";
+
+    @Test
+    void keepsOnlyTheNewestStepPrompt() {
+        List<Message> messages = new ArrayList<>();
+        messages.add(new UserMessage("Where is the main library?"));
+        messages.add(new UserMessage(STEP_PROMPT));
+        messages.add(toolCall("1", "maps_text_search"));
+        messages.add(toolResult("1", "maps_text_search", "Main Library, Pok Fu Lam Road"));
+        messages.add(new UserMessage(STEP_PROMPT));
+
+        List<Message> compacted = new ContextCompactor(10_000, 400).compact(messages, "system", STEP_PROMPT);
+
+        Assertions.assertEquals(4, compacted.size());
+        Assertions.assertEquals(1, compacted.stream().filter(m -> STEP_PROMPT.equals(m.getText())).count());
+        Assertions.assertSame(messages.get(4), compacted.get(3));
+    }
+
+    @Test
+    void shrinksOldToolOutputAndDropsOldestTurnsButPinsLatestTurn() {
+        String bulky = "x".repeat(4_000);
+        List<Message> messages = new ArrayList<>();
+        for (int turn = 0; turn < 5; turn++) {
+            messages.add(new UserMessage("question " + turn));
+            messages.add(toolCall("t" + turn, "doWebSearch"));
+            messages.add(toolResult("t" + turn, "doWebSearch", bulky));
+            messages.add(new AssistantMessage("answer " + turn));
+        }
+        messages.add(new UserMessage("latest question"));
+        messages.add(toolCall("latest", "doWebSearch"));
+        messages.add(toolResult("latest", "doWebSearch", bulky));
+        messages.add(new UserMessage(STEP_PROMPT));
+
+        ContextCompactor compactor = new ContextCompactor(1_300, 200);
+        List<Message> compacted = compactor.compact(messages, "system", STEP_PROMPT);
+
+        Assertions.assertTrue(ContextCompactor.estimateTokens(compacted) <= 1_300);
+        // Latest turn survives untouched, including its full tool output
+        List<Message> tail = compacted.subList(compacted.size() - 4, compacted.size());
+        Assertions.assertEquals(messages.subList(messages.size() - 4, messages.size()), tail);
+        // Older tool output is truncated rather than kept verbatim
+        compacted.stream()
+                .filter(m -> m instanceof ToolResponseMessage)
+                .limit(compacted.stream().filter(m -> m instanceof ToolResponseMessage).count() - 1)
+                .forEach(m -> Assertions.assertTrue(
+                        ((ToolResponseMessage) m).getResponses().get(0).responseData().contains("truncated")));
+        // Never starts with an orphaned tool response
+        Assertions.assertFalse(compacted.get(0) instanceof ToolResponseMessage);
+        Assertions.assertTrue(compacted.size() < messages.size());
+    }
+
+    private static AssistantMessage toolCall(String id, String name) {
+        return new AssistantMessage("", Map.of(), List.of(new AssistantMessage.ToolCall(id, "function", name, "{}")));
+    }
+
+    private static ToolResponseMessage toolResult(String id, String name, String data) {
+        return new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse(id, name, data)), Map.of());
+    }
+}
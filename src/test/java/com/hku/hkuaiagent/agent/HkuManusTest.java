@@ -9,14 +9,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 class HkuManusTest {
 
     @Resource
-    private HkuManus hkuManus;
+    private AgentDefinition hkuManusDefinition;
 
     @Test
     public void run() {
         String userPrompt = """
                 我的另一半居住在上海静安区，请帮我找到 5 公里内合适的约会地点，不需要找图片，只需要写计划，
                 并以 PDF 格式输出""";
-        String answer = hkuManus.run(userPrompt);
+        String answer = new HkuManus(hkuManusDefinition).run(userPrompt);
         Assertions.assertNotNull(answer);
     }
 }
@@ -0,0 +1,79 @@
+package com.hku.hkuaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+class ParallelToolCallExecutorTest {
+
+    @Test
+    void executesCallsConcurrentlyAndKeepsOrder() {
+        ParallelToolCallExecutor executor = new ParallelToolCallExecutor(Duration.ofSeconds(5));
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("1", "function", "slow_weather", "{}"),
+                new AssistantMessage.ToolCall("2", "function", "fast_route", "{}"),
+                new AssistantMessage.ToolCall("3", "function", "slow_weather", "{\"city\":\"HK\"}")));
+
+        long start = System.nanoTime();
+        ToolExecutionResult result = executor.execute(List.of(new UserMessage("plan my day")), assistantMessage,
+                List.of(sleepingTool("slow_weather", 400), sleepingTool("fast_route", 10)));
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        Assertions.assertTrue(elapsedMillis < 750, "calls should overlap, took " + elapsedMillis + " ms");
+        List<Message> history = result.conversationHistory();
+        Assertions.assertEquals(3, history.size());
+        ToolResponseMessage responseMessage = (ToolResponseMessage) history.get(2);
+        List<String> ids = responseMessage.getResponses().stream().map(ToolResponseMessage.ToolResponse::id).toList();
+        Assertions.assertEquals(List.of("1", "2", "3"), ids);
+        Assertions.assertEquals("slow_weather:{\"city\":\"HK\"}", responseMessage.getResponses().get(2).responseData());
+    }
+
+    @Test
+    void slowToolTimesOutWithoutFailingTheBatch() {
+        ParallelToolCallExecutor executor = new ParallelToolCallExecutor(Duration.ofMillis(200));
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("1", "function", "hanging", "{}"),
+                new AssistantMessage.ToolCall("2", "function", "doTerminate", "{}")));
+
+        ToolExecutionResult result = executor.execute(List.of(), assistantMessage,
+                List.of(sleepingTool("hanging", 5_000), sleepingTool("doTerminate", 0)));
+
+        ToolResponseMessage responseMessage = (ToolResponseMessage) result.conversationHistory().get(1);
+        Assertions.assertTrue(responseMessage.getResponses().get(0).responseData().contains("timed out"));
+        Assertions.assertEquals("doTerminate", responseMessage.getResponses().get(1).name());
+    }
+
+    private ToolCallback sleepingTool(String name, long sleepMillis) {
+        ToolDefinition definition = ToolDefinition.builder()
+                .name(name)
+                .description(name)
+                .inputSchema("{}")
+                .build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return definition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return name + ":" + toolInput;
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package com.hku.hkuaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class PlanExecuteAgentTest {
+
+    @Test
+    void onlyMultiToolRequestsArePlannedAhead() {
+        Assertions.assertTrue(PlanExecuteAgent.shouldPlanAhead("Plan my day at HKU and export it as a PDF"));
+        Assertions.assertTrue(PlanExecuteAgent.shouldPlanAhead("How do I walk to Main Building, and will it rain?"));
+        Assertions.assertFalse(PlanExecuteAgent.shouldPlanAhead("What is the weather today?"));
+        Assertions.assertFalse(PlanExecuteAgent.shouldPlanAhead("What is the COMP7103 class schedule?"));
+        Assertions.assertTrue(PlanExecuteAgent.shouldPlanAhead("Plan my schedule around the COMP7103 exam and export a PDF"));
+        Assertions.assertFalse(PlanExecuteAgent.shouldPlanAhead("Hello"));
+    }
+
+    @Test
+    void simpleRequestsSkipThePlanningCall() {
+        AtomicInteger calls = new AtomicInteger();
+        PlanExecuteAgent agent = newAgent(calls);
+
+        agent.run("What is the weather today?");
+        Assertions.assertEquals(1, calls.get());
+
+        // The planner reply is not a plan, so the run falls back to the ReAct loop after one extra call
+        agent.run("Write a PDF report about the weather this week");
+        Assertions.assertEquals(3, calls.get());
+    }
+
+    private static PlanExecuteAgent newAgent(AtomicInteger calls) {
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                calls.incrementAndGet();
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("It is sunny."))));
+            }
+        };
+        PlanExecuteAgent agent = new PlanExecuteAgent(new ToolCallback[]{weatherTool()}, () -> new ToolCallback[0]);
+        agent.setName("planTest");
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        return agent;
+    }
+
+    private static ToolCallback weatherTool() {
+        ToolDefinition definition = ToolDefinition.builder().name("weather_lookup").description("Weather")
+                .inputSchema("{}").build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return definition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return "sunny";
+            }
+        };
+    }
+}
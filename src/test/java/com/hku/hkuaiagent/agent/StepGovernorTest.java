@@ -0,0 +1,84 @@
+package com.hku.hkuaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.List;
+
+class StepGovernorTest {
+
+    @Test
+    void stopsOnRepeatedCallWithReorderedArguments() {
+        StepGovernor governor = new StepGovernor(2, 5);
+
+        Assertions.assertNull(governor.record(call("weather_lookup", "{\"location\":\"HK\",\"days\":1}"), response("weather_lookup", "Sunny")));
+        String reason = governor.record(call("weather_lookup", "{\"days\":1,\"location\":\"HK\"}"), response("weather_lookup", "Sunny, 28C"));
+
+        Assertions.assertNotNull(reason);
+        Assertions.assertTrue(reason.contains("repeated"));
+    }
+
+    @Test
+    void stopsOnAlternatingCycle() {
+        StepGovernor governor = new StepGovernor(2, 5);
+
+        Assertions.assertNull(governor.record(call("maps_geo", "{\"a\":1}"), response("maps_geo", "r1")));
+        Assertions.assertNull(governor.record(call("maps_text_search", "{\"q\":1}"), response("maps_text_search", "r2")));
+        Assertions.assertNull(governor.record(call("maps_geo", "{\"a\":1}"), response("maps_geo", "r3")));
+        String reason = governor.record(call("maps_text_search", "{\"q\":1}"), response("maps_text_search", "r4"));
+
+        Assertions.assertNotNull(reason);
+        Assertions.assertTrue(reason.contains("cycling"));
+    }
+
+    @Test
+    void stopsWhenStepsAddNoNewInformationAndResets() {
+        StepGovernor governor = new StepGovernor(5, 2);
+
+        Assertions.assertNull(governor.record(call("doWebSearch", "{\"q\":\"a\"}"), response("doWebSearch", "same page")));
+        Assertions.assertNull(governor.record(call("doWebSearch", "{\"q\":\"b\"}"), response("doWebSearch", "same page")));
+        Assertions.assertNotNull(governor.record(call("doWebSearch", "{\"q\":\"c\"}"), response("doWebSearch", "same page")));
+
+        governor.reset();
+        Assertions.assertNull(governor.record(call("doWebSearch", "{\"q\":\"c\"}"), response("doWebSearch", "same page")));
+    }
+
+    @Test
+    void learnsBudgetPerIntentAfterEnoughRuns() {
+        StepBudgetLearner learner = new StepBudgetLearner(3, 2);
+        Assertions.assertEquals(20, learner.budgetFor("hkuManus", "What's the weather today?", 20));
+
+        learner.recordCompletedRun("hkuManus", "weather in Pok Fu Lam", 2);
+        learner.recordCompletedRun("hkuManus", "Will it rain tomorrow?", 3);
+        learner.recordCompletedRun("hkuManus", "weather forecast please", 2);
+
+        Assertions.assertEquals(4, learner.budgetFor("hkuManus", "What's the weather today?", 20));
+        Assertions.assertEquals(20, learner.budgetFor("hkuManus", "Make me a PDF report", 20));
+        Assertions.assertEquals(20, learner.budgetFor("loveCampusAgent", "What's the weather today?", 20));
+    }
+
+    @Test
+    void truncatedRunsLetTheBudgetGrowAgain() {
+        StepBudgetLearner learner = new StepBudgetLearner(3, 2);
+        for (int i = 0; i < 3; i++) {
+            learner.recordCompletedRun("hkuManus", "weather in Pok Fu Lam", 2);
+        }
+        Assertions.assertEquals(3, learner.budgetFor("hkuManus", "weather today", 20));
+
+        // Runs that hit the budget count as needing one more step
+        learner.recordTruncatedRun("hkuManus", "weather and rain this week", 3);
+        Assertions.assertEquals(5, learner.budgetFor("hkuManus", "weather today", 20));
+        learner.recordTruncatedRun("hkuManus", "weather and rain this week", 5);
+        Assertions.assertEquals(7, learner.budgetFor("hkuManus", "weather today", 20));
+    }
+
+    private static List<AssistantMessage.ToolCall> call(String name, String arguments) {
+        return List.of(new AssistantMessage.ToolCall("id-" + name, "function", name, arguments));
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> response(String name, String data) {
+        return List.of(new ToolResponseMessage.ToolResponse("id-" + name, name, data));
+    }
+}
@@ -0,0 +1,121 @@
+package com.hku.hkuaiagent.agent;
+
+import com.hku.hkuaiagent.agent.model.AgentState;
+import com.hku.hkuaiagent.sse.AgentEvent;
+import com.hku.hkuaiagent.sse.AgentEventStream;
+import com.hku.hkuaiagent.sse.AgentEventType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+class ToolCallAgentStreamingTest {
+
+    @Test
+    void answerTokensAreSanitisedAndStreamedAsDrafts() {
+        ToolCallAgent agent = newAgent(Flux.just(chunk("**Hello"), chunk("** from"), chunk(" HKU")));
+        AgentEventStream events = AgentEventStream.detached();
+        agent.setCurrentEvents(events);
+
+        boolean shouldAct = agent.think();
+
+        Assertions.assertFalse(shouldAct);
+        Assertions.assertEquals(AgentState.FINISHED, agent.getState());
+        // BaseAgent still sends the final answer, so clients replace the drafts with it
+        Assertions.assertFalse(agent.isFinalAnswerStreamed());
+        List<AgentEvent> sent = published(events);
+        Assertions.assertTrue(sent.stream().allMatch(event -> event.type() == AgentEventType.ANSWER_DRAFT));
+        Assertions.assertEquals("Hello from HKU", sent.stream().map(AgentEvent::data).collect(Collectors.joining()));
+        AssistantMessage last = (AssistantMessage) agent.getMessageList().get(agent.getMessageList().size() - 1);
+        Assertions.assertEquals("**Hello** from HKU", last.getText());
+    }
+
+    @Test
+    void streamedRunEndsWithTheSanitisedAnswer() {
+        ToolCallAgent agent = newAgent(Flux.just(chunk("**Hello"), chunk("** from"), chunk(" HKU")));
+
+        List<AgentEvent> sent = agent.runStream("Say hello").events(0).collectList().block(Duration.ofSeconds(10));
+
+        String answer = sent.stream().filter(event -> event.type() == AgentEventType.ANSWER)
+                .map(AgentEvent::data).collect(Collectors.joining());
+        Assertions.assertEquals("Hello from HKU", answer);
+    }
+
+    @Test
+    void textBeforeToolCallsIsNotSentAsTheAnswer() {
+        AssistantMessage.ToolCall call = new AssistantMessage.ToolCall("call-1", "function", "weather_lookup", "{}");
+        ToolCallAgent agent = newAgent(Flux.just(chunk("Let me check the weather."), toolChunk(call)));
+        AgentEventStream events = AgentEventStream.detached();
+        agent.setCurrentEvents(events);
+
+        Assertions.assertTrue(agent.think());
+
+        List<AgentEventType> types = published(events).stream().map(AgentEvent::type).toList();
+        Assertions.assertEquals(List.of(AgentEventType.ANSWER_DRAFT, AgentEventType.TOOL_CALL), types);
+    }
+
+    @Test
+    void toolCallDeltasAreMergedAndNotStreamedAsAnswer() {
+        AssistantMessage.ToolCall head = new AssistantMessage.ToolCall("call-1", "function", "weather_lookup", "{\"location\":");
+        // Continuation fragments usually arrive without an id
+        AssistantMessage.ToolCall middle = new AssistantMessage.ToolCall("", "function", "", "\"Hong ");
+        AssistantMessage.ToolCall tail = new AssistantMessage.ToolCall("call-1", "function", "", "Kong\"}");
+        AssistantMessage.ToolCall second = new AssistantMessage.ToolCall("call-2", "function", "generatePDF", "{}");
+        ToolCallAgent agent = newAgent(Flux.just(toolChunk(head), toolChunk(middle), toolChunk(tail), toolChunk(second)));
+        AgentEventStream events = AgentEventStream.detached();
+        agent.setCurrentEvents(events);
+
+        boolean shouldAct = agent.think();
+
+        Assertions.assertTrue(shouldAct);
+        Assertions.assertFalse(agent.isFinalAnswerStreamed());
+        List<AssistantMessage.ToolCall> toolCalls = agent.getToolCallChatResponse().getResult().getOutput().getToolCalls();
+        Assertions.assertEquals(List.of("weather_lookup", "generatePDF"), toolCalls.stream().map(AssistantMessage.ToolCall::name).toList());
+        Assertions.assertEquals("{\"location\":\"Hong Kong\"}", toolCalls.get(0).arguments());
+        Assertions.assertTrue(published(events).stream().allMatch(event -> event.type() == AgentEventType.TOOL_CALL));
+    }
+
+    private ToolCallAgent newAgent(Flux<ChatResponse> stream) {
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new AssertionError("blocking call must not be used while streaming");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return stream;
+            }
+        };
+        ToolCallAgent agent = new ToolCallAgent(new ToolCallback[0], () -> new ToolCallback[0]);
+        agent.setName("streamingTest");
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        agent.getMessageList().add(new UserMessage("What is the weather at HKU?"));
+        return agent;
+    }
+
+    private static ChatResponse chunk(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static ChatResponse toolChunk(AssistantMessage.ToolCall toolCall) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), List.of(toolCall)))));
+    }
+
+    private static List<AgentEvent> published(AgentEventStream events) {
+        events.complete();
+        return events.events(0).filter(event -> event.type() != AgentEventType.DONE).collectList().block();
+    }
+}
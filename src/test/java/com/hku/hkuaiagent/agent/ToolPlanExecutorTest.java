@@ -0,0 +1,83 @@
+package com.hku.hkuaiagent.agent;
+
+import com.hku.hkuaiagent.agent.model.ToolPlan;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.List;
+
+class ToolPlanExecutorTest {
+
+    @Test
+    void runsIndependentStepsInParallelAndFeedsOutputsForward() {
+        ToolPlan plan = PlanExecuteAgent.parsePlan("""
+                ```json
+                {"steps":[
+                  {"id":"geo","tool":"maps_geo","arguments":{"address":"Main Building"},"dependsOn":[]},
+                  {"id":"weather","tool":"weather_lookup","arguments":{"location":"Hong Kong"}},
+                  {"id":"route","tool":"maps_direction_walking","arguments":{"origin":"{{geo}}"},"dependsOn":["geo"]}
+                ]}
+                ```""");
+        List<ToolCallback> tools = List.of(
+                tool("maps_geo", 400, "22.28,114.14"),
+                tool("weather_lookup", 400, "Sunny \"28C\""),
+                tool("maps_direction_walking", 0, null));
+
+        long start = System.nanoTime();
+        ToolExecutionResult result = new ToolPlanExecutor(Duration.ofSeconds(5))
+                .execute(List.of(new UserMessage("Plan my afternoon")), plan, tools);
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        Assertions.assertTrue(elapsedMillis < 750, "geo and weather should overlap, took " + elapsedMillis + " ms");
+        AssistantMessage calls = (AssistantMessage) result.conversationHistory().get(1);
+        Assertions.assertEquals(List.of("geo", "weather", "route"),
+                calls.getToolCalls().stream().map(AssistantMessage.ToolCall::id).toList());
+        ToolResponseMessage responses = (ToolResponseMessage) result.conversationHistory().get(2);
+        Assertions.assertEquals("{\"origin\":\"22.28,114.14\"}", responses.getResponses().get(2).responseData());
+    }
+
+    @Test
+    void rejectsCyclesAndUnknownTools() {
+        ToolPlanExecutor executor = new ToolPlanExecutor(Duration.ofSeconds(1));
+        List<ToolCallback> tools = List.of(tool("maps_geo", 0, "x"));
+        ToolPlan cycle = new ToolPlan(List.of(
+                new ToolPlan.Step("a", "maps_geo", "{}", List.of("b")),
+                new ToolPlan.Step("b", "maps_geo", "{}", List.of("a"))));
+        ToolPlan unknown = new ToolPlan(List.of(new ToolPlan.Step("a", "generatePDF", "{}", List.of())));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> executor.execute(List.of(), cycle, tools));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> executor.execute(List.of(), unknown, tools));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PlanExecuteAgent.parsePlan("I would call the map tool."));
+        Assertions.assertTrue(PlanExecuteAgent.parsePlan("{\"steps\":[]}").isEmpty());
+    }
+
+    /**
+     * Tool that sleeps and returns a fixed reply, or echoes its input when the reply is null.
+     */
+    private ToolCallback tool(String name, long sleepMillis, String reply) {
+        ToolDefinition definition = ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return definition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return reply != null ? reply : toolInput;
+            }
+        };
+    }
+}
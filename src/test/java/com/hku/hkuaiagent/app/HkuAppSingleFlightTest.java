@@ -0,0 +1,56 @@
+package com.hku.hkuaiagent.app;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class HkuAppSingleFlightTest {
+
+    @Test
+    void identicalQuestionsFromFreshChatsShareOneModelCall() {
+        AtomicInteger modelCalls = new AtomicInteger();
+        HkuApp app = new HkuApp(slowModel(modelCalls));
+
+        Flux<String> first = app.doChatByStream("What's new at HKU this week?", "chat-a");
+        Flux<String> second = app.doChatByStream("  what's new at HKU this week ", "chat-b");
+        List<String> answers = Flux.merge(first.collectList(), second.collectList())
+                .map(chunks -> String.join("", chunks))
+                .collectList()
+                .block();
+
+        Assertions.assertEquals(1, modelCalls.get());
+        Assertions.assertEquals(List.of("Orientation week starts Monday.", "Orientation week starts Monday."), answers);
+        // The chat that joined has the shared exchange in its own memory for follow-up questions
+        Assertions.assertEquals(2, app.getChatMemory().get("chat-b").size());
+
+        // chat-b now has history, so its next question gets its own model call
+        app.doChatByStream("What's new at HKU this week?", "chat-b").blockLast();
+        Assertions.assertEquals(2, modelCalls.get());
+    }
+
+    static ChatModel slowModel(AtomicInteger calls) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new AssertionError("streaming only");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                calls.incrementAndGet();
+                return Flux.just("Orientation week", " starts Monday.")
+                        .delayElements(Duration.ofMillis(50))
+                        .map(text -> new ChatResponse(List.of(new Generation(new AssistantMessage(text)))));
+            }
+        };
+    }
+}
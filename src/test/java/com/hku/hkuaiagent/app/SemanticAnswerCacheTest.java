@@ -0,0 +1,150 @@
+package com.hku.hkuaiagent.app;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SemanticAnswerCacheTest {
+
+    private static final List<String> VOCABULARY = List.of("comp7103", "comp7106", "exam", "date", "when", "is",
+            "the", "instructor", "who", "teaches");
+
+    @Test
+    void similarQuestionsShareAnAnswerWithinTheirScope() {
+        AtomicInteger embeddings = new AtomicInteger();
+        SemanticAnswerCache cache = new SemanticAnswerCache(bagOfWords(embeddings), 0.8, 16, Duration.ofHours(1));
+
+        SemanticAnswerCache.Lookup miss = cache.lookup("course:COMP7103", "when is the comp7103 exam", 1);
+        Assertions.assertFalse(miss.hit());
+        cache.put(miss, "The COMP7103 exam is on 12 December.");
+
+        SemanticAnswerCache.Lookup similar = cache.lookup("course:COMP7103", "when is the comp7103 exam date", 1);
+        Assertions.assertEquals("The COMP7103 exam is on 12 December.", similar.answer());
+        Assertions.assertFalse(cache.lookup("course:COMP7103", "who teaches comp7103", 1).hit());
+        Assertions.assertFalse(cache.lookup("course:COMP7106", "when is the comp7103 exam", 1).hit());
+
+        // The same normalised question does not need an embedding
+        int before = embeddings.get();
+        Assertions.assertTrue(cache.lookup("course:COMP7103", "when is the comp7103 exam", 1).hit());
+        Assertions.assertEquals(before, embeddings.get());
+        Assertions.assertEquals(2, cache.hits());
+    }
+
+    @Test
+    void questionsNamingOtherCoursesSectionsOrNumbersNeverShareAnAnswer() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(bagOfWords(new AtomicInteger()), 0.8, 16,
+                Duration.ofHours(1));
+
+        // The embeddings of each pair are identical, only the identifiers tell them apart
+        cache.put(cache.lookup("general", "when is the comp7404 exam", 1), "COMP7404: 10 December.");
+        Assertions.assertFalse(cache.lookup("general", "when is the comp7405 exam", 1).hit());
+        Assertions.assertTrue(cache.lookup("general", "the comp7404 exam is when", 1).hit());
+
+        cache.put(cache.lookup("course:COMP7103", "who teaches comp7103a", 1), "Dr. Chan teaches COMP7103A.");
+        Assertions.assertFalse(cache.lookup("course:COMP7103", "who teaches comp7103d", 1).hit());
+        Assertions.assertFalse(cache.lookup("course:COMP7103", "who teaches comp7103", 1).hit());
+
+        cache.put(cache.lookup("general", "when is assignment 1 due", 1), "Assignment 1 is due on 3 October.");
+        Assertions.assertFalse(cache.lookup("general", "when is assignment 2 due", 1).hit());
+
+        Assertions.assertEquals("|2025,comp7103a,section b",
+                SemanticAnswerCache.identifiers("comp7103a section b in 2025"));
+        Assertions.assertEquals("", SemanticAnswerCache.identifiers("who teaches data mining"));
+    }
+
+    @Test
+    void answersAreDroppedWhenTheKnowledgeBaseChangesOrTheyExpire() {
+        MutableClock clock = new MutableClock();
+        SemanticAnswerCache cache = new SemanticAnswerCache(bagOfWords(new AtomicInteger()), 0.8, 16,
+                Duration.ofMinutes(10), clock);
+
+        cache.put(cache.lookup("general", "who is the comp7103 instructor", 1), "Dr. Chan teaches COMP7103.");
+        Assertions.assertTrue(cache.lookup("general", "who is the comp7103 instructor", 1).hit());
+        Assertions.assertFalse(cache.lookup("general", "who is the comp7103 instructor", 2).hit());
+        Assertions.assertEquals(0, cache.size());
+
+        cache.put(cache.lookup("general", "who is the comp7103 instructor", 2), "Dr. Lee teaches COMP7103.");
+        clock.advance(Duration.ofMinutes(11));
+        Assertions.assertFalse(cache.lookup("general", "who is the comp7103 instructor", 2).hit());
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void hkuAppStreamsCachedAnswersWithoutCallingTheModel() {
+        AtomicInteger modelCalls = new AtomicInteger();
+        HkuApp app = new HkuApp(HkuAppSingleFlightTest.slowModel(modelCalls));
+        ReflectionTestUtils.setField(app, "answerCache",
+                new SemanticAnswerCache(bagOfWords(new AtomicInteger()), 0.8, 16, Duration.ofHours(1)));
+
+        Assertions.assertEquals("Orientation week starts Monday.",
+                String.join("", app.doChatByStream("When is the exam?", "chat-a").collectList().block()));
+        List<String> cached = app.doChatByStream("when is the exam date", "chat-b").collectList().block();
+
+        Assertions.assertEquals(1, modelCalls.get());
+        Assertions.assertEquals(List.of("Orientation week starts Monday."), cached);
+        Assertions.assertEquals(2, app.getChatMemory().get("chat-b").size());
+    }
+
+    private static EmbeddingModel bagOfWords(AtomicInteger calls) {
+        return new EmbeddingModel() {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                List<Embedding> results = new ArrayList<>();
+                for (String text : request.getInstructions()) {
+                    calls.incrementAndGet();
+                    float[] vector = new float[VOCABULARY.size()];
+                    for (String word : text.split("\\W+")) {
+                        int index = VOCABULARY.indexOf(word);
+                        if (index >= 0) {
+                            vector[index]++;
+                        }
+                    }
+                    results.add(new Embedding(vector, results.size()));
+                }
+                return new EmbeddingResponse(results);
+            }
+
+            @Override
+            public float[] embed(Document document) {
+                return embed(document.getText());
+            }
+        };
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.hku.hkuaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+
+import java.util.BitSet;
+import java.util.Map;
+
+class ColumnarMetadataTest {
+
+    private final ColumnarMetadata metadata = new ColumnarMetadata();
+
+    ColumnarMetadataTest() {
+        metadata.append(Map.of("category", "course", "semester", "S1", "year", 2024));
+        metadata.append(Map.of("category", "course", "semester", "S2", "year", 2025L));
+        metadata.append(Map.of("category", "handbook", "year", 2025));
+        metadata.append(Map.of("category", "faq", "semester", "S2"));
+    }
+
+    @Test
+    void comparisonsUnionTheBitmapsOfMatchingValues() {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        Assertions.assertEquals(rows(0, 1), metadata.select(b.eq("category", "course").build()));
+        Assertions.assertEquals(rows(1, 2), metadata.select(b.eq("year", 2025).build()));
+        Assertions.assertEquals(rows(1, 2), metadata.select(b.gte("year", 2025).build()));
+        Assertions.assertEquals(rows(2, 3), metadata.select(b.in("category", "handbook", "faq").build()));
+        Assertions.assertEquals(rows(), metadata.select(b.eq("campus", "main").build()));
+    }
+
+    @Test
+    void missingFieldsOnlyMatchNegativeComparisons() {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        Assertions.assertEquals(rows(0, 2), metadata.select(b.ne("semester", "S2").build()));
+        Assertions.assertEquals(rows(0, 2), metadata.select(b.nin("semester", "S2").build()));
+        Assertions.assertEquals(rows(0, 1, 2, 3), metadata.select(b.ne("campus", "main").build()));
+    }
+
+    @Test
+    void booleanOperatorsBecomeSetOperations() {
+        FilterExpressionTextParser parser = new FilterExpressionTextParser();
+        Assertions.assertEquals(rows(1), metadata.select(parser.parse("category == 'course' && semester == 'S2'")));
+        Assertions.assertEquals(rows(0, 1, 3), metadata.select(parser.parse("category == 'course' || semester == 'S2'")));
+        Assertions.assertEquals(rows(2, 3), metadata.select(parser.parse("NOT (category == 'course')")));
+        Assertions.assertEquals(rows(1, 3),
+                metadata.select(parser.parse("(category == 'faq' || year >= 2025) && semester in ['S2']")));
+        Assertions.assertEquals(rows(0, 1, 2, 3), metadata.select(null));
+    }
+
+    @Test
+    void rowsKeepTheirOriginalValues() {
+        Assertions.assertEquals(Map.of("category", "course", "semester", "S2", "year", 2025L), metadata.row(1));
+        Assertions.assertEquals(Map.of("category", "faq", "semester", "S2"), metadata.row(3));
+    }
+
+    private static BitSet rows(int... rows) {
+        BitSet bitSet = new BitSet();
+        for (int row : rows) {
+            bitSet.set(row);
+        }
+        return bitSet;
+    }
+}
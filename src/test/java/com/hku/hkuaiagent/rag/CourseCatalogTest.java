@@ -0,0 +1,63 @@
+package com.hku.hkuaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.time.LocalDate;
+import java.util.List;
+
+class CourseCatalogTest {
+
+    private final CourseCatalog catalog = new HkuAiDocumentLoader(new PathMatchingResourcePatternResolver())
+            .snapshot().courses();
+
+    @Test
+    void courseFilesAreParsedIntoRecords() {
+        Assertions.assertEquals(12, catalog.all().size());
+
+        CourseRecord dataMining = catalog.find("comp7103a");
+        Assertions.assertEquals("COMP7103", dataMining.prefix());
+        Assertions.assertEquals("A", dataMining.variant());
+        Assertions.assertEquals("Data Mining", dataMining.name());
+        Assertions.assertEquals("S1", dataMining.semester());
+        Assertions.assertEquals("Ben C.M. Kao", dataMining.instructor());
+        Assertions.assertEquals("Thu 9:00am - 12:00pm at CYCC-501 (10 sessions, 4 Sep 2025 to 13 Nov 2025)", dataMining.schedule());
+        Assertions.assertEquals(LocalDate.of(2025, 12, 11), dataMining.examDate());
+        Assertions.assertEquals(LocalDate.of(2025, 9, 14), dataMining.addDropDeadline());
+        Assertions.assertTrue(dataMining.summary().startsWith("Data mining is the automatic discovery"));
+        Assertions.assertFalse(dataMining.summary().contains("CLO1"));
+    }
+
+    @Test
+    void labelsSharingOneLineAreSeparated() {
+        CourseRecord evening = catalog.find("COMP7103B");
+        Assertions.assertEquals("Mauro Sozio", evening.instructor());
+        Assertions.assertEquals("3 - 23 December 2025", evening.examPeriod());
+        Assertions.assertEquals(LocalDate.of(2025, 10, 9), evening.addDropDeadline());
+
+        // No key dates section: the period comes from the assessment table, the schedule is unknown
+        CourseRecord tentative = catalog.find("COMP7404C");
+        Assertions.assertEquals("7 - 26 May 2026", tentative.examPeriod());
+        Assertions.assertEquals(LocalDate.of(2026, 5, 7), tentative.examDate());
+        Assertions.assertNull(tentative.schedule());
+        Assertions.assertNull(tentative.addDropPeriod());
+    }
+
+    @Test
+    void queriesUseIndexesAndOrdering() {
+        Assertions.assertEquals(List.of("COMP7103A", "COMP7103B", "COMP7103C", "COMP7103D"),
+                codes(catalog.query().prefix("comp7103").list()));
+        Assertions.assertEquals(List.of("COMP7103D", "COMP7106A", "COMP7106B", "COMP7404B", "COMP7404C"),
+                codes(catalog.query().semester("s2").list()));
+        Assertions.assertEquals(List.of("COMP7104A", "COMP7107A", "COMP7107B", "COMP7103A", "COMP7103B", "COMP7103C", "COMP7404A"),
+                codes(catalog.query().semester("S1").sortedBy(CourseRecord.BY_EXAM_DATE).list()));
+        Assertions.assertEquals(List.of("COMP7404A", "COMP7404C"),
+                codes(catalog.query().instructor("schnieders").list()));
+        Assertions.assertTrue(catalog.query().prefix("COMP7103").semester("S2").instructor("Kao").list().isEmpty());
+    }
+
+    private static List<String> codes(List<CourseRecord> courses) {
+        return courses.stream().map(CourseRecord::code).toList();
+    }
+}
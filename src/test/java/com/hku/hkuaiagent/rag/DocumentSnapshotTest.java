@@ -0,0 +1,81 @@
+package com.hku.hkuaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+class DocumentSnapshotTest {
+
+    @Test
+    void packagedDocumentsAreParsedOnceAndIndexed() {
+        HkuAiDocumentLoader loader = new HkuAiDocumentLoader(new PathMatchingResourcePatternResolver());
+
+        DocumentSnapshot snapshot = loader.snapshot();
+        Assertions.assertSame(snapshot, loader.snapshot());
+        Assertions.assertSame(snapshot.documents(), loader.loadMarkdowns());
+        Assertions.assertEquals(1, snapshot.version());
+
+        List<DocumentSnapshot.SourceFile> comp7103 = snapshot.courseFiles("comp7103");
+        Assertions.assertEquals(List.of("course_COMP7103A_DataMining_2025-26S1.md", "course_COMP7103B_DataMining_2025-26S1.md",
+                        "course_COMP7103C_DataMining_2025-26S1.md", "course_COMP7103D_DataMining_2025-26S2.md"),
+                comp7103.stream().map(DocumentSnapshot.SourceFile::filename).toList());
+        Assertions.assertTrue(comp7103.get(0).content().startsWith("COMP7103A - Data Mining"));
+        Assertions.assertFalse(snapshot.byCoursePrefix("COMP7103").isEmpty());
+        Assertions.assertTrue(snapshot.byCoursePrefix("COMP7103").stream()
+                .allMatch(d -> String.valueOf(d.getMetadata().get("filename")).startsWith("course_COMP7103")));
+        Assertions.assertTrue(snapshot.bySemester("s2").stream()
+                .allMatch(d -> "S2".equals(d.getMetadata().get("semester"))));
+        Assertions.assertEquals(snapshot.documents().size(), snapshot.byCategory("course").size());
+        Assertions.assertTrue(snapshot.byCoursePrefix("COMP9999").isEmpty());
+
+        // Rescanning unchanged files keeps the snapshot and its version
+        Assertions.assertSame(snapshot, loader.reload());
+    }
+
+    @Test
+    void reloadWithChangedContentBumpsTheVersion() {
+        String[] content = {"COMP7103A - Data Mining\n\nInstructor: Ben Kao"};
+        HkuAiDocumentLoader loader = new HkuAiDocumentLoader(singleFile("course_COMP7103A_DataMining_2025-26S1.md", content));
+
+        DocumentSnapshot first = loader.snapshot();
+        content[0] = "COMP7103A - Data Mining\n\nInstructor: Reynold Cheng";
+        DocumentSnapshot second = loader.reload();
+
+        Assertions.assertEquals(1, first.version());
+        Assertions.assertEquals(2, second.version());
+        Assertions.assertTrue(second.byFilename("course_COMP7103A_DataMining_2025-26S1.md").stream()
+                .map(Document::getText).anyMatch(text -> text.contains("Reynold Cheng")));
+    }
+
+    @Test
+    void courseCodesAndVariantsComeFromFilenames() {
+        Assertions.assertEquals(List.of("COMP7103B", "DASC7606"),
+                DocumentSnapshot.courseCodes("Is comp7103b harder than DASC7606 or COMP7103B? (not xCOMP71034)"));
+        Assertions.assertEquals("COMP7103A", DocumentSnapshot.courseCode("course_COMP7103A_DataMining_2025-26S1.md"));
+        Assertions.assertNull(DocumentSnapshot.courseCode("faq_campus.md"));
+        Assertions.assertEquals("COMP7103", DocumentSnapshot.coursePrefix("COMP7103A"));
+        Assertions.assertEquals("B", DocumentSnapshot.courseVariant("course_COMP7106B_BigDataManagement_2025-26S2.md", "comp7106"));
+        Assertions.assertNull(DocumentSnapshot.courseVariant("course_COMP7106B_BigDataManagement_2025-26S2.md", "COMP7103"));
+    }
+
+    private static ResourcePatternResolver singleFile(String filename, String[] content) {
+        return new PathMatchingResourcePatternResolver() {
+            @Override
+            public Resource[] getResources(String locationPattern) {
+                return new Resource[]{new ByteArrayResource(content[0].getBytes(StandardCharsets.UTF_8)) {
+                    @Override
+                    public String getFilename() {
+                        return filename;
+                    }
+                }};
+            }
+        };
+    }
+}
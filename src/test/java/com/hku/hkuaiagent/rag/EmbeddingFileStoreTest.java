@@ -0,0 +1,161 @@
+package com.hku.hkuaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class EmbeddingFileStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void vectorsSurviveReopen() throws IOException {
+        Path file = dir.resolve("store.vec");
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            Assertions.assertNull(store.get("alpha"));
+            store.put("alpha", new float[]{1f, 2f, 3f});
+            store.put("beta", new float[]{4f, 5f});
+        }
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            Assertions.assertEquals(2, store.size());
+            Assertions.assertArrayEquals(new float[]{1f, 2f, 3f}, store.get("alpha"));
+            Assertions.assertArrayEquals(new float[]{4f, 5f}, store.get("beta"));
+            Assertions.assertNull(store.get("gamma"));
+            Assertions.assertEquals(2, store.hits());
+            Assertions.assertEquals(1, store.misses());
+        }
+    }
+
+    @Test
+    void anotherModelStartsEmpty() throws IOException {
+        Path file = dir.resolve("store.vec");
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            store.put("alpha", new float[]{1f});
+        }
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-b")) {
+            Assertions.assertEquals(0, store.size());
+            Assertions.assertNull(store.get("alpha"));
+        }
+    }
+
+    @Test
+    void partialRecordIsCutOff() throws IOException {
+        Path file = dir.resolve("store.vec");
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            store.put("alpha", new float[]{1f, 2f});
+            store.put("beta", new float[]{3f, 4f});
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            Assertions.assertEquals(1, store.size());
+            Assertions.assertArrayEquals(new float[]{1f, 2f}, store.get("alpha"));
+            store.put("beta", new float[]{3f, 4f});
+        }
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            Assertions.assertArrayEquals(new float[]{3f, 4f}, store.get("beta"));
+        }
+    }
+
+    @Test
+    void restartOnlyEmbedsChangedChunks() throws IOException {
+        Path file = dir.resolve("store.vec");
+        CountingModel model = new CountingModel();
+        List<Document> chunks = List.of(new Document("first chunk"), new Document("second chunk"));
+        List<float[]> firstRun;
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            firstRun = embedAll(new PersistentEmbeddingModel(model, store), chunks);
+        }
+        Assertions.assertEquals(2, model.embedded.get());
+
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            List<float[]> secondRun = embedAll(new PersistentEmbeddingModel(model, store), chunks);
+            Assertions.assertEquals(2, model.embedded.get());
+            for (int i = 0; i < chunks.size(); i++) {
+                Assertions.assertArrayEquals(firstRun.get(i), secondRun.get(i));
+            }
+        }
+
+        List<Document> edited = List.of(new Document("first chunk"), new Document("second chunk, edited"));
+        int batchesBefore = model.batches.get();
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            List<float[]> batch = new PersistentEmbeddingModel(model, store)
+                    .embed(edited, EmbeddingOptionsBuilder.builder().build(), new TokenCountBatchingStrategy());
+            Assertions.assertEquals(3, model.embedded.get());
+            Assertions.assertArrayEquals(firstRun.get(0), batch.get(0));
+            Assertions.assertEquals(batchesBefore + 1, model.batches.get());
+        }
+    }
+
+    @Test
+    void compactionDropsStaleVectors() throws IOException {
+        Path file = dir.resolve("store.vec");
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            for (int i = 0; i < 5; i++) {
+                store.put("chunk " + i, new float[]{i});
+            }
+        }
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            Assertions.assertNotNull(store.get("chunk 1"));
+            Assertions.assertTrue(store.compactIfStale());
+            Assertions.assertEquals(1, store.size());
+            Assertions.assertFalse(store.compactIfStale());
+        }
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(file, "model-a")) {
+            Assertions.assertEquals(1, store.size());
+            Assertions.assertArrayEquals(new float[]{1f}, store.get("chunk 1"));
+        }
+    }
+
+    private static List<float[]> embedAll(EmbeddingModel model, List<Document> documents) {
+        List<float[]> vectors = new ArrayList<>();
+        for (Document document : documents) {
+            vectors.add(model.embed(document));
+        }
+        return vectors;
+    }
+
+    /**
+     * Fake model whose vector is derived from the text length, counting the texts it was asked to embed.
+     */
+    private static class CountingModel implements EmbeddingModel {
+
+        private final AtomicInteger embedded = new AtomicInteger();
+
+        private final AtomicInteger batches = new AtomicInteger();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            batches.incrementAndGet();
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embedded.incrementAndGet();
+                embeddings.add(new Embedding(new float[]{text.length(), text.hashCode()}, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return call(new EmbeddingRequest(List.of(document.getText()), null)).getResult().getOutput();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.hku.hkuaiagent.rag;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class EmbeddingIngestionPipelineTest {
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void batchesAreEmbeddedInParallelWithOneCallEach() throws IOException {
+        FlakyModel model = new FlakyModel(0, 50);
+        List<Document> chunks = chunks(40);
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(dir.resolve("store.vec"), "fake")) {
+            PersistentEmbeddingModel persistent = new PersistentEmbeddingModel(model, store);
+            SimpleVectorStore vectorStore = SimpleVectorStore.builder(persistent).build();
+
+            EmbeddingIngestionPipeline.Result result = pipeline(10, 4, 1).ingest(chunks, persistent, vectorStore);
+
+            Assertions.assertEquals(40, result.indexed());
+            Assertions.assertEquals(0, result.failed());
+            Assertions.assertEquals(4, model.calls.get());
+            Assertions.assertTrue(model.maxConcurrent.get() > 1, "batches should overlap");
+            Assertions.assertEquals(40, vectorStore.similaritySearch(SearchRequest.builder().query("chunk 7").topK(100).build()).size());
+            Assertions.assertEquals(40.0, registry.counter("hku.rag.ingest.chunks", "outcome", "indexed").count());
+        }
+    }
+
+    @Test
+    void failedBatchesAreRetried() throws IOException {
+        FlakyModel model = new FlakyModel(2, 0);
+        try (EmbeddingFileStore store = EmbeddingFileStore.open(dir.resolve("store.vec"), "fake")) {
+            PersistentEmbeddingModel persistent = new PersistentEmbeddingModel(model, store);
+
+            EmbeddingIngestionPipeline.Result result = pipeline(5, 1, 3)
+                    .ingest(chunks(5), persistent, SimpleVectorStore.builder(persistent).build());
+
+            Assertions.assertEquals(5, result.indexed());
+            Assertions.assertEquals(2, result.retries());
+            Assertions.assertEquals(2.0, registry.counter("hku.rag.ingest.retries").count());
+        }
+    }
+
+    @Test
+    void batchFailingEveryAttemptIsLeftOut() {
+        FlakyModel model = new FlakyModel(Integer.MAX_VALUE, 0);
+        SimpleVectorStore vectorStore = SimpleVectorStore.builder(model).build();
+
+        EmbeddingIngestionPipeline.Result result = pipeline(3, 2, 2).ingest(chunks(6), null, vectorStore);
+
+        Assertions.assertEquals(0, result.indexed());
+        Assertions.assertEquals(6, result.failed());
+        Assertions.assertEquals(6.0, registry.counter("hku.rag.ingest.chunks", "outcome", "failed").count());
+    }
+
+    @Test
+    void backoffGrowsUpToTheCap() {
+        EmbeddingIngestionPipeline pipeline = new EmbeddingIngestionPipeline(1, 1, 1,
+                Duration.ofMillis(100), Duration.ofMillis(1000), registry);
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            long cap = Math.min(100L << (attempt - 1), 1000);
+            long millis = pipeline.backoff(attempt).toMillis();
+            Assertions.assertTrue(millis >= cap / 2 && millis <= cap, attempt + ": " + millis);
+        }
+    }
+
+    private EmbeddingIngestionPipeline pipeline(int batchSize, int parallelism, int maxAttempts) {
+        return new EmbeddingIngestionPipeline(batchSize, parallelism, maxAttempts,
+                Duration.ofMillis(1), Duration.ofMillis(5), registry);
+    }
+
+    private static List<Document> chunks(int count) {
+        List<Document> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            chunks.add(new Document("chunk " + i));
+        }
+        return chunks;
+    }
+
+    /**
+     * Fake model that fails its first calls and records how many calls overlapped.
+     */
+    private static class FlakyModel implements EmbeddingModel {
+
+        private final AtomicInteger failuresLeft;
+
+        private final long latencyMillis;
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        FlakyModel(int failures, long latencyMillis) {
+            this.failuresLeft = new AtomicInteger(failures);
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            maxConcurrent.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(latencyMillis);
+                if (failuresLeft.getAndDecrement() > 0) {
+                    throw new IllegalStateException("rate limited");
+                }
+                calls.incrementAndGet();
+                List<Embedding> embeddings = new ArrayList<>();
+                for (String text : request.getInstructions()) {
+                    embeddings.add(new Embedding(new float[]{1f, text.length()}, embeddings.size()));
+                }
+                return new EmbeddingResponse(embeddings);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return call(new EmbeddingRequest(List.of(document.getText()), null)).getResult().getOutput();
+        }
+
+        @Override
+        public int dimensions() {
+            return 2;
+        }
+    }
+}
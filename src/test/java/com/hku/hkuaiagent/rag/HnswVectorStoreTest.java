@@ -0,0 +1,99 @@
+package com.hku.hkuaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+
+import java.util.List;
+import java.util.Map;
+
+class HnswVectorStoreTest {
+
+    private static final VectorSamples samples = new VectorSamples(2000, 50, 32, 7);
+
+    // Brute-force reference, shared because it is only read
+    private static final SimpleVectorStore exact = SimpleVectorStore.builder(samples.model).build();
+
+    static {
+        exact.add(samples.documents);
+    }
+
+    private final HnswVectorStore hnsw = HnswVectorStore.builder(samples.model).efConstruction(100).efSearch(48).build();
+
+    HnswVectorStoreTest() {
+        hnsw.add(samples.documents);
+    }
+
+    @Test
+    void recallMatchesBruteForce() {
+        double recall = averageRecall(null, samples.queries.size());
+        Assertions.assertTrue(recall >= 0.95, "recall@10 was " + recall);
+    }
+
+    @Test
+    void filtersAreAppliedDuringTraversal() {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        Filter.Expression filter = b.and(b.eq("category", "handbook"), b.eq("semester", "S2")).build();
+
+        for (String query : samples.queries) {
+            List<Document> results = hnsw.similaritySearch(SearchRequest.builder().query(query).topK(10)
+                    .filterExpression(filter).build());
+            Assertions.assertEquals(10, results.size());
+            for (Document result : results) {
+                Assertions.assertEquals("handbook", result.getMetadata().get("category"));
+                Assertions.assertEquals("S2", result.getMetadata().get("semester"));
+            }
+        }
+        double recall = averageRecall(filter, samples.queries.size());
+        Assertions.assertTrue(recall >= 0.9, "filtered recall@10 was " + recall);
+    }
+
+    @Test
+    void selectiveFiltersAreExact() {
+        Filter.Expression filter = new FilterExpressionTextParser()
+                .parse("category == 'faq' && year in [2021, 2023] && semester != 'S1'");
+        // SimpleVectorStore evaluates this filter as SpEL per document, so keep the reference runs few
+        Assertions.assertEquals(1.0, averageRecall(filter, 5));
+    }
+
+    @Test
+    void replacedAndDeletedDocumentsAreNotReturned() {
+        String query = samples.queries.get(0);
+        Document best = hnsw.similaritySearch(SearchRequest.builder().query(query).topK(1).build()).get(0);
+
+        hnsw.delete(List.of(best.getId()));
+        Assertions.assertNotEquals(best.getId(),
+                hnsw.similaritySearch(SearchRequest.builder().query(query).topK(1).build()).get(0).getId());
+
+        samples.model.register("replacement", samples.model.embed(query));
+        hnsw.add(List.of(Document.builder().id("id-1").text("replacement").metadata(Map.of("category", "faq")).build()));
+        Document replaced = hnsw.similaritySearch(SearchRequest.builder().query(query).topK(1).build()).get(0);
+        Assertions.assertEquals("id-1", replaced.getId());
+        Assertions.assertEquals("replacement", replaced.getText());
+        Assertions.assertEquals(1.0, replaced.getScore(), 1e-5);
+        Assertions.assertEquals(samples.documents.size() - 1, hnsw.size());
+    }
+
+    @Test
+    void deleteByFilter() {
+        hnsw.delete(new FilterExpressionBuilder().eq("category", "event").build());
+        List<Document> results = hnsw.similaritySearch(SearchRequest.builder().query(samples.queries.get(1)).topK(50).build());
+        Assertions.assertEquals(50, results.size());
+        Assertions.assertTrue(results.stream().noneMatch(document -> "event".equals(document.getMetadata().get("category"))));
+        Assertions.assertEquals(samples.documents.size() * 4 / 5, hnsw.size());
+    }
+
+    private double averageRecall(Filter.Expression filter, int queryCount) {
+        double total = 0;
+        for (String query : samples.queries.subList(0, queryCount)) {
+            SearchRequest request = SearchRequest.builder().query(query).topK(10).filterExpression(filter).build();
+            total += VectorSamples.recall(exact.similaritySearch(request), hnsw.similaritySearch(request));
+        }
+        return total / queryCount;
+    }
+}
@@ -0,0 +1,162 @@
+package com.hku.hkuaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class HybridVectorStoreTest {
+
+    private final HashingEmbeddingModel model = new HashingEmbeddingModel();
+
+    private final HybridVectorStore store = new HybridVectorStore(HnswVectorStore.builder(model).build());
+
+    HybridVectorStoreTest() {
+        store.add(List.of(
+                chunk("7103a-1", "course_COMP7103A_DataMining_2025-26S1.md", "S1",
+                        "COMP7103A - Data mining. Instructor: Ben Kao. Covers clustering and association rules."),
+                chunk("7103a-2", "course_COMP7103A_DataMining_2025-26S1.md", "S1",
+                        "Assessment: written examination 60%, assignments 40%."),
+                chunk("7103d-1", "course_COMP7103D_DataMining_2025-26S2.md", "S2",
+                        "COMP7103D - Data mining. Taught in the second semester with a project on frequent patterns."),
+                chunk("7404a-1", "course_COMP7404A_ComputationalIntelligence_2025-26S1.md", "S1",
+                        "COMP7404A - Computational intelligence and machine learning. Instructor: Dirk Schnieders."),
+                chunk("faq-1", "faq_library.md", null,
+                        "The main library opens at 8:30 and students may borrow up to 40 books. 图书馆开放时间")));
+        model.calls.set(0);
+    }
+
+    @Test
+    void courseCodeQueriesSkipTheEmbeddingModel() {
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("Who teaches COMP7103?").topK(5).build());
+
+        Assertions.assertEquals(0, model.calls.get());
+        // Every chunk of every COMP7103 section, including the one whose text does not mention the code
+        Assertions.assertEquals(List.of("7103a-1", "7103a-2", "7103d-1"), ids(results).stream().sorted().toList());
+        // BM25 scores relative to the best hit
+        Assertions.assertEquals(1.0, results.get(0).getScore(), 1e-9);
+        Assertions.assertTrue(results.stream().allMatch(document -> document.getScore() > 0 && document.getScore() <= 1));
+
+        List<Document> section = store.similaritySearch(SearchRequest.builder().query("comp7103d exam").topK(5).build());
+        Assertions.assertEquals(List.of("7103d-1"), ids(section));
+        Assertions.assertEquals(0, model.calls.get());
+    }
+
+    @Test
+    void filtersApplyToTheLexicalFastPath() {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("COMP7103 data mining").topK(5)
+                .filterExpression(b.eq("semester", "S2").build()).build());
+        Assertions.assertEquals(List.of("7103d-1"), ids(results));
+    }
+
+    @Test
+    void otherQueriesFuseDenseAndLexicalRankings() {
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("library opening hours").topK(2).build());
+
+        Assertions.assertEquals(1, model.calls.get());
+        Assertions.assertEquals(2, results.size());
+        Assertions.assertEquals("faq-1", results.get(0).getId());
+        // Ranked first by both lists
+        Assertions.assertEquals(2.0 / (HybridVectorStore.DEFAULT_RRF_K + 1), results.get(0).getScore(), 1e-9);
+
+        List<Document> chinese = store.similaritySearch(SearchRequest.builder().query("图书馆几点开门").topK(1).build());
+        Assertions.assertEquals("faq-1", chinese.get(0).getId());
+    }
+
+    @Test
+    void questionsThatOnlyMentionACodeAreFused() {
+        store.similaritySearch(SearchRequest.builder()
+                .query("How does the COMP7103 workload compare with other machine learning electives for part-time students")
+                .topK(3).build());
+        Assertions.assertEquals(1, model.calls.get());
+
+        // A similarity threshold only means something for the dense ranking
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("Who teaches COMP7103?").topK(3)
+                .similarityThreshold(0.1).build());
+        Assertions.assertEquals(2, model.calls.get());
+        Assertions.assertTrue(results.get(0).getScore() <= 2.0 / (HybridVectorStore.DEFAULT_RRF_K + 1));
+
+        Assertions.assertEquals(2.0, Bm25Index.contentWords("Who teaches COMP7103?"));
+        Assertions.assertEquals(3.5, Bm25Index.contentWords("COMP7103的考试时间"));
+    }
+
+    @Test
+    void unknownCodesFallBackToHybridSearch() {
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("COMP9999 data mining").topK(3).build());
+        Assertions.assertEquals(1, model.calls.get());
+        Assertions.assertFalse(results.isEmpty());
+    }
+
+    @Test
+    void deletesReachBothIndexes() {
+        store.delete(List.of("7103d-1"));
+        Assertions.assertFalse(ids(store.similaritySearch(SearchRequest.builder().query("COMP7103D").topK(5).build()))
+                .contains("7103d-1"));
+
+        store.delete(new FilterExpressionBuilder().eq("semester", "S1").build());
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("COMP7404 instructor").topK(5).build());
+        Assertions.assertEquals(List.of("faq-1"), ids(results));
+    }
+
+    @Test
+    void tokenizerIndexesCoursePrefixesAndChineseBigrams() {
+        Assertions.assertEquals(List.of("course", "comp7103b", "comp7103", "data", "2025", "26s1", "md"),
+                Bm25Index.tokenize("course_COMP7103B_Data_2025-26S1.md"));
+        Assertions.assertEquals(List.of("第", "第二", "二", "二学", "学", "学期", "期", "s2"), Bm25Index.tokenize("第二学期 S2"));
+    }
+
+    private static Document chunk(String id, String filename, String semester, String text) {
+        Map<String, Object> metadata = semester != null
+                ? Map.of("filename", filename, "semester", semester)
+                : Map.of("filename", filename);
+        return Document.builder().id(id).text(text).metadata(metadata).build();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+
+    /**
+     * Bag-of-words embedding: each word adds to one of 64 hashed dimensions. Counts the texts it embeds.
+     */
+    private static final class HashingEmbeddingModel implements EmbeddingModel {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                calls.incrementAndGet();
+                float[] vector = new float[64];
+                for (String term : Bm25Index.tokenize(text)) {
+                    vector[Math.floorMod(term.hashCode(), vector.length)] += 1;
+                }
+                vector[0] += 0.01f;
+                embeddings.add(new Embedding(vector, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return 64;
+        }
+    }
+}
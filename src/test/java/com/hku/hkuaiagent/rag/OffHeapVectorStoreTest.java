@@ -0,0 +1,132 @@
+package com.hku.hkuaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+class OffHeapVectorStoreTest {
+
+    private static final VectorSamples samples = new VectorSamples(2000, 50, 32, 11);
+
+    private final OffHeapVectorStore exact = OffHeapVectorStore.builder(samples.model)
+            .quantization(OffHeapVectorStore.Quantization.NONE).build();
+
+    private final OffHeapVectorStore int8 = OffHeapVectorStore.builder(samples.model).build();
+
+    OffHeapVectorStoreTest() {
+        exact.add(samples.documents);
+        int8.add(samples.documents);
+    }
+
+    @Test
+    void floatStoreMatchesSimpleVectorStore() {
+        SimpleVectorStore simple = SimpleVectorStore.builder(samples.model).build();
+        simple.add(samples.documents);
+        Filter.Expression filter = new FilterExpressionTextParser()
+                .parse("category == 'faq' && year in [2021, 2023] && semester != 'S1'");
+        for (String query : samples.queries.subList(0, 5)) {
+            for (Filter.Expression expression : new Filter.Expression[]{null, filter}) {
+                SearchRequest request = SearchRequest.builder().query(query).topK(10).filterExpression(expression).build();
+                List<Document> expected = simple.similaritySearch(request);
+                List<Document> actual = exact.similaritySearch(request);
+                Assertions.assertEquals(1.0, VectorSamples.recall(expected, actual));
+                Assertions.assertEquals(expected.get(0).getScore(), actual.get(0).getScore(), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    void int8RecallMatchesFloat() {
+        double total = 0;
+        for (String query : samples.queries) {
+            SearchRequest request = SearchRequest.builder().query(query).topK(10).build();
+            List<Document> expected = exact.similaritySearch(request);
+            List<Document> actual = int8.similaritySearch(request);
+            total += VectorSamples.recall(expected, actual);
+            Assertions.assertEquals(expected.get(0).getScore(), actual.get(0).getScore(), 0.01);
+        }
+        double recall = total / samples.queries.size();
+        Assertions.assertTrue(recall >= 0.95, "int8 recall@10 was " + recall);
+    }
+
+    @Test
+    void filteredSearchReturnsOnlyMatches() {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        Filter.Expression filter = b.and(b.eq("category", "handbook"), b.eq("semester", "S2")).build();
+        List<Document> results = int8.similaritySearch(SearchRequest.builder().query(samples.queries.get(0)).topK(10)
+                .filterExpression(filter).build());
+        Assertions.assertEquals(10, results.size());
+        for (Document result : results) {
+            Assertions.assertEquals("handbook", result.getMetadata().get("category"));
+            Assertions.assertEquals("S2", result.getMetadata().get("semester"));
+        }
+    }
+
+    @Test
+    void replacedAndDeletedDocumentsAreNotReturned() {
+        String query = samples.queries.get(0);
+        Document best = exact.similaritySearch(SearchRequest.builder().query(query).topK(1).build()).get(0);
+
+        exact.delete(List.of(best.getId()));
+        Assertions.assertNotEquals(best.getId(),
+                exact.similaritySearch(SearchRequest.builder().query(query).topK(1).build()).get(0).getId());
+
+        samples.model.register("replacement", samples.model.embed(query));
+        exact.add(List.of(Document.builder().id("id-1").text("replacement").metadata(Map.of("category", "faq")).build()));
+        Document replaced = exact.similaritySearch(SearchRequest.builder().query(query).topK(1).build()).get(0);
+        Assertions.assertEquals("id-1", replaced.getId());
+        Assertions.assertEquals("replacement", replaced.getText());
+        Assertions.assertEquals(Map.of("category", "faq"), withoutDistance(replaced.getMetadata()));
+        Assertions.assertEquals(samples.documents.size() - 1, exact.size());
+
+        exact.delete(new FilterExpressionBuilder().eq("category", "event").build());
+        List<Document> results = exact.similaritySearch(SearchRequest.builder().query(query).topK(50).build());
+        Assertions.assertEquals(50, results.size());
+        Assertions.assertTrue(results.stream().noneMatch(document -> "event".equals(document.getMetadata().get("category"))));
+    }
+
+    @Test
+    void int8UsesAQuarterOfTheFloatFootprint() {
+        long vectorBytes = (long) samples.documents.size() * 32;
+        Assertions.assertTrue(int8.offHeapBytes() >= vectorBytes && int8.offHeapBytes() < 2 * vectorBytes,
+                "int8 store allocated " + int8.offHeapBytes());
+        Assertions.assertEquals(4 * int8.offHeapBytes(), exact.offHeapBytes());
+    }
+
+    @Test
+    void simdKernelsMatchScalar() {
+        VectorKernels scalar = VectorKernels.scalar();
+        VectorKernels kernels = VectorKernels.get();
+        Random random = new Random(3);
+        // 100 dimensions leaves a tail after the vector loop for any lane count
+        float[] query = new float[100];
+        float[] floats = new float[query.length + 7];
+        byte[] bytes = new byte[query.length + 7];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = (float) random.nextGaussian();
+            bytes[i] = (byte) (random.nextInt(255) - 127);
+        }
+        for (int i = 0; i < query.length; i++) {
+            query[i] = (float) random.nextGaussian();
+        }
+        Assertions.assertEquals(scalar.dot(query, floats, 7), kernels.dot(query, floats, 7), 1e-3);
+        Assertions.assertEquals(scalar.dot(query, bytes, 7), kernels.dot(query, bytes, 7), 1e-2);
+    }
+
+    private static Map<String, Object> withoutDistance(Map<String, Object> metadata) {
+        return metadata.entrySet().stream()
+                .filter(entry -> !entry.getKey().equals(DocumentMetadata.DISTANCE.value()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+}
@@ -0,0 +1,157 @@
+package com.hku.hkuaiagent.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class QueryEmbeddingCacheTest {
+
+    private static final String TEMPLATE = "List all courses offered in Semester 2 (2025-26S2) with course code, instructor, "
+            + "content summary, exam period and key differences.";
+
+    @TempDir
+    Path directory;
+
+    private final CountingModel model = new CountingModel();
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void repeatedQueriesSkipTheModel() {
+        QueryEmbeddingCache cache = cache(10, null);
+
+        float[] first = cache.embed(TEMPLATE);
+        float[] second = cache.embed("  " + TEMPLATE.replace(" ", "  ") + "\n");
+        // Full-width characters normalise to their ASCII forms
+        cache.embed("ＣＯＭＰ７１０３ exam");
+        cache.embed("COMP7103 exam");
+
+        Assertions.assertArrayEquals(first, second);
+        Assertions.assertEquals(2, model.calls.get());
+        Assertions.assertEquals(2, cache.hits());
+        Assertions.assertEquals(2, cache.misses());
+    }
+
+    @Test
+    void entriesExpireAndTheLeastRecentlyUsedIsEvicted() {
+        QueryEmbeddingCache cache = cache(2, null);
+        cache.embed("a");
+        cache.embed("b");
+        cache.embed("a");
+        cache.embed("c");
+        Assertions.assertEquals(3, model.calls.get());
+
+        cache.embed("a");
+        Assertions.assertEquals(3, model.calls.get());
+        cache.embed("b");
+        Assertions.assertEquals(4, model.calls.get());
+
+        clock.advance(Duration.ofHours(2));
+        cache.embed("b");
+        Assertions.assertEquals(5, model.calls.get());
+    }
+
+    @Test
+    void documentsArePassedThrough() {
+        QueryEmbeddingCache cache = cache(10, null);
+        cache.embed(new Document("doc"));
+        cache.embed(new Document("doc"));
+        Assertions.assertEquals(2, model.calls.get());
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void hotEntriesSurviveARestart() throws Exception {
+        Path path = directory.resolve("query-cache.bin");
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(model, "text-embedding-v1", 10, Duration.ofHours(1),
+                path, 2, clock);
+        cache.embed("cold");
+        cache.embed("warm");
+        cache.embed(TEMPLATE);
+        cache.embed("warm");
+        cache.close();
+
+        QueryEmbeddingCache restarted = new QueryEmbeddingCache(model, "text-embedding-v1", 10, Duration.ofHours(1),
+                path, 2, clock);
+        Assertions.assertEquals(2, restarted.size());
+        restarted.embed("warm");
+        restarted.embed(TEMPLATE);
+        Assertions.assertEquals(3, model.calls.get());
+        restarted.embed("cold");
+        Assertions.assertEquals(4, model.calls.get());
+
+        // Another model's vectors, and expired ones, are not loaded
+        Assertions.assertEquals(0, new QueryEmbeddingCache(model, "text-embedding-v2", 10, Duration.ofHours(1),
+                path, 2, clock).size());
+        clock.advance(Duration.ofHours(2));
+        Assertions.assertEquals(0, new QueryEmbeddingCache(model, "text-embedding-v1", 10, Duration.ofHours(1),
+                path, 2, clock).size());
+    }
+
+    private QueryEmbeddingCache cache(int maxEntries, Path path) {
+        return new QueryEmbeddingCache(model, "text-embedding-v1", maxEntries, Duration.ofHours(1), path, 0, clock);
+    }
+
+    private static final class CountingModel implements EmbeddingModel {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                calls.incrementAndGet();
+                embeddings.add(new Embedding(new float[]{text.length(), text.hashCode() % 97}, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return 2;
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
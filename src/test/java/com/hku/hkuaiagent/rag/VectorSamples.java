@@ -0,0 +1,119 @@
+package com.hku.hkuaiagent.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic corpus for vector store tests and benchmarks: clustered random vectors with {@code category} and
+ * {@code semester} metadata, and an embedding model that returns the vector registered for each text.
+ */
+final class VectorSamples {
+
+    static final String[] CATEGORIES = {"course", "handbook", "faq", "policy", "event"};
+
+    final List<Document> documents = new ArrayList<>();
+
+    final List<String> queries = new ArrayList<>();
+
+    final LookupEmbeddingModel model;
+
+    /**
+     * @param size       number of documents
+     * @param queryCount number of query texts, drawn from the same clusters
+     * @param dimensions vector length
+     */
+    VectorSamples(int size, int queryCount, int dimensions, long seed) {
+        Random random = new Random(seed);
+        int clusterCount = Math.max(1, size / 50);
+        List<float[]> centres = new ArrayList<>();
+        for (int i = 0; i < clusterCount; i++) {
+            centres.add(gaussian(random, dimensions, 1f, null));
+        }
+        Map<String, float[]> vectors = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String text = "doc " + i;
+            vectors.put(text, gaussian(random, dimensions, 0.35f, centres.get(random.nextInt(clusterCount))));
+            documents.add(Document.builder()
+                    .id("id-" + i)
+                    .text(text)
+                    .metadata(Map.of("category", CATEGORIES[i % CATEGORIES.length],
+                            "semester", i % 2 == 0 ? "S1" : "S2",
+                            "year", 2020 + i % 6))
+                    .build());
+        }
+        for (int i = 0; i < queryCount; i++) {
+            String text = "query " + i;
+            vectors.put(text, gaussian(random, dimensions, 0.35f, centres.get(random.nextInt(clusterCount))));
+            queries.add(text);
+        }
+        this.model = new LookupEmbeddingModel(vectors, dimensions);
+    }
+
+    private static float[] gaussian(Random random, int dimensions, float scale, float[] centre) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian() * scale + (centre != null ? centre[i] : 0);
+        }
+        return vector;
+    }
+
+    /**
+     * Share of the expected ids found in the actual results.
+     */
+    static double recall(List<Document> expected, List<Document> actual) {
+        if (expected.isEmpty()) {
+            return 1;
+        }
+        List<String> actualIds = actual.stream().map(Document::getId).toList();
+        long found = expected.stream().map(Document::getId).filter(actualIds::contains).count();
+        return (double) found / expected.size();
+    }
+
+    static final class LookupEmbeddingModel implements EmbeddingModel {
+
+        private final Map<String, float[]> vectors;
+
+        private final int dimensions;
+
+        LookupEmbeddingModel(Map<String, float[]> vectors, int dimensions) {
+            this.vectors = vectors;
+            this.dimensions = dimensions;
+        }
+
+        void register(String text, float[] vector) {
+            vectors.put(text, vector);
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                float[] vector = vectors.get(text);
+                if (vector == null) {
+                    throw new IllegalArgumentException("No vector registered for " + text);
+                }
+                embeddings.add(new Embedding(vector, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return dimensions;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.hku.hkuaiagent.replay;
+
+import com.hku.hkuaiagent.agent.ToolCallAgent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SessionReplayTest {
+
+    @Test
+    void replaysARecordedSessionWithoutModelOrTools(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("session.jsonl");
+        AtomicInteger toolCalls = new AtomicInteger();
+        ToolCallback weather = tool("weather_lookup", toolCalls);
+        try (SessionRecorder recorder = new SessionRecorder(file)) {
+            ToolCallAgent agent = agent(new RecordingChatModel(scriptedModel(), recorder),
+                    new ToolCallback[]{new RecordingToolCallback(weather, recorder)});
+            agent.run("What is the weather at HKU?");
+        }
+        List<ReplayEvent> events = SessionRecorder.load(file);
+        Assertions.assertEquals(List.of("chat", "tool", "chat"), events.stream().map(ReplayEvent::type).toList());
+        Assertions.assertEquals("weather_lookup", events.get(0).toolCalls().get(0).name());
+        Assertions.assertEquals(1, toolCalls.get());
+
+        SessionReplay replay = SessionReplay.load(file, ReplayLatency.none());
+        ToolCallAgent replayed = agent(replay.chatModel(), replay.wrap(new ToolCallback[]{weather}));
+        replayed.run("What is the weather at HKU?");
+
+        Assertions.assertEquals(1, toolCalls.get());
+        List<Message> messages = replayed.getMessageList();
+        Assertions.assertEquals("Sunny, 28°C at HKU.", messages.get(messages.size() - 1).getText());
+    }
+
+    @Test
+    void streamedToolCallFragmentsAreRecordedAsOneCall(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("session.jsonl");
+        ChatModel fragments = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                // The first fragment has no arguments yet and continuations repeat the name without an id
+                return Flux.just(
+                        toolCallChunk("call-1", "weather_lookup", null),
+                        toolCallChunk("", "weather_lookup", "{\"location\":"),
+                        toolCallChunk("", null, "\"HKU\"}"));
+            }
+        };
+        try (SessionRecorder recorder = new SessionRecorder(file)) {
+            new RecordingChatModel(fragments, recorder).stream(new Prompt("Weather?")).blockLast();
+        }
+
+        List<ReplayEvent.ToolCall> calls = SessionRecorder.load(file).get(0).toolCalls();
+        Assertions.assertEquals(List.of(new ReplayEvent.ToolCall("call-1", "weather_lookup", "{\"location\":\"HKU\"}")),
+                calls);
+    }
+
+    @Test
+    void streamingRunFollowsConfiguredLatency() throws Exception {
+        List<ReplayEvent> events = List.of(
+                ReplayEvent.chat(0, 500, 100L, List.of(), "", List.of(new ReplayEvent.ToolCall("c1", "weather_lookup", "{}"))),
+                ReplayEvent.tool(500, 500, "weather_lookup", "{}", "Sunny"),
+                ReplayEvent.chat(1000, 500, 100L, List.of(), "It is sunny at HKU today.", List.of()));
+        SessionReplay replay = new SessionReplay(events, ReplayLatency.fixed(Duration.ofMillis(100)));
+        ToolCallAgent agent = agent(replay.chatModel(), replay.wrap(new ToolCallback[]{tool("weather_lookup", new AtomicInteger())}));
+
+        long start = System.nanoTime();
+        agent.runStream("Weather?");
+        long deadline = start + TimeUnit.SECONDS.toNanos(10);
+        while (agent.isBusy() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assertions.assertFalse(agent.isBusy());
+        // Two model replies and one tool call at 100 ms each
+        Assertions.assertTrue(elapsedMillis >= 300, "elapsed " + elapsedMillis);
+        Assertions.assertTrue(elapsedMillis < 3000, "elapsed " + elapsedMillis);
+    }
+
+    private static ToolCallAgent agent(ChatModel chatModel, ToolCallback[] tools) {
+        ToolCallAgent agent = new ToolCallAgent(tools, () -> new ToolCallback[0]);
+        agent.setName("replayTest");
+        agent.setMaxSteps(4);
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        return agent;
+    }
+
+    private static ChatModel scriptedModel() {
+        AtomicInteger calls = new AtomicInteger();
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                AssistantMessage reply = calls.getAndIncrement() == 0
+                        ? new AssistantMessage("", Map.of(), List.of(new AssistantMessage.ToolCall(
+                                "call-1", "function", "weather_lookup", "{\"location\":\"HKU\"}")))
+                        : new AssistantMessage("Sunny, 28°C at HKU.");
+                return new ChatResponse(List.of(new Generation(reply)));
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.just(call(prompt));
+            }
+        };
+    }
+
+    private static ChatResponse toolCallChunk(String id, String name, String arguments) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall(id, "function", name, arguments))))));
+    }
+
+    private static ToolCallback tool(String name, AtomicInteger calls) {
+        ToolDefinition definition = ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return definition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                calls.incrementAndGet();
+                return "Sunny, 28°C";
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package com.hku.hkuaiagent.sse;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+class AgentEventStreamsTest {
+
+    @Test
+    void reconnectResumesAfterTheLastEventSeen() {
+        AgentEventStreams streams = new AgentEventStreams(16, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        AgentEventStream run = streams.start("manus:chat-1");
+        run.publish(AgentEventType.THINKING_START, "Analyzing your request...");
+        run.publish(AgentEventType.TOOL_CALL, "Step 1: using weather");
+
+        // The client saw the first two events, then the connection dropped while the run went on
+        List<ServerSentEvent<String>> firstConnection = run.toServerSentEvents(0).take(2).collectList().block();
+        String lastEventId = firstConnection.get(1).id();
+        Assertions.assertEquals(run.getRunId() + ":2", lastEventId);
+        Assertions.assertEquals("tool_call", firstConnection.get(1).event());
+
+        run.publish(AgentEventType.ANSWER, "Sunny");
+        run.publish(AgentEventType.ANSWER, " at HKU");
+        run.complete();
+
+        List<ServerSentEvent<String>> resumed = streams.resume(lastEventId, "manus:chat-1").collectList().block();
+        Assertions.assertEquals(List.of("answer", "answer", "done"), resumed.stream().map(ServerSentEvent::event).toList());
+        // Leading spaces are doubled because EventSource strips one after "data:"
+        Assertions.assertEquals(List.of("Sunny", "  at HKU", ""), resumed.stream().map(ServerSentEvent::data).toList());
+        Assertions.assertEquals(run.getRunId() + ":5", resumed.get(2).id());
+    }
+
+    @Test
+    void resumingPastTheReplayBufferReportsTheGap() {
+        AgentEventStreams streams = new AgentEventStreams(4, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        AgentEventStream run = streams.start("manus:chat-1");
+        for (int i = 1; i <= 10; i++) {
+            run.publish(AgentEventType.ANSWER, "chunk " + i);
+        }
+
+        // Events 3..6 were evicted: only 7..10 are still buffered
+        List<ServerSentEvent<String>> resumed = streams.resume(run.getRunId() + ":2", "manus:chat-1")
+                .take(5).collectList().block();
+        Assertions.assertEquals("gap", resumed.get(0).event());
+        Assertions.assertEquals("4", resumed.get(0).data());
+        Assertions.assertEquals(run.getRunId() + ":6", resumed.get(0).id());
+        Assertions.assertEquals(List.of("chunk 7", "chunk 8", "chunk 9", "chunk 10"),
+                resumed.subList(1, 5).stream().map(ServerSentEvent::data).toList());
+
+        // Nothing is lost when resuming inside the buffer
+        Assertions.assertEquals("answer", streams.resume(run.getRunId() + ":6", "manus:chat-1")
+                .blockFirst().event());
+    }
+
+    @Test
+    void silentRunsAreFailedAndDropped() throws InterruptedException {
+        AgentEventStreams streams = new AgentEventStreams(16, Duration.ofMinutes(1), Duration.ofMillis(20));
+        AgentEventStream hung = streams.start("manus:chat-1");
+        hung.publish(AgentEventType.THINKING_START, "Analyzing your request...");
+        Thread.sleep(50);
+
+        streams.start("manus:chat-2");
+
+        Assertions.assertEquals(1, streams.size());
+        Assertions.assertTrue(hung.isCompleted());
+        Assertions.assertEquals(List.of(AgentEventType.THINKING_START, AgentEventType.ERROR, AgentEventType.DONE),
+                hung.events(0).map(AgentEvent::type).collectList().block());
+    }
+
+    @Test
+    void unknownOrForeignRunsAreNotRestarted() {
+        AgentEventStreams streams = new AgentEventStreams(16, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        AgentEventStream run = streams.start("manus:chat-1");
+        run.publish(AgentEventType.ANSWER, "private");
+
+        for (String lastEventId : List.of("missing:3", run.getRunId() + ":x", "garbage")) {
+            assertExpired(streams.resume(lastEventId, "manus:chat-1"));
+        }
+        assertExpired(streams.resume(run.getRunId() + ":0", "manus:someone-else"));
+    }
+
+    @Test
+    void relayedSourcesCompleteTheRunAndFailuresBecomeErrorEvents() {
+        AgentEventStream ok = AgentEventStream.detached();
+        ok.relay(Flux.just(AgentEvent.of(AgentEventType.ANSWER, "Hi")));
+        Assertions.assertTrue(ok.isCompleted());
+        Assertions.assertEquals(List.of(AgentEventType.ANSWER, AgentEventType.DONE),
+                ok.events(0).map(AgentEvent::type).collectList().block());
+
+        AgentEventStream failed = AgentEventStream.detached();
+        failed.relay(Flux.error(new IllegalStateException("model down")));
+        Assertions.assertEquals(List.of(AgentEventType.ERROR, AgentEventType.DONE),
+                failed.events(0).map(AgentEvent::type).collectList().block());
+    }
+
+    private static void assertExpired(Flux<ServerSentEvent<String>> events) {
+        List<ServerSentEvent<String>> frames = events.collectList().block();
+        Assertions.assertEquals(List.of("agent_error", "done"), frames.stream().map(ServerSentEvent::event).toList());
+    }
+}
@@ -0,0 +1,61 @@
+package com.hku.hkuaiagent.tools;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ToolCatalogTest {
+
+    @Test
+    void resolvesProviderOnceUntilInvalidated() {
+        AtomicInteger listings = new AtomicInteger();
+        ToolCallbackProvider mcpTools = () -> {
+            listings.incrementAndGet();
+            return new ToolCallback[]{tool("maps_geo"), tool("fileOperation")};
+        };
+        ToolCatalog catalog = new ToolCatalog(new ToolCallback[]{tool("fileOperation"), tool("doTerminate")}, mcpTools);
+
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(3, catalog.getToolCallbacks().length);
+            catalog.describe();
+        }
+        Assertions.assertEquals(1, listings.get());
+        Assertions.assertSame(catalog.getToolCallbackList(), catalog.getToolCallbackList());
+
+        ToolCatalog.invalidateAll();
+        catalog.getToolCallbackList();
+        Assertions.assertEquals(2, listings.get());
+    }
+
+    @Test
+    void describesOnlyIncludedToolsAndAppliesNameFilter() {
+        ToolCatalog catalog = new ToolCatalog(new ToolCallback[]{tool("webSearch"), tool("doTerminate")},
+                () -> new ToolCallback[]{tool("campusKnowledgeSearch")},
+                name -> !name.startsWith("campus"));
+
+        String description = catalog.describe(name -> !"doTerminate".equals(name));
+
+        Assertions.assertTrue(description.startsWith("- webSearch: webSearch tool\n  input schema: {}"));
+        Assertions.assertFalse(description.contains("doTerminate"));
+        Assertions.assertEquals(2, catalog.getToolCallbackList().size());
+    }
+
+    private static ToolCallback tool(String name) {
+        ToolDefinition definition = ToolDefinition.builder().name(name).description(name + " tool").inputSchema("{}").build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return definition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,110 @@
+package com.hku.hkuaiagent.tools;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ToolResultCacheTest {
+
+    @Test
+    void servesRepeatedCallsWithReorderedArgumentsFromCache() {
+        ToolResultCache cache = new ToolResultCache().register("weather_lookup", Duration.ofMinutes(10), 10);
+        AtomicInteger calls = new AtomicInteger();
+        ToolCallback tool = cache.wrap(new ToolCallback[]{countingTool("weather_lookup", calls)})[0];
+
+        String first = tool.call("{\"location\":\"Hong Kong\",\"days\":3}");
+        String second = tool.call("{ \"days\": 3, \"location\": \"Hong Kong\" }");
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(0.5, cache.snapshot().get("weather_lookup").get("hitRate"));
+    }
+
+    @Test
+    void expiresEntriesAndLeavesUncachedToolsAlone() {
+        MutableClock clock = new MutableClock();
+        ToolResultCache cache = new ToolResultCache(clock).register("maps_geo", Duration.ofMinutes(1), 10);
+        AtomicInteger geoCalls = new AtomicInteger();
+        AtomicInteger fileCalls = new AtomicInteger();
+        ToolCallback[] tools = cache.wrap(new ToolCallback[]{
+                countingTool("spring_ai_mcp_client_amap_maps_maps_geo", geoCalls),
+                countingTool("fileOperation", fileCalls)});
+
+        tools[0].call("{\"address\":\"Main Building\"}");
+        clock.advance(Duration.ofSeconds(61));
+        tools[0].call("{\"address\":\"Main Building\"}");
+        tools[1].call("{}");
+        tools[1].call("{}");
+
+        Assertions.assertEquals(2, geoCalls.get());
+        Assertions.assertEquals(2, fileCalls.get());
+        Assertions.assertFalse(tools[1] instanceof CachingToolCallback);
+    }
+
+    @Test
+    void providerWrapsItsCallbacksOncePerToolSet() {
+        ToolResultCache cache = new ToolResultCache().register("maps_geo", Duration.ofMinutes(1), 10);
+        AtomicInteger listings = new AtomicInteger();
+        ToolCallback geo = countingTool("maps_geo", new AtomicInteger());
+        ToolCallbackProvider provider = cache.wrap(() -> {
+            listings.incrementAndGet();
+            return new ToolCallback[]{geo};
+        });
+
+        ToolCallback[] first = provider.getToolCallbacks();
+        Assertions.assertSame(first, provider.getToolCallbacks());
+        Assertions.assertEquals(1, listings.get());
+        Assertions.assertTrue(first[0] instanceof CachingToolCallback);
+
+        ToolCatalog.invalidateAll();
+        Assertions.assertNotSame(first, provider.getToolCallbacks());
+        Assertions.assertEquals(2, listings.get());
+    }
+
+    private static ToolCallback countingTool(String name, AtomicInteger calls) {
+        ToolDefinition definition = ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return definition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return name + " result #" + calls.incrementAndGet();
+            }
+        };
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
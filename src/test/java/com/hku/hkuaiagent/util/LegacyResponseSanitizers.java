@@ -0,0 +1,76 @@
+package com.hku.hkuaiagent.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex chains that {@link ResponseSanitizer} replaced, kept as a reference for tests and benchmarks.
+ */
+final class LegacyResponseSanitizers {
+
+    private static final Pattern URL_PATTERN = Pattern.compile("https?://[A-Za-z0-9\\-._~:/?#\\[\\]@!$&'()*+,;=%]+");
+
+    private LegacyResponseSanitizers() {
+    }
+
+    /**
+     * Former {@code HkuApp.basicSanitize}.
+     */
+    static String markdown(String text) {
+        String sanitized = text
+            .replace("**", "")
+            .replace("```", "")
+            .replace('\u00A0', ' ');
+        sanitized = sanitized.replaceAll("(?m)^\\s*[-*]\\s+", "- ");
+        sanitized = sanitized.replaceAll("(?m)^\\s*#+\\s*", "");
+        sanitized = sanitized.replaceAll("---+", "\n\n");
+        sanitized = sanitized.replaceAll("[\\t\\f]+", " ");
+        sanitized = sanitized.replaceAll(" {2,}", " ");
+        sanitized = sanitized.replaceAll(" *\\n *", "\n");
+        sanitized = sanitized.replaceAll("\\n{3,}", "\n\n");
+        return sanitized.trim();
+    }
+
+    /**
+     * Former {@code BaseAgent.formatPlainTextResponse}.
+     */
+    static String plainText(String text) {
+        String normalized = text.replace("\r\n", "\n");
+        normalized = normalized.replace("**", "");
+        normalized = normalized.replace("```", "");
+        normalized = normalized.replaceAll("`([^`]+)`", "$1");
+        normalized = normalized.replaceAll("(?m)^\\s*>+\\s*", "");
+        normalized = normalized.replaceAll("[\\u2013\\u2014]", "-");
+        normalized = normalized.replaceAll("(?m)^(\\s*)(\\d+\\.)(\\S)", "$1$2 $3");
+        normalized = normalized.replaceAll("(?m)^\\s*[-*]\\s+", "- ");
+        normalized = normalized.replaceAll("(?<!\\n)(-\\s+\\S)", "\n$1");
+        normalized = normalized.replaceAll("(?<!\\n)(\\d+\\.\\s+\\S)", "\n$1");
+        normalized = isolateUrls(normalized);
+        normalized = normalized.replaceAll("\n{3,}", "\n\n");
+        normalized = normalized.replaceAll("[\t\f]+", " ");
+        normalized = normalized.replaceAll(" {2,}", " ");
+        normalized = normalized.replaceAll(" *\n *", "\n");
+        return normalized.trim();
+    }
+
+    private static String isolateUrls(String text) {
+        Matcher matcher = URL_PATTERN.matcher(text);
+        StringBuffer buffer = new StringBuffer();
+        while (matcher.find()) {
+            String url = matcher.group(0);
+            boolean addLeadingNewline = matcher.start() == 0 || text.charAt(matcher.start() - 1) != '\n';
+            boolean addTrailingNewline = matcher.end() == text.length() || text.charAt(matcher.end()) != '\n';
+            StringBuilder replacement = new StringBuilder();
+            if (addLeadingNewline) {
+                replacement.append('\n');
+            }
+            replacement.append(url);
+            if (addTrailingNewline) {
+                replacement.append('\n');
+            }
+            matcher.appendReplacement(buffer, Matcher.quoteReplacement(replacement.toString()));
+        }
+        matcher.appendTail(buffer);
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.hku.hkuaiagent.util;
+
+import java.util.List;
+
+/**
+ * Model outputs in the shapes the HKU agents actually produce, shared by tests and benchmarks.
+ */
+final class ResponseSanitizerSamples {
+
+    static final String WEATHER = """
+            **Weather at HKU today**
+
+            The current temperature is 28°C with light winds.
+            - **Morning:** sunny,  humidity 70%
+            - **Afternoon:** scattered showers\t(bring an umbrella)
+            * Evening: clear skies
+
+            Source: https://www.hko.gov.hk/en/wxinfo/currwx/current.htm for live updates.
+            """;
+
+    static final String ITINERARY = """
+            ### Day 1: Main Campus
+
+            1.Visit the Main Building and the Loke Yew Hall.
+            2. Lunch at the Chi Wah Learning Commons café.
+            3. Walk to Centennial Campus – about 10 minutes.
+
+            ---
+
+            ### Day 2: Around Sai Ying Pun
+            > Tip: take MTR Island Line from HKU station.
+
+            Use `maps_direction_walking` for step-by-step routes, then check the map at https://www.amap.com/search?query=HKU.
+
+
+
+            ```
+            Total budget: HK$ 300
+            ```
+            """;
+
+    static final String COURSE = """
+            Here is what I found about COMP7103:   the course covers data mining fundamentals — classification, clustering and association rules.
+
+            Assessment: coursework 50%, examination 50%. Prerequisites are listed on the department page (https://www.cs.hku.hk/programmes/course-offered).
+
+            If you need more detail, please share a more specific follow-up question.
+            """;
+
+    static final List<String> ALL = List.of(WEATHER, ITINERARY, COURSE);
+
+    /**
+     * A long answer built from the samples, about the size of a PDF itinerary summary.
+     */
+    static String longAnswer() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            for (String sample : ALL) {
+                builder.append(sample).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Streamed deltas of the weather answer, split the way DashScope chunks arrive.
+     */
+    static List<String> streamedChunks() {
+        String text = WEATHER + COURSE;
+        List<String> chunks = new java.util.ArrayList<>();
+        for (int i = 0; i < text.length(); i += 12) {
+            chunks.add(text.substring(i, Math.min(text.length(), i + 12)));
+        }
+        return chunks;
+    }
+
+    private ResponseSanitizerSamples() {
+    }
+}
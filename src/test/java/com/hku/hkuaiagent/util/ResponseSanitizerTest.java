@@ -0,0 +1,78 @@
+package com.hku.hkuaiagent.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class ResponseSanitizerTest {
+
+    @Test
+    void markdownModeMatchesTheFormerRegexChain() {
+        for (String sample : ResponseSanitizerSamples.ALL) {
+            Assertions.assertEquals(LegacyResponseSanitizers.markdown(sample), ResponseSanitizer.MARKDOWN.sanitize(sample));
+        }
+        for (String chunk : ResponseSanitizerSamples.streamedChunks()) {
+            Assertions.assertEquals(LegacyResponseSanitizers.markdown(chunk), ResponseSanitizer.MARKDOWN.sanitize(chunk));
+        }
+        Assertions.assertEquals("", ResponseSanitizer.MARKDOWN.sanitize(null));
+    }
+
+    @Test
+    void plainTextModeNormalisesListsUrlsAndCode() {
+        Assertions.assertEquals(LegacyResponseSanitizers.plainText(ResponseSanitizerSamples.WEATHER),
+                ResponseSanitizer.PLAIN_TEXT.sanitize(ResponseSanitizerSamples.WEATHER));
+
+        Assertions.assertEquals("1. Visit the Main Building\n2. Lunch",
+                ResponseSanitizer.PLAIN_TEXT.sanitize("1.Visit the **Main Building** 2. Lunch"));
+        Assertions.assertEquals("Options:\n- walk\n- bus",
+                ResponseSanitizer.PLAIN_TEXT.sanitize("Options: - walk - bus"));
+        Assertions.assertEquals("Run weather_lookup, see\nhttps://hko.gov.hk/x?a=1\nfor more.",
+                ResponseSanitizer.PLAIN_TEXT.sanitize("> Run `weather_lookup`, see https://hko.gov.hk/x?a=1 for more.\r\n\r\n\r\n"));
+    }
+
+    @Test
+    void plainTextModeNoLongerSplitsNumbersAndDashesInsideSentences() {
+        // The regex chain turned "10. " into "1\n0. " and every en dash into a new list item
+        Assertions.assertEquals("Top picks:\n10. Sun Yat-sen Place",
+                ResponseSanitizer.PLAIN_TEXT.sanitize("Top picks: 10. Sun Yat-sen Place"));
+        Assertions.assertEquals("Walk to Centennial Campus - about 10 minutes.",
+                ResponseSanitizer.PLAIN_TEXT.sanitize("Walk to Centennial Campus – about 10 minutes."));
+    }
+
+    @Test
+    void streamingMatchesWholeTextAtEverySplitPoint() {
+        for (ResponseSanitizer sanitizer : List.of(ResponseSanitizer.MARKDOWN, ResponseSanitizer.PLAIN_TEXT)) {
+            for (String sample : ResponseSanitizerSamples.ALL) {
+                String expected = sanitizer.sanitize(sample);
+                for (int split = 1; split < sample.length(); split++) {
+                    Assertions.assertEquals(expected, stream(sanitizer, sample.substring(0, split), sample.substring(split)),
+                            "split at " + split);
+                }
+                List<String> characters = new ArrayList<>();
+                for (char c : sample.toCharArray()) {
+                    characters.add(String.valueOf(c));
+                }
+                Assertions.assertEquals(expected, stream(sanitizer, characters.toArray(String[]::new)));
+            }
+        }
+    }
+
+    @Test
+    void streamingKeepsSpacesAndJoinsSplitMarkers() {
+        Assertions.assertEquals("Hello world, bold text",
+                stream(ResponseSanitizer.MARKDOWN, "Hello", " world, *", "*bold*", "* text\n\n"));
+        Assertions.assertEquals("code\n- item",
+                stream(ResponseSanitizer.MARKDOWN, "``", "`code``", "`\r", "\n* item"));
+        // Decided text is released immediately; only a possible marker is held back
+        List<String> emitted = Flux.just("Sunny at HKU *", "*today**").transform(ResponseSanitizer.MARKDOWN.streaming())
+                .collectList().block();
+        Assertions.assertEquals(List.of("Sunny at HKU", " today"), emitted);
+    }
+
+    private static String stream(ResponseSanitizer sanitizer, String... chunks) {
+        return String.join("", Flux.fromArray(chunks).transform(sanitizer.streaming()).collectList().block());
+    }
+}
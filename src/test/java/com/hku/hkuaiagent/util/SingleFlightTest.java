@@ -0,0 +1,67 @@
+package com.hku.hkuaiagent.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallersShareOneRunAndLateJoinersSeeEverything() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger starts = new AtomicInteger();
+        Sinks.Many<String> model = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicInteger joinedHook = new AtomicInteger();
+
+        Flux<String> first = singleFlight.execute("s2 courses", () -> {
+            starts.incrementAndGet();
+            return model.asFlux();
+        }, shared -> shared.doOnSubscribe(s -> joinedHook.incrementAndGet()));
+        StringBuilder firstText = new StringBuilder();
+        first.subscribe(firstText::append);
+        model.tryEmitNext("COMP7103 ");
+
+        // Joins after the first chunk was produced and still receives it
+        StringBuilder secondText = new StringBuilder();
+        singleFlight.execute("s2 courses", () -> {
+            starts.incrementAndGet();
+            return Flux.just("unused");
+        }, shared -> shared.doOnSubscribe(s -> joinedHook.incrementAndGet())).subscribe(secondText::append);
+        model.tryEmitNext("and COMP7106");
+        model.tryEmitComplete();
+
+        Assertions.assertEquals(1, starts.get());
+        Assertions.assertEquals(1, joinedHook.get());
+        Assertions.assertEquals("COMP7103 and COMP7106", firstText.toString());
+        Assertions.assertEquals("COMP7103 and COMP7106", secondText.toString());
+        Assertions.assertEquals(0, singleFlight.inFlight());
+        Assertions.assertEquals(1, singleFlight.started());
+        Assertions.assertEquals(1, singleFlight.joined());
+    }
+
+    @Test
+    void finishedOrFailedFlightsAreStartedAgain() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger starts = new AtomicInteger();
+
+        Assertions.assertEquals(List.of("a"), singleFlight.execute("k", () -> {
+            starts.incrementAndGet();
+            return Flux.just("a");
+        }).collectList().block());
+        Assertions.assertThrows(IllegalStateException.class, () -> singleFlight.execute("k", () -> {
+            starts.incrementAndGet();
+            return Flux.<String>error(new IllegalStateException("model down"));
+        }).blockLast());
+        Assertions.assertEquals(List.of("b"), singleFlight.execute("k", () -> {
+            starts.incrementAndGet();
+            return Flux.just("b");
+        }).collectList().block());
+
+        Assertions.assertEquals(3, starts.get());
+        Assertions.assertEquals(0, singleFlight.inFlight());
+    }
+}